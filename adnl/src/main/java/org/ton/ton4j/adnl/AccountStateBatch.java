@@ -0,0 +1,125 @@
+package org.ton.ton4j.adnl;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.tl.liteserver.responses.AccountState;
+
+/**
+ * Pipelines account state queries: keeps up to {@code maxInFlight} queries outstanding and hands
+ * out results in completion order. New queries are sent while the consumer pulls results, so a
+ * slow consumer naturally throttles the batch.
+ *
+ * <p>Addresses are sorted by workchain and shard prefix, so queries touching the same shard state
+ * are sent together (and, in a pool, to the same lite-server).
+ */
+class AccountStateBatch implements Iterator<AccountStateResult> {
+
+  static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+  private final List<Address> addresses;
+  private final Function<Address, CompletableFuture<AccountState>> sender;
+  private final int maxInFlight;
+  private final BlockingQueue<AccountStateResult> completed = new LinkedBlockingQueue<>();
+  private int sent;
+  private int received;
+
+  AccountStateBatch(
+      Collection<Address> addresses,
+      Function<Address, CompletableFuture<AccountState>> sender,
+      int maxInFlight) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("maxInFlight must be positive");
+    }
+    this.addresses = sortByShard(addresses);
+    this.sender = sender;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * @param address account address
+   * @return key identifying workchain and shard prefix of the address
+   */
+  static long shardGroup(Address address) {
+    return ((long) address.wc << 32) ^ (address.getShardAsLong() >>> 32);
+  }
+
+  static List<Address> sortByShard(Collection<Address> addresses) {
+    List<Address> sorted = new ArrayList<>(new LinkedHashSet<>(addresses));
+    sorted.sort(
+        Comparator.<Address>comparingInt(a -> a.wc)
+            .thenComparing(a -> a.hashPart, AccountStateBatch::compareUnsigned));
+    return sorted;
+  }
+
+  Stream<AccountStateResult> stream() {
+    return StreamSupport.stream(
+        Spliterators.spliterator(
+            this, addresses.size(), Spliterator.NONNULL | Spliterator.SIZED),
+        false);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return received < addresses.size();
+  }
+
+  @Override
+  public AccountStateResult next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    while (sent < addresses.size() && sent - received < maxInFlight) {
+      send(addresses.get(sent++));
+    }
+    try {
+      AccountStateResult result = completed.take();
+      received++;
+      return result;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for account states", e);
+    }
+  }
+
+  private void send(Address address) {
+    CompletableFuture<AccountState> future;
+    try {
+      future = sender.apply(address);
+    } catch (Exception e) {
+      future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+    }
+    future.whenComplete(
+        (accountState, error) ->
+            completed.add(
+                AccountStateResult.builder()
+                    .address(address)
+                    .accountState(error == null ? accountState : null)
+                    .error(unwrap(error))
+                    .build()));
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    if (error instanceof CompletionException && error.getCause() != null) {
+      return error.getCause();
+    }
+    return error;
+  }
+
+  private static int compareUnsigned(byte[] a, byte[] b) {
+    for (int i = 0; i < Math.min(a.length, b.length); i++) {
+      int cmp = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+}
@@ -0,0 +1,25 @@
+package org.ton.ton4j.adnl;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.tl.liteserver.responses.AccountState;
+
+/** Outcome of one address of a batch account state request. */
+@Builder
+@Getter
+@ToString
+public class AccountStateResult {
+  private final Address address;
+
+  /** account state, null if the query for this address failed */
+  private final AccountState accountState;
+
+  /** failure of this address, null on success */
+  private final Throwable error;
+
+  public boolean isSuccess() {
+    return error == null;
+  }
+}
@@ -12,7 +12,10 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -59,9 +62,30 @@ public class AdnlLiteClient {
   }
 
   private final AdnlTcpTransport transport;
-  private final ScheduledExecutorService pingScheduler;
+  private final HashedWheelTimer timer = HashedWheelTimer.shared();
+  private volatile HashedWheelTimer.Timeout pingTimeout;
   private volatile boolean connected = false;
+  private volatile boolean closed = false;
+  private final boolean autoReconnect;
+  private final int maxReconnectAttempts;
+  private final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+  private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+  private volatile CompletableFuture<Void> reconnectFuture = CompletableFuture.completedFuture(null);
+  private volatile Consumer<List<PendingQuery>> failoverHandler;
+
+  // pings write to the socket, which may block, so they are not sent from the timer thread
+  private static final ExecutorService PING_EXECUTOR =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread t = new Thread(r, "adnl-ping");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private static final long RECONNECT_BASE_DELAY_MS = 100;
+  private static final long RECONNECT_MAX_DELAY_MS = 30_000;
   private final TonGlobalConfig globalConfig;
+  private final LiteServers liteServer;
   private final int liteServerIndex;
   private final boolean useServerRotation;
   private final int maxRetries;
@@ -72,12 +96,17 @@ public class AdnlLiteClient {
   private AdnlLiteClient(Builder builder) {
     this.transport =
         builder.client != null ? new AdnlTcpTransport(builder.client) : new AdnlTcpTransport();
-    this.pingScheduler = Executors.newSingleThreadScheduledExecutor();
     this.globalConfig = builder.globalConfig;
+    this.liteServer = builder.liteServer;
     this.liteServerIndex = builder.liteServerIndex;
     this.useServerRotation = builder.useServerRotation;
     this.maxRetries = builder.maxRetries;
     this.queryTimeout = builder.queryTimeout;
+    this.autoReconnect = builder.autoReconnect;
+    this.maxReconnectAttempts = builder.maxReconnectAttempts;
+    if (autoReconnect) {
+      transport.setDisconnectHandler(this::onConnectionLost);
+    }
 
     if (this.liteServerIndex >= 0) {
       this.currentServerIndex.set(this.liteServerIndex);
@@ -120,6 +149,10 @@ public class AdnlLiteClient {
    * @throws Exception if connection fails
    */
   private void connect() throws Exception {
+    if (globalConfig == null && liteServer != null) {
+      connect(liteServer);
+      return;
+    }
     if (globalConfig == null
         || globalConfig.getLiteservers() == null
         || globalConfig.getLiteservers().length == 0) {
@@ -179,23 +212,74 @@ public class AdnlLiteClient {
             + (lastException != null ? lastException.getMessage() : "unknown error"));
   }
 
-  /** Start ping scheduler to maintain connection */
+  /**
+   * Send query and wait for the answer. If the waiting thread is interrupted (e.g. the request was
+   * hedged and the other lite-server answered first) or the wait times out, the pending query is
+   * cancelled so it does not linger in the transport.
+   *
+   * @param queryBytes packed lite-server query
+   * @return answer
+   * @throws Exception if query fails, times out or is interrupted
+   */
+  private LiteServerAnswer sendQuery(byte[] queryBytes) throws Exception {
+    return sendQuery(queryBytes, true);
+  }
+
+  /**
+   * @param queryBytes packed lite-server query
+   * @param idempotent false for queries with side effects, they are not replayed after a reconnect
+   * @return answer
+   * @throws Exception if query fails, times out or is interrupted
+   */
+  private LiteServerAnswer sendQuery(byte[] queryBytes, boolean idempotent) throws Exception {
+    CompletableFuture<LiteServerAnswer> future = transport.query(queryBytes, idempotent);
+    try {
+      return future.get(queryTimeout, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      throw e;
+    } catch (TimeoutException e) {
+      future.cancel(false);
+      throw e;
+    }
+  }
+
+  /**
+   * Start periodic ping to maintain connection. Pings are driven by the shared timer wheel, which
+   * only hands them to the ping executor, so a blocked socket never delays other timeouts. No
+   * thread is blocked while waiting for the pong.
+   */
   private void startPingScheduler() {
-    pingScheduler.scheduleAtFixedRate(
-        () -> {
-          try {
-            if (connected && transport.isConnected()) {
-              transport.ping().get(5, TimeUnit.SECONDS);
-              //              log.info("Ping successful");
-            }
-          } catch (Exception e) {
-            log.warn("Adnl tcp.Ping failed: ", e);
-            // Connection might be lost, could implement reconnection logic here
-          }
-        },
-        5,
-        5,
-        TimeUnit.SECONDS);
+    HashedWheelTimer.Timeout previous = pingTimeout;
+    if (previous != null) {
+      previous.cancel();
+    }
+    schedulePing();
+  }
+
+  private void schedulePing() {
+    pingTimeout = timer.newTimeout(() -> PING_EXECUTOR.execute(this::ping), 5, TimeUnit.SECONDS);
+  }
+
+  private void ping() {
+    if (!connected) {
+      return;
+    }
+    if (transport.isConnected()) {
+      transport
+          .ping()
+          .whenComplete(
+              (pong, error) -> {
+                if (error != null) {
+                  log.warn("Adnl tcp.Ping failed: ", error);
+                  // Connection might be lost, could implement reconnection logic here
+                }
+              });
+    }
+    if (connected) {
+      schedulePing();
+    }
   }
 
   /**
@@ -213,7 +297,7 @@ public class AdnlLiteClient {
           byte[] queryBytes = LiteServerQuery.pack(MasterchainInfoQuery.builder().build());
 
           LiteServerAnswer response;
-          response = transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          response = sendQuery(queryBytes);
           try {
             return (MasterchainInfo) response;
           } catch (Exception e) {
@@ -235,7 +319,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(MasterchainInfoExtQuery.builder().mode(mode).build());
 
           LiteServerAnswer response;
-          response = transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          response = sendQuery(queryBytes);
           try {
             return (MasterchainInfoExt) response;
           } catch (Exception e) {
@@ -256,8 +340,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(CurrentTimeQuery.builder().build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (CurrentTime) response;
           } catch (Exception e) {
@@ -278,8 +361,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(VersionQuery.builder().build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (Version) response;
           } catch (Exception e) {
@@ -301,8 +383,7 @@ public class AdnlLiteClient {
           byte[] queryBytes =
               LiteServerQuery.pack(ConfigAllQuery.builder().mode(mode).id(id).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (ConfigInfo) response;
           } catch (Exception e) {
@@ -325,8 +406,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   ConfigParamsQuery.builder().mode(mode).id(id).paramList(paramList).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (ConfigInfo) response;
           } catch (Exception e) {
@@ -791,8 +871,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(BlockQuery.builder().id(id).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockData) response;
           } catch (Exception e) {
@@ -813,8 +892,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(BlockStateQuery.builder().id(id).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockState) response;
           } catch (Exception e) {
@@ -836,8 +914,7 @@ public class AdnlLiteClient {
           byte[] queryBytes =
               LiteServerQuery.pack(BlockHeaderQuery.builder().id(id).mode(mode).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockHeader) response;
           } catch (Exception e) {
@@ -867,8 +944,7 @@ public class AdnlLiteClient {
                       .modifiedAfter(modifiedAfter)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (ValidatorStats) response;
           } catch (Exception e) {
@@ -889,8 +965,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(ShardBlockProofQuery.builder().id(id).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (ShardBlockProof) response;
           } catch (Exception e) {
@@ -918,8 +993,7 @@ public class AdnlLiteClient {
                       .targetBlock(targetBlock)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (PartialBlockProof) response;
           } catch (Exception e) {
@@ -951,6 +1025,61 @@ public class AdnlLiteClient {
     return account.getAccountStorage().getAccountStatus();
   }
 
+  /**
+   * Send account state query without blocking the calling thread.
+   *
+   * @param id Block ID
+   * @param accountAddress Account address
+   * @return future completed with the account state, or exceptionally with the lite-server error
+   */
+  public CompletableFuture<AccountState> getAccountStateAsync(
+      BlockIdExt id, Address accountAddress) {
+    if (!connected || !transport.isConnected()) {
+      CompletableFuture<AccountState> future = new CompletableFuture<>();
+      future.completeExceptionally(new IllegalStateException("Not connected to lite-server"));
+      return future;
+    }
+    byte[] queryBytes =
+        LiteServerQuery.pack(AccountStateQuery.builder().id(id).account(accountAddress).build());
+    return transport
+        .query(queryBytes)
+        .thenApply(
+            response -> {
+              if (response instanceof LiteServerError) {
+                throw new CompletionException(
+                    new Exception(((LiteServerError) response).getMessage()));
+              }
+              return (AccountState) response;
+            });
+  }
+
+  /**
+   * Fetch account states of many addresses at the same block. Queries are pipelined (up to 64 in
+   * flight) and results are streamed in completion order; a failure is reported per address.
+   *
+   * @param id Block ID, the same pinned block is used for all addresses
+   * @param addresses Account addresses
+   * @return stream of results, one per distinct address
+   */
+  public Stream<AccountStateResult> getAccountStates(BlockIdExt id, Collection<Address> addresses) {
+    return getAccountStates(id, addresses, AccountStateBatch.DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Fetch account states of many addresses at the same block.
+   *
+   * @param id Block ID, the same pinned block is used for all addresses
+   * @param addresses Account addresses
+   * @param maxInFlight maximum number of outstanding queries
+   * @return stream of results, one per distinct address
+   */
+  public Stream<AccountStateResult> getAccountStates(
+      BlockIdExt id, Collection<Address> addresses, int maxInFlight) {
+    return new AccountStateBatch(
+            addresses, address -> getAccountStateAsync(id, address), maxInFlight)
+        .stream();
+  }
+
   public AccountState getAccountState(BlockIdExt id, Address accountAddress) throws Exception {
     return executeWithRetry(
         () -> {
@@ -962,8 +1091,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   AccountStateQuery.builder().id(id).account(accountAddress).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (AccountState) response;
           } catch (Exception e) {
@@ -987,8 +1115,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   AccountStatePrunedQuery.builder().id(id).account(accountAddress).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (AccountState) response;
           } catch (Exception e) {
@@ -1171,8 +1298,7 @@ public class AdnlLiteClient {
                       .params(methodParams)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (RunMethodResult) response;
           } catch (Exception e) {
@@ -1201,8 +1327,7 @@ public class AdnlLiteClient {
                       .exact(exact)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (ShardInfo) response;
           } catch (Exception e) {
@@ -1223,8 +1348,7 @@ public class AdnlLiteClient {
 
           byte[] queryBytes = LiteServerQuery.pack(AllShardsInfoQuery.builder().id(id).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (AllShardsInfo) response;
           } catch (Exception e) {
@@ -1248,8 +1372,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   OneTransactionQuery.builder().id(id).account(accountAddress).lt(lt).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (TransactionInfo) response;
           } catch (Exception e) {
@@ -1290,8 +1413,7 @@ public class AdnlLiteClient {
                       .hash((tempHash.length != 0) ? tempHash : hash)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (TransactionList) response;
           } catch (Exception e) {
@@ -1314,8 +1436,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   LookupBlockQuery.builder().id(id).mode(mode).lt(lt).utime(utime).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockHeader) response;
           } catch (Exception e) {
@@ -1345,8 +1466,7 @@ public class AdnlLiteClient {
                       .utime(utime)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (LookupBlockResult) response;
           } catch (Exception e) {
@@ -1375,8 +1495,7 @@ public class AdnlLiteClient {
                       .afterTx(transactionId3)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockTransactions) response;
           } catch (Exception e) {
@@ -1434,8 +1553,7 @@ public class AdnlLiteClient {
                       .wantProof(wantProof)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockTransactionsExt) response;
           } catch (Exception e) {
@@ -1449,17 +1567,137 @@ public class AdnlLiteClient {
 
   /** Close connection */
   public void close() {
+    closed = true;
+    disconnect();
+  }
+
+  private void disconnect() {
     connected = false;
-    pingScheduler.shutdown();
+    HashedWheelTimer.Timeout currentPing = pingTimeout;
+    if (currentPing != null) {
+      currentPing.cancel();
+    }
     transport.close();
+  }
 
+  /**
+   * Get reconnect statistics: number of reconnects, downtime, replayed queries.
+   *
+   * @return connection metrics
+   */
+  public ConnectionMetrics getConnectionMetrics() {
+    return connectionMetrics;
+  }
+
+  /**
+   * Set handler that receives idempotent in-flight queries when the connection could not be
+   * re-established, used by {@link LiteClientConnectionPool} to replay them on another member.
+   */
+  void setFailoverHandler(Consumer<List<PendingQuery>> failoverHandler) {
+    this.failoverHandler = failoverHandler;
+  }
+
+  /**
+   * Send queries that were in flight on another (lost) connection.
+   *
+   * @param pending queries to replay
+   */
+  void replay(List<PendingQuery> pending) {
+    for (PendingQuery query : pending) {
+      transport.replay(query);
+    }
+    connectionMetrics.onReplayedQueries(pending.size());
+  }
+
+  /** Called by the transport listener thread when the connection is lost unexpectedly. */
+  private void onConnectionLost(Throwable cause) {
+    if (closed || !reconnecting.compareAndSet(false, true)) {
+      return;
+    }
+    connected = false;
+    connectionMetrics.onDisconnect();
+    reconnectFuture = new CompletableFuture<>();
+    log.warn("Connection to lite-server lost: {}, reconnecting", cause.getMessage());
+
+    Thread reconnectThread = new Thread(this::reconnect, "adnl-reconnect");
+    reconnectThread.setDaemon(true);
+    reconnectThread.start();
+  }
+
+  /**
+   * Re-establishes the connection with exponential backoff and replays idempotent in-flight
+   * queries. Queries with side effects are failed, since it is unknown if they were processed.
+   */
+  private void reconnect() {
+    List<PendingQuery> replayable = new ArrayList<>();
+    int failed = 0;
+    for (PendingQuery pending : transport.drainPendingQueries()) {
+      if (pending.isIdempotent()) {
+        replayable.add(pending);
+      } else {
+        pending
+            .getFuture()
+            .completeExceptionally(
+                new Exception("Connection lost, query with side effects is not replayed"));
+        failed++;
+      }
+    }
+    connectionMetrics.onFailedQueries(failed);
+
+    long delay = RECONNECT_BASE_DELAY_MS;
     try {
-      if (!pingScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-        pingScheduler.shutdownNow();
+      for (int attempt = 1; attempt <= maxReconnectAttempts && !closed; attempt++) {
+        Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        if (closed) {
+          break;
+        }
+        try {
+          if (attempt > 1) {
+            rotateServer();
+          }
+          connect();
+          connectionMetrics.onReconnect();
+          log.info(
+              "Reconnected to lite-server after {} attempt(s), replaying {} queries",
+              attempt,
+              replayable.size());
+          replay(replayable);
+          return;
+        } catch (Exception e) {
+          connectionMetrics.onFailedReconnectAttempt();
+          log.warn(
+              "Reconnect attempt {}/{} failed: {}", attempt, maxReconnectAttempts, e.getMessage());
+          delay = Math.min(delay * 2, RECONNECT_MAX_DELAY_MS);
+        }
       }
     } catch (InterruptedException e) {
-      pingScheduler.shutdownNow();
       Thread.currentThread().interrupt();
+    } finally {
+      reconnecting.set(false);
+      reconnectFuture.complete(null);
+    }
+
+    connectionMetrics.onGiveUp();
+    Consumer<List<PendingQuery>> handler = failoverHandler;
+    if (handler != null && !replayable.isEmpty()) {
+      handler.accept(replayable);
+    } else {
+      for (PendingQuery pending : replayable) {
+        pending.getFuture().completeExceptionally(new Exception("Connection lost"));
+      }
+      connectionMetrics.onFailedQueries(replayable.size());
+    }
+  }
+
+  private void rotateServer() {
+    if (useServerRotation
+        && globalConfig != null
+        && globalConfig.getLiteservers() != null
+        && globalConfig.getLiteservers().length > 1
+        && liteServerIndex < 0) {
+      int nextIndex = (currentServerIndex.get() + 1) % globalConfig.getLiteservers().length;
+      currentServerIndex.set(nextIndex);
+      log.info("Trying next lite-server at index: {}", nextIndex);
     }
   }
 
@@ -1491,8 +1729,7 @@ public class AdnlLiteClient {
                       .wantProof(wantProof)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (DispatchQueueInfo) response;
           } catch (Exception e) {
@@ -1533,8 +1770,7 @@ public class AdnlLiteClient {
                       .messagesBoc(messageBoc)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (DispatchQueueMessages) response;
           } catch (Exception e) {
@@ -1556,8 +1792,7 @@ public class AdnlLiteClient {
           byte[] queryBytes =
               LiteServerQuery.pack(LibrariesQuery.builder().libraryList(listLibraries).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (LibraryResult) response;
           } catch (Exception e) {
@@ -1585,8 +1820,7 @@ public class AdnlLiteClient {
                       .libraryList(listLibraries)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (LibraryResultWithProof) response;
           } catch (Exception e) {
@@ -1609,8 +1843,7 @@ public class AdnlLiteClient {
               LiteServerQuery.pack(
                   OutMsgQueueSizesQuery.builder().mode(mode).wc(wc).shard(shard).build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (OutMsgQueueSizes) response;
           } catch (Exception e) {
@@ -1638,8 +1871,7 @@ public class AdnlLiteClient {
                       .wantProof(wantProof)
                       .build());
 
-          LiteServerAnswer response =
-              transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+          LiteServerAnswer response = sendQuery(queryBytes);
           try {
             return (BlockOutMsgQueueSize) response;
           } catch (Exception e) {
@@ -1666,6 +1898,17 @@ public class AdnlLiteClient {
       // This is a connection failure (not connected to lite-server)
       // We should retry connecting to another server
       if (e.getMessage() != null && e.getMessage().contains("Not connected to lite-server")) {
+        if (reconnecting.get()) {
+          // automatic reconnect is in progress, wait for it instead of racing with it
+          try {
+            reconnectFuture.get(queryTimeout, TimeUnit.SECONDS);
+          } catch (TimeoutException timeoutException) {
+            throw new Exception("Reconnect to lite-server timed out", e);
+          }
+          if (isConnected()) {
+            return supplier.call();
+          }
+        }
         return handleConnectionFailure(supplier, e);
       }
       // For other IllegalStateException, just throw it
@@ -1738,7 +1981,7 @@ public class AdnlLiteClient {
 
       try {
         // Close current connection
-        close();
+        disconnect();
         // Connect to next server
         connect(globalConfig.getLiteservers()[nextIndex]);
         log.info("Switched to lite-server at index: {}", nextIndex);
@@ -1774,6 +2017,8 @@ public class AdnlLiteClient {
     private boolean useServerRotation = true;
     private int maxRetries = 5;
     private int queryTimeout = 60;
+    private boolean autoReconnect = true;
+    private int maxReconnectAttempts = 10;
 
     /** Create a new builder */
     public Builder() {}
@@ -1887,6 +2132,30 @@ public class AdnlLiteClient {
       return this;
     }
 
+    /**
+     * Set whether to reconnect automatically when the connection is lost. In-flight idempotent
+     * queries are replayed on the new connection. Enabled by default.
+     *
+     * @param autoReconnect Whether to reconnect automatically
+     * @return Builder
+     */
+    public Builder autoReconnect(boolean autoReconnect) {
+      this.autoReconnect = autoReconnect;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of automatic reconnect attempts, the delay between attempts grows
+     * exponentially from 100 ms up to 30 s
+     *
+     * @param maxReconnectAttempts Maximum number of reconnect attempts
+     * @return Builder
+     */
+    public Builder maxReconnectAttempts(int maxReconnectAttempts) {
+      this.maxReconnectAttempts = maxReconnectAttempts;
+      return this;
+    }
+
     /**
      * Build the AdnlLiteClient
      *
@@ -2059,8 +2328,7 @@ public class AdnlLiteClient {
                 LiteServerQuery.pack(
                     SendMessageQuery.builder().body(externalMessage.toCell().toBoc()).build());
 
-            LiteServerAnswer response =
-                transport.query(queryBytes).get(queryTimeout, TimeUnit.SECONDS);
+            LiteServerAnswer response = sendQuery(queryBytes, false);
             try {
               return (SendMsgStatus) response;
             } catch (Exception e) {
@@ -9,6 +9,7 @@ import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
 import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import lombok.extern.slf4j.Slf4j;
@@ -36,17 +37,31 @@ public class AdnlTcpTransport {
   private volatile boolean connected = false;
   private volatile boolean running = false;
 
+  private static final ThreadLocal<MessageDigest> SHA256 =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("SHA-256");
+            } catch (Exception e) {
+              throw new Error("SHA-256 is not available", e);
+            }
+          });
+  private static final ThreadLocal<SecureRandom> RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+  private static final ThreadLocal<byte[]> SCRATCH_32 =
+      ThreadLocal.withInitial(() -> new byte[32]);
+
   private final Client client;
-  private final ConcurrentHashMap<String, CompletableFuture<LiteServerAnswer>> activeQueries =
-      new ConcurrentHashMap<>();
+  private final QueryIdMap<PendingQuery> activeQueries = new QueryIdMap<>();
   private final ConcurrentHashMap<Long, CompletableFuture<TcpPong>> activePings =
       new ConcurrentHashMap<>();
-  private final ScheduledExecutorService timeoutExecutor = Executors.newScheduledThreadPool(2);
-  
+  private final HashedWheelTimer timer = HashedWheelTimer.shared();
+
   // Synchronization objects for thread-safe cipher operations
   private final Object readCipherLock = new Object();
   private final Object writeCipherLock = new Object();
 
+  private volatile Consumer<Throwable> disconnectHandler;
+
   private Thread listenerThread;
   private boolean authenticated = false;
   private byte[] ourNonce;
@@ -95,7 +110,7 @@ public class AdnlTcpTransport {
 
     // Generate 160 random bytes for encryption keys (matching Go implementation)
     byte[] randomData = new byte[160];
-    new SecureRandom().nextBytes(randomData);
+    RANDOM.get().nextBytes(randomData);
 
     // Build ciphers for incoming and outgoing packets (matching Go implementation)
     readCipher =
@@ -115,8 +130,7 @@ public class AdnlTcpTransport {
     byte[] clientPublicKey = client.getEd25519Public();
 
     // Calculate checksum of random data
-    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-    byte[] checksum = sha256.digest(randomData);
+    byte[] checksum = SHA256.get().digest(randomData);
 
     // Calculate shared key using proper Ed25519 to X25519 conversion
     byte[] sharedKey = CryptoUtils.sharedKey(client.getEd25519Private(), serverPublicKey);
@@ -168,8 +182,7 @@ public class AdnlTcpTransport {
     buffer.putInt((int) constructorId);
     buffer.put(publicKey);
 
-    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-    return sha256.digest(buffer.array());
+    return SHA256.get().digest(buffer.array());
   }
 
   private void startListener() {
@@ -201,11 +214,12 @@ public class AdnlTcpTransport {
   private void listenForPackets() {
     //    log.info("Starting packet listener");
 
+    byte[] sizeBytes = new byte[4];
+    Exception failure = null;
     try {
       while (running && !socket.isClosed()) {
         // Read packet size (4 bytes, little endian) with proper partial read handling
-        byte[] sizeBytes = readExactBytes(4);
-        if (sizeBytes == null) {
+        if (!readExactBytes(sizeBytes)) {
           break; // Connection closed
         }
 
@@ -226,8 +240,8 @@ public class AdnlTcpTransport {
         int packetSize = (int) packetSizeLong;
 
         // Read packet data with proper partial read handling
-        byte[] packetData = readExactBytes(packetSize);
-        if (packetData == null) {
+        byte[] packetData = new byte[packetSize];
+        if (!readExactBytes(packetData)) {
           break; // Connection closed
         }
 
@@ -242,9 +256,13 @@ public class AdnlTcpTransport {
     } catch (Exception e) {
       if (running) {
         log.info("Error in packet listener");
+        failure = e;
       }
     } finally {
+      // running is reset by close(), if it is still set the connection was lost
+      boolean lost = running && connected;
       running = false;
+      connected = false;
       try {
         if (socket != null && !socket.isClosed()) {
           socket.close();
@@ -252,6 +270,10 @@ public class AdnlTcpTransport {
       } catch (IOException e) {
         log.warn("Error closing socket", e);
       }
+      Consumer<Throwable> handler = disconnectHandler;
+      if (lost && handler != null) {
+        handler.accept(failure != null ? failure : new IOException("Connection closed by peer"));
+      }
     }
   }
 
@@ -259,22 +281,26 @@ public class AdnlTcpTransport {
    * Read exact number of bytes from socket, handling partial reads Similar to Go's readData
    * function
    */
-  private byte[] readExactBytes(int count) throws IOException {
-    byte[] result = new byte[count];
+  private boolean readExactBytes(byte[] result) throws IOException {
+    int count = result.length;
     int totalRead = 0;
 
     while (totalRead < count) {
       int bytesRead = input.read(result, totalRead, count - totalRead);
       if (bytesRead == -1) {
         // Connection closed
-        return null;
+        return false;
       }
       totalRead += bytesRead;
     }
 
-    return result;
+    return true;
   }
 
+  /**
+   * Processes a decrypted packet {@code [nonce:32][payload][checksum:32]}. The payload is never
+   * copied, nonce, query id and answer body are read as views over {@code packetData}.
+   */
   private void processIncomingPacket(byte[] packetData) {
     try {
       if (packetData.length == 0) {
@@ -290,149 +316,56 @@ public class AdnlTcpTransport {
         return;
       }
 
-      byte[] nonce = Arrays.copyOfRange(packetData, 0, 32);
-      byte[] payload = Arrays.copyOfRange(packetData, 32, packetData.length - 32);
-      byte[] receivedChecksum =
-          Arrays.copyOfRange(packetData, packetData.length - 32, packetData.length);
-
-      // Verify checksum
-      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-      sha256.update(nonce);
-      sha256.update(payload);
-      byte[] calculatedChecksum = sha256.digest();
-
-      if (!Arrays.equals(receivedChecksum, calculatedChecksum)) {
+      if (!verifyChecksum(packetData)) {
         log.info("Invalid packet checksum");
-        log.info(
-            "Received checksum: {}, Calculated checksum: {}",
-            CryptoUtils.hex(receivedChecksum),
-            CryptoUtils.hex(calculatedChecksum));
         return;
       }
 
+      int payloadLength = packetData.length - 64;
+
       // Handle handshake confirmation (empty payload)
-      if (payload.length == 0) {
+      if (payloadLength == 0) {
         connected = true;
         //        log.info("Received handshake confirmation (empty packet)");
         return;
       }
 
-      // Log payload for debugging
-      //      log.info("Received payload of size: {}", payload.length + " bytes");
-      //      log.info("Payload hex: {}", CryptoUtils.hex(payload));
-
-      if (payload.length >= 4) {
+      if (payloadLength >= 4) {
         try {
-          // Check for known constructor IDs
-          byte[] constructorId = Arrays.copyOfRange(payload, 0, 4);
-          int constructor = Utils.bytesToInt(constructorId);
-          //          log.info("received constructorId int-reversed={}",
-          // Integer.reverseBytes(constructor));
-
-          if (Integer.reverseBytes(constructor) == TcpPong.constructorId) {
-            byte[] queryBody = Arrays.copyOfRange(payload, 4, 16);
-            TcpPong tcpPong = TcpPong.deserialize(queryBody);
-            //            log.debug("received adnl tcp.pong {}", tcpPong.getRandomId());
-            CompletableFuture<TcpPong> future = activePings.remove(tcpPong.getRandomId());
+          ByteBuffer payload =
+              ByteBuffer.wrap(packetData, 32, payloadLength).slice().order(ByteOrder.LITTLE_ENDIAN);
+          int constructor = payload.getInt(0);
+
+          if (constructor == TcpPong.constructorId) {
+            long randomId = payload.getLong(4);
+            //            log.debug("received adnl tcp.pong {}", randomId);
+            CompletableFuture<TcpPong> future = activePings.remove(randomId);
             if (nonNull(future)) {
-              future.complete(tcpPong);
+              future.complete(TcpPong.builder().randomId(randomId).build());
             }
-          } else if (Integer.reverseBytes(constructor) == AdnlMessagePart.constructorId) {
+          } else if (constructor == AdnlMessagePart.constructorId) {
             log.info("AdnlMessagePart");
-          } else if (Integer.reverseBytes(constructor) == AdnlMessageAnswer.constructorId) {
+          } else if (constructor == AdnlMessageAnswer.constructorId) {
             //            log.info("AdnlMessageAnswer");
 
-            byte[] queryId = Arrays.copyOfRange(payload, 4, 36);
-            byte[] queryBody = Utils.fromBytes(Arrays.copyOfRange(payload, 36, payload.length));
-
-            byte[] queryBodyConstructorId = Arrays.copyOfRange(queryBody, 0, 4);
-            int constructorBody = Utils.bytesToInt(queryBodyConstructorId);
-            byte[] queryBodyPayload = Arrays.copyOfRange(queryBody, 4, queryBody.length);
-
-            //            log.info("received queryId: {}", CryptoUtils.hex(queryId));
-
             // Thread-safe response handling: use the actual query ID from the response
-            String queryIdStr = CryptoUtils.hex(queryId);
-            CompletableFuture<LiteServerAnswer> future = activeQueries.remove(queryIdStr);
-            if (future != null) {
+            PendingQuery pending = activeQueries.remove(payload.getLong(4), payload.getLong(12));
+            if (pending != null) {
+              CompletableFuture<LiteServerAnswer> future = pending.getFuture();
               // Try to deserialize as liteServer response
               try {
-                LiteServerAnswer result = null;
-
-                int id = Integer.reverseBytes(constructorBody);
-                if (id == LiteServerError.constructorId) {
-                  result = LiteServerError.deserialize(queryBodyPayload);
-                } else if (id == MasterchainInfo.constructorId) {
-                  result = MasterchainInfo.deserialize(queryBodyPayload);
-                } else if (id == MasterchainInfoExt.constructorId) {
-                  result = MasterchainInfoExt.deserialize(queryBodyPayload);
-                } else if (id == CurrentTime.constructorId) {
-                  result = CurrentTime.deserialize(queryBodyPayload);
-                } else if (id == Version.constructorId) {
-                  result = Version.deserialize(queryBodyPayload);
-                } else if (id == BlockData.constructorId) {
-                  result = BlockData.deserialize(queryBodyPayload);
-                } else if (id == BlockState.constructorId) {
-                  result = BlockState.deserialize(queryBodyPayload);
-                } else if (id == BlockHeader.constructorId) {
-                  result = BlockHeader.deserialize(queryBodyPayload);
-                } else if (id == LookupBlockResult.constructorId) {
-                  result = LookupBlockResult.deserialize(queryBodyPayload);
-                } else if (id == SendMsgStatus.constructorId) {
-                  result = SendMsgStatus.deserialize(queryBodyPayload);
-                } else if (id == AccountState.constructorId) {
-                  result = AccountState.deserialize(queryBodyPayload);
-                } else if (id == ConfigInfo.constructorId) {
-                  result = ConfigInfo.deserialize(queryBodyPayload);
-                } else if (id == ShardInfo.constructorId) {
-                  result = ShardInfo.deserialize(queryBodyPayload);
-                } else if (id == AllShardsInfo.constructorId) {
-                  result = AllShardsInfo.deserialize(queryBodyPayload);
-                } else if (id == TransactionList.constructorId) {
-                  result = TransactionList.deserialize(queryBodyPayload);
-                } else if (id == TransactionInfo.constructorId) {
-                  result = TransactionInfo.deserialize(queryBodyPayload);
-                } else if (id == BlockTransactions.constructorId) {
-                  result = BlockTransactions.deserialize(queryBodyPayload);
-                } else if (id == BlockTransactionsExt.constructorId) {
-                  result = BlockTransactionsExt.deserialize(queryBodyPayload);
-                } else if (id == RunMethodResult.constructorId) {
-                  result = RunMethodResult.deserialize(queryBodyPayload);
-                } else if (id == ValidatorStats.constructorId) {
-                  result = ValidatorStats.deserialize(queryBodyPayload);
-                } else if (id == PartialBlockProof.constructorId) {
-                  result = PartialBlockProof.deserialize(queryBodyPayload);
-                } else if (id == ShardBlockProof.constructorId) {
-                  result = ShardBlockProof.deserialize(queryBodyPayload);
-                } else if (id == DispatchQueueInfo.constructorId) {
-                  result = DispatchQueueInfo.deserialize(queryBodyPayload);
-                } else if (id == DispatchQueueMessages.constructorId) {
-                  result = DispatchQueueMessages.deserialize(queryBodyPayload);
-                } else if (id == LibraryResult.constructorId) {
-                  result = LibraryResult.deserialize(queryBodyPayload);
-                } else if (id == LibraryResultWithProof.constructorId) {
-                  result = LibraryResultWithProof.deserialize(queryBodyPayload);
-                } else if (id == OutMsgQueueSizes.constructorId) {
-                  result = OutMsgQueueSizes.deserialize(queryBodyPayload);
-                } else if (id == BlockOutMsgQueueSize.constructorId) {
-                  result = BlockOutMsgQueueSize.deserialize(queryBodyPayload);
-                } else {
-                  log.error("unknown adnl.query id {}", id);
-                }
-
-                future.complete(result);
+                future.complete(decodeAnswer(payload, 36));
               } catch (Exception e) {
-                log.error(
-                    "Could not deserialize constructor {} completing with raw bytes: ",
-                    constructorBody,
-                    e);
+                log.error("Could not deserialize answer, completing with null: ", e);
                 future.complete(null);
               }
             } else {
-              log.warn("Received response for unknown query ID: {}", queryIdStr);
+              log.warn(
+                  "Received response for unknown query ID: {}",
+                  CryptoUtils.hex(Arrays.copyOfRange(packetData, 36, 68)));
             }
           } else {
-            log.info("unknown adnl.message id {}", Integer.reverseBytes(constructor));
+            log.info("unknown adnl.message id {}", constructor);
           }
 
         } catch (Exception e) {
@@ -445,37 +378,153 @@ public class AdnlTcpTransport {
     }
   }
 
-  public void sendPacket(byte[] payload) throws Exception {
-    if (!connected) {
-      throw new IllegalStateException("Not connected");
+  /**
+   * Verifies sha256(nonce + payload) against the trailing 32 bytes of a decrypted packet.
+   *
+   * @param packetData decrypted packet {@code [nonce:32][payload][checksum:32]}
+   * @return true if the checksum matches
+   */
+  static boolean verifyChecksum(byte[] packetData) throws Exception {
+    int checksumOffset = packetData.length - 32;
+    MessageDigest sha256 = SHA256.get();
+    sha256.update(packetData, 0, checksumOffset);
+    byte[] calculated = SCRATCH_32.get();
+    sha256.digest(calculated, 0, 32);
+    int diff = 0;
+    for (int i = 0; i < 32; i++) {
+      diff |= calculated[i] ^ packetData[checksumOffset + i];
     }
+    return diff == 0;
+  }
 
-    // [size:4][nonce:32][payload:N][checksum:32]
+  /**
+   * Decodes a lite-server answer stored as TL bytes at {@code offset} of an adnl.message.answer
+   * payload. The answer is deserialized from a view of the payload, no intermediate copies.
+   *
+   * @param payload little-endian view of the adnl message payload
+   * @param offset offset of the TL-serialized answer bytes
+   * @return deserialized answer or null for unknown constructors
+   */
+  static LiteServerAnswer decodeAnswer(ByteBuffer payload, int offset) {
+    int first = payload.get(offset) & 0xFF;
+    int bodyOffset;
+    int bodyLength;
+    if (first < 0xFE) {
+      bodyOffset = offset + 1;
+      bodyLength = first;
+    } else if (first == 0xFE) {
+      bodyOffset = offset + 4;
+      bodyLength = payload.getInt(offset) >>> 8;
+    } else {
+      throw new IllegalArgumentException("unsupported TL bytes length prefix 0xFF");
+    }
+    if (bodyLength < 4 || bodyOffset + bodyLength > payload.limit()) {
+      throw new IllegalArgumentException("invalid answer length " + bodyLength);
+    }
 
-    // First allocate buffer with size + nonce, then we'll append payload and checksum
+    int id = payload.getInt(bodyOffset);
+    ByteBuffer body = payload.duplicate();
+    body.position(bodyOffset + 4).limit(bodyOffset + bodyLength);
+    body = body.slice();
+
+    if (id == LiteServerError.constructorId) {
+      return LiteServerError.deserialize(body);
+    } else if (id == MasterchainInfo.constructorId) {
+      return MasterchainInfo.deserialize(body);
+    } else if (id == MasterchainInfoExt.constructorId) {
+      return MasterchainInfoExt.deserialize(body);
+    } else if (id == CurrentTime.constructorId) {
+      return CurrentTime.deserialize(body);
+    } else if (id == Version.constructorId) {
+      return Version.deserialize(body);
+    } else if (id == BlockData.constructorId) {
+      return BlockData.deserialize(body);
+    } else if (id == BlockState.constructorId) {
+      return BlockState.deserialize(body);
+    } else if (id == BlockHeader.constructorId) {
+      return BlockHeader.deserialize(body);
+    } else if (id == LookupBlockResult.constructorId) {
+      return LookupBlockResult.deserialize(body);
+    } else if (id == SendMsgStatus.constructorId) {
+      return SendMsgStatus.deserialize(body);
+    } else if (id == AccountState.constructorId) {
+      return AccountState.deserialize(body);
+    } else if (id == ConfigInfo.constructorId) {
+      return ConfigInfo.deserialize(body);
+    } else if (id == ShardInfo.constructorId) {
+      return ShardInfo.deserialize(body);
+    } else if (id == AllShardsInfo.constructorId) {
+      return AllShardsInfo.deserialize(body);
+    } else if (id == TransactionList.constructorId) {
+      return TransactionList.deserialize(body);
+    } else if (id == TransactionInfo.constructorId) {
+      return TransactionInfo.deserialize(body);
+    } else if (id == BlockTransactions.constructorId) {
+      return BlockTransactions.deserialize(body);
+    } else if (id == BlockTransactionsExt.constructorId) {
+      return BlockTransactionsExt.deserialize(body);
+    } else if (id == RunMethodResult.constructorId) {
+      return RunMethodResult.deserialize(body);
+    } else if (id == ValidatorStats.constructorId) {
+      return ValidatorStats.deserialize(body);
+    } else if (id == PartialBlockProof.constructorId) {
+      return PartialBlockProof.deserialize(body);
+    } else if (id == ShardBlockProof.constructorId) {
+      return ShardBlockProof.deserialize(body);
+    } else if (id == DispatchQueueInfo.constructorId) {
+      return DispatchQueueInfo.deserialize(body);
+    } else if (id == DispatchQueueMessages.constructorId) {
+      return DispatchQueueMessages.deserialize(body);
+    } else if (id == LibraryResult.constructorId) {
+      return LibraryResult.deserialize(body);
+    } else if (id == LibraryResultWithProof.constructorId) {
+      return LibraryResultWithProof.deserialize(body);
+    } else if (id == OutMsgQueueSizes.constructorId) {
+      return OutMsgQueueSizes.deserialize(body);
+    } else if (id == BlockOutMsgQueueSize.constructorId) {
+      return BlockOutMsgQueueSize.deserialize(body);
+    }
+    log.error("unknown adnl.query id {}", id);
+    return null;
+  }
+
+  /**
+   * Builds an unencrypted ADNL packet {@code [size:4][nonce:32][payload][checksum:32]} in a single
+   * array, the checksum is written in place.
+   *
+   * @param payload packet payload
+   * @return framed packet
+   */
+  static byte[] encodePacket(byte[] payload) throws Exception {
     int totalSize = 32 + payload.length + 32; // nonce + payload + checksum
-    ByteBuffer packet = ByteBuffer.allocate(4 + totalSize);
-    packet.order(ByteOrder.LITTLE_ENDIAN);
+    byte[] packet = new byte[4 + totalSize];
 
     // Size (4 bytes LE) - this is the size of the data after the size field
-    packet.putInt(totalSize);
-    //    log.info("packet size: {}", totalSize);
+    packet[0] = (byte) totalSize;
+    packet[1] = (byte) (totalSize >>> 8);
+    packet[2] = (byte) (totalSize >>> 16);
+    packet[3] = (byte) (totalSize >>> 24);
 
     // Generate nonce (32 bytes)
-    byte[] nonce = new byte[32];
-    new SecureRandom().nextBytes(nonce);
-    packet.put(nonce);
-    packet.put(payload);
+    byte[] nonce = SCRATCH_32.get();
+    RANDOM.get().nextBytes(nonce);
+    System.arraycopy(nonce, 0, packet, 4, 32);
+    System.arraycopy(payload, 0, packet, 36, payload.length);
 
     // Calculate checksum from nonce + payload (matching Go implementation)
-    MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-    sha256.update(nonce);
-    sha256.update(payload);
-    byte[] checksum = sha256.digest();
-    packet.put(checksum);
+    MessageDigest sha256 = SHA256.get();
+    sha256.update(packet, 4, 32 + payload.length);
+    sha256.digest(packet, 36 + payload.length, 32);
+    return packet;
+  }
 
-    // Encrypt and send
-    byte[] packetData = packet.array();
+  public void sendPacket(byte[] payload) throws Exception {
+    if (!connected) {
+      throw new IllegalStateException("Not connected");
+    }
+
+    // [size:4][nonce:32][payload:N][checksum:32]
+    byte[] packetData = encodePacket(payload);
 
     // Encrypt in-place to maintain cipher state (thread-safe)
     synchronized (writeCipherLock) {
@@ -491,7 +540,7 @@ public class AdnlTcpTransport {
 
   public CompletableFuture<TcpPong> ping() {
     try {
-      long randomId = new SecureRandom().nextLong();
+      long randomId = RANDOM.get().nextLong();
 
       byte[] serialized = PingQuery.serialize(randomId);
 
@@ -501,15 +550,17 @@ public class AdnlTcpTransport {
       //      log.debug("sent adnl tcp.ping {}", randomId);
       sendPacket(serialized);
 
-      // Set timeout
-      timeoutExecutor.schedule(
-          () -> {
-            if (activePings.remove(randomId) != null) {
-              future.completeExceptionally(new Exception("Ping timeout"));
-            }
-          },
-          5,
-          TimeUnit.SECONDS);
+      // Set timeout, cancelled as soon as the pong arrives
+      HashedWheelTimer.Timeout timeout =
+          timer.newTimeout(
+              () -> {
+                if (activePings.remove(randomId, future)) {
+                  future.completeExceptionally(new Exception("Ping timeout"));
+                }
+              },
+              5,
+              TimeUnit.SECONDS);
+      future.whenComplete((pong, error) -> timeout.cancel());
 
       return future;
     } catch (Exception e) {
@@ -520,6 +571,18 @@ public class AdnlTcpTransport {
   }
 
   public CompletableFuture<LiteServerAnswer> query(byte[] query) {
+    return query(query, true);
+  }
+
+  /**
+   * Sends lite-server query.
+   *
+   * @param query packed lite-server query
+   * @param idempotent whether the query may be sent again after a reconnect, false for queries
+   *     with side effects such as sendMessage
+   * @return future completed with the answer
+   */
+  public CompletableFuture<LiteServerAnswer> query(byte[] query, boolean idempotent) {
     try {
       if (!connected || socket == null || socket.isClosed()) {
         throw new IllegalStateException("Not connected or socket closed");
@@ -527,58 +590,109 @@ public class AdnlTcpTransport {
 
       // Generate query ID
       byte[] queryId = new byte[32];
-      new SecureRandom().nextBytes(queryId);
+      RANDOM.get().nextBytes(queryId);
 
       //      log.info("Sending query with ID: {}", CryptoUtils.hex(queryId));
       //      log.info("liteQuery hex: {}", CryptoUtils.hex(query));
 
-      byte[] serialized = AdnlMessageQuery.serialize(queryId, query);
-      //      log.info("adnlQuery hex: {}", CryptoUtils.hex(serialized));
-
-      // Calculate the total packet size for verification
-      int totalSize = 32 + serialized.length + 32; // nonce + payload + checksum
-      //      log.info("Total packet size will be: {} bytes", (4 + totalSize));
-
+      PendingQuery pending = new PendingQuery(queryId, query, idempotent);
+      send(pending);
+      return pending.getFuture();
+    } catch (Exception e) {
+      log.info("Error sending query", e);
       CompletableFuture<LiteServerAnswer> future = new CompletableFuture<>();
-      String queryIdHex = CryptoUtils.hex(queryId);
-      activeQueries.put(queryIdHex, future);
-      //      log.info("Added query to active queries with ID: {}", queryIdHex);
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
 
-      // Send the packet before setting up the timeout to ensure it's sent
-      try {
-        sendPacket(serialized); // ADNLQuery
-        //        log.info("Query packet sent successfully");
-      } catch (Exception e) {
-        // If sending fails, remove the query from active queries and complete the future
-        // exceptionally
-        activeQueries.remove(queryIdHex);
-        throw e;
+  /**
+   * Sends a query that was in flight on a lost connection. The caller keeps waiting on the same
+   * future.
+   *
+   * @param pending query taken from {@link #drainPendingQueries()} of this or another transport
+   */
+  void replay(PendingQuery pending) {
+    try {
+      if (!connected || socket == null || socket.isClosed()) {
+        throw new IllegalStateException("Not connected or socket closed");
       }
+      send(pending);
+    } catch (Exception e) {
+      pending.getFuture().completeExceptionally(e);
+    }
+  }
 
-      // Set timeout - increased to 60 seconds for lite-server queries
-      timeoutExecutor.schedule(
-          () -> {
-            if (activeQueries.remove(queryIdHex) != null) {
-              log.info("Query timed out: {}", queryIdHex);
-              future.completeExceptionally(new Exception("Query timeout"));
-
-              // Check if we need to reconnect
-              if (connected && (socket == null || socket.isClosed())) {
-                log.info("Socket closed during query, marking as disconnected");
-                connected = false;
-              }
-            }
-          },
-          60,
-          TimeUnit.SECONDS);
+  /**
+   * Removes and returns all queries still waiting for an answer. Used after the connection was
+   * lost to replay them.
+   *
+   * @return queries in flight
+   */
+  List<PendingQuery> drainPendingQueries() {
+    // removed one by one, a query answered or added meanwhile is neither lost nor returned twice
+    List<PendingQuery> drained = new ArrayList<>();
+    for (PendingQuery pending : activeQueries.values()) {
+      if (activeQueries.remove(pending.getQueryIdHi(), pending.getQueryIdLo(), pending)) {
+        drained.add(pending);
+      }
+    }
+    return drained;
+  }
 
-      return future;
+  /**
+   * Called from the listener thread when the connection is lost unexpectedly (not on close()).
+   *
+   * @param disconnectHandler handler receiving the cause, may be null
+   */
+  void setDisconnectHandler(Consumer<Throwable> disconnectHandler) {
+    this.disconnectHandler = disconnectHandler;
+  }
+
+  private void send(PendingQuery pending) throws Exception {
+    CompletableFuture<LiteServerAnswer> future = pending.getFuture();
+    long queryIdHi = pending.getQueryIdHi();
+    long queryIdLo = pending.getQueryIdLo();
+    activeQueries.put(queryIdHi, queryIdLo, pending);
+    // a cancelled query (e.g. losing hedged request) releases its slot immediately
+    future.whenComplete(
+        (answer, error) -> {
+          if (future.isCancelled()) {
+            activeQueries.remove(queryIdHi, queryIdLo, pending);
+          }
+        });
+    //      log.info("Added query to active queries with ID: {}", queryIdHex);
+
+    // Send the packet before setting up the timeout to ensure it's sent
+    try {
+      sendPacket(pending.getSerialized()); // ADNLQuery
+      //        log.info("Query packet sent successfully");
     } catch (Exception e) {
-      log.info("Error sending query", e);
-      CompletableFuture<LiteServerAnswer> future = new CompletableFuture<>();
-      future.completeExceptionally(e);
-      return future;
+      // If sending fails, remove the query from active queries and complete the future
+      // exceptionally
+      activeQueries.remove(queryIdHi, queryIdLo, pending);
+      throw e;
     }
+
+    // Set timeout - 60 seconds for lite-server queries, cancelled as soon as the answer arrives.
+    // A replayed query replaces its previous timeout and only gets the time left until the
+    // original deadline.
+    pending.setTimeout(
+        timer.newTimeout(
+            () -> {
+              if (activeQueries.remove(queryIdHi, queryIdLo, pending)) {
+                log.info("Query timed out: {}", CryptoUtils.hex(pending.getQueryId()));
+                future.completeExceptionally(new Exception("Query timeout"));
+
+                // Check if we need to reconnect
+                if (connected && (socket == null || socket.isClosed())) {
+                  log.info("Socket closed during query, marking as disconnected");
+                  connected = false;
+                }
+              }
+            },
+            pending.remainingNanos(TimeUnit.SECONDS.toNanos(60)),
+            TimeUnit.NANOSECONDS));
   }
 
   private void authenticate(byte[] authKey) throws Exception {
@@ -587,7 +701,7 @@ public class AdnlTcpTransport {
 
     // Generate our nonce
     ourNonce = new byte[32];
-    new SecureRandom().nextBytes(ourNonce);
+    RANDOM.get().nextBytes(ourNonce);
 
     log.info("Starting authentication with nonce: " + CryptoUtils.hex(ourNonce));
 
@@ -615,8 +729,15 @@ public class AdnlTcpTransport {
       listenerThread.interrupt();
     }
 
-    // Shutdown timeout executor
-    timeoutExecutor.shutdown();
+    // Fail pending requests right away instead of letting them run into their timeouts
+    Exception closedException = new Exception("Connection closed");
+    for (PendingQuery pending : drainPendingQueries()) {
+      pending.getFuture().completeExceptionally(closedException);
+    }
+    for (CompletableFuture<TcpPong> future : activePings.values()) {
+      future.completeExceptionally(closedException);
+    }
+    activePings.clear();
 
     try {
       if (socket != null && !socket.isClosed()) {
@@ -0,0 +1,102 @@
+package org.ton.ton4j.adnl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Reconnect statistics of a lite-server connection. */
+public class ConnectionMetrics {
+
+  private final AtomicLong disconnectCount = new AtomicLong();
+  private final AtomicLong reconnectCount = new AtomicLong();
+  private final AtomicLong failedReconnectAttempts = new AtomicLong();
+  private final AtomicLong replayedQueries = new AtomicLong();
+  private final AtomicLong failedQueries = new AtomicLong();
+  private final AtomicLong totalDowntimeMs = new AtomicLong();
+  private volatile long disconnectedSince = 0;
+
+  void onDisconnect() {
+    disconnectCount.incrementAndGet();
+    disconnectedSince = System.currentTimeMillis();
+  }
+
+  void onReconnect() {
+    reconnectCount.incrementAndGet();
+    long since = disconnectedSince;
+    if (since != 0) {
+      totalDowntimeMs.addAndGet(System.currentTimeMillis() - since);
+      disconnectedSince = 0;
+    }
+  }
+
+  void onGiveUp() {
+    long since = disconnectedSince;
+    if (since != 0) {
+      totalDowntimeMs.addAndGet(System.currentTimeMillis() - since);
+      disconnectedSince = 0;
+    }
+  }
+
+  void onFailedReconnectAttempt() {
+    failedReconnectAttempts.incrementAndGet();
+  }
+
+  void onReplayedQueries(int count) {
+    replayedQueries.addAndGet(count);
+  }
+
+  void onFailedQueries(int count) {
+    failedQueries.addAndGet(count);
+  }
+
+  /** @return number of times the connection was lost unexpectedly */
+  public long getDisconnectCount() {
+    return disconnectCount.get();
+  }
+
+  /** @return number of successful automatic reconnects */
+  public long getReconnectCount() {
+    return reconnectCount.get();
+  }
+
+  /** @return number of reconnect attempts that failed */
+  public long getFailedReconnectAttempts() {
+    return failedReconnectAttempts.get();
+  }
+
+  /** @return number of in-flight queries that were sent again after a reconnect */
+  public long getReplayedQueries() {
+    return replayedQueries.get();
+  }
+
+  /** @return number of in-flight queries that were failed because of a lost connection */
+  public long getFailedQueries() {
+    return failedQueries.get();
+  }
+
+  /** @return accumulated time without connection, including the ongoing outage */
+  public long getTotalDowntimeMs() {
+    long since = disconnectedSince;
+    return totalDowntimeMs.get() + (since == 0 ? 0 : System.currentTimeMillis() - since);
+  }
+
+  /** @return true while the connection is down and being re-established */
+  public boolean isDisconnected() {
+    return disconnectedSince != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionMetrics{disconnects="
+        + getDisconnectCount()
+        + ", reconnects="
+        + getReconnectCount()
+        + ", failedReconnectAttempts="
+        + getFailedReconnectAttempts()
+        + ", replayedQueries="
+        + getReplayedQueries()
+        + ", failedQueries="
+        + getFailedQueries()
+        + ", totalDowntimeMs="
+        + getTotalDowntimeMs()
+        + "}";
+  }
+}
@@ -0,0 +1,252 @@
+package org.ton.ton4j.adnl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hashed timing wheel for the large number of short-lived timeouts (query 60s, ping 5s) created by
+ * ADNL transports. Scheduling and cancelling are O(1) and lock-free for callers; a single daemon
+ * thread advances the wheel every tick and runs expired tasks, so the tasks must be short (e.g.
+ * completing a future).
+ *
+ * <p>One instance, {@link #shared()}, is used by all transports and clients of the process.
+ */
+@Slf4j
+public class HashedWheelTimer {
+
+  private static final HashedWheelTimer SHARED =
+      new HashedWheelTimer("adnl-timer", 50, TimeUnit.MILLISECONDS, 512);
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final Thread worker;
+  private final long startTime;
+  private volatile boolean stopped = false;
+  private long tick;
+
+  /**
+   * @param threadName name of the worker thread
+   * @param tickDuration duration between ticks, timeouts fire with this granularity
+   * @param unit unit of tickDuration
+   * @param wheelSize number of buckets, rounded up to a power of two
+   */
+  public HashedWheelTimer(String threadName, long tickDuration, TimeUnit unit, int wheelSize) {
+    int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.startTime = System.nanoTime();
+    this.worker = new Thread(this::run, threadName);
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  /** @return process-wide timer shared by ADNL transports */
+  public static HashedWheelTimer shared() {
+    return SHARED;
+  }
+
+  /**
+   * Schedules a task to run once after the given delay.
+   *
+   * @param task short non-blocking task, runs on the timer thread
+   * @param delay delay
+   * @param unit unit of delay
+   * @return handle that can be used to cancel the task
+   */
+  public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+    if (stopped) {
+      throw new IllegalStateException("Timer is stopped");
+    }
+    long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+    Timeout timeout = new Timeout(this, task, deadline);
+    pendingTimeouts.add(timeout);
+    pendingCount.incrementAndGet();
+    return timeout;
+  }
+
+  /** @return number of scheduled timeouts which have neither expired nor been cancelled */
+  public int getPendingCount() {
+    return pendingCount.get();
+  }
+
+  /** Stops the worker thread, scheduled tasks are dropped. */
+  public void stop() {
+    if (this == SHARED) {
+      throw new IllegalStateException("The shared timer cannot be stopped");
+    }
+    stopped = true;
+    worker.interrupt();
+  }
+
+  private void run() {
+    while (!stopped) {
+      long deadline = tickNanos * (tick + 1);
+      long sleepNanos = deadline - (System.nanoTime() - startTime);
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (stopped) {
+            return;
+          }
+        }
+        continue;
+      }
+      removeCancelled();
+      transferPending();
+      wheel[(int) (tick & mask)].expire(deadline);
+      tick++;
+    }
+  }
+
+  private void transferPending() {
+    // bound the work per tick so a burst of schedules cannot starve expiration
+    for (int i = 0; i < 100_000; i++) {
+      Timeout timeout = pendingTimeouts.poll();
+      if (timeout == null) {
+        return;
+      }
+      if (timeout.state.get() != Timeout.ST_INIT) {
+        continue;
+      }
+      long calculated = timeout.deadline / tickNanos;
+      timeout.remainingRounds = (calculated - tick) / wheel.length;
+      long ticks = Math.max(calculated, tick); // never schedule into the past
+      wheel[(int) (ticks & mask)].add(timeout);
+    }
+  }
+
+  private void removeCancelled() {
+    Timeout timeout;
+    while ((timeout = cancelledTimeouts.poll()) != null) {
+      if (timeout.bucket != null) {
+        timeout.bucket.remove(timeout);
+      }
+    }
+  }
+
+  /** Handle of a scheduled task. */
+  public static final class Timeout {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final HashedWheelTimer timer;
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+    private long remainingRounds;
+    private Timeout next;
+    private Timeout prev;
+    private Bucket bucket;
+
+    private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+      this.timer = timer;
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels the task if it has not run yet.
+     *
+     * @return true if the task was cancelled by this call
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+        return false;
+      }
+      timer.pendingCount.decrementAndGet();
+      timer.cancelledTimeouts.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state.get() == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == ST_EXPIRED;
+    }
+
+    private void expire() {
+      if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+      timer.pendingCount.decrementAndGet();
+      try {
+        task.run();
+      } catch (Throwable t) {
+        log.warn("Timer task failed", t);
+      }
+    }
+  }
+
+  /** Doubly linked list of timeouts, only accessed by the worker thread. */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      } else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+    }
+
+    void expire(long deadline) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          remove(timeout);
+          if (timeout.deadline <= deadline) {
+            timeout.expire();
+          } else {
+            log.warn("Timeout placed into a wrong bucket, deadline {}", timeout.deadline);
+          }
+        } else if (timeout.isCancelled()) {
+          remove(timeout);
+        } else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = timeout.next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+    }
+  }
+}
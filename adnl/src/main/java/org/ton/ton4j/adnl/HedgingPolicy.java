@@ -0,0 +1,41 @@
+package org.ton.ton4j.adnl;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Opt-in policy for hedged lite-server requests.
+ *
+ * <p>When a request has not been answered after the observed latency percentile (p95 by default),
+ * the same request is sent to a second lite-server and whichever answer arrives first wins. The
+ * losing request is cancelled. The extra load is capped by {@link #maxExtraLoad}, i.e. at most
+ * that fraction of requests may be duplicated.
+ */
+@Builder
+@Getter
+@ToString
+public class HedgingPolicy {
+
+  /** Latency percentile after which a hedge request is sent, 0.95 = p95. */
+  @Builder.Default private double latencyPercentile = 0.95;
+
+  /** Lower bound of the hedge delay, protects fast servers from useless duplicates. */
+  @Builder.Default private long minHedgeDelayMs = 20;
+
+  /** Upper bound of the hedge delay, also used until enough latency samples are collected. */
+  @Builder.Default private long maxHedgeDelayMs = 2000;
+
+  /** Number of latency samples required before the percentile is trusted. */
+  @Builder.Default private int minSamples = 20;
+
+  /** Maximum share of hedged (duplicated) requests, 0.1 = at most 10% extra load. */
+  @Builder.Default private double maxExtraLoad = 0.1;
+
+  /** Number of hedges that may be sent before the budget is filled by regular requests. */
+  @Builder.Default private int initialBudget = 5;
+
+  public static HedgingPolicy defaultPolicy() {
+    return HedgingPolicy.builder().build();
+  }
+}
@@ -0,0 +1,55 @@
+package org.ton.ton4j.adnl;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a sliding window of the most recent request latencies and answers percentile queries. The
+ * percentile is recomputed lazily, at most once per {@link #RECOMPUTE_EVERY} new samples.
+ */
+class LatencyTracker {
+
+  private static final int RECOMPUTE_EVERY = 32;
+
+  private final long[] samples;
+  private int next;
+  private int size;
+  private int sinceRecompute;
+  private double cachedPercentile = -1;
+  private long cachedValue;
+
+  LatencyTracker(int windowSize) {
+    this.samples = new long[windowSize];
+  }
+
+  synchronized void record(long latencyMs) {
+    samples[next] = latencyMs;
+    next = (next + 1) % samples.length;
+    if (size < samples.length) {
+      size++;
+    }
+    sinceRecompute++;
+  }
+
+  synchronized int getSampleCount() {
+    return size;
+  }
+
+  /**
+   * @param percentile value in range (0, 1]
+   * @return latency in milliseconds at the given percentile, or -1 if there are no samples
+   */
+  synchronized long percentile(double percentile) {
+    if (size == 0) {
+      return -1;
+    }
+    if (percentile != cachedPercentile || sinceRecompute >= RECOMPUTE_EVERY) {
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile * size) - 1;
+      cachedValue = sorted[Math.max(0, Math.min(size - 1, index))];
+      cachedPercentile = percentile;
+      sinceRecompute = 0;
+    }
+    return cachedValue;
+  }
+}
@@ -4,10 +4,16 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.NotImplementedException;
+import org.ton.ton4j.address.Address;
 import org.ton.ton4j.adnl.globalconfig.LiteServers;
 import org.ton.ton4j.adnl.globalconfig.TonGlobalConfig;
+import org.ton.ton4j.tl.liteserver.responses.AccountState;
+import org.ton.ton4j.tl.liteserver.responses.BlockHeader;
+import org.ton.ton4j.tl.liteserver.responses.BlockId;
+import org.ton.ton4j.tl.liteserver.responses.BlockIdExt;
+import org.ton.ton4j.tl.liteserver.responses.RunMethodResult;
 import org.ton.ton4j.utils.Utils;
 
 /**
@@ -21,12 +27,36 @@ public class LiteClientConnectionPool {
   private final AtomicInteger currentIndex = new AtomicInteger(0);
   private final ScheduledExecutorService healthChecker;
   private volatile boolean closed = false;
+  private volatile RequestHedger<AdnlLiteClient> hedger;
 
   /** Create connection pool */
   public LiteClientConnectionPool() {
-    throw new NotImplementedException();
-    // this.healthChecker = Executors.newSingleThreadScheduledExecutor();
-    // startHealthChecker();
+    this.healthChecker = Executors.newSingleThreadScheduledExecutor();
+    startHealthChecker();
+  }
+
+  /**
+   * Create connection pool with hedged requests enabled
+   *
+   * @param hedgingPolicy policy used for getAccountState, runMethod and lookupBlock
+   */
+  public LiteClientConnectionPool(HedgingPolicy hedgingPolicy) {
+    this();
+    setHedgingPolicy(hedgingPolicy);
+  }
+
+  /**
+   * Enable or disable hedged requests. Hedging is used by {@link #getAccountState}, {@link
+   * #runMethod} and {@link #lookupBlock}, and by {@link #executeHedgedQuery}.
+   *
+   * @param hedgingPolicy policy, or null to disable hedging
+   */
+  public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+    RequestHedger<AdnlLiteClient> previous = hedger;
+    hedger = (hedgingPolicy == null) ? null : new RequestHedger<>(hedgingPolicy);
+    if (previous != null) {
+      previous.close();
+    }
   }
 
   /**
@@ -50,10 +80,7 @@ public class LiteClientConnectionPool {
         int port = Math.toIntExact(liteserver.getPort());
 
         AdnlLiteClient client = AdnlLiteClient.builder().liteServer(liteserver).build();
-
-        synchronized (connections) {
-          connections.add(client);
-        }
+        register(client);
 
         successCount++;
         log.info("Connected to lite-server {}:{}", host, port);
@@ -84,12 +111,58 @@ public class LiteClientConnectionPool {
    */
   public void addConnection(LiteServers liteServer) throws Exception {
     AdnlLiteClient client = AdnlLiteClient.builder().liteServer(liteServer).build();
+    register(client);
+
+    log.info("Added connection to {}:{}", liteServer.getIp(), liteServer.getPort());
+  }
 
+  private void register(AdnlLiteClient client) {
+    client.setFailoverHandler(pending -> failover(client, pending));
     synchronized (connections) {
       connections.add(client);
     }
+  }
 
-    log.info("Added connection to {}:{}", liteServer.getIp(), liteServer.getPort());
+  /**
+   * Replays queries of a connection that could not be re-established on another pool member.
+   *
+   * @param failed connection that lost its lite-server
+   * @param pending idempotent queries that were in flight
+   */
+  private void failover(AdnlLiteClient failed, List<PendingQuery> pending) {
+    AdnlLiteClient target = null;
+    synchronized (connections) {
+      for (AdnlLiteClient client : connections) {
+        if (client != failed && client.isConnected()) {
+          target = client;
+          break;
+        }
+      }
+    }
+    if (target == null) {
+      for (PendingQuery query : pending) {
+        query.getFuture().completeExceptionally(new Exception("No available connections"));
+      }
+      failed.getConnectionMetrics().onFailedQueries(pending.size());
+      return;
+    }
+    log.info("Replaying {} queries on another lite-server", pending.size());
+    target.replay(pending);
+  }
+
+  /**
+   * Get reconnect statistics of all connections
+   *
+   * @return metrics per connection, in pool order
+   */
+  public List<ConnectionMetrics> getConnectionMetrics() {
+    List<ConnectionMetrics> result = new ArrayList<>();
+    synchronized (connections) {
+      for (AdnlLiteClient client : connections) {
+        result.add(client.getConnectionMetrics());
+      }
+    }
+    return result;
   }
 
   /**
@@ -130,62 +203,184 @@ public class LiteClientConnectionPool {
     throw new Exception("All connection attempts failed. Errors: " + errors);
   }
 
-  //    /**
-  //     * Get masterchain info
-  //     * @return MasterchainInfo
-  //     * @throws Exception if query fails
-  //     */
-  //    public AdnlLiteClient.MasterchainInfo getMasterchainInfo() throws Exception {
-  //        return executeQuery(client -> {
-  //            try {
-  //                return client.getMasterchainInfo();
-  //            } catch (Exception e) {
-  //                throw new RuntimeException(e);
-  //            }
-  //        });
-  //    }
-  //
-  //    /**
-  //     * Run smart contract method
-  //     * @param blockId Block ID
-  //     * @param accountId Account ID
-  //     * @param methodId Method ID
-  //     * @param params Method parameters
-  //     * @return RunMethodResult
-  //     * @throws Exception if query fails
-  //     */
-  //    public AdnlLiteClient.RunMethodResult runSmcMethod(
-  //            AdnlLiteClient.BlockIdExt blockId,
-  //            AdnlLiteClient.AccountId accountId,
-  //            long methodId,
-  //            byte[] params) throws Exception {
-  //        return executeQuery(client -> {
-  //            try {
-  //                return client.runSmcMethod(blockId, accountId, methodId, params);
-  //            } catch (Exception e) {
-  //                throw new RuntimeException(e);
-  //            }
-  //        });
-  //    }
-  //
-  //    /**
-  //     * Get account state
-  //     * @param blockId Block ID
-  //     * @param accountId Account ID
-  //     * @return AccountState
-  //     * @throws Exception if query fails
-  //     */
-  //    public AdnlLiteClient.AccountState getAccountState(
-  //            AdnlLiteClient.BlockIdExt blockId,
-  //            AdnlLiteClient.AccountId accountId) throws Exception {
-  //        return executeQuery(client -> {
-  //            try {
-  //                return client.getAccountState(blockId, accountId);
-  //            } catch (Exception e) {
-  //                throw new RuntimeException(e);
-  //            }
-  //        });
-  //    }
+  /**
+   * Execute query on one connection and, if hedging is enabled and the answer is slower than the
+   * configured latency percentile, duplicate it to another connection. The first answer wins, the
+   * other request is cancelled. Falls back to {@link #executeQuery} when hedging is disabled or
+   * only one connection is available.
+   *
+   * @param query Query function
+   * @return Query result
+   * @throws Exception if all attempts fail
+   */
+  public <T> T executeHedgedQuery(Function<AdnlLiteClient, T> query) throws Exception {
+    RequestHedger<AdnlLiteClient> currentHedger = hedger;
+    if (currentHedger == null) {
+      return executeQuery(query);
+    }
+
+    List<AdnlLiteClient> availableConnections = new ArrayList<>();
+    synchronized (connections) {
+      for (AdnlLiteClient client : connections) {
+        if (client.isConnected()) {
+          availableConnections.add(client);
+        }
+      }
+    }
+
+    if (availableConnections.size() < 2) {
+      return executeQuery(query);
+    }
+
+    int index = Math.floorMod(currentIndex.getAndIncrement(), availableConnections.size());
+    AdnlLiteClient primary = availableConnections.get(index);
+    AdnlLiteClient backup = availableConnections.get((index + 1) % availableConnections.size());
+    return currentHedger.execute(primary, backup, query);
+  }
+
+  /**
+   * Get account state, hedged if a hedging policy is set
+   *
+   * @param id Block ID
+   * @param accountAddress Account address
+   * @return AccountState
+   * @throws Exception if query fails
+   */
+  public AccountState getAccountState(BlockIdExt id, Address accountAddress) throws Exception {
+    return executeHedgedQuery(
+        client -> {
+          try {
+            return client.getAccountState(id, accountAddress);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+
+  /**
+   * Run smart contract method, hedged if a hedging policy is set
+   *
+   * @param id Block ID
+   * @param mode Mode
+   * @param accountAddress Account address
+   * @param methodId Method ID
+   * @param methodParams Method parameters
+   * @return RunMethodResult
+   * @throws Exception if query fails
+   */
+  public RunMethodResult runMethod(
+      BlockIdExt id, int mode, Address accountAddress, long methodId, byte[] methodParams)
+      throws Exception {
+    return executeHedgedQuery(
+        client -> {
+          try {
+            return client.runMethod(id, mode, accountAddress, methodId, methodParams);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+
+  /**
+   * Lookup block, hedged if a hedging policy is set
+   *
+   * @param id Block ID
+   * @param mode Mode
+   * @param lt Logical time
+   * @param utime Unix time
+   * @return BlockHeader
+   * @throws Exception if query fails
+   */
+  public BlockHeader lookupBlock(BlockId id, int mode, long lt, int utime) throws Exception {
+    return executeHedgedQuery(
+        client -> {
+          try {
+            return client.lookupBlock(id, mode, lt, utime);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        });
+  }
+
+  /**
+   * Fetch account states of many addresses at the same block, spread over all pool connections.
+   * Addresses are grouped by workchain and shard prefix and every group goes to one connection;
+   * up to 64 queries are in flight across the pool.
+   *
+   * @param id Block ID, the same pinned block is used for all addresses
+   * @param addresses Account addresses
+   * @return stream of results in completion order, failures are reported per address
+   * @throws Exception if there are no connected lite-servers
+   */
+  public Stream<AccountStateResult> getAccountStates(BlockIdExt id, Collection<Address> addresses)
+      throws Exception {
+    return getAccountStates(id, addresses, AccountStateBatch.DEFAULT_MAX_IN_FLIGHT);
+  }
+
+  /**
+   * Fetch account states of many addresses at the same block, spread over all pool connections.
+   *
+   * @param id Block ID, the same pinned block is used for all addresses
+   * @param addresses Account addresses
+   * @param maxInFlight maximum number of outstanding queries across the pool
+   * @return stream of results in completion order, failures are reported per address
+   * @throws Exception if there are no connected lite-servers
+   */
+  public Stream<AccountStateResult> getAccountStates(
+      BlockIdExt id, Collection<Address> addresses, int maxInFlight) throws Exception {
+    List<AdnlLiteClient> availableConnections = new ArrayList<>();
+    synchronized (connections) {
+      for (AdnlLiteClient client : connections) {
+        if (client.isConnected()) {
+          availableConnections.add(client);
+        }
+      }
+    }
+    if (availableConnections.isEmpty()) {
+      throw new Exception("No available connections");
+    }
+
+    return new AccountStateBatch(
+            addresses,
+            address -> {
+              long group = AccountStateBatch.shardGroup(address);
+              int hash = Long.hashCode(group * 0x9E3779B97F4A7C15L);
+              int index = Math.floorMod(hash, availableConnections.size());
+              return availableConnections.get(index).getAccountStateAsync(id, address);
+            },
+            maxInFlight)
+        .stream();
+  }
+
+  /**
+   * Get number of requests that were duplicated to a second lite-server
+   *
+   * @return number of hedged requests, 0 if hedging is disabled
+   */
+  public long getHedgedRequestCount() {
+    RequestHedger<AdnlLiteClient> currentHedger = hedger;
+    return currentHedger == null ? 0 : currentHedger.getHedgedRequests();
+  }
+
+  /**
+   * Get number of hedged requests where the second lite-server answered first
+   *
+   * @return number of hedge wins, 0 if hedging is disabled
+   */
+  public long getHedgeWinCount() {
+    RequestHedger<AdnlLiteClient> currentHedger = hedger;
+    return currentHedger == null ? 0 : currentHedger.getHedgeWins();
+  }
+
+  /**
+   * Get number of requests retried on a second lite-server because the first one failed
+   *
+   * @return number of failovers, 0 if hedging is disabled
+   */
+  public long getFailoverCount() {
+    RequestHedger<AdnlLiteClient> currentHedger = hedger;
+    return currentHedger == null ? 0 : currentHedger.getFailovers();
+  }
 
   /**
    * Get number of active connections
@@ -218,7 +413,8 @@ public class LiteClientConnectionPool {
           synchronized (connections) {
             connections.removeIf(
                 client -> {
-                  if (!client.isConnected()) {
+                  // clients that are reconnecting on their own are kept
+                  if (!client.isConnected() && !client.getConnectionMetrics().isDisconnected()) {
                     log.info("Removing disconnected client");
                     client.close();
                     return true;
@@ -253,6 +449,10 @@ public class LiteClientConnectionPool {
       Thread.currentThread().interrupt();
     }
 
+    if (hedger != null) {
+      hedger.close();
+    }
+
     synchronized (connections) {
       for (AdnlLiteClient client : connections) {
         try {
@@ -0,0 +1,67 @@
+package org.ton.ton4j.adnl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import lombok.Getter;
+import org.ton.ton4j.tl.liteserver.queries.AdnlMessageQuery;
+import org.ton.ton4j.tl.liteserver.responses.LiteServerAnswer;
+
+/**
+ * In-flight lite-server query. Keeps the serialized adnl.message.query so that an idempotent query
+ * can be sent again on a new connection (or another pool member) after the connection was lost,
+ * while the caller keeps waiting on the same future.
+ */
+@Getter
+class PendingQuery {
+  private final byte[] queryId;
+  private final long queryIdHi;
+  private final long queryIdLo;
+  private final byte[] serialized;
+  private final boolean idempotent;
+  private final CompletableFuture<LiteServerAnswer> future = new CompletableFuture<>();
+
+  // deadline over all connections the query is sent on, fixed by the first send
+  private long deadlineNanos;
+  private HashedWheelTimer.Timeout timeout;
+
+  PendingQuery(byte[] queryId, byte[] query, boolean idempotent) {
+    this.queryId = queryId;
+    ByteBuffer queryIdView = ByteBuffer.wrap(queryId).order(ByteOrder.LITTLE_ENDIAN);
+    this.queryIdHi = queryIdView.getLong(0);
+    this.queryIdLo = queryIdView.getLong(8);
+    this.serialized = AdnlMessageQuery.serialize(queryId, query);
+    this.idempotent = idempotent;
+    future.whenComplete((answer, error) -> setTimeout(null));
+  }
+
+  /**
+   * Time left until the deadline of this query. The first call fixes the deadline, so a replayed
+   * query does not wait longer than the original timeout.
+   *
+   * @param timeoutNanos timeout of the query counted from its first send
+   * @return nanoseconds until the deadline, 0 if it has passed
+   */
+  synchronized long remainingNanos(long timeoutNanos) {
+    long now = System.nanoTime();
+    if (deadlineNanos == 0) {
+      deadlineNanos = now + timeoutNanos;
+    }
+    return Math.max(0, deadlineNanos - now);
+  }
+
+  /**
+   * Replaces the timeout of this query, cancelling the previous one. A timeout set after the
+   * query completed is cancelled right away.
+   */
+  synchronized void setTimeout(HashedWheelTimer.Timeout timeout) {
+    if (this.timeout != null) {
+      this.timeout.cancel();
+    }
+    this.timeout = timeout;
+    if (timeout != null && future.isDone()) {
+      timeout.cancel();
+      this.timeout = null;
+    }
+  }
+}
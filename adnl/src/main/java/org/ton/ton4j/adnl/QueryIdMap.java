@@ -0,0 +1,165 @@
+package org.ton.ton4j.adnl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open-addressing hash map keyed by the first 128 bits of a 256-bit ADNL query id, stored as two
+ * primitive longs. Avoids the hex-string key (and its allocations) previously used for in-flight
+ * queries. Query ids are random, so 128 bits are more than enough to tell them apart.
+ *
+ * <p>Thread-safe; all operations are short and guarded by the map monitor.
+ *
+ * @param <V> value type
+ */
+class QueryIdMap<V> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private long[] keysHi;
+  private long[] keysLo;
+  private Object[] values;
+  private int size;
+  private int mask;
+
+  QueryIdMap() {
+    allocate(MIN_CAPACITY);
+  }
+
+  synchronized void put(long hi, long lo, V value) {
+    if (value == null) {
+      throw new IllegalArgumentException("null values are not supported");
+    }
+    if ((size + 1) * 2 > values.length) {
+      resize(values.length * 2);
+    }
+    int i = indexFor(hi, lo);
+    while (values[i] != null) {
+      if (keysHi[i] == hi && keysLo[i] == lo) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keysHi[i] = hi;
+    keysLo[i] = lo;
+    values[i] = value;
+    size++;
+  }
+
+  @SuppressWarnings("unchecked")
+  synchronized V get(long hi, long lo) {
+    int i = find(hi, lo);
+    return i < 0 ? null : (V) values[i];
+  }
+
+  @SuppressWarnings("unchecked")
+  synchronized V remove(long hi, long lo) {
+    int i = find(hi, lo);
+    if (i < 0) {
+      return null;
+    }
+    V removed = (V) values[i];
+    deleteSlot(i);
+    return removed;
+  }
+
+  /** Removes the entry only if it is mapped to the given value. */
+  synchronized boolean remove(long hi, long lo, V value) {
+    int i = find(hi, lo);
+    if (i < 0 || values[i] != value) {
+      return false;
+    }
+    deleteSlot(i);
+    return true;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  synchronized boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** @return snapshot of current values */
+  @SuppressWarnings("unchecked")
+  synchronized List<V> values() {
+    List<V> result = new ArrayList<>(size);
+    for (Object value : values) {
+      if (value != null) {
+        result.add((V) value);
+      }
+    }
+    return result;
+  }
+
+  synchronized void clear() {
+    allocate(MIN_CAPACITY);
+  }
+
+  private int find(long hi, long lo) {
+    int i = indexFor(hi, lo);
+    while (values[i] != null) {
+      if (keysHi[i] == hi && keysLo[i] == lo) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** Backward-shift deletion keeps probe sequences intact without tombstones. */
+  private void deleteSlot(int slot) {
+    int hole = slot;
+    int i = (slot + 1) & mask;
+    while (values[i] != null) {
+      int home = indexFor(keysHi[i], keysLo[i]);
+      // move the entry into the hole if its home position is not between hole and i (cyclically)
+      if (((i - home) & mask) >= ((i - hole) & mask)) {
+        keysHi[hole] = keysHi[i];
+        keysLo[hole] = keysLo[i];
+        values[hole] = values[i];
+        hole = i;
+      }
+      i = (i + 1) & mask;
+    }
+    values[hole] = null;
+    size--;
+  }
+
+  private void resize(int capacity) {
+    long[] oldHi = keysHi;
+    long[] oldLo = keysLo;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int j = 0; j < oldValues.length; j++) {
+      if (oldValues[j] != null) {
+        int i = indexFor(oldHi[j], oldLo[j]);
+        while (values[i] != null) {
+          i = (i + 1) & mask;
+        }
+        keysHi[i] = oldHi[j];
+        keysLo[i] = oldLo[j];
+        values[i] = oldValues[j];
+        size++;
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keysHi = new long[capacity];
+    keysLo = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    size = 0;
+  }
+
+  private int indexFor(long hi, long lo) {
+    long h = hi * 0x9E3779B97F4A7C15L ^ lo;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h & mask;
+  }
+}
@@ -0,0 +1,162 @@
+package org.ton.ton4j.adnl;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Executes a request against a primary connection and, if it is slower than the configured latency
+ * percentile, duplicates it to a backup connection. The first successful answer wins and the other
+ * request is cancelled (interrupting the waiting thread cancels the pending ADNL query). A primary
+ * that fails is retried on the backup at once, without waiting for the hedge delay.
+ *
+ * @param <C> connection type
+ */
+@Slf4j
+class RequestHedger<C> {
+
+  private final HedgingPolicy policy;
+  private final ExecutorService executor;
+  private final LatencyTracker latencyTracker = new LatencyTracker(1024);
+
+  private final AtomicLong totalRequests = new AtomicLong();
+  private final AtomicLong hedgedRequests = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+  private final AtomicLong failovers = new AtomicLong();
+  private double budget;
+
+  RequestHedger(HedgingPolicy policy) {
+    this.policy = policy;
+    this.budget = policy.getInitialBudget();
+    AtomicInteger threadCounter = new AtomicInteger();
+    this.executor =
+        Executors.newCachedThreadPool(
+            r -> {
+              Thread t = new Thread(r, "lite-client-hedge-" + threadCounter.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /**
+   * @param primary connection that receives the request first
+   * @param backup connection that receives the hedge request, may be null
+   * @param query request to execute
+   * @return result of the first successful execution
+   * @throws Exception failure of the last execution if none succeeded
+   */
+  <T> T execute(C primary, C backup, Function<C, T> query) throws Exception {
+    totalRequests.incrementAndGet();
+    addBudget(policy.getMaxExtraLoad());
+
+    CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+    long primaryStart = System.nanoTime();
+    Future<T> primaryFuture = completionService.submit(() -> query.apply(primary));
+    Future<T> hedgeFuture = null;
+    long hedgeStart = 0;
+
+    Future<T> done = completionService.poll(getHedgeDelayMs(), TimeUnit.MILLISECONDS);
+    if (done == null && backup != null && tryAcquireBudget()) {
+      hedgedRequests.incrementAndGet();
+      hedgeStart = System.nanoTime();
+      hedgeFuture = completionService.submit(() -> query.apply(backup));
+    }
+
+    int remaining = (hedgeFuture == null) ? 1 : 2;
+    boolean failedOver = false;
+    Exception lastError = null;
+    try {
+      while (remaining > 0) {
+        if (done == null) {
+          done = completionService.take();
+        }
+        remaining--;
+        boolean hedgeDone = done == hedgeFuture;
+        long now = System.nanoTime();
+        try {
+          T result = done.get();
+          // a failure says nothing about how long an answer takes, so only answers are samples
+          latencyTracker.record(
+              TimeUnit.NANOSECONDS.toMillis(now - (hedgeDone ? hedgeStart : primaryStart)));
+          if (hedgeDone && !failedOver) {
+            hedgeWins.incrementAndGet();
+            if (remaining > 0) {
+              // the primary is still running, its latency is at least the time elapsed so far
+              latencyTracker.record(TimeUnit.NANOSECONDS.toMillis(now - primaryStart));
+            }
+          }
+          return result;
+        } catch (ExecutionException e) {
+          lastError = unwrap(e);
+          done = null;
+          if (hedgeFuture == null && backup != null) {
+            // fail over at once, also before the hedge delay; this replaces the failed request
+            // instead of adding load, so it does not use the hedge budget
+            failovers.incrementAndGet();
+            failedOver = true;
+            hedgeStart = System.nanoTime();
+            hedgeFuture = completionService.submit(() -> query.apply(backup));
+            remaining++;
+          }
+        }
+      }
+    } finally {
+      primaryFuture.cancel(true);
+      if (hedgeFuture != null) {
+        hedgeFuture.cancel(true);
+      }
+    }
+    throw lastError;
+  }
+
+  long getHedgeDelayMs() {
+    if (latencyTracker.getSampleCount() < policy.getMinSamples()) {
+      return policy.getMaxHedgeDelayMs();
+    }
+    long percentile = latencyTracker.percentile(policy.getLatencyPercentile());
+    return Math.max(policy.getMinHedgeDelayMs(), Math.min(policy.getMaxHedgeDelayMs(), percentile));
+  }
+
+  long getTotalRequests() {
+    return totalRequests.get();
+  }
+
+  long getHedgedRequests() {
+    return hedgedRequests.get();
+  }
+
+  long getHedgeWins() {
+    return hedgeWins.get();
+  }
+
+  long getFailovers() {
+    return failovers.get();
+  }
+
+  void close() {
+    executor.shutdownNow();
+  }
+
+  private synchronized void addBudget(double amount) {
+    // do not let an idle period accumulate an unbounded burst of hedges
+    budget = Math.min(budget + amount, Math.max(policy.getInitialBudget(), 1));
+  }
+
+  private synchronized boolean tryAcquireBudget() {
+    if (budget >= 1) {
+      budget -= 1;
+      return true;
+    }
+    return false;
+  }
+
+  private static Exception unwrap(ExecutionException e) {
+    Throwable cause = e.getCause();
+    if (cause instanceof RuntimeException && cause.getCause() instanceof Exception) {
+      cause = cause.getCause();
+    }
+    return cause instanceof Exception ? (Exception) cause : e;
+  }
+}
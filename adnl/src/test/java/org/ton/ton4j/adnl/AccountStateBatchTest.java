@@ -0,0 +1,74 @@
+package org.ton.ton4j.adnl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.tl.liteserver.responses.AccountState;
+
+public class AccountStateBatchTest {
+
+  @Test
+  public void testLimitsInFlightAndReportsFailuresPerAddress() {
+    List<Address> addresses = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      addresses.add(Address.of(String.format("0:%064x", i * 7919L)));
+    }
+    Address failing = addresses.get(42);
+
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxObserved = new AtomicInteger();
+    List<CompletableFuture<AccountState>> pending = new ArrayList<>();
+
+    AccountStateBatch batch =
+        new AccountStateBatch(
+            addresses,
+            address -> {
+              maxObserved.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              CompletableFuture<AccountState> future = new CompletableFuture<>();
+              pending.add(future);
+              if (address.equals(failing)) {
+                inFlight.decrementAndGet();
+                future.completeExceptionally(new Exception("boom"));
+              } else {
+                // answered when the next query is sent, keeps several queries in flight
+                if (pending.size() > 4) {
+                  inFlight.decrementAndGet();
+                  pending.get(pending.size() - 5).complete(AccountState.builder().build());
+                }
+              }
+              return future;
+            },
+            8);
+
+    List<AccountStateResult> results = new ArrayList<>();
+    while (batch.hasNext()) {
+      if (results.size() >= 90) {
+        // no more sends drive completion, answer the rest
+        pending.forEach(f -> f.complete(AccountState.builder().build()));
+      }
+      results.add(batch.next());
+    }
+
+    assertThat(results).hasSize(100);
+    assertThat(maxObserved.get()).isLessThanOrEqualTo(8);
+    List<AccountStateResult> failures =
+        results.stream().filter(r -> !r.isSuccess()).collect(Collectors.toList());
+    assertThat(failures).hasSize(1);
+    assertThat(failures.get(0).getAddress()).isEqualTo(failing);
+    assertThat(failures.get(0).getError()).hasMessage("boom");
+  }
+
+  @Test
+  public void testSortsByWorkchainAndShard() {
+    Address a = Address.of("0:f000000000000000000000000000000000000000000000000000000000000000");
+    Address b = Address.of("-1:3333333333333333333333333333333333333333333333333333333333333333");
+    Address c = Address.of("0:1000000000000000000000000000000000000000000000000000000000000000");
+    assertThat(AccountStateBatch.sortByShard(List.of(a, b, c, a))).containsExactly(b, c, a);
+  }
+}
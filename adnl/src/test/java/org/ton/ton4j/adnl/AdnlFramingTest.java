@@ -0,0 +1,88 @@
+package org.ton.ton4j.adnl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.ton.ton4j.tl.liteserver.responses.AdnlMessageAnswer;
+import org.ton.ton4j.tl.liteserver.responses.CurrentTime;
+import org.ton.ton4j.tl.liteserver.responses.LiteServerAnswer;
+
+@Slf4j
+public class AdnlFramingTest {
+
+  @Test
+  public void testEncodeAndVerifyPacket() throws Exception {
+    byte[] payload = new byte[100];
+    Arrays.fill(payload, (byte) 7);
+    byte[] packet = AdnlTcpTransport.encodePacket(payload);
+
+    assertThat(packet).hasSize(4 + 32 + 100 + 32);
+    assertThat(ByteBuffer.wrap(packet).order(ByteOrder.LITTLE_ENDIAN).getInt()).isEqualTo(164);
+
+    byte[] received = Arrays.copyOfRange(packet, 4, packet.length);
+    assertThat(AdnlTcpTransport.verifyChecksum(received)).isTrue();
+    received[50] ^= 1;
+    assertThat(AdnlTcpTransport.verifyChecksum(received)).isFalse();
+  }
+
+  @Test
+  public void testDecodeAnswerFromView() {
+    byte[] payload = answerPayload(1700000000);
+    LiteServerAnswer answer =
+        AdnlTcpTransport.decodeAnswer(ByteBuffer.wrap(payload).order(ByteOrder.LITTLE_ENDIAN), 36);
+    assertThat(answer).isInstanceOf(CurrentTime.class);
+    assertThat(((CurrentTime) answer).getNow()).isEqualTo(1700000000);
+  }
+
+  /** Encode/decode throughput of ADNL framing, without sockets and AES-CTR. */
+  @Test
+  @Disabled
+  public void testFramingPerformance() throws Exception {
+    int iterations = 1_000_000;
+    byte[] payload = answerPayload(1700000000);
+
+    for (int i = 0; i < 100_000; i++) { // warm up
+      decode(AdnlTcpTransport.encodePacket(payload));
+    }
+
+    long startTime = System.nanoTime();
+    long bytes = 0;
+    for (int i = 0; i < iterations; i++) {
+      byte[] packet = AdnlTcpTransport.encodePacket(payload);
+      bytes += packet.length;
+      decode(packet);
+    }
+    long duration = System.nanoTime() - startTime;
+
+    log.info(
+        "ADNL framing: {} packets in {} ms, {} packets/s, {} MB/s",
+        iterations,
+        duration / 1_000_000,
+        iterations * 1_000_000_000L / duration,
+        bytes * 1000 / duration);
+  }
+
+  private static void decode(byte[] packet) throws Exception {
+    byte[] received = Arrays.copyOfRange(packet, 4, packet.length);
+    assertThat(AdnlTcpTransport.verifyChecksum(received)).isTrue();
+    ByteBuffer view =
+        ByteBuffer.wrap(received, 32, received.length - 64).slice().order(ByteOrder.LITTLE_ENDIAN);
+    AdnlTcpTransport.decodeAnswer(view, 36);
+  }
+
+  /** adnl.message.answer query_id:int256 answer:bytes with liteServer.currentTime inside */
+  private static byte[] answerPayload(int now) {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + 32 + 12).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(AdnlMessageAnswer.constructorId);
+    buffer.put(new byte[32]);
+    buffer.put((byte) 8); // TL bytes length
+    buffer.putInt(CurrentTime.constructorId);
+    buffer.putInt(now);
+    return buffer.array();
+  }
+}
@@ -0,0 +1,59 @@
+package org.ton.ton4j.adnl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class HashedWheelTimerTest {
+
+  @Test
+  public void testTimeoutFiresAfterDelay() throws Exception {
+    HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+    try {
+      CountDownLatch fired = new CountDownLatch(1);
+      long start = System.nanoTime();
+      // longer than one wheel revolution (8 x 10ms)
+      HashedWheelTimer.Timeout timeout =
+          timer.newTimeout(fired::countDown, 200, TimeUnit.MILLISECONDS);
+      assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+          .isGreaterThanOrEqualTo(200);
+      assertThat(timeout.isExpired()).isTrue();
+      assertThat(timer.getPendingCount()).isZero();
+    } finally {
+      timer.stop();
+    }
+  }
+
+  @Test
+  public void testCancelledTimeoutsDoNotFire() throws Exception {
+    HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+    try {
+      AtomicInteger fired = new AtomicInteger();
+      List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+      for (int i = 0; i < 10_000; i++) {
+        timeouts.add(timer.newTimeout(fired::incrementAndGet, 100, TimeUnit.MILLISECONDS));
+      }
+      for (int i = 0; i < timeouts.size(); i += 2) {
+        assertThat(timeouts.get(i).cancel()).isTrue();
+      }
+      assertThat(timer.getPendingCount()).isEqualTo(5_000);
+
+      long deadline = System.currentTimeMillis() + 5_000;
+      while (fired.get() < 5_000 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20);
+      }
+      Thread.sleep(100);
+      assertThat(fired.get()).isEqualTo(5_000);
+      assertThat(timeouts.get(0).isCancelled()).isTrue();
+      assertThat(timeouts.get(0).cancel()).isFalse();
+    } finally {
+      timer.stop();
+    }
+  }
+}
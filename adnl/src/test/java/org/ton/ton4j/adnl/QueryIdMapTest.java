@@ -0,0 +1,46 @@
+package org.ton.ton4j.adnl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class QueryIdMapTest {
+
+  @Test
+  public void testPutGetRemove() {
+    QueryIdMap<String> map = new QueryIdMap<>();
+    map.put(1, 2, "a");
+    map.put(3, 4, "b");
+    assertThat(map.get(1, 2)).isEqualTo("a");
+    assertThat(map.get(2, 1)).isNull();
+    assertThat(map.remove(1, 2, "b")).isFalse();
+    assertThat(map.remove(1, 2)).isEqualTo("a");
+    assertThat(map.get(1, 2)).isNull();
+    assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testMatchesHashMapUnderRandomOperations() {
+    QueryIdMap<Long> map = new QueryIdMap<>();
+    Map<Long, Long> reference = new HashMap<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 200_000; i++) {
+      // small key space forces collisions, resizes and backward-shift deletions
+      long key = random.nextInt(5_000);
+      if (random.nextBoolean()) {
+        map.put(key, ~key, key);
+        reference.put(key, key);
+      } else {
+        assertThat(map.remove(key, ~key)).isEqualTo(reference.remove(key));
+      }
+    }
+    assertThat(map.size()).isEqualTo(reference.size());
+    for (Long key : reference.keySet()) {
+      assertThat(map.get(key, ~key)).isEqualTo(key);
+    }
+    assertThat(map.values()).containsExactlyInAnyOrderElementsOf(reference.values());
+  }
+}
@@ -0,0 +1,139 @@
+package org.ton.ton4j.adnl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class RequestHedgerTest {
+
+  @Test
+  public void testFastPrimaryIsNotHedged() throws Exception {
+    RequestHedger<String> hedger =
+        new RequestHedger<>(HedgingPolicy.builder().maxHedgeDelayMs(500).build());
+    try {
+      String result = hedger.execute("primary", "backup", server -> server);
+      assertThat(result).isEqualTo("primary");
+      assertThat(hedger.getHedgedRequests()).isZero();
+    } finally {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void testSlowPrimaryIsHedgedAndCancelled() throws Exception {
+    RequestHedger<String> hedger =
+        new RequestHedger<>(HedgingPolicy.builder().maxHedgeDelayMs(50).build());
+    CountDownLatch primaryInterrupted = new CountDownLatch(1);
+    try {
+      String result =
+          hedger.execute(
+              "primary",
+              "backup",
+              server -> {
+                if (server.equals("primary")) {
+                  try {
+                    Thread.sleep(10_000);
+                  } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                  }
+                }
+                return server;
+              });
+      assertThat(result).isEqualTo("backup");
+      assertThat(hedger.getHedgedRequests()).isEqualTo(1);
+      assertThat(hedger.getHedgeWins()).isEqualTo(1);
+      assertThat(primaryInterrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    } finally {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void testFailedPrimaryFailsOverBeforeHedgeDelay() throws Exception {
+    RequestHedger<String> hedger =
+        new RequestHedger<>(HedgingPolicy.builder().maxHedgeDelayMs(10_000).build());
+    try {
+      long start = System.nanoTime();
+      String result =
+          hedger.execute(
+              "primary",
+              "backup",
+              server -> {
+                if (server.equals("primary")) {
+                  throw new IllegalStateException("connection lost");
+                }
+                return server;
+              });
+      assertThat(result).isEqualTo("backup");
+      assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(5_000);
+      assertThat(hedger.getFailovers()).isEqualTo(1);
+      assertThat(hedger.getHedgedRequests()).isZero();
+      assertThat(hedger.getHedgeWins()).isZero();
+    } finally {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void testFailedAttemptsAreNoLatencySamples() {
+    RequestHedger<String> hedger =
+        new RequestHedger<>(
+            HedgingPolicy.builder().minSamples(1).minHedgeDelayMs(1).maxHedgeDelayMs(500).build());
+    try {
+      assertThrows(
+          IllegalStateException.class,
+          () ->
+              hedger.execute(
+                  "primary",
+                  "backup",
+                  server -> {
+                    throw new IllegalStateException("connection lost");
+                  }));
+      assertThat(hedger.getFailovers()).isEqualTo(1);
+      // no samples yet, so the delay is still the maximum
+      assertThat(hedger.getHedgeDelayMs()).isEqualTo(500);
+    } finally {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void testBudgetCapsExtraLoad() throws Exception {
+    RequestHedger<String> hedger =
+        new RequestHedger<>(
+            HedgingPolicy.builder().maxHedgeDelayMs(1).initialBudget(1).maxExtraLoad(0.1).build());
+    try {
+      for (int i = 0; i < 20; i++) {
+        hedger.execute(
+            "primary",
+            "backup",
+            server -> {
+              try {
+                Thread.sleep(server.equals("primary") ? 20 : 40);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return server;
+            });
+      }
+      assertThat(hedger.getTotalRequests()).isEqualTo(20);
+      // initial budget of 1 plus 10% of 20 requests
+      assertThat(hedger.getHedgedRequests()).isLessThanOrEqualTo(3);
+    } finally {
+      hedger.close();
+    }
+  }
+
+  @Test
+  public void testPercentile() {
+    LatencyTracker tracker = new LatencyTracker(100);
+    for (int i = 1; i <= 100; i++) {
+      tracker.record(i);
+    }
+    assertThat(tracker.percentile(0.95)).isEqualTo(95);
+    assertThat(tracker.percentile(0.5)).isEqualTo(50);
+  }
+}
@@ -1,34 +1,81 @@
 package org.ton.ton4j.exporter;
 
+import com.google.gson.Gson;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.FileSegment;
+import org.ton.ton4j.exporter.types.FileWriterConfig;
 
 /**
  * Asynchronous file writer that buffers write operations to improve performance and reduce I/O
  * blocking for producer threads.
+ *
+ * <p>Accepts both lines as strings and already encoded UTF-8 chunks as {@link ByteBuffer}s. Chunks
+ * are copied into a direct output buffer, or written straight to the {@link FileChannel} when they
+ * are larger than the buffer, and handed back to the producer's recycler once written.
+ *
+ * <p>With {@link FileWriterConfig.Compression#GZIP} filled buffers are handed to a separate
+ * compression thread, so deflating overlaps with draining the queue. With rotation enabled the
+ * output is split into {@code <file>.00000[.gz]}, {@code <file>.00001[.gz]}, ... at line
+ * boundaries, and every completed file is appended as a JSON line to {@code <file>.manifest}.
  */
 @Slf4j
 public class AsyncFileWriter implements Closeable {
 
-  private static final String SHUTDOWN_SIGNAL = "##SHUTDOWN##";
+  private static final Object SHUTDOWN_SIGNAL = new Object();
+  private static final Object FLUSH_SIGNAL = new Object();
   private static final int DEFAULT_QUEUE_CAPACITY = 10000;
   private static final int DEFAULT_BUFFER_SIZE = 128 * 1024; // 128KB buffer
   private static final int DEFAULT_FLUSH_INTERVAL =
       5000; // flush every 5000 blocks (reduce I/O frequency)
-
-  private final BlockingQueue<String> writeQueue;
-  private final BufferedWriter bufferedWriter;
+  private static final byte[] LINE_SEPARATOR =
+      System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+  private static final String MANIFEST_SUFFIX = ".manifest";
+  private static final Gson MANIFEST_GSON = new Gson();
+
+  private final String filePath;
+  private final FileWriterConfig config;
+  private final BlockingQueue<Object> writeQueue;
+  private final OutputFiles files;
+  private ByteBuffer outputBuffer;
   private final Thread writerThread;
   private final AtomicInteger blocksWritten = new AtomicInteger(0);
   private final AtomicInteger totalBlocksWritten = new AtomicInteger(0);
   private final AtomicBoolean isShutdown = new AtomicBoolean(false);
   private final AtomicBoolean writerThreadRunning = new AtomicBoolean(false);
+  private volatile boolean writerFinished;
+
+  // compression stage, null without compression
+  private final BlockingQueue<Object> compressQueue;
+  private final BlockingQueue<ByteBuffer> freeBuffers;
+  private final Thread compressorThread;
+
+  // owned by the writer thread
+  private long segmentLines;
+  private long segmentBytes;
+
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong storedBytes = new AtomicLong();
+  private final AtomicInteger completedFiles = new AtomicInteger();
 
   private volatile int flushInterval;
   private volatile boolean flushOnPackageComplete = true;
@@ -42,25 +89,101 @@ public class AsyncFileWriter implements Closeable {
   public AsyncFileWriter(
       String filePath, boolean append, int queueCapacity, int bufferSize, int flushInterval)
       throws IOException {
-    this.writeQueue = new LinkedBlockingQueue<>(queueCapacity);
-    this.flushInterval = flushInterval;
+    this(
+        filePath,
+        append,
+        FileWriterConfig.builder()
+            .queueCapacity(queueCapacity)
+            .bufferSize(bufferSize)
+            .flushInterval(flushInterval)
+            .build());
+  }
 
-    // Create buffered writer with large buffer
-    FileWriter fileWriter = new FileWriter(filePath, StandardCharsets.UTF_8, append);
-    this.bufferedWriter = new BufferedWriter(fileWriter, bufferSize);
+  /**
+   * Creates an AsyncFileWriter with compression, rotation and fsync settings.
+   *
+   * @param filePath output file, or base name of the numbered files when rotating
+   * @param append appends to the file, or continues after the last numbered file when rotating;
+   *     output cut off by an interrupted session is repaired first, see {@link OutputRecovery}
+   */
+  public AsyncFileWriter(String filePath, boolean append, FileWriterConfig config)
+      throws IOException {
+    this.filePath = filePath;
+    this.config = config;
+    this.writeQueue = new LinkedBlockingQueue<>(config.getQueueCapacity());
+    this.flushInterval = config.getFlushInterval();
+    this.files = new OutputFiles();
+    files.open(append);
+
+    String name = new File(filePath).getName();
+    if (config.getCompression() == FileWriterConfig.Compression.NONE) {
+      this.outputBuffer = ByteBuffer.allocateDirect(config.getBufferSize());
+      this.compressQueue = null;
+      this.freeBuffers = null;
+      this.compressorThread = null;
+    } else {
+      // the writer fills one buffer while the compressor deflates the others
+      int buffers = Math.max(1, config.getCompressionQueueSize());
+      this.outputBuffer = ByteBuffer.allocate(config.getBufferSize());
+      this.compressQueue = new ArrayBlockingQueue<>(buffers + 2);
+      this.freeBuffers = new ArrayBlockingQueue<>(buffers + 1);
+      for (int i = 0; i < buffers; i++) {
+        freeBuffers.add(ByteBuffer.allocate(config.getBufferSize()));
+      }
+      this.compressorThread = new Thread(this::compressorLoop, "AsyncFileWriter-gzip-" + name);
+      this.compressorThread.start();
+    }
 
     // Start background writer thread
-    this.writerThread =
-        new Thread(this::writerLoop, "AsyncFileWriter-" + new File(filePath).getName());
+    this.writerThread = new Thread(this::writerLoop, "AsyncFileWriter-" + name);
     this.writerThread.setDaemon(false); // Ensure thread completes before JVM shutdown
     this.writerThread.start();
 
-    log.debug(
-        "AsyncFileWriter started: file={}, queueCapacity={}, bufferSize={}, flushInterval={}",
-        filePath,
-        queueCapacity,
-        bufferSize,
-        flushInterval);
+    log.debug("AsyncFileWriter started: file={}, {}", filePath, config);
+  }
+
+  /**
+   * @param filePath output file, or base name of the numbered files when rotating
+   * @return whether a previous export left output that can be appended to
+   */
+  public static boolean hasOutput(String filePath, FileWriterConfig config) {
+    if (!config.isRotating()) {
+      File file = new File(filePath);
+      return file.exists() && file.length() > 0;
+    }
+    return new File(filePath + MANIFEST_SUFFIX).exists()
+        || new File(segmentPath(filePath, config, 0)).exists();
+  }
+
+  /**
+   * @param filePath base name of the numbered files
+   * @param index position of the file in the output sequence
+   * @return path of a numbered output file
+   */
+  public static String segmentPath(String filePath, FileWriterConfig config, int index) {
+    return String.format("%s.%05d%s", filePath, index, compressionSuffix(config));
+  }
+
+  /**
+   * @param filePath base name of the numbered files
+   * @return completed files in the order they were written, empty if there is no manifest
+   */
+  public static List<FileSegment> readManifest(String filePath) throws IOException {
+    Path manifest = Paths.get(filePath + MANIFEST_SUFFIX);
+    if (!Files.exists(manifest)) {
+      return Collections.emptyList();
+    }
+    List<FileSegment> segments = new ArrayList<>();
+    for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+      if (!line.isEmpty()) {
+        segments.add(MANIFEST_GSON.fromJson(line, FileSegment.class));
+      }
+    }
+    return segments;
+  }
+
+  private static String compressionSuffix(FileWriterConfig config) {
+    return config.getCompression() == FileWriterConfig.Compression.GZIP ? ".gz" : "";
   }
 
   /**
@@ -68,6 +191,32 @@ public class AsyncFileWriter implements Closeable {
    * full, it will block until space is available (backpressure).
    */
   public void writeLine(String line) {
+    enqueue(line);
+  }
+
+  /**
+   * Writes an encoded line asynchronously, followed by the line separator.
+   *
+   * @param line UTF-8 bytes of the line between position and limit, must not be modified until
+   *     recycled
+   * @param recycler receives the buffer once its content has been written, may be null
+   */
+  public void writeLine(ByteBuffer line, Consumer<ByteBuffer> recycler) {
+    enqueue(new Chunk(line, recycler, true));
+  }
+
+  /**
+   * Writes a chunk of raw bytes asynchronously, without line separator. The chunk is not counted as
+   * a written block.
+   *
+   * @param chunk bytes between position and limit, must not be modified until recycled
+   * @param recycler receives the buffer once its content has been written, may be null
+   */
+  public void write(ByteBuffer chunk, Consumer<ByteBuffer> recycler) {
+    enqueue(new Chunk(chunk, recycler, false));
+  }
+
+  private void enqueue(Object item) {
     if (isShutdown.get()) {
       log.warn("Attempted to write to shutdown AsyncFileWriter");
       return;
@@ -75,7 +224,7 @@ public class AsyncFileWriter implements Closeable {
 
     try {
       // This will block if queue is full (backpressure mechanism)
-      writeQueue.put(line);
+      writeQueue.put(item);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       log.warn("Interrupted while writing line to queue");
@@ -85,7 +234,7 @@ public class AsyncFileWriter implements Closeable {
   /** Forces a flush of the buffer to disk */
   public void flush() {
     try {
-      writeQueue.put("##FLUSH##");
+      writeQueue.put(FLUSH_SIGNAL);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       log.warn("Interrupted while requesting flush");
@@ -126,6 +275,21 @@ public class AsyncFileWriter implements Closeable {
     return writerThreadRunning.get();
   }
 
+  /** Gets the number of bytes written before compression */
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  /** Gets the number of bytes stored in the output files */
+  public long getStoredBytes() {
+    return storedBytes.get();
+  }
+
+  /** Gets the number of output files completed by rotation or close */
+  public int getCompletedFiles() {
+    return completedFiles.get();
+  }
+
   /** Background writer thread that consumes from the queue and writes to disk */
   private void writerLoop() {
     writerThreadRunning.set(true);
@@ -134,37 +298,35 @@ public class AsyncFileWriter implements Closeable {
       while (!isShutdown.get() || !writeQueue.isEmpty()) {
         try {
           // Poll with timeout to allow periodic checks for shutdown
-          String line = writeQueue.poll(100, TimeUnit.MILLISECONDS);
+          Object item = writeQueue.poll(100, TimeUnit.MILLISECONDS);
 
-          if (line == null) {
+          if (item == null) {
             continue; // Timeout, check shutdown status
           }
 
-          if (SHUTDOWN_SIGNAL.equals(line)) {
-            //            log.debug("Received shutdown signal, draining remaining queue");
+          if (item == SHUTDOWN_SIGNAL) {
             break;
           }
 
-          if ("##FLUSH##".equals(line)) {
+          if (item == FLUSH_SIGNAL) {
             // Force flush request
-            bufferedWriter.flush();
+            flushOutput();
             log.debug("Forced flush completed, {} blocks written so far", totalBlocksWritten.get());
             continue;
           }
 
-          // Write the line
-          bufferedWriter.write(line);
-          bufferedWriter.newLine();
-
-          int written = blocksWritten.incrementAndGet();
-          totalBlocksWritten.incrementAndGet();
-
-          // Check if we need to flush based on interval
-          if (written >= flushInterval) {
-            bufferedWriter.flush();
-            blocksWritten.set(0); // Reset counter
-            // log.debug("Auto-flush completed after {} blocks (total: {})", written,
-            // totalBlocksWritten.get());
+          if (writeItem(item)) {
+            int written = blocksWritten.incrementAndGet();
+            totalBlocksWritten.incrementAndGet();
+            segmentLines++;
+
+            if (segmentFull()) {
+              rotate();
+            } else if (written >= flushInterval) {
+              // Check if we need to flush based on interval
+              flushOutput();
+              blocksWritten.set(0); // Reset counter
+            }
           }
 
         } catch (InterruptedException e) {
@@ -178,13 +340,17 @@ public class AsyncFileWriter implements Closeable {
       }
 
       // Drain any remaining items in the queue
-      String line;
-      while ((line = writeQueue.poll()) != null) {
-        if (!SHUTDOWN_SIGNAL.equals(line) && !"##FLUSH##".equals(line)) {
+      Object item;
+      while ((item = writeQueue.poll()) != null) {
+        if (item != SHUTDOWN_SIGNAL && item != FLUSH_SIGNAL) {
           try {
-            bufferedWriter.write(line);
-            bufferedWriter.newLine();
-            totalBlocksWritten.incrementAndGet();
+            if (writeItem(item)) {
+              totalBlocksWritten.incrementAndGet();
+              segmentLines++;
+              if (segmentFull()) {
+                rotate();
+              }
+            }
           } catch (IOException e) {
             log.error("Error writing remaining line during shutdown: {}", e.getMessage());
           }
@@ -192,16 +358,172 @@ public class AsyncFileWriter implements Closeable {
       }
 
       try {
-        bufferedWriter.flush();
+        flushBuffer();
       } catch (IOException e) {
         log.error("Error during final flush: {}", e.getMessage());
       }
 
     } finally {
+      try {
+        dispatch(new FileEnd(segmentLines, true));
+      } catch (IOException e) {
+        log.error("Error closing output file: {}", e.getMessage());
+      }
+      writerFinished = true;
       writerThreadRunning.set(false);
     }
   }
 
+  /** Compression thread, deflates filled buffers in the order the writer thread handed them over */
+  private void compressorLoop() {
+    try {
+      while (true) {
+        Object item = compressQueue.poll(100, TimeUnit.MILLISECONDS);
+        if (item == null) {
+          if (writerFinished && compressQueue.isEmpty()) {
+            break; // the writer thread ended without closing the file
+          }
+          continue;
+        }
+        try {
+          execute(item);
+        } catch (IOException | RuntimeException e) {
+          log.error("Error writing compressed output: {}", e.getMessage());
+        }
+        if (item instanceof FileEnd && ((FileEnd) item).last) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.debug("Compressor thread interrupted");
+    } finally {
+      files.closeQuietly();
+    }
+  }
+
+  private boolean segmentFull() {
+    return (config.getRotateBlocks() > 0 && segmentLines >= config.getRotateBlocks())
+        || (config.getRotateBytes() > 0 && segmentBytes >= config.getRotateBytes());
+  }
+
+  /** Completes the current file at a line boundary and continues in the next one. */
+  private void rotate() throws IOException {
+    flushBuffer();
+    dispatch(new FileEnd(segmentLines, false));
+    segmentLines = 0;
+    segmentBytes = 0;
+    blocksWritten.set(0);
+  }
+
+  private void flushOutput() throws IOException {
+    flushBuffer();
+    dispatch(FLUSH_SIGNAL);
+  }
+
+  /** Runs a file command on the writer thread, or queues it behind the pending buffers. */
+  private void dispatch(Object command) throws IOException {
+    if (compressQueue == null) {
+      execute(command);
+      return;
+    }
+    try {
+      compressQueue.put(command);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while queueing output");
+    }
+  }
+
+  private void execute(Object command) throws IOException {
+    if (command instanceof ByteBuffer) {
+      ByteBuffer buffer = (ByteBuffer) command;
+      try {
+        files.write(buffer);
+      } finally {
+        buffer.clear();
+        freeBuffers.add(buffer);
+      }
+    } else if (command == FLUSH_SIGNAL) {
+      files.flush();
+    } else {
+      FileEnd end = (FileEnd) command;
+      files.finish(end.lines, end.last);
+    }
+  }
+
+  /** @return true if the item was a line */
+  private boolean writeItem(Object item) throws IOException {
+    if (item instanceof String) {
+      put(ByteBuffer.wrap(((String) item).getBytes(StandardCharsets.UTF_8)));
+      put(ByteBuffer.wrap(LINE_SEPARATOR));
+      return true;
+    }
+    Chunk chunk = (Chunk) item;
+    try {
+      put(chunk.data.duplicate());
+      if (chunk.line) {
+        put(ByteBuffer.wrap(LINE_SEPARATOR));
+      }
+    } finally {
+      if (chunk.recycler != null) {
+        chunk.recycler.accept(chunk.data);
+      }
+    }
+    return chunk.line;
+  }
+
+  private void put(ByteBuffer data) throws IOException {
+    segmentBytes += data.remaining();
+    if (data.remaining() > outputBuffer.remaining()) {
+      flushBuffer();
+      if (data.remaining() > outputBuffer.capacity()) {
+        if (compressQueue == null) {
+          // too large to be buffered, write it directly
+          files.write(data);
+          return;
+        }
+        // the compressor only takes pooled buffers, hand it over in buffer-sized parts
+        while (data.remaining() > outputBuffer.remaining()) {
+          ByteBuffer part = data.duplicate();
+          part.limit(part.position() + outputBuffer.remaining());
+          outputBuffer.put(part);
+          data.position(part.position());
+          flushBuffer();
+        }
+      }
+    }
+    outputBuffer.put(data);
+  }
+
+  private void flushBuffer() throws IOException {
+    if (outputBuffer.position() == 0) {
+      return;
+    }
+    outputBuffer.flip();
+    if (compressQueue == null) {
+      try {
+        files.write(outputBuffer);
+      } finally {
+        outputBuffer.clear();
+      }
+      return;
+    }
+    try {
+      compressQueue.put(outputBuffer);
+      outputBuffer = freeBuffers.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while handing buffer to compressor");
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer data) throws IOException {
+    while (data.hasRemaining()) {
+      channel.write(data);
+    }
+  }
+
   @Override
   public void close() throws IOException {
     if (isShutdown.getAndSet(true)) {
@@ -229,12 +551,241 @@ public class AsyncFileWriter implements Closeable {
       log.warn("Interrupted while waiting for writer thread to finish");
     }
 
-    // Close the buffered writer
-    try {
-      bufferedWriter.close();
-    } catch (IOException e) {
-      log.error("Error closing buffered writer: {}", e.getMessage());
-      throw e;
+    if (compressorThread != null) {
+      try {
+        // ends right after the writer thread, once the queued buffers are compressed
+        compressorThread.join(5000);
+        if (compressorThread.isAlive()) {
+          log.warn("Compressor thread did not finish within timeout, interrupting");
+          compressorThread.interrupt();
+          compressorThread.join(1000);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        log.warn("Interrupted while waiting for compressor thread to finish");
+      }
+    }
+
+    // Close the file channel if the writer thread did not complete
+    files.close();
+  }
+
+  /**
+   * Current output file. Used by the writer thread, or by the compressor thread when compressing;
+   * synchronized only so that close() can release the file after a stuck thread.
+   */
+  private final class OutputFiles {
+    private FileChannel channel;
+    private GZIPOutputStream gzip;
+    private int index;
+    private long bytes;
+    private long stored;
+
+    synchronized void open(boolean append) throws IOException {
+      Path path;
+      if (config.isRotating()) {
+        if (append) {
+          // continue after the files of the previous session
+          adoptUnrecordedFiles();
+        }
+        path = Paths.get(segmentPath(filePath, config, index));
+        append = false;
+      } else {
+        path = Paths.get(filePath);
+        if (append && Files.exists(path) && Files.size(path) > 0) {
+          repair(path, false);
+        }
+      }
+      channel =
+          FileChannel.open(
+              path,
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+      bytes = 0;
+      stored = 0;
+      if (config.getCompression() == FileWriterConfig.Compression.GZIP) {
+        // appending adds another gzip member behind the complete ones of the repaired file,
+        // readers decompress concatenated members as one
+        gzip =
+            new GZIPOutputStream(new ChannelOutput(), config.getBufferSize(), true) {
+              {
+                def.setLevel(config.getCompressionLevel());
+              }
+            };
+      }
+    }
+
+    synchronized void write(ByteBuffer data) throws IOException {
+      int length = data.remaining();
+      bytes += length;
+      bytesWritten.addAndGet(length);
+      if (gzip == null) {
+        writeFully(channel, data);
+        addStored(length);
+      } else {
+        gzip.write(data.array(), data.arrayOffset() + data.position(), length);
+        data.position(data.limit());
+      }
+    }
+
+    synchronized void flush() throws IOException {
+      if (gzip != null) {
+        gzip.flush(); // sync flush, everything written so far can be decompressed
+      }
+      if (config.getFsyncPolicy() == FileWriterConfig.FsyncPolicy.ON_FLUSH) {
+        channel.force(false);
+      }
+    }
+
+    /** Completes the current file, records it in the manifest and opens the next one. */
+    synchronized void finish(long lines, boolean last) throws IOException {
+      if (channel == null) {
+        return;
+      }
+      if (gzip != null) {
+        gzip.close(); // writes the trailer, the channel stays open
+      }
+      if (config.getFsyncPolicy() != FileWriterConfig.FsyncPolicy.NEVER) {
+        channel.force(true);
+      }
+      channel.close();
+      channel = null;
+      gzip = null;
+      completedFiles.incrementAndGet();
+
+      if (config.isRotating()) {
+        Path path = Paths.get(segmentPath(filePath, config, index));
+        if (last && lines == 0 && bytes == 0) {
+          Files.deleteIfExists(path); // nothing was written after the last rotation
+          completedFiles.decrementAndGet();
+        } else {
+          appendManifest(path, lines, bytes, stored);
+        }
+        index++;
+      }
+      if (!last) {
+        open(false);
+      }
+    }
+
+    /**
+     * Moves the index behind the files of the previous session. A file missing from the manifest
+     * was not completed, e.g. the export was killed; it is cut back to complete lines and recorded,
+     * or deleted if it holds none.
+     */
+    private void adoptUnrecordedFiles() throws IOException {
+      List<String> recorded = new ArrayList<>();
+      for (FileSegment segment : readManifest(filePath)) {
+        recorded.add(segment.getFile());
+      }
+      for (; Files.exists(Paths.get(segmentPath(filePath, config, index))); index++) {
+        Path path = Paths.get(segmentPath(filePath, config, index));
+        if (recorded.contains(path.getFileName().toString())) {
+          continue;
+        }
+        OutputRecovery.Result result = repair(path, true);
+        if (result.lines == 0) {
+          log.warn("Deleting incomplete output file {} without complete lines", path);
+          Files.delete(path);
+        } else {
+          log.warn("Adopting incomplete output file {} with {} lines", path, result.lines);
+          appendManifest(path, result.lines, result.bytes, result.storedBytes);
+        }
+      }
+    }
+
+    private OutputRecovery.Result repair(Path path, boolean countLines) throws IOException {
+      if (config.getCompression() == FileWriterConfig.Compression.GZIP) {
+        return OutputRecovery.repairGzip(path, config.getCompressionLevel());
+      }
+      return OutputRecovery.repairText(path, countLines);
+    }
+
+    private void appendManifest(Path path, long lines, long bytes, long stored)
+        throws IOException {
+      FileSegment segment =
+          FileSegment.builder()
+              .file(path.getFileName().toString())
+              .index(index)
+              .lines(lines)
+              .bytes(bytes)
+              .storedBytes(stored)
+              .compression(config.getCompression().name())
+              .completedAt(System.currentTimeMillis())
+              .build();
+      Files.write(
+          Paths.get(filePath + MANIFEST_SUFFIX),
+          (MANIFEST_GSON.toJson(segment) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    }
+
+    synchronized void close() throws IOException {
+      if (channel == null) {
+        return;
+      }
+      try {
+        if (gzip != null) {
+          gzip.close(); // writes the trailer, the channel stays open
+        }
+      } finally {
+        channel.close();
+        channel = null;
+        gzip = null;
+      }
+    }
+
+    void closeQuietly() {
+      try {
+        close();
+      } catch (IOException e) {
+        log.error("Error closing file channel: {}", e.getMessage());
+      }
+    }
+
+    private void addStored(long length) {
+      stored += length;
+      storedBytes.addAndGet(length);
+    }
+
+    /** Sink of the gzip stream, writes compressed bytes to the current channel. */
+    private final class ChannelOutput extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        writeFully(channel, ByteBuffer.wrap(b, off, len));
+        addStored(len);
+      }
+    }
+  }
+
+  /** Completes the current output file after the given number of lines. */
+  private static final class FileEnd {
+    private final long lines;
+    private final boolean last;
+
+    FileEnd(long lines, boolean last) {
+      this.lines = lines;
+      this.last = last;
+    }
+  }
+
+  /** Encoded bytes waiting to be written. */
+  private static final class Chunk {
+    private final ByteBuffer data;
+    private final Consumer<ByteBuffer> recycler;
+    private final boolean line;
+
+    Chunk(ByteBuffer data, Consumer<ByteBuffer> recycler, boolean line) {
+      this.data = data;
+      this.recycler = recycler;
+      this.line = line;
     }
   }
 }
@@ -0,0 +1,368 @@
+package org.ton.ton4j.exporter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.exporter.reader.TempPackageIndexReader;
+import org.ton.ton4j.exporter.types.ExportStatus;
+import org.ton.ton4j.exporter.types.ExportedBlock;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockIdExt;
+
+/**
+ * Endless stream of the blocks a running node adds to its database. Watches the temp packages in
+ * {@code files/packages} and the newest archive packages in {@code archive/packages}, both of
+ * which only grow by appending entries, and remembers how many bytes of each package were read.
+ * A poll reads just the entries appended since the previous one, so a new block costs O(1)
+ * regardless of the package size.
+ *
+ * <p>Every poll returns its blocks ordered by seqno. A block is emitted once per workchain and
+ * shard: blocks with a seqno not above the last one emitted for their shard are skipped, which
+ * also drops the copies that show up when the node moves blocks from temp to archive packages.
+ *
+ * <p>Package offsets and last seqnos are checkpointed to {@code follow-status.json}, next to the
+ * export status file, so that following never replaces the resume state of a batch export. A
+ * checkpoint is written only after all blocks of a poll were passed to the stream's consumer, which
+ * gives at-least-once delivery across restarts. Without a checkpoint, following starts at the
+ * current end of the packages.
+ */
+@Slf4j
+class BlockFollower implements Spliterator<ExportedBlock>, AutoCloseable {
+
+  static final String EXPORT_TYPE = "follow";
+  static final String STATUS_FILE_NAME = "follow-status.json";
+
+  private static final int PACKAGE_HEADER_SIZE = 4;
+  private static final int ENTRY_HEADER_SIZE = 8;
+  private static final short ENTRY_HEADER_MAGIC = 0x1e8b;
+
+  private final Path dbRoot;
+  private final boolean deserialized;
+  private final long pollIntervalMs;
+  private final StatusManager statusManager;
+  private final ExportStatus exportStatus;
+  // notified by close(), so that a waiting poll ends at once
+  private final Object wakeup = new Object();
+
+  // in-memory index: bytes read per package and last seqno per shard, ahead of the checkpoint
+  private final Map<String, Long> offsets = new HashMap<>();
+  private final Map<String, Long> lastSeqnos = new HashMap<>();
+  private final ByteBuffer header =
+      ByteBuffer.allocate(ENTRY_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+  private Iterator<ExportedBlock> batch = Collections.emptyIterator();
+  private boolean uncommitted;
+  private volatile boolean closed;
+
+  /**
+   * @param dbRootPath database root of a running node
+   * @param deserialized whether Block objects are deserialized
+   * @param pollIntervalMs pause between polls that found no new blocks
+   * @param resume continue from the checkpoint in {@code follow-status.json}, if there is one
+   */
+  BlockFollower(String dbRootPath, boolean deserialized, long pollIntervalMs, boolean resume)
+      throws IOException {
+    this.dbRoot = Paths.get(dbRootPath);
+    this.deserialized = deserialized;
+    this.pollIntervalMs = pollIntervalMs;
+    this.statusManager =
+        StatusManager.forFile(
+            StatusManager.getInstance().getStatusFilePath().resolveSibling(STATUS_FILE_NAME));
+
+    ExportStatus status = resume ? statusManager.loadStatus() : null;
+    if (status != null && EXPORT_TYPE.equals(status.getExportType())) {
+      this.exportStatus = status;
+      offsets.putAll(status.getFollowOffsets());
+      lastSeqnos.putAll(status.getFollowSeqnos());
+      log.info(
+          "Following from checkpoint, {} packages, {} shards", offsets.size(), lastSeqnos.size());
+    } else {
+      this.exportStatus = statusManager.createNewStatus(0, EXPORT_TYPE, null, deserialized, 1);
+      // index what is already there, so that only blocks added from now on are emitted
+      for (Path pack : watchedPackages()) {
+        readNewEntries(pack, null);
+      }
+      commit();
+    }
+  }
+
+  /**
+   * Reads the entries added to the watched packages since the previous poll.
+   *
+   * @return new blocks ordered by seqno, empty if there are none
+   */
+  List<ExportedBlock> poll() throws IOException {
+    List<Pending> pending = new ArrayList<>();
+    Set<String> present = new HashSet<>();
+    for (Path pack : watchedPackages()) {
+      present.add(key(pack));
+      readNewEntries(pack, pending);
+    }
+    // temp packages are deleted by the node after a while
+    offsets.keySet().retainAll(present);
+
+    pending.sort(
+        Comparator.comparingLong((Pending p) -> p.blockId.getSeqno())
+            .thenComparingInt(p -> p.blockId.getWorkchain())
+            .thenComparing(p -> p.blockId.shard, Long::compareUnsigned));
+    List<ExportedBlock> blocks = new ArrayList<>(pending.size());
+    for (Pending p : pending) {
+      if (isNew(p.blockId)) {
+        blocks.add(toExportedBlock(p));
+      }
+    }
+    return blocks;
+  }
+
+  /** Persists the read offsets, all blocks returned by {@link #poll()} so far are consumed. */
+  void commit() {
+    synchronized (exportStatus) {
+      exportStatus.getFollowOffsets().clear();
+      exportStatus.getFollowOffsets().putAll(offsets);
+      exportStatus.getFollowSeqnos().putAll(lastSeqnos);
+      exportStatus.setLastUpdate(Instant.now().toString());
+    }
+    statusManager.saveStatus(exportStatus);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super ExportedBlock> action) {
+    try {
+      while (!batch.hasNext()) {
+        if (uncommitted) {
+          // the stream asks for more, so every block of the previous poll was consumed
+          commit();
+          uncommitted = false;
+        }
+        if (closed) {
+          return false;
+        }
+        List<ExportedBlock> blocks = poll();
+        if (blocks.isEmpty()) {
+          synchronized (wakeup) {
+            if (!closed) {
+              wakeup.wait(pollIntervalMs);
+            }
+          }
+        } else {
+          batch = blocks.iterator();
+          uncommitted = true;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (IOException e) {
+      throw new RuntimeException("Error following packages: " + e.getMessage(), e);
+    }
+    action.accept(batch.next());
+    return true;
+  }
+
+  @Override
+  public Spliterator<ExportedBlock> trySplit() {
+    return null; // blocks are emitted in order
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+  /** Ends the stream; blocks of a poll that were not all consumed are not checkpointed. */
+  @Override
+  public void close() {
+    synchronized (wakeup) {
+      closed = true;
+      wakeup.notifyAll();
+    }
+  }
+
+  /** @return temp packages and the packages with the highest id in the last archive directory */
+  private List<Path> watchedPackages() throws IOException {
+    List<Path> packages = new ArrayList<>();
+    Path tempDir = dbRoot.resolve("files").resolve("packages");
+    if (Files.isDirectory(tempDir)) {
+      packages.addAll(list(tempDir, name -> name.startsWith("temp.archive.")));
+    }
+
+    Path archiveDir = dbRoot.resolve("archive").resolve("packages");
+    if (Files.isDirectory(archiveDir)) {
+      Optional<Path> lastArch;
+      try (Stream<Path> dirs = Files.list(archiveDir)) {
+        lastArch =
+            dirs.filter(Files::isDirectory)
+                .filter(p -> p.getFileName().toString().startsWith("arch"))
+                .max(Comparator.comparing(p -> p.getFileName().toString()));
+      }
+      if (lastArch.isPresent()) {
+        List<Path> archives = list(lastArch.get(), name -> name.startsWith("archive."));
+        String lastId =
+            archives.stream().map(BlockFollower::packageId).max(String::compareTo).orElse(null);
+        for (Path archive : archives) {
+          if (packageId(archive).equals(lastId)) {
+            packages.add(archive);
+          }
+        }
+      }
+    }
+    return packages;
+  }
+
+  private static List<Path> list(Path dir, Predicate<String> filter)
+      throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .filter(p -> p.getFileName().toString().endsWith(".pack"))
+          .filter(p -> filter.test(p.getFileName().toString()))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** @return "00100" of "archive.00100.pack" or "archive.00100.0:8000000000000000.pack" */
+  private static String packageId(Path archive) {
+    String name = archive.getFileName().toString();
+    int start = "archive.".length();
+    int end = name.indexOf('.', start);
+    return name.substring(start, end < 0 ? name.length() : end);
+  }
+
+  private String key(Path pack) {
+    return dbRoot.relativize(pack).toString();
+  }
+
+  /**
+   * Reads the complete entries after the package's offset and advances it. An entry the node is
+   * still writing is left for the next poll.
+   *
+   * @param pending receives new blocks, null to only record the seqnos
+   */
+  private void readNewEntries(Path pack, List<Pending> pending) throws IOException {
+    String key = key(pack);
+    long position = offsets.getOrDefault(key, (long) PACKAGE_HEADER_SIZE);
+    try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ)) {
+      long size = channel.size();
+      while (position + ENTRY_HEADER_SIZE <= size) {
+        header.clear();
+        readFully(channel, header, position);
+        int header0 = header.getInt(0);
+        if ((header0 & 0xFFFF) != ENTRY_HEADER_MAGIC) {
+          log.warn("Invalid entry header in {} at offset {}, skipping the package", key, position);
+          position = size;
+          break;
+        }
+        int filenameLength = (header0 >>> 16) & 0xFFFF;
+        int dataSize = header.getInt(4);
+        long end = position + ENTRY_HEADER_SIZE + filenameLength + dataSize;
+        if (end > size) {
+          break; // still being written
+        }
+
+        ByteBuffer filename = ByteBuffer.allocate(filenameLength);
+        readFully(channel, filename, position + ENTRY_HEADER_SIZE);
+        String name = new String(filename.array(), StandardCharsets.UTF_8);
+        BlockIdExt blockId =
+            name.startsWith("block_") ? TempPackageIndexReader.parseBlockIdExt(name) : null;
+        if (blockId != null) {
+          if (pending == null) {
+            isNew(blockId);
+          } else if (isAbove(blockId, lastSeqnos.get(shardKey(blockId)))) {
+            // the seqno mark is only advanced after sorting, see poll()
+            ByteBuffer data = ByteBuffer.allocate(dataSize);
+            readFully(channel, data, position + ENTRY_HEADER_SIZE + filenameLength);
+            pending.add(new Pending(key, name, blockId, data.array()));
+          }
+        }
+        position = end;
+      }
+    } catch (NoSuchFileException e) {
+      return; // deleted between listing and reading
+    }
+    offsets.put(key, position);
+  }
+
+  /** @return true and records the seqno if the block is newer than the last one of its shard */
+  private boolean isNew(BlockIdExt blockId) {
+    String shardKey = shardKey(blockId);
+    if (!isAbove(blockId, lastSeqnos.get(shardKey))) {
+      return false;
+    }
+    lastSeqnos.put(shardKey, blockId.getSeqno());
+    return true;
+  }
+
+  private static boolean isAbove(BlockIdExt blockId, Long lastSeqno) {
+    return lastSeqno == null || blockId.getSeqno() > lastSeqno;
+  }
+
+  private static String shardKey(BlockIdExt blockId) {
+    return blockId.getWorkchain() + ":" + Long.toHexString(blockId.shard);
+  }
+
+  private ExportedBlock toExportedBlock(Pending pending) {
+    Block block = null;
+    if (deserialized) {
+      try {
+        block =
+            Block.deserialize(
+                CellSlice.beginParse(CellBuilder.beginCell().fromBoc(pending.data).endCell()));
+      } catch (Throwable e) {
+        log.debug("Error deserializing block {}: {}", pending.filename, e.getMessage());
+      }
+    }
+    return ExportedBlock.builder()
+        .archiveKey(pending.packageKey)
+        .blockKey(pending.filename)
+        .rawData(pending.data)
+        .deserializedBlock(block)
+        .isDeserialized(block != null)
+        .build();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position + buffer.position());
+      if (n < 0) {
+        throw new EOFException("Unexpected end of package at " + position);
+      }
+    }
+  }
+
+  private static final class Pending {
+    final String packageKey;
+    final String filename;
+    final BlockIdExt blockId;
+    final byte[] data;
+
+    Pending(String packageKey, String filename, BlockIdExt blockId, byte[] data) {
+      this.packageKey = packageKey;
+      this.filename = filename;
+      this.blockId = blockId;
+      this.data = data;
+    }
+  }
+}
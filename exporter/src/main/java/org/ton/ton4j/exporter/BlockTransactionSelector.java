@@ -0,0 +1,146 @@
+package org.ton.ton4j.exporter;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.bitstring.BitString;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.cell.Node;
+import org.ton.ton4j.cell.TonHashMap;
+import org.ton.ton4j.cell.TonHashMapAug;
+import org.ton.ton4j.exporter.reader.BlockLocationIndex;
+import org.ton.ton4j.exporter.types.BlockFilter;
+import org.ton.ton4j.tlb.BlockId;
+import org.ton.ton4j.tlb.CurrencyCollection;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.Transaction;
+
+/**
+ * Applies a {@link BlockFilter} to package entries with as little decoding as possible: the entry
+ * name is checked before the BoC is parsed, and of a parsed block only the keys of the account
+ * blocks and the messages of candidate transactions are read. Only matching transactions are
+ * deserialized.
+ *
+ * <pre>
+ * block#11ef55aa global_id:int32 info:^BlockInfo value_flow:^ValueFlow
+ *   state_update:^(MERKLE_UPDATE ShardState) extra:^BlockExtra = Block;
+ * block_extra in_msg_descr:^InMsgDescr out_msg_descr:^OutMsgDescr
+ *   account_blocks:^ShardAccountBlocks ... = BlockExtra;
+ * _ (HashmapAugE 256 AccountBlock CurrencyCollection) = ShardAccountBlocks;
+ * acc_trans#5 account_addr:bits256 transactions:(HashmapAug 64 ^Transaction CurrencyCollection)
+ *   state_update:^(HASH_UPDATE Account) = AccountBlock;
+ * </pre>
+ */
+class BlockTransactionSelector {
+
+  private static final int EXTRA_REF = 3;
+  private static final int ACCOUNT_BLOCKS_REF = 2;
+  // magic, account_addr, lt, prev_trans_hash, prev_trans_lt, now, outmsg_cnt, orig/end status
+  private static final int TRANSACTION_HEADER_BITS = 4 + 256 + 64 + 256 + 64 + 32 + 15 + 2 + 2;
+
+  private final BlockFilter filter;
+  private final Set<String> accounts; // "wc:hex" of the selected accounts
+
+  BlockTransactionSelector(BlockFilter filter) {
+    this.filter = filter;
+    if (filter.getAccounts() == null) {
+      this.accounts = null;
+    } else {
+      this.accounts = new HashSet<>();
+      for (Address address : filter.getAccounts()) {
+        accounts.add(key(address.wc, address.toBigInteger()));
+      }
+    }
+  }
+
+  /** @return false if the entry is a block that cannot contain exported data */
+  boolean matchesFilename(String filename) {
+    BlockId blockId = BlockLocationIndex.parseBlockFilename(filename);
+    return blockId == null || filter.matchesShard(blockId.getWorkchain(), blockId.shard);
+  }
+
+  /**
+   * Decodes the selected transactions of a block.
+   *
+   * @param block root cell of the block
+   * @param workchain workchain of the block
+   * @return selected transactions in account and lt order, empty if none
+   */
+  List<Transaction> selectTransactions(Cell block, int workchain) {
+    List<Transaction> result = new ArrayList<>();
+    CellSlice accountBlocks =
+        CellSlice.beginParse(block.getRefs().get(EXTRA_REF).getRefs().get(ACCOUNT_BLOCKS_REF));
+    if (!accountBlocks.loadBit()) {
+      return result; // no transactions
+    }
+    List<Node> accountNodes =
+        new TonHashMapAug(256)
+            .deserializeEdge(
+                CellSlice.beginParse(accountBlocks.loadRef()), 256, new BitString(256));
+    for (Node accountNode : accountNodes) {
+      BigInteger address = accountNode.getKey().readUint(256);
+      if (accounts != null && !accounts.contains(key(workchain, address))) {
+        continue;
+      }
+      CellSlice accountBlock = CellSlice.beginParse(accountNode.getValue());
+      CurrencyCollection.deserialize(accountBlock); // extra
+      accountBlock.skipBits(4 + 256); // acc_trans#5 account_addr
+      // the inline dictionary is followed by the state_update ref, which is not one of its forks
+      Cell transactions =
+          CellBuilder.beginCell()
+              .storeBitString(accountBlock.loadBits(accountBlock.getRestBits()))
+              .storeRefs(accountBlock.loadRefs(accountBlock.getRefsCount() - 1))
+              .endCell();
+      List<Node> transactionNodes =
+          new TonHashMapAug(64)
+              .deserializeEdge(CellSlice.beginParse(transactions), 64, new BitString(64));
+      for (Node transactionNode : transactionNodes) {
+        CellSlice value = CellSlice.beginParse(transactionNode.getValue());
+        CurrencyCollection.deserialize(value); // extra
+        Cell transaction = value.loadRef();
+        if (filter.getOpCodes() == null || hasOpCode(transaction)) {
+          result.add(Transaction.deserialize(CellSlice.beginParse(transaction)));
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Reads only the inbound and outbound messages of a transaction. */
+  private boolean hasOpCode(Cell transaction) {
+    CellSlice cs = CellSlice.beginParse(transaction);
+    cs.skipBits(TRANSACTION_HEADER_BITS);
+    CellSlice io = CellSlice.beginParse(cs.loadRef());
+    if (io.loadBit() && matchesOpCode(io.loadRef())) {
+      return true;
+    }
+    if (!io.loadBit()) {
+      return false; // no outbound messages
+    }
+    for (Node out :
+        new TonHashMap(15)
+            .deserializeEdge(CellSlice.beginParse(io.loadRef()), 15, new BitString(15))) {
+      if (matchesOpCode(out.getValue().getRefs().get(0))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean matchesOpCode(Cell messageCell) {
+    Cell body = Message.deserialize(CellSlice.beginParse(messageCell)).getBody();
+    if (body == null || body.getBits().getUsedBits() < 32) {
+      return false;
+    }
+    return filter.getOpCodes().contains(CellSlice.beginParse(body).preloadUint(32).longValue());
+  }
+
+  private static String key(int workchain, BigInteger hash) {
+    return workchain + ":" + hash.toString(16);
+  }
+}
@@ -0,0 +1,509 @@
+package org.ton.ton4j.exporter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.exporter.json.BlockJsonEncoder;
+import org.ton.ton4j.exporter.json.ByteArrayPool;
+import org.ton.ton4j.exporter.json.JsonByteWriter;
+import org.ton.ton4j.exporter.metrics.LatencyHistogram;
+import org.ton.ton4j.exporter.metrics.ThreadAllocation;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.PipelineConfig;
+import org.ton.ton4j.exporter.types.StageStatistics;
+import org.ton.ton4j.tlb.Block;
+
+/**
+ * Staged export pipeline: read entries &rarr; parse BoC &rarr; deserialize Block &rarr; encode
+ * line &rarr; write. Every stage has its own thread count and reads from a bounded queue, so the
+ * expensive stages (Block deserialization and JSON encoding) scale independently of package reading
+ * and blocks of one large package are spread over all workers instead of being processed by a
+ * single thread.
+ *
+ * <p>Lines are encoded as UTF-8 straight into pooled byte arrays by {@link BlockJsonEncoder}
+ * (or as hex for raw BoCs) and handed to the {@link Output} as {@link ByteBuffer}s, which return
+ * the arrays to the pool once written.
+ *
+ * <p>Reader threads take packages from a shared queue, largest first, so that the biggest packages
+ * do not become the tail of the run. A package is reported as completed once all its entries have
+ * left the pipeline.
+ *
+ * <p>Items are handed between stages with a bounded wait. If all threads of a stage die, or the
+ * pipeline is aborted, the pipeline is marked failed and upstream threads stop instead of blocking
+ * on a full queue forever. Packages that did not pass completely are not reported as completed.
+ *
+ * <p>Every stage records its per-item latency in a histogram and, where the JVM supports it, the
+ * heap bytes its threads allocate, so {@link #getStatistics()} shows which stage limits a run.
+ */
+@Slf4j
+class ExportPipeline {
+
+  /** Receives per-block and per-package outcomes, called from the pipeline threads. */
+  interface Listener {
+    void onBlockWritten();
+
+    void onNonBlock();
+
+    void onError(String blockKey, byte[] data, Throwable error);
+
+    void onPackageCompleted(
+        String archiveKey, ArchiveInfo archiveInfo, int parsedBlocks, int nonBlocks, long elapsedMs);
+  }
+
+  /** Destination of the encoded lines, called from the writer threads. */
+  @FunctionalInterface
+  interface Output {
+    void writeLine(String line);
+
+    /**
+     * Writes an encoded line. The default implementation decodes it to a string.
+     *
+     * @param line UTF-8 bytes of the line without line separator
+     * @param recycler must be called with the buffer once its content is no longer needed
+     */
+    default void writeLine(ByteBuffer line, Consumer<ByteBuffer> recycler) {
+      writeLine(StandardCharsets.UTF_8.decode(line.duplicate()).toString());
+      recycler.accept(line);
+    }
+  }
+
+  @FunctionalInterface
+  private interface StageFunction {
+    /** @return the item for the next stage, or null if the entry is not a block */
+    Item apply(Item item) throws Exception;
+  }
+
+  private static final Item END = new Item(null, null, null);
+  private static final BlockJsonEncoder encoder = new BlockJsonEncoder(Exporter.gson);
+  private static final ThreadLocal<JsonByteWriter> jsonWriters =
+      ThreadLocal.withInitial(() -> new JsonByteWriter(0));
+  private static final int POOLED_BUFFERS = 256;
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;
+  private static final long OFFER_TIMEOUT_MS = 100;
+
+  private final PipelineConfig config;
+  private final boolean deserialized;
+  private final Listener listener;
+  private final BooleanSupplier shutdownRequested;
+  private final ByteArrayPool bufferPool =
+      new ByteArrayPool(POOLED_BUFFERS, INITIAL_BUFFER_SIZE, MAX_POOLED_BUFFER_SIZE);
+  private final ConcurrentLinkedQueue<PackageTask> packages = new ConcurrentLinkedQueue<>();
+  private final List<Stage> stages = new ArrayList<>();
+  private final LongAdder readEntries = new LongAdder();
+  private final LongAdder readBusyNanos = new LongAdder();
+  private final LongAdder readBytes = new LongAdder();
+  private final LongAdder readAllocatedBytes = new LongAdder();
+  private final LatencyHistogram readLatency = new LatencyHistogram();
+  private final LongAdder writtenBytes = new LongAdder();
+  private final AtomicInteger runningReaders = new AtomicInteger();
+  private volatile ExecutorService executor;
+  private volatile boolean failed;
+  private long startTime;
+
+  /**
+   * @param config stage thread counts and queue capacity
+   * @param deserialized whether blocks are deserialized and exported as JSON
+   * @param output receives output lines, must be thread-safe if more than one writer thread is used
+   * @param listener receives outcomes
+   * @param shutdownRequested checked before a package is started
+   */
+  ExportPipeline(
+      PipelineConfig config,
+      boolean deserialized,
+      Output output,
+      Listener listener,
+      BooleanSupplier shutdownRequested) {
+    this.config = config;
+    this.deserialized = deserialized;
+    this.listener = listener;
+    this.shutdownRequested = shutdownRequested;
+
+    stages.add(new Stage("boc", config.getBocThreads(), this::parseBoc));
+    if (deserialized) {
+      stages.add(new Stage("deserialize", config.getDeserializeThreads(), this::deserializeBlock));
+    }
+    stages.add(new Stage("encode", config.getEncodeThreads(), this::encode));
+    stages.add(
+        new Stage(
+            "write",
+            config.getWriterThreads(),
+            item -> {
+              writtenBytes.add(item.encoded.remaining());
+              output.writeLine(item.encoded, line -> releaseEncoded(item));
+              return item;
+            }));
+    for (int i = 0; i < stages.size() - 1; i++) {
+      stages.get(i).next = stages.get(i + 1);
+    }
+  }
+
+  /**
+   * Starts the pipeline for the given packages.
+   *
+   * @return executor running all pipeline threads, terminates when the pipeline is drained
+   */
+  ExecutorService start(Map<String, ArchiveInfo> packagesToProcess) {
+    List<PackageTask> tasks = new ArrayList<>();
+    for (Map.Entry<String, ArchiveInfo> entry : packagesToProcess.entrySet()) {
+      tasks.add(new PackageTask(entry.getKey(), entry.getValue()));
+    }
+    tasks.sort(
+        Comparator.comparingLong((PackageTask task) -> task.archiveInfo.getPackageSize())
+            .reversed());
+    packages.addAll(tasks);
+
+    int readers = Math.max(1, config.getReaderThreads());
+    int totalThreads = readers;
+    for (Stage stage : stages) {
+      totalThreads += stage.threads;
+    }
+    AtomicInteger threadCounter = new AtomicInteger();
+    executor =
+        Executors.newFixedThreadPool(
+            totalThreads, r -> new Thread(r, "export-pipeline-" + threadCounter.incrementAndGet()));
+    startTime = System.nanoTime();
+
+    runningReaders.set(readers);
+    for (Stage stage : stages) {
+      stage.running.set(stage.threads);
+      for (int i = 0; i < stage.threads; i++) {
+        executor.submit(stage::run);
+      }
+    }
+    for (int i = 0; i < readers; i++) {
+      executor.submit(this::readPackages);
+    }
+    executor.shutdown();
+    return executor;
+  }
+
+  /**
+   * Waits until all packages passed the pipeline.
+   *
+   * @return true if the pipeline drained within the timeout
+   */
+  boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /** @return true if the pipeline was not started or all its threads have exited */
+  boolean isTerminated() {
+    ExecutorService running = executor;
+    return running == null || running.isTerminated();
+  }
+
+  /** Stops the pipeline without draining it, queued items are dropped. */
+  void abort() {
+    failed = true;
+    ExecutorService running = executor;
+    if (running != null) {
+      running.shutdownNow();
+    }
+  }
+
+  /** @return true if a stage died or the pipeline was aborted before it drained */
+  boolean isFailed() {
+    return failed;
+  }
+
+  /** @return throughput snapshot of all stages, starting with the reader stage */
+  List<StageStatistics> getStatistics() {
+    long elapsed = System.nanoTime() - startTime;
+    List<StageStatistics> result = new ArrayList<>();
+    result.add(
+        StageStatistics.builder()
+            .stage("read")
+            .threads(Math.max(1, config.getReaderThreads()))
+            .processed(readEntries.sum())
+            .queueSize(packages.size())
+            .busyNanos(readBusyNanos.sum())
+            .elapsedNanos(elapsed)
+            .bytes(readBytes.sum())
+            .allocatedBytes(ThreadAllocation.isSupported() ? readAllocatedBytes.sum() : -1)
+            .latencyBuckets(readLatency.snapshot())
+            .build());
+    for (Stage stage : stages) {
+      result.add(
+          StageStatistics.builder()
+              .stage(stage.name)
+              .threads(stage.threads)
+              .processed(stage.processed.sum())
+              .queueSize(stage.queue.size())
+              .busyNanos(stage.busyNanos.sum())
+              .elapsedNanos(elapsed)
+              .bytes(stage.next == null ? writtenBytes.sum() : 0)
+              .allocatedBytes(ThreadAllocation.isSupported() ? stage.allocatedBytes.sum() : -1)
+              .latencyBuckets(stage.latency.snapshot())
+              .build());
+    }
+    return result;
+  }
+
+  private void readPackages() {
+    Stage first = stages.get(0);
+    try {
+      PackageTask task;
+      while (!shutdownRequested.getAsBoolean()
+          && !failed
+          && (task = packages.poll()) != null) {
+        readPackage(task, first);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (runningReaders.decrementAndGet() == 0) {
+        first.signalEnd();
+      }
+    }
+  }
+
+  private void readPackage(PackageTask task, Stage first) throws InterruptedException {
+    task.startTime = System.currentTimeMillis();
+    long[] readStart = {System.nanoTime(), ThreadAllocation.currentThreadBytes()};
+    try {
+      PackageBlocks.forEachBlock(
+          task.archiveInfo.getPackagePath(),
+          (filename, data) -> {
+            long nanos = System.nanoTime() - readStart[0];
+            readBusyNanos.add(nanos);
+            readLatency.record(nanos);
+            readAllocatedBytes.add(ThreadAllocation.currentThreadBytes() - readStart[1]);
+            readBytes.add(data.length);
+            readEntries.increment();
+            String blockKey = Exporter.extractHashFromFilename(filename);
+            if (blockKey != null) {
+              task.pending.incrementAndGet();
+              put(first.queue, new Item(task, blockKey, data));
+            }
+            readStart[0] = System.nanoTime();
+            readStart[1] = ThreadAllocation.currentThreadBytes();
+          });
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception e) {
+      task.failed = true;
+      log.error("Unexpected error reading archive {}: {}", task.archiveKey, e.getMessage());
+    } finally {
+      task.release();
+    }
+  }
+
+  private Item parseBoc(Item item) {
+    Cell c = CellBuilder.beginCell().fromBoc(item.data).endCell();
+    // Check magic number after BOC parsing
+    long magic = c.getBits().preReadUint(32).longValue();
+    if (magic != 0x11ef55aaL) {
+      return null;
+    }
+    if (deserialized) {
+      item.cell = c;
+    }
+    return item;
+  }
+
+  private Item deserializeBlock(Item item) {
+    item.block = Block.deserialize(CellSlice.beginParse(item.cell));
+    item.cell = null;
+    return item;
+  }
+
+  private Item encode(Item item) {
+    JsonByteWriter out = jsonWriters.get().reset(bufferPool.acquire());
+    try {
+      if (deserialized) {
+        encoder.writeLine(item.block, out);
+        item.block = null;
+      } else {
+        // Write raw BOC in hex format - no deserialization needed
+        out.hex(item.data);
+      }
+    } catch (RuntimeException | Error e) {
+      bufferPool.release(out.array());
+      throw e;
+    }
+    item.encoded = out.toByteBuffer();
+    return item;
+  }
+
+  /** Returns the encoded line of an item to the pool, at most once. */
+  private void releaseEncoded(Item item) {
+    ByteBuffer encoded;
+    synchronized (item) {
+      encoded = item.encoded;
+      item.encoded = null;
+    }
+    if (encoded != null) {
+      bufferPool.release(encoded);
+    }
+  }
+
+  /**
+   * Hands an item to the next stage, waiting while its queue is full.
+   *
+   * @throws IllegalStateException if the pipeline failed, the item is not taken
+   */
+  private void put(BlockingQueue<Item> queue, Item item) throws InterruptedException {
+    while (!queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+      if (failed) {
+        throw new IllegalStateException("Export pipeline failed");
+      }
+    }
+  }
+
+  private final class Stage {
+    private final String name;
+    private final int threads;
+    private final StageFunction function;
+    private final BlockingQueue<Item> queue;
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private Stage next;
+
+    Stage(String name, int threads, StageFunction function) {
+      this.name = name;
+      this.threads = Math.max(1, threads);
+      this.function = function;
+      this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+    }
+
+    void run() {
+      boolean ended = false;
+      try {
+        while (true) {
+          Item item = queue.take();
+          if (item == END) {
+            ended = true;
+            break;
+          }
+          long start = System.nanoTime();
+          long allocationStart = ThreadAllocation.currentThreadBytes();
+          Item result;
+          try {
+            result = function.apply(item);
+          } catch (Throwable e) {
+            log.debug("Error parsing block {}: {}", item.blockKey, e.getMessage());
+            releaseEncoded(item);
+            listener.onError(item.blockKey, item.data, e);
+            record(start, allocationStart);
+            item.task.release();
+            continue;
+          }
+          record(start, allocationStart);
+
+          if (result == null) {
+            listener.onNonBlock();
+            item.task.nonBlocks.incrementAndGet();
+            item.task.release();
+          } else if (next != null) {
+            try {
+              put(next.queue, result);
+            } catch (IllegalStateException e) {
+              releaseEncoded(result);
+              break;
+            }
+          } else {
+            listener.onBlockWritten();
+            item.task.parsedBlocks.incrementAndGet();
+            item.task.release();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException | Error e) {
+        log.error("Export pipeline stage {} failed: {}", name, e.getMessage());
+      } finally {
+        if (!ended) {
+          // upstream must not wait for a stage that no longer takes items
+          failed = true;
+        }
+        if (running.decrementAndGet() == 0 && next != null) {
+          next.signalEnd();
+        }
+      }
+    }
+
+    private void record(long start, long allocationStart) {
+      long nanos = System.nanoTime() - start;
+      busyNanos.add(nanos);
+      latency.record(nanos);
+      allocatedBytes.add(ThreadAllocation.currentThreadBytes() - allocationStart);
+      processed.increment();
+    }
+
+    /** Tells every thread of this stage to exit once the queued items are processed. */
+    void signalEnd() {
+      try {
+        for (int i = 0; i < threads; i++) {
+          put(queue, END);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (IllegalStateException e) {
+        log.debug("Stage {} not signalled, export pipeline failed", name);
+      }
+    }
+  }
+
+  private final class PackageTask {
+    private final String archiveKey;
+    private final ArchiveInfo archiveInfo;
+    // the reader holds one reference until the whole package has been read
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicInteger parsedBlocks = new AtomicInteger();
+    private final AtomicInteger nonBlocks = new AtomicInteger();
+    private volatile boolean failed;
+    private volatile long startTime;
+
+    PackageTask(String archiveKey, ArchiveInfo archiveInfo) {
+      this.archiveKey = archiveKey;
+      this.archiveInfo = archiveInfo;
+    }
+
+    void release() {
+      if (pending.decrementAndGet() == 0 && !failed) {
+        listener.onPackageCompleted(
+            archiveKey,
+            archiveInfo,
+            parsedBlocks.get(),
+            nonBlocks.get(),
+            System.currentTimeMillis() - startTime);
+      }
+    }
+  }
+
+  private static final class Item {
+    private final PackageTask task;
+    private final String blockKey;
+    private final byte[] data;
+    private Cell cell;
+    private Block block;
+    private ByteBuffer encoded;
+
+    Item(PackageTask task, String blockKey, byte[] data) {
+      this.task = task;
+      this.blockKey = blockKey;
+      this.data = data;
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package org.ton.ton4j.exporter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.exporter.reader.BlockLocationIndex;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.BlockFilter;
+import org.ton.ton4j.exporter.types.ExportedBlock;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockId;
+import org.ton.ton4j.tlb.Transaction;
+
+/**
+ * Spliterator over the blocks of a set of packages, decoded by background threads as the stream is
+ * consumed. Decoded blocks are handed over through a bounded buffer: when the consumer is slower
+ * than the decoders, the decoders block, so at most {@code maxBufferedBlocks} blocks (plus one per
+ * decoder thread) are held in memory, regardless of the package sizes.
+ *
+ * <p>A package is reported as completed only after the consumer has accepted all of its blocks,
+ * which gives at-least-once delivery when an interrupted export is resumed.
+ *
+ * <p>With a {@link BlockFilter}, blocks of other shards are skipped by their entry name before
+ * they are parsed and are not counted. Blocks without selected transactions are counted as parsed
+ * but not emitted.
+ *
+ * <p>Splits share the buffer, so a parallel stream consumes blocks with up to {@code
+ * parallelThreads} threads. Blocks are not ordered.
+ */
+@Slf4j
+class ExportedBlockSpliterator implements Spliterator<ExportedBlock>, AutoCloseable {
+
+  /** Receives per-package outcomes and the end of the stream. */
+  interface Listener {
+    void onPackageCompleted(String archiveKey, int parsedBlocks, int nonBlocks, int errors);
+
+    /**
+     * Called once, when the stream is exhausted or closed.
+     *
+     * @param allPackagesCompleted true if every package was read and all its blocks consumed
+     */
+    void onFinished(boolean allPackagesCompleted);
+  }
+
+  private final Source source;
+
+  /**
+   * Starts decoding the given packages.
+   *
+   * @param packages packages to read, keyed by archive key
+   * @param deserialized whether Block objects are deserialized
+   * @param parallelThreads number of decoder threads, also the maximal number of splits
+   * @param maxBufferedBlocks capacity of the buffer between decoders and consumers
+   * @param listener receives outcomes
+   */
+  ExportedBlockSpliterator(
+      Map<String, ArchiveInfo> packages,
+      boolean deserialized,
+      int parallelThreads,
+      int maxBufferedBlocks,
+      Listener listener) {
+    this(packages, deserialized, parallelThreads, maxBufferedBlocks, null, listener);
+  }
+
+  /**
+   * Starts decoding the given packages.
+   *
+   * @param packages packages to read, keyed by archive key
+   * @param deserialized whether Block objects are deserialized, ignored by transaction filters
+   * @param parallelThreads number of decoder threads, also the maximal number of splits
+   * @param maxBufferedBlocks capacity of the buffer between decoders and consumers
+   * @param filter selects blocks and transactions, null for all blocks
+   * @param listener receives outcomes
+   */
+  ExportedBlockSpliterator(
+      Map<String, ArchiveInfo> packages,
+      boolean deserialized,
+      int parallelThreads,
+      int maxBufferedBlocks,
+      BlockFilter filter,
+      Listener listener) {
+    this.source =
+        new Source(packages, deserialized, parallelThreads, maxBufferedBlocks, filter, listener);
+  }
+
+  private ExportedBlockSpliterator(Source source) {
+    this.source = source;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super ExportedBlock> action) {
+    Object next;
+    try {
+      next = source.buffer.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    if (next == Source.END) {
+      // leave the marker for the other splits
+      source.buffer.offer(Source.END);
+      if (source.pendingPackages.get() == 0) {
+        source.finish();
+      }
+      return false;
+    }
+    DecodedBlock decoded = (DecodedBlock) next;
+    action.accept(decoded.block);
+    decoded.task.release();
+    return true;
+  }
+
+  @Override
+  public Spliterator<ExportedBlock> trySplit() {
+    if (source.splits.incrementAndGet() < source.decoderThreads) {
+      return new ExportedBlockSpliterator(source);
+    }
+    source.splits.decrementAndGet();
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return CONCURRENT | NONNULL;
+  }
+
+  /**
+   * Stops the decoder threads, blocks that were not consumed yet are dropped. Consumers waiting
+   * for the next block see the end of the stream.
+   */
+  @Override
+  public void close() {
+    source.closed = true;
+    source.decoders.shutdownNow();
+    // a decoder interrupted while handing over a block may still fill the freed slot
+    do {
+      source.buffer.clear();
+    } while (!source.buffer.offer(Source.END));
+    source.finish();
+  }
+
+  /** State shared by all splits. */
+  private static final class Source {
+    private static final Object END = new Object();
+
+    private final boolean deserialized;
+    private final BlockTransactionSelector selector;
+    private final boolean selectTransactions;
+    private final int decoderThreads;
+    private final Listener listener;
+    private final BlockingQueue<Object> buffer;
+    private final ConcurrentLinkedQueue<PackageTask> packages = new ConcurrentLinkedQueue<>();
+    private final ExecutorService decoders;
+    private final AtomicInteger runningDecoders = new AtomicInteger();
+    private final AtomicInteger pendingPackages = new AtomicInteger();
+    private final AtomicInteger failedPackages = new AtomicInteger();
+    private final AtomicInteger splits = new AtomicInteger();
+    private final AtomicBoolean finished = new AtomicBoolean();
+    private volatile boolean closed;
+
+    Source(
+        Map<String, ArchiveInfo> packagesToRead,
+        boolean deserialized,
+        int parallelThreads,
+        int maxBufferedBlocks,
+        BlockFilter filter,
+        Listener listener) {
+      this.deserialized = deserialized;
+      this.selector = filter == null ? null : new BlockTransactionSelector(filter);
+      this.selectTransactions = filter != null && filter.isTransactionFilter();
+      this.decoderThreads = Math.max(1, parallelThreads);
+      this.listener = listener;
+      this.buffer = new ArrayBlockingQueue<>(Math.max(1, maxBufferedBlocks));
+
+      List<PackageTask> tasks = new ArrayList<>();
+      for (Map.Entry<String, ArchiveInfo> entry : packagesToRead.entrySet()) {
+        tasks.add(new PackageTask(this, entry.getKey(), entry.getValue()));
+      }
+      // largest packages first, so they do not become the tail of the export
+      tasks.sort(
+          Comparator.comparingLong((PackageTask task) -> task.archiveInfo.getPackageSize())
+              .reversed());
+      packages.addAll(tasks);
+      pendingPackages.set(tasks.size());
+
+      AtomicInteger threadCounter = new AtomicInteger();
+      this.decoders =
+          Executors.newFixedThreadPool(
+              decoderThreads,
+              r -> {
+                Thread t = new Thread(r, "export-objects-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+              });
+      runningDecoders.set(decoderThreads);
+      for (int i = 0; i < decoderThreads; i++) {
+        decoders.submit(this::decodePackages);
+      }
+      decoders.shutdown();
+    }
+
+    private void decodePackages() {
+      try {
+        PackageTask task;
+        while (!closed && (task = packages.poll()) != null) {
+          decodePackage(task);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        if (runningDecoders.decrementAndGet() == 0 && !closed) {
+          try {
+            buffer.put(END);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    }
+
+    private void decodePackage(PackageTask task) throws InterruptedException {
+      String archiveKey = task.archiveKey;
+      try {
+        PackageBlocks.forEachBlock(
+            task.archiveInfo.getPackagePath(),
+            (filename, data) -> {
+              if (Exporter.extractHashFromFilename(filename) == null) {
+                return;
+              }
+              if (selector != null && !selector.matchesFilename(filename)) {
+                return;
+              }
+              ExportedBlock block = decode(task, filename, data);
+              if (block != null) {
+                task.parsedBlocks.incrementAndGet();
+                if (block.getTransactions() != null && block.getTransactions().isEmpty()) {
+                  return;
+                }
+                task.pending.incrementAndGet();
+                buffer.put(new DecodedBlock(task, block));
+              }
+            });
+      } catch (InterruptedException e) {
+        throw e;
+      } catch (Throwable e) {
+        task.failed = true;
+        log.warn("Error reading blocks from archive {}: {}", archiveKey, e.getMessage());
+      } finally {
+        task.release();
+      }
+    }
+
+    private ExportedBlock decode(PackageTask task, String filename, byte[] data) {
+      try {
+        Cell c = CellBuilder.beginCell().fromBoc(data).endCell();
+        long magic = c.getBits().preReadUint(32).longValue();
+        if (magic != 0x11ef55aaL) {
+          task.nonBlocks.incrementAndGet();
+          return null;
+        }
+
+        if (selectTransactions) {
+          BlockId blockId = BlockLocationIndex.parseBlockFilename(filename);
+          int workchain;
+          if (blockId != null) {
+            workchain = blockId.getWorkchain();
+          } else {
+            Block block = Block.deserialize(CellSlice.beginParse(c));
+            workchain = block.getBlockInfo().getShard().getWorkchain();
+          }
+          List<Transaction> transactions = selector.selectTransactions(c, workchain);
+          return ExportedBlock.builder()
+              .archiveKey(task.archiveKey)
+              .blockKey(filename)
+              .rawData(data)
+              .transactions(transactions)
+              .build();
+        }
+
+        Block deserializedBlock = null;
+        if (deserialized) {
+          try {
+            deserializedBlock = Block.deserialize(CellSlice.beginParse(c));
+          } catch (Throwable e) {
+            log.info("Error deserializing block {}: {}", filename, e.getMessage());
+            task.errors.incrementAndGet();
+            // Continue with null deserializedBlock
+          }
+        }
+
+        return ExportedBlock.builder()
+            .archiveKey(task.archiveKey)
+            .blockKey(filename)
+            .rawData(data)
+            .deserializedBlock(deserializedBlock)
+            .isDeserialized(deserialized && deserializedBlock != null)
+            .build();
+      } catch (Throwable e) {
+        log.debug("Error processing block {}: {}", filename, e.getMessage());
+        task.errors.incrementAndGet();
+        return null;
+      }
+    }
+
+    private void packageCompleted(PackageTask task) {
+      if (task.failed) {
+        failedPackages.incrementAndGet();
+      } else {
+        listener.onPackageCompleted(
+            task.archiveKey, task.parsedBlocks.get(), task.nonBlocks.get(), task.errors.get());
+      }
+      if (pendingPackages.decrementAndGet() == 0) {
+        finish();
+      }
+    }
+
+    private void finish() {
+      if (finished.compareAndSet(false, true)) {
+        listener.onFinished(!closed && pendingPackages.get() == 0 && failedPackages.get() == 0);
+      }
+    }
+  }
+
+  private static final class PackageTask {
+    private final Source source;
+    private final String archiveKey;
+    private final ArchiveInfo archiveInfo;
+    // the decoder holds one reference until the whole package has been read
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicInteger parsedBlocks = new AtomicInteger();
+    private final AtomicInteger nonBlocks = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile boolean failed;
+
+    PackageTask(Source source, String archiveKey, ArchiveInfo archiveInfo) {
+      this.source = source;
+      this.archiveKey = archiveKey;
+      this.archiveInfo = archiveInfo;
+    }
+
+    void release() {
+      if (pending.decrementAndGet() == 0) {
+        source.packageCompleted(this);
+      }
+    }
+  }
+
+  private static final class DecodedBlock {
+    private final PackageTask task;
+    private final ExportedBlock block;
+
+    DecodedBlock(PackageTask task, ExportedBlock block) {
+      this.task = task;
+      this.block = block;
+    }
+  }
+}
@@ -16,19 +16,27 @@ import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.time.StopWatch;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.LoggerFactory;
 import org.ton.ton4j.address.Address;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.*;
+import org.ton.ton4j.exporter.columnar.BlockRowsWriter;
+import org.ton.ton4j.exporter.lazy.AccountPathMemo;
 import org.ton.ton4j.exporter.lazy.CellSliceLazy;
+import org.ton.ton4j.exporter.lazy.CellTreeAnalyzer;
 import org.ton.ton4j.exporter.lazy.ShardAccountLazy;
+import org.ton.ton4j.exporter.lazy.ShardAccountsDiff;
+import org.ton.ton4j.exporter.lazy.ShardAccountsLazy;
 import org.ton.ton4j.exporter.lazy.ShardStateUnsplitLazy;
+import org.ton.ton4j.exporter.metrics.PipelineMetrics;
 import org.ton.ton4j.exporter.reader.*;
 import org.ton.ton4j.exporter.types.*;
 import org.ton.ton4j.tl.types.db.block.BlockIdExt;
@@ -40,12 +48,13 @@ import org.ton.ton4j.tl.types.db.files.index.IndexValue;
 import org.ton.ton4j.tl.types.db.lt.desc.DbLtDescKey;
 import org.ton.ton4j.tlb.Block;
 import org.ton.ton4j.tlb.BlockId;
+import org.ton.ton4j.tlb.Transaction;
 import org.ton.ton4j.tlb.adapters.*;
 import org.ton.ton4j.utils.Utils;
 
 @Builder
 @Slf4j
-public class Exporter {
+public class Exporter implements Closeable {
 
   // Optimized static GSON instance - single shared instance for all threads
   // No thread-local instances needed since GSON is thread-safe for serialization
@@ -63,14 +72,7 @@ public class Exporter {
           //          .setLenient()
           .create();
 
-  /** Functional interface for abstracting output writing operations */
-  @FunctionalInterface
-  private interface OutputWriter {
-    void writeLine(String line);
-  }
-
   // Volatile reference to current executor services for shutdown coordination
-  private volatile ExecutorService currentProcessingExecutor;
   private volatile ExecutorService currentWriterExecutor;
   private volatile ScheduledExecutorService currentRateDisplayExecutor;
   // Shutdown signal to stop processing new packages
@@ -90,7 +92,57 @@ public class Exporter {
   /** whether to show blocks' reading progress every second, default false */
   private Boolean showProgress;
 
-  private static DbReader dbReader;
+  /**
+   * thread layout of the export pipeline used by exportToFile and exportToStdout, derived from
+   * parallelThreads if not set
+   */
+  private PipelineConfig pipelineConfig;
+
+  /**
+   * compression, rotation and fsync settings of exportToFile, uncompressed single file without
+   * fsync if not set
+   */
+  private FileWriterConfig fileWriterConfig;
+
+  /**
+   * JMX and Prometheus publishing of the per-stage metrics of exportToFile and exportToStdout,
+   * nothing is published if not set
+   */
+  private MetricsConfig metricsConfig;
+
+  /**
+   * block location index created by buildBlockLocationIndex, used by getBlock before falling back
+   * to the archive index databases
+   */
+  private String blockLocationIndexPath;
+
+  /**
+   * file that keeps the list of archive packages between starts, so that only archive directories
+   * changed since then are scanned; all directories are scanned if not set
+   */
+  private String packageCatalogPath;
+
+  /**
+   * long-lived database readers used by getShardAccountByAddress, getBalance, getLast and
+   * getLastBlockIdExt instead of opening RocksDB per call, closed by the caller
+   */
+  private DbReaderSession readerSession;
+
+  /** interval between asynchronous export status checkpoints of exportToObjects, default 5000 */
+  private Long statusCheckpointIntervalMs;
+
+  // Pipeline of the running export, used to report per-stage throughput
+  private volatile ExportPipeline currentPipeline;
+
+  // Opened on first use of blockLocationIndexPath
+  private volatile BlockLocationIndex blockLocationIndex;
+
+  // Shard blocks referenced by recently routed masterchain blocks, created on first use
+  private volatile Map<Long, List<org.ton.ton4j.tlb.BlockIdExt>> shardRouting;
+
+  private static final int SHARD_ROUTING_CACHE_SIZE = 4096;
+
+  private static final int DEFAULT_MAX_BUFFERED_BLOCKS = 1000;
 
   public static class ExporterBuilder {}
 
@@ -110,6 +162,10 @@ public class Exporter {
         super.showProgress = false;
       }
 
+      if (isNull(super.statusCheckpointIntervalMs)) {
+        super.statusCheckpointIntervalMs = 5000L;
+      }
+
       Exporter exporter = super.build();
 
       // Initialize statistics tracking fields
@@ -197,6 +253,27 @@ public class Exporter {
     return totalBlocks > 0 ? (double) totalErrors.get() / totalBlocks * 100.0 : 0.0;
   }
 
+  /**
+   * Gets per-stage throughput of the running (or last) exportToFile/exportToStdout export.
+   *
+   * @return stage statistics, starting with the reader stage, or an empty list if no export ran
+   */
+  public List<StageStatistics> getPipelineStatistics() {
+    ExportPipeline pipeline = currentPipeline;
+    return pipeline == null ? Collections.emptyList() : pipeline.getStatistics();
+  }
+
+  /**
+   * Gets the per-stage metrics of the running (or last) exportToFile/exportToStdout export in the
+   * Prometheus text format: item and byte counters, queue sizes, latency histograms, allocated
+   * bytes per stage, GC counts and times.
+   *
+   * @return metrics text, without stage metrics if no export ran
+   */
+  public String getPipelineMetrics() {
+    return PipelineMetrics.toPrometheus(getPipelineStatistics());
+  }
+
   /**
    * Signals shutdown and waits for all currently running executor services to finish. This method
    * is called by the shutdown hook to ensure clean termination.
@@ -206,16 +283,15 @@ public class Exporter {
     shutdownRequested = true;
     log.info("Shutdown signal sent to all worker threads...");
 
-    // Shutdown processing executor
-    ExecutorService processingExecutor = currentProcessingExecutor;
-    if (processingExecutor != null && !processingExecutor.isShutdown()) {
+    // Wait for the export pipeline to drain the packages already started
+    ExportPipeline pipeline = currentPipeline;
+    if (pipeline != null && !pipeline.isTerminated()) {
       log.info("Waiting for processing threads to finish current packages...");
-      processingExecutor.shutdown();
       try {
-        if (!processingExecutor.awaitTermination(15, TimeUnit.SECONDS)) {
+        if (!pipeline.awaitCompletion(15, TimeUnit.SECONDS)) {
           log.warn("Processing threads did not finish within 15 seconds, forcing shutdown...");
-          processingExecutor.shutdownNow();
-          if (!processingExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+          pipeline.abort();
+          if (!pipeline.awaitCompletion(5, TimeUnit.SECONDS)) {
             log.error("Processing threads did not respond to forced shutdown");
           }
         } else {
@@ -223,7 +299,7 @@ public class Exporter {
         }
       } catch (InterruptedException e) {
         log.warn("Interrupted while waiting for processing threads to finish");
-        processingExecutor.shutdownNow();
+        pipeline.abort();
         Thread.currentThread().interrupt();
       }
     }
@@ -293,6 +369,7 @@ public class Exporter {
   /**
    * Common export logic that handles database reading and block processing with state persistence
    *
+   * @param reader lists the archive packages, closed by the caller
    * @param outputWriter strategy for writing output lines
    * @param deserialized if true - deserialized Block TL-B object will be saved as json string,
    *     otherwise boc in hex format will be stored in a single line
@@ -302,7 +379,8 @@ public class Exporter {
    * @param errorFilePath path to the errors.txt file where error block data will be written
    */
   private void exportDataWithStatus(
-      OutputWriter outputWriter,
+      DbReader reader,
+      ExportPipeline.Output outputWriter,
       boolean deserialized,
       int parallelThreads,
       boolean showProgressInfo,
@@ -310,16 +388,11 @@ public class Exporter {
       String errorFilePath)
       throws IOException {
 
-    // Reuse existing dbReader if available, otherwise create new one
-    if (dbReader == null) {
-      dbReader = new DbReader(tonDatabaseRootPath);
-    }
-
     //    if (dbReader.getArchiveDbReader() == null) {
     //      throw new IOException("ArchiveDbReader is not initialized");
     //    }
 
-    Map<String, ArchiveInfo> packFiles = dbReader.getAllPackFiles();
+    Map<String, ArchiveInfo> packFiles = reader.getAllPackFiles();
     if (packFiles == null) {
       throw new IOException("Archive infos map is null");
     }
@@ -340,12 +413,65 @@ public class Exporter {
 
     long startTime = System.currentTimeMillis();
 
-    ExecutorService executor = Executors.newFixedThreadPool(parallelThreads);
-    currentProcessingExecutor = executor; // Store reference for shutdown coordination
-    List<Future<Void>> futures = new ArrayList<>();
+    PipelineConfig config =
+        pipelineConfig != null
+            ? pipelineConfig
+            : PipelineConfig.forThreads(parallelThreads, deserialized);
+    ExportPipeline pipeline =
+        new ExportPipeline(
+            config,
+            deserialized,
+            outputWriter,
+            new ExportPipeline.Listener() {
+              @Override
+              public void onBlockWritten() {
+                parsedBlocksCounter.incrementAndGet();
+                sessionParsedBlocks.incrementAndGet(); // Track session blocks for rate calculation
+                totalParsedBlocks.incrementAndGet();
+              }
+
+              @Override
+              public void onNonBlock() {
+                nonBlocksCounter.incrementAndGet();
+                totalNonBlocks.incrementAndGet();
+              }
 
-    // Phase 2: Track processed blocks for reset mechanism
-    AtomicInteger globalProcessedBlocks = new AtomicInteger(0);
+              @Override
+              public void onError(String blockKey, byte[] data, Throwable error) {
+                errorCounter.incrementAndGet();
+                totalErrors.incrementAndGet();
+                writeErrorBlock(errorFilePath, data);
+              }
+
+              @Override
+              public void onPackageCompleted(
+                  String archiveKey,
+                  ArchiveInfo archiveInfo,
+                  int parsedBlocks,
+                  int nonBlocks,
+                  long elapsedMs) {
+                exportStatus.markPackageProcessed(archiveKey, parsedBlocks, nonBlocks);
+                StatusManager.getInstance().saveStatus(exportStatus);
+
+                if (showProgressInfo) {
+                  System.out.printf(
+                      "progress: %5.1f%%, package %6d/%d, size %7dkb, blocks %6d, elapsed %6dms - %s %n",
+                      exportStatus.getProgressPercentage(),
+                      exportStatus.getProcessedCount(),
+                      exportStatus.getTotalPackages(),
+                      archiveInfo.getPackageSize() / 1024,
+                      parsedBlocks,
+                      elapsedMs,
+                      archiveKey);
+                }
+              }
+            },
+            () -> shutdownRequested);
+    currentPipeline = pipeline;
+    PipelineMetrics metrics =
+        metricsConfig == null
+            ? null
+            : PipelineMetrics.start(metricsConfig, pipeline::getStatistics);
 
     // Create a separate thread for periodic rate display
     ScheduledExecutorService rateDisplayExecutor;
@@ -391,6 +517,7 @@ public class Exporter {
                     elapsedSeconds,
                     progressPercentage,
                     timeRemainingStr);
+                printStageStatistics(pipeline.getStatistics());
               }
             } catch (Exception e) {
               System.out.println("DEBUG: CRITICAL ERROR in scheduler thread: " + e.getMessage());
@@ -403,14 +530,9 @@ public class Exporter {
           TimeUnit.SECONDS);
     }
 
+    Map<String, ArchiveInfo> packagesToProcess = new LinkedHashMap<>();
     for (Map.Entry<String, ArchiveInfo> entry : packFiles.entrySet()) {
-      if (shutdownRequested) {
-        log.info("Shutdown requested, stopping submission of new packages");
-        break;
-      }
-
       String archiveKey = entry.getKey();
-      ArchiveInfo archiveInfo = entry.getValue();
 
       if (exportStatus.isPackageProcessed(archiveKey)) {
         if (showProgressInfo) {
@@ -418,61 +540,28 @@ public class Exporter {
         }
         continue;
       }
+      packagesToProcess.put(archiveKey, entry.getValue());
+    }
 
-      Future<Void> future =
-          executor.submit(
-              () -> {
-                StopWatch stopWatch = new StopWatch();
-                stopWatch.start();
-                if (shutdownRequested) {
-                  return null;
-                }
-                try {
-                  int localParsedBlocks = 0;
-                  int localNonBlocks = 0;
-                  localParsedBlocks =
-                      processFilesPackageInMemory(
-                          archiveKey,
-                          archiveInfo,
-                          outputWriter,
-                          deserialized,
-                          errorFilePath,
-                          parsedBlocksCounter,
-                          nonBlocksCounter,
-                          errorCounter,
-                          sessionParsedBlocks);
-
-                  // Mark package as processed (optimized to avoid synchronized file I/O)
-                  exportStatus.markPackageProcessed(archiveKey, localParsedBlocks, localNonBlocks);
-
-                  StatusManager.getInstance().saveStatus(exportStatus);
-
-                  if (showProgressInfo) {
-                    System.out.printf(
-                        "progress: %5.1f%%, package %6d/%d, size %7dkb, blocks %6d, elapsed %6dms - %s %n",
-                        exportStatus.getProgressPercentage(),
-                        exportStatus.getProcessedCount(),
-                        exportStatus.getTotalPackages(),
-                        entry.getValue().getPackageSize() / 1024,
-                        localParsedBlocks,
-                        stopWatch.getTime(),
-                        archiveKey);
-                  }
-                } catch (Exception e) {
-                  log.error("Unexpected error reading archive {}: {}", archiveKey, e.getMessage());
-                }
-
-                return null;
-              });
-      futures.add(future);
+    if (showProgressInfo) {
+      log.info("Export pipeline: {}", config);
     }
 
-    // Wait for all tasks to complete
-    for (Future<Void> future : futures) {
-      try {
-        future.get();
-      } catch (Exception e) {
-        log.error("Error waiting for archive reading task: {}", e.getMessage());
+    // Stage threads exit once all packages have passed the pipeline
+    pipeline.start(packagesToProcess);
+    try {
+      while (!pipeline.awaitCompletion(1, TimeUnit.MINUTES)) {
+        log.debug("Waiting for export pipeline to drain");
+      }
+      if (pipeline.isFailed()) {
+        log.error("Export pipeline failed, unfinished packages are exported again on resume");
+      }
+    } catch (InterruptedException e) {
+      pipeline.abort();
+      Thread.currentThread().interrupt();
+    } finally {
+      if (metrics != null) {
+        metrics.close();
       }
     }
 
@@ -481,20 +570,6 @@ public class Exporter {
     double durationSeconds = durationMs / 1000.0;
     double blocksPerSecond = parsedBlocksCounter.get() / durationSeconds;
 
-    // PerformanceProfiler completely disabled to eliminate atomic contention
-    // globalProfiler.recordWallClockEnd();
-
-    // Shutdown executor
-    executor.shutdown();
-    try {
-      if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
-        executor.shutdownNow();
-      }
-    } catch (InterruptedException e) {
-      executor.shutdownNow();
-      Thread.currentThread().interrupt();
-    }
-
     // Shutdown rate display executor properly
     ScheduledExecutorService rateExecutor = currentRateDisplayExecutor;
     if (rateExecutor != null && !rateExecutor.isShutdown()) {
@@ -541,8 +616,9 @@ public class Exporter {
     System.out.printf(
         "Total duration: %.1fs, speed: %.2f blocks per second, blocks %s%n",
         durationSeconds, blocksPerSecond, parsedBlocksCounter.get());
-
-    dbReader.close();
+    if (showProgressInfo) {
+      printStageStatistics(pipeline.getStatistics());
+    }
 
     // Update total statistics for potential access during interruption
     totalParsedBlocks.set(parsedBlocksCounter.get());
@@ -566,6 +642,15 @@ public class Exporter {
       throw new Error("outputToFile is empty");
     }
 
+    FileWriterConfig writerConfig =
+        fileWriterConfig != null
+            ? fileWriterConfig
+            : FileWriterConfig.builder()
+                .queueCapacity(5000)
+                .bufferSize(256 * 1024)
+                .flushInterval(1000) // Flush every 1000 lines
+                .build();
+
     // Check for existing status and resume if possible
     ExportStatus exportStatus = StatusManager.getInstance().loadStatus();
     boolean isResume = false;
@@ -581,7 +666,7 @@ public class Exporter {
         File outputFile = new File(outputToFile);
         File absoluteOutputFile = outputFile.getAbsoluteFile();
 
-        if (absoluteOutputFile.exists() && absoluteOutputFile.length() > 0) {
+        if (AsyncFileWriter.hasOutput(absoluteOutputFile.getPath(), writerConfig)) {
           log.info(
               "Resuming export from previous session. Progress: {}% ({}/{}), file size: {} bytes",
               exportStatus.getProgressPercentage(),
@@ -604,34 +689,45 @@ public class Exporter {
       }
     }
 
-    // Create new status if not resuming
-    if (exportStatus == null) {
-      // Get total packages count - reuse dbReader to avoid duplicate scanning
-      if (dbReader == null) {
-        dbReader = new DbReader(tonDatabaseRootPath);
-      }
-      long totalPackages = dbReader.getAllPackFiles().size();
-      // Don't close dbReader here as we'll reuse it in exportDataWithStatus
-
-      exportStatus =
-          StatusManager.getInstance()
-              .createNewStatus(totalPackages, "file", outputToFile, deserialized, parallelThreads);
-      StatusManager.getInstance().saveStatus(exportStatus);
-      log.info("Starting new export to file: {}", outputToFile);
-    }
-
     File outputFile = new File(outputToFile);
     String errorFilePath = new File(outputFile.getParent(), "errors.txt").getAbsolutePath();
 
-    try (AsyncFileWriter asyncWriter =
-        new AsyncFileWriter(
-            outputToFile, isResume, 5000, 256 * 1024, 1000)) { // Flush every 1000 lines
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath);
+        AsyncFileWriter asyncWriter = new AsyncFileWriter(outputToFile, isResume, writerConfig)) {
+
+      // Create new status if not resuming, the reader is reused by exportDataWithStatus
+      if (exportStatus == null) {
+        long totalPackages = reader.getAllPackFiles().size();
+        exportStatus =
+            StatusManager.getInstance()
+                .createNewStatus(
+                    totalPackages, "file", outputToFile, deserialized, parallelThreads);
+        StatusManager.getInstance().saveStatus(exportStatus);
+        log.info("Starting new export to file: {}", outputToFile);
+      }
 
-      // Create output writer using AsyncFileWriter
-      OutputWriter outputWriter = asyncWriter::writeLine;
+      // Create output writer using AsyncFileWriter, encoded lines are written without copying
+      ExportPipeline.Output outputWriter =
+          new ExportPipeline.Output() {
+            @Override
+            public void writeLine(String line) {
+              asyncWriter.writeLine(line);
+            }
+
+            @Override
+            public void writeLine(ByteBuffer line, Consumer<ByteBuffer> recycler) {
+              asyncWriter.writeLine(line, recycler);
+            }
+          };
 
       exportDataWithStatus(
-          outputWriter, deserialized, parallelThreads, showProgress, exportStatus, errorFilePath);
+          reader,
+          outputWriter,
+          deserialized,
+          parallelThreads,
+          showProgress,
+          exportStatus,
+          errorFilePath);
     }
   }
 
@@ -661,31 +757,43 @@ public class Exporter {
       }
     }
 
-    // Create new status if not resuming
-    if (exportStatus == null) {
-      // Get total packages count - reuse dbReader to avoid duplicate scanning
-      if (dbReader == null) {
-        dbReader = new DbReader(tonDatabaseRootPath);
-      }
-      long totalPackages = dbReader.getAllPackFiles().size();
-      // Don't close dbReader here as we'll reuse it in exportDataWithStatus
+    ExportPipeline.Output stdoutWriter =
+        new ExportPipeline.Output() {
+          @Override
+          public void writeLine(String line) {
+            System.out.println(line);
+          }
 
-      exportStatus =
-          StatusManager.getInstance()
-              .createNewStatus(totalPackages, "stdout", null, deserialized, parallelThreads);
-      StatusManager.getInstance().saveStatus(exportStatus);
-      log.info("Starting new export to stdout");
-    }
+          @Override
+          public void writeLine(ByteBuffer line, Consumer<ByteBuffer> recycler) {
+            synchronized (System.out) {
+              System.out.write(line.array(), line.arrayOffset() + line.position(), line.remaining());
+              System.out.println();
+            }
+            recycler.accept(line);
+          }
+        };
 
-    // Disable logging for stdout export to avoid interference with output
     LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
-    for (Logger logger : loggerContext.getLoggerList()) {
-      logger.setLevel(Level.OFF);
-    }
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath)) {
+      // Create new status if not resuming, the reader is reused by exportDataWithStatus
+      if (exportStatus == null) {
+        long totalPackages = reader.getAllPackFiles().size();
+        exportStatus =
+            StatusManager.getInstance()
+                .createNewStatus(totalPackages, "stdout", null, deserialized, parallelThreads);
+        StatusManager.getInstance().saveStatus(exportStatus);
+        log.info("Starting new export to stdout");
+      }
 
-    OutputWriter stdoutWriter = System.out::println;
+      // Disable logging for stdout export to avoid interference with output
+      for (Logger logger : loggerContext.getLoggerList()) {
+        logger.setLevel(Level.OFF);
+      }
 
-    exportDataWithStatus(stdoutWriter, deserialized, parallelThreads, false, exportStatus, null);
+      exportDataWithStatus(
+          reader, stdoutWriter, deserialized, parallelThreads, false, exportStatus, null);
+    }
 
     for (Logger logger : loggerContext.getLoggerList()) {
       logger.setLevel(Level.INFO);
@@ -704,13 +812,58 @@ public class Exporter {
    */
   public Stream<ExportedBlock> exportToObjects(boolean deserialized, int parallelThreads)
       throws IOException {
+    return exportToObjects(deserialized, parallelThreads, DEFAULT_MAX_BUFFERED_BLOCKS);
+  }
+
+  /**
+   * Export blocks to a Stream of ExportedBlock objects. Blocks are decoded in the background while
+   * the stream is consumed and handed over through a bounded buffer, so a slow consumer throttles
+   * decoding instead of letting decoded blocks accumulate. The export status is checkpointed
+   * asynchronously every statusCheckpointIntervalMs; a package counts as processed once all its
+   * blocks have been consumed. Close the stream to stop decoding early.
+   *
+   * @param deserialized if true - Block objects will be deserialized, otherwise only raw data is
+   *     available
+   * @param parallelThreads number of threads decoding packages, also the maximal parallelism of
+   *     parallelStream() consumers
+   * @param maxBufferedBlocks maximal number of decoded blocks waiting to be consumed
+   * @return Stream of ExportedBlock objects
+   * @throws IOException if there's an error reading the database
+   */
+  public Stream<ExportedBlock> exportToObjects(
+      boolean deserialized, int parallelThreads, int maxBufferedBlocks) throws IOException {
+    return exportToObjects(deserialized, parallelThreads, maxBufferedBlocks, null);
+  }
+
+  /**
+   * Export the blocks selected by a filter to a Stream of ExportedBlock objects, see {@link
+   * #exportToObjects(boolean, int, int)}. Blocks of other workchains and shards are skipped before
+   * they are parsed. If the filter selects accounts or op codes, only blocks with matching
+   * transactions are emitted; their Block is not deserialized, instead {@link
+   * ExportedBlock#getTransactions()} holds the matching transactions.
+   *
+   * @param deserialized if true - Block objects of blocks selected by workchain or shard will be
+   *     deserialized
+   * @param parallelThreads number of threads decoding packages, also the maximal parallelism of
+   *     parallelStream() consumers
+   * @param maxBufferedBlocks maximal number of decoded blocks waiting to be consumed
+   * @param filter selects blocks and transactions, null for all blocks
+   * @return Stream of ExportedBlock objects
+   * @throws IOException if there's an error reading the database
+   */
+  public Stream<ExportedBlock> exportToObjects(
+      boolean deserialized, int parallelThreads, int maxBufferedBlocks, BlockFilter filter)
+      throws IOException {
+
+    // a resumed export must use the same filter
+    String exportType = filter == null ? "objects" : "objects " + filter.digest();
 
     // Check for existing status and resume if possible
     ExportStatus exportStatus = StatusManager.getInstance().loadStatus();
 
     if (exportStatus != null && !exportStatus.isCompleted()) {
       // Validate that the resume parameters match
-      if ("objects".equals(exportStatus.getExportType())
+      if (exportType.equals(exportStatus.getExportType())
           && deserialized == exportStatus.isDeserialized()
           && parallelThreads == exportStatus.getParallelThreads()) {
 
@@ -726,138 +879,69 @@ public class Exporter {
       }
     }
 
-    dbReader = new DbReader(tonDatabaseRootPath);
-
-    // Get all archive entries
-    Map<String, ArchiveInfo> archiveInfos = dbReader.getAllPackFiles();
+    // Get all archive entries, the packages are read by their paths
+    Map<String, ArchiveInfo> archiveInfos;
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath)) {
+      archiveInfos = reader.getAllPackFiles();
+    }
 
     // Create new status if not resuming
     if (exportStatus == null) {
       long totalPackages = archiveInfos.size();
       exportStatus =
           StatusManager.getInstance()
-              .createNewStatus(totalPackages, "objects", null, deserialized, parallelThreads);
+              .createNewStatus(totalPackages, exportType, null, deserialized, parallelThreads);
       StatusManager.getInstance().saveStatus(exportStatus);
       log.info("Starting new export to objects stream");
     }
 
-    try {
-      // Create a stream of archive entries and process them in parallel
-      // Filter out already processed packages if resuming
-      final ExportStatus finalExportStatus = exportStatus;
-      Stream<ExportedBlock> blockStream =
-          archiveInfos.entrySet().stream()
-              .filter(
-                  entry ->
-                      !finalExportStatus.isPackageProcessed(
-                          entry.getKey())) // Skip processed packages
-              .flatMap(
-                  entry -> {
-                    String archiveKey = entry.getKey();
-                    ArchiveInfo archiveInfo = entry.getValue();
-
-                    try {
-                      //                      Map<String, byte[]> localBlocks = new HashMap<>();
-                      AtomicInteger localParsedBlocks = new AtomicInteger();
-                      AtomicInteger localNonBlocks = new AtomicInteger();
-                      List<ExportedBlock> exportedBlocks = new ArrayList<>();
-                      AtomicInteger localErrors = new AtomicInteger();
-
-                      try (PackageReader packageReader =
-                          new PackageReader(archiveInfo.getPackagePath())) {
-                        packageReader.forEachTyped(
-                            kv -> {
-                              String filename = kv.getFilename();
-                              if (filename.startsWith("block_")) {
-                                String blockKey = extractHashFromFilename(filename);
-                                if (blockKey != null) {
-                                  try {
-                                    Cell c = kv.getCell();
-                                    long magic = c.getBits().preReadUint(32).longValue();
-
-                                    if (magic == 0x11ef55aaL) {
-                                      Block deserializedBlock = null;
-
-                                      if (deserialized) {
-                                        try {
-                                          deserializedBlock =
-                                              Block.deserialize(CellSlice.beginParse(c));
-                                        } catch (Throwable e) {
-                                          log.info(
-                                              "Error deserializing block {}: {}",
-                                              kv.getFilename(),
-                                              e.getMessage());
-                                          localErrors.getAndIncrement();
-                                          // Continue with null deserializedBlock
-                                        }
-                                      }
-
-                                      ExportedBlock exportedBlock =
-                                          ExportedBlock.builder()
-                                              .archiveKey(archiveKey)
-                                              .blockKey(kv.getFilename())
-                                              .rawData(kv.getData())
-                                              .deserializedBlock(deserializedBlock)
-                                              .isDeserialized(
-                                                  deserialized && deserializedBlock != null)
-                                              .build();
-
-                                      exportedBlocks.add(exportedBlock);
-                                      localParsedBlocks.getAndIncrement();
-                                    } else {
-                                      localNonBlocks.getAndIncrement();
-                                    }
-                                  } catch (Throwable e) {
-                                    log.debug(
-                                        "Error processing block {}: {}",
-                                        kv.getFilename(),
-                                        e.getMessage());
-                                    localErrors.getAndIncrement();
-                                  }
-                                }
-                              }
-                            });
-                      }
-
-                      // Mark package as processed and save status synchronously
-                      finalExportStatus.markPackageProcessed(
-                          archiveKey,
-                          localParsedBlocks.get(),
-                          localNonBlocks.get(),
-                          localErrors.get());
-
-                      // Save status synchronously to ensure all packages are tracked
-                      try {
-                        StatusManager.getInstance().saveStatus(finalExportStatus);
-                      } catch (Exception e) {
-                        log.warn("Error saving export status: {}", e.getMessage());
-                      }
-
-                      if (showProgress) {
-                        System.out.printf(
-                            "progress: %5.1f%% %6d/%d archive %s%n",
-                            finalExportStatus.getProgressPercentage(),
-                            finalExportStatus.getProcessedCount(),
-                            finalExportStatus.getTotalPackages(),
-                            archiveKey);
-                      }
-
-                      return exportedBlocks.stream();
-
-                    } catch (Throwable e) {
-                      log.warn(
-                          "Error reading blocks from archive {}: {}", archiveKey, e.getMessage());
-                      return Stream.empty();
-                    }
-                  });
+    // Filter out already processed packages if resuming
+    final ExportStatus finalExportStatus = exportStatus;
+    Map<String, ArchiveInfo> packagesToRead = new LinkedHashMap<>();
+    for (Map.Entry<String, ArchiveInfo> entry : archiveInfos.entrySet()) {
+      if (!finalExportStatus.isPackageProcessed(entry.getKey())) {
+        packagesToRead.put(entry.getKey(), entry.getValue());
+      }
+    }
 
-      // Mark export as completed when stream is consumed
-      Stream<ExportedBlock> wrappedStream =
-          blockStream.onClose(
-              () -> {
+    StatusCheckpointer checkpointer =
+        new StatusCheckpointer(finalExportStatus, statusCheckpointIntervalMs);
+    ExportedBlockSpliterator spliterator =
+        new ExportedBlockSpliterator(
+            packagesToRead,
+            deserialized,
+            parallelThreads,
+            maxBufferedBlocks,
+            filter,
+            new ExportedBlockSpliterator.Listener() {
+              @Override
+              public void onPackageCompleted(
+                  String archiveKey, int parsedBlocks, int nonBlocks, int errors) {
+                finalExportStatus.markPackageProcessed(
+                    archiveKey, parsedBlocks, nonBlocks, errors);
+                checkpointer.markDirty();
+
+                if (showProgress) {
+                  System.out.printf(
+                      "progress: %5.1f%% %6d/%d archive %s%n",
+                      finalExportStatus.getProgressPercentage(),
+                      finalExportStatus.getProcessedCount(),
+                      finalExportStatus.getTotalPackages(),
+                      archiveKey);
+                }
+              }
+
+              @Override
+              public void onFinished(boolean allPackagesCompleted) {
+                checkpointer.close();
+                if (!allPackagesCompleted) {
+                  log.info(
+                      "Objects export stopped. Processed {}/{} packages.",
+                      finalExportStatus.getProcessedCount(),
+                      finalExportStatus.getTotalPackages());
+                  return;
+                }
                 try {
-                  // Ensure final status is saved before marking as completed
-                  StatusManager.getInstance().saveStatus(finalExportStatus);
                   finalExportStatus.markCompleted();
                   StatusManager.getInstance().saveStatus(finalExportStatus);
                   log.info(
@@ -870,73 +954,112 @@ public class Exporter {
                 } catch (Exception e) {
                   log.error("Error finalizing export status: {}", e.getMessage());
                 }
-              });
+              }
+            });
 
-      // Create a fresh ForkJoinPool for each stream to avoid thread pool reuse issues
-      // The ParallelStreamWrapper will handle the thread pool lifecycle
-      ForkJoinPool customThreadPool = new ForkJoinPool(parallelThreads);
+    // Stop decoding and persist the status when the stream is closed
+    Stream<ExportedBlock> wrappedStream =
+        StreamSupport.stream(spliterator, false).onClose(spliterator::close);
 
-      // Return a stream that uses the custom thread pool for parallel operations
-      return new ParallelStreamWrapper<>(wrappedStream, customThreadPool);
+    // Create a fresh ForkJoinPool for each stream to avoid thread pool reuse issues
+    // The ParallelStreamWrapper will handle the thread pool lifecycle
+    ForkJoinPool customThreadPool = new ForkJoinPool(parallelThreads);
 
-    } catch (Exception e) {
-      dbReader.close();
-      throw e;
-    }
+    // Return a stream that uses the custom thread pool for parallel operations
+    return new ParallelStreamWrapper<>(wrappedStream, customThreadPool);
   }
 
-  /** Process Files package using streaming approach to avoid memory accumulation */
-  private int processFilesPackageInMemory(
-      String archiveKey,
-      ArchiveInfo archiveInfo,
-      OutputWriter outputWriter,
-      boolean deserialized,
-      String errorFilePath,
-      AtomicInteger parsedBlocksCounter,
-      AtomicInteger nonBlocksCounter,
-      AtomicInteger errorCounter,
-      AtomicInteger sessionParsedBlocks)
+  /**
+   * Follows a running node and streams the blocks it adds to its temp and newest archive packages,
+   * in seqno order and once per shard. The stream never ends on its own, close it to stop
+   * following. Read offsets are checkpointed to follow-status.json, next to the export status
+   * file, once the blocks of a poll were consumed, so a restarted follower with resume=true
+   * continues where the previous one stopped and at worst re-emits the blocks of one poll.
+   *
+   * @param deserialized if true - Block objects will be deserialized, otherwise only raw data is
+   *     available
+   * @param pollIntervalMs pause between polls that found no new blocks
+   * @param resume continue from the checkpoint in follow-status.json, otherwise start with the
+   *     blocks added from now on
+   * @return endless sequential Stream of ExportedBlock objects
+   * @throws IOException if there's an error reading the packages
+   */
+  public Stream<ExportedBlock> follow(boolean deserialized, long pollIntervalMs, boolean resume)
       throws IOException {
+    BlockFollower follower =
+        new BlockFollower(tonDatabaseRootPath, deserialized, pollIntervalMs, resume);
+    return StreamSupport.stream(follower, false).onClose(follower::close);
+  }
 
-    AtomicInteger localParsedBlocks = new AtomicInteger(0);
-    AtomicInteger localNonBlocks = new AtomicInteger(0);
-
-    // Use streaming PackageReader instead of loading everything into memory
-    try (PackageReader packageReader = new PackageReader(archiveInfo.getPackagePath())) {
-      // Process each entry as it's read from disk (no memory accumulation)
-      packageReader.forEachTyped(
-          entry -> {
-            String filename = entry.getFilename();
-
-            // Only process block files
-            if (filename.startsWith("block_")) {
-              String blockKey = extractHashFromFilename(filename);
-              if (blockKey != null) {
-                int beforeParsed = parsedBlocksCounter.get();
-                int beforeNonBlocks = nonBlocksCounter.get();
-
-                processBlockData(
-                    blockKey,
-                    entry.getData(),
-                    outputWriter,
-                    deserialized,
-                    errorFilePath,
-                    parsedBlocksCounter,
-                    nonBlocksCounter,
-                    errorCounter,
-                    sessionParsedBlocks);
-
-                // Track local increments
-                int afterParsed = parsedBlocksCounter.get();
-                int afterNonBlocks = nonBlocksCounter.get();
-
-                localParsedBlocks.addAndGet(afterParsed - beforeParsed);
-                localNonBlocks.addAndGet(afterNonBlocks - beforeNonBlocks);
-              }
-            }
-          });
+  /**
+   * Exports all blocks into the columnar files of {@link BlockRowsWriter}: transactions, messages
+   * and account updates, with dictionary-encoded addresses and deflate-compressed row groups.
+   * Blocks are decoded by parallelThreads background threads. Unlike exportToFile, the columnar
+   * export is not resumable and always starts from scratch.
+   *
+   * @param outputDirectory directory where the .tcol files are written
+   * @param parallelThreads number of threads decoding packages
+   * @return number of exported blocks
+   */
+  public long exportToColumnar(String outputDirectory, int parallelThreads) throws IOException {
+    if (StringUtils.isEmpty(outputDirectory)) {
+      throw new Error("outputDirectory is empty");
+    }
+    Map<String, ArchiveInfo> packFiles;
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath)) {
+      packFiles = reader.getAllPackFiles();
+    }
+    long startTime = System.currentTimeMillis();
+    AtomicInteger errors = new AtomicInteger();
+
+    try (BlockRowsWriter writer = new BlockRowsWriter(outputDirectory);
+        ExportedBlockSpliterator spliterator =
+            new ExportedBlockSpliterator(
+                packFiles,
+                true,
+                parallelThreads,
+                DEFAULT_MAX_BUFFERED_BLOCKS,
+                new ExportedBlockSpliterator.Listener() {
+                  @Override
+                  public void onPackageCompleted(
+                      String archiveKey, int parsedBlocks, int nonBlocks, int packageErrors) {
+                    errors.addAndGet(packageErrors);
+                    if (showProgress) {
+                      System.out.printf("columnar export: archive %s done%n", archiveKey);
+                    }
+                  }
+
+                  @Override
+                  public void onFinished(boolean allPackagesCompleted) {}
+                })) {
+      IOException[] writeError = new IOException[1];
+      while (writeError[0] == null
+          && spliterator.tryAdvance(
+              block -> {
+                if (block.getDeserializedBlock() == null) {
+                  return;
+                }
+                try {
+                  writer.write(block.getDeserializedBlock());
+                } catch (IOException e) {
+                  writeError[0] = e;
+                }
+              })) {
+        // blocks are written by the consumer above
+      }
+      if (writeError[0] != null) {
+        throw writeError[0];
+      }
 
-      return localParsedBlocks.get();
+      double durationSeconds = (System.currentTimeMillis() - startTime) / 1000.0;
+      log.info(
+          "Columnar export: {} blocks, {} transactions, {} messages, {} errors in {}s",
+          writer.getBlocks(),
+          writer.getTransactionRows(),
+          writer.getMessageRows(),
+          errors.get(),
+          String.format("%.1f", durationSeconds));
+      return writer.getBlocks();
     }
   }
 
@@ -944,7 +1067,7 @@ public class Exporter {
    * Extracts hash from a filename like "block_(-1,8000000000000000,100):hash1:hash2". Returns the
    * first hash (hash1) which is typically used as the key.
    */
-  private String extractHashFromFilename(String filename) {
+  static String extractHashFromFilename(String filename) {
     try {
       if (filename.contains("):")) {
         int colonIndex = filename.indexOf("):");
@@ -964,115 +1087,40 @@ public class Exporter {
     return null;
   }
 
-  /** Process individual block data with optimized performance (profiling disabled) */
-  private void processBlockData(
-      String blockKey,
-      byte[] blockData,
-      OutputWriter outputWriter,
-      boolean deserialized,
-      String errorFilePath,
-      AtomicInteger parsedBlocksCounter,
-      AtomicInteger nonBlocksCounter,
-      AtomicInteger errorCounter,
-      AtomicInteger sessionParsedBlocks) {
-
+  /** Appends the hex of a block that could not be parsed to errors.txt, if errorFilePath is set */
+  private void writeErrorBlock(String errorFilePath, byte[] blockData) {
+    if (errorFilePath == null) {
+      return;
+    }
     try {
-      // Parse BOC to TLB
-      Cell c = CellBuilder.beginCell().fromBoc(blockData).endCell();
-
-      // Check magic number after BOC parsing
-      long magic = c.getBits().preReadUint(32).longValue();
-
-      if (magic == 0x11ef55aaL) {
-        String lineToWrite;
-        Block block = null; // Declare block variable for explicit cleanup
-
-        if (deserialized) {
-          // Deserialize Block from TLB when deserialized output is requested
-          block = Block.deserialize(CellSlice.beginParse(c));
-
-          // Pre-compute values to avoid repeated calls during JSON serialization
-          int workchain = block.getBlockInfo().getShard().getWorkchain();
-          String shardHex = block.getBlockInfo().getShard().convertShardIdentToShard().toString(16);
-          long seqno = block.getBlockInfo().getSeqno();
-
-          String jsonBlock = Exporter.gson.toJson(block);
-
-          // Use StringBuilder for more efficient string construction
-          StringBuilder lineBuilder = new StringBuilder(1024); // Pre-allocate reasonable size
-          lineBuilder
-              .append(workchain)
-              .append(',')
-              .append(shardHex)
-              .append(',')
-              .append(seqno)
-              .append(',')
-              .append(jsonBlock);
-
-          lineToWrite = lineBuilder.toString();
-
-          // Clear JSON string reference immediately after use
-          jsonBlock = null;
-        } else {
-          // Write raw BOC in hex format - no deserialization needed
-          lineToWrite = Utils.bytesToHex(blockData);
+      synchronized (this) {
+        try (PrintWriter errorWriter =
+            new PrintWriter(new FileWriter(errorFilePath, StandardCharsets.UTF_8, true))) {
+          errorWriter.println(Utils.bytesToHex(blockData));
+          errorWriter.flush();
         }
-
-        // Write to output
-        outputWriter.writeLine(lineToWrite);
-
-        int currentParsedCount = parsedBlocksCounter.getAndIncrement();
-        sessionParsedBlocks.incrementAndGet(); // Track session blocks for accurate rate calculation
-        totalParsedBlocks.incrementAndGet();
-
-        // Pure reference clearing - No GC calls, just help the garbage collector
-        if (deserialized && currentParsedCount > 0 && currentParsedCount % 1000 == 0) {
-          // Clear references to help GC - let G1GC handle timing naturally
-          block = null;
-          c = null;
-          lineToWrite = null;
-        }
-
-      } else {
-        nonBlocksCounter.getAndIncrement();
-        totalNonBlocks.incrementAndGet();
       }
+    } catch (IOException ioException) {
+      log.warn(
+          "Failed to write error block data to {}: {}", errorFilePath, ioException.getMessage());
+    }
+  }
 
-    } catch (Throwable e) {
-      log.debug(
-          "Error parsing block {}: {}",
-          blockKey,
-          e.getMessage()); // Changed to debug to reduce logging overhead
-      errorCounter.getAndIncrement();
-      totalErrors.incrementAndGet();
-
-      // Write error block data to errors.txt file if errorFilePath is provided
-      if (errorFilePath != null) {
-        try {
-          synchronized (this) {
-            try (PrintWriter errorWriter =
-                new PrintWriter(new FileWriter(errorFilePath, StandardCharsets.UTF_8, true))) {
-              errorWriter.println(Utils.bytesToHex(blockData));
-              errorWriter.flush();
-            }
-          }
-        } catch (IOException ioException) {
-          log.warn(
-              "Failed to write error block data to {}: {}",
-              errorFilePath,
-              ioException.getMessage());
-        }
-      }
+  private static void printStageStatistics(List<StageStatistics> statistics) {
+    StringJoiner joiner = new StringJoiner(", ", "Stages: ", "");
+    for (StageStatistics stage : statistics) {
+      joiner.add(stage.toCompactString());
     }
+    System.out.println(joiner);
   }
 
   public void printADbStats() throws IOException {
-    dbReader = new DbReader(tonDatabaseRootPath);
-
-    for (Map.Entry<String, ArchiveInfo> s : dbReader.getAllPackFiles().entrySet()) {
-      log.info("Archive {}: {}", s.getKey(), s.getValue());
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath)) {
+      for (Map.Entry<String, ArchiveInfo> s : reader.getAllPackFiles().entrySet()) {
+        log.info("Archive {}: {}", s.getKey(), s.getValue());
+      }
+      log.info("total archive packs found: {}", reader.getAllPackFiles().size());
     }
-    log.info("total archive packs found: {}", dbReader.getAllPackFiles().size());
   }
 
   /** returns Block of TL-B type by wc, shard, seqno, fileHash and rootHash (TL-B BlockIdExt) */
@@ -1088,61 +1136,99 @@ public class Exporter {
     return getBlock(blockIdExtTl);
   }
 
+  /**
+   * Returns the archive package holding a block. With a reader session the session's global index
+   * is used, which is reopened with the session and so finds blocks archived meanwhile; otherwise
+   * the global index is opened for this lookup.
+   */
+  private int getArchiveIndexBySeqno(int workchain, long seqno) throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session ->
+              session.getPackageIndexDbReader().getArchiveIndexBySeqno(workchain, seqno));
+    }
+    try (GlobalIndexDbReader globalIndexReader = new GlobalIndexDbReader(tonDatabaseRootPath)) {
+      return globalIndexReader.getArchiveIndexBySeqno(workchain, seqno);
+    }
+  }
+
   /** returns Block of TL-B type by wc, shard, seqno, fileHash and rootHash (BlockIdExt) */
   public Block getBlock(BlockIdExt blockIdExt) throws IOException {
-    BlockFileKey blockFileKey = BlockFileKey.builder().blockIdExt(blockIdExt).build();
-    if (dbReader == null) {
-      dbReader = new DbReader(tonDatabaseRootPath);
+    Cell indexed =
+        getIndexedBlockCell(
+            blockIdExt.getWorkchain(), blockIdExt.getShard(), blockIdExt.getSeqno());
+    if (indexed != null && Arrays.equals(indexed.getHash(), blockIdExt.rootHash)) {
+      return Block.deserialize(CellSlice.beginParse(indexed));
     }
-    int archiveIndex =
-        dbReader
-            .getGlobalIndexDbReader()
-            .getArchiveIndexBySeqno(blockIdExt.getWorkchain(), blockIdExt.getSeqno());
-    long offset;
+
+    int archiveIndex = getArchiveIndexBySeqno(blockIdExt.getWorkchain(), blockIdExt.getSeqno());
     try (ArchiveIndexReader archiveIndexReader =
-        new ArchiveIndexReader(dbReader.getDbRootPath(), archiveIndex)) {
-      offset = archiveIndexReader.getOffsetByHash(blockFileKey.getKeyHash());
+        new ArchiveIndexReader(tonDatabaseRootPath, archiveIndex)) {
+      return readBlock(archiveIndexReader, archiveIndex, blockIdExt);
+    }
+  }
 
-      long mcSeqno;
-      if (blockIdExt.getWorkchain() == -1) {
-        mcSeqno = blockIdExt.getSeqno();
-      } else {
-        BlockDbValueKey key = BlockDbValueKey.builder().blockIdExt(blockIdExt).build();
-        BlockInfo blockInfo = archiveIndexReader.getDbInfoByHash(key.getKeyHash());
-        mcSeqno = blockInfo.getMasterRefSeqno();
-      }
-      String packFilename =
-          archiveIndexReader.getExactPackFilename(
-              archiveIndex,
-              blockIdExt.getSeqno(),
-              blockIdExt.getWorkchain(),
-              blockIdExt.getShard(),
-              mcSeqno);
-      try (PackageReader packageReader = new PackageReader(packFilename)) {
-        PackageReader.PackageEntry packageEntry = packageReader.getEntryAt(offset);
-        return packageEntry.getBlock();
-      }
+  /** Reads a block from its archive package, located with an already open archive index. */
+  private static Block readBlock(
+      ArchiveIndexReader archiveIndexReader, int archiveIndex, BlockIdExt blockIdExt)
+      throws IOException {
+    BlockFileKey blockFileKey = BlockFileKey.builder().blockIdExt(blockIdExt).build();
+    long offset = archiveIndexReader.getOffsetByHash(blockFileKey.getKeyHash());
+
+    long mcSeqno;
+    if (blockIdExt.getWorkchain() == -1) {
+      mcSeqno = blockIdExt.getSeqno();
+    } else {
+      BlockDbValueKey key = BlockDbValueKey.builder().blockIdExt(blockIdExt).build();
+      BlockInfo blockInfo = archiveIndexReader.getDbInfoByHash(key.getKeyHash());
+      mcSeqno = blockInfo.getMasterRefSeqno();
+    }
+    String packFilename =
+        archiveIndexReader.getExactPackFilename(
+            archiveIndex,
+            blockIdExt.getSeqno(),
+            blockIdExt.getWorkchain(),
+            blockIdExt.getShard(),
+            mcSeqno);
+    try (PackageReader packageReader = new PackageReader(packFilename)) {
+      PackageReader.PackageEntry packageEntry = packageReader.getEntryAt(offset);
+      return packageEntry.getBlock();
     }
   }
 
   /** returns Block of TL-B type by wc, shard and seqno (BlockId) */
   public Block getBlock(BlockId blockId) throws IOException {
+    return Block.deserialize(CellSlice.beginParse(getBlockCell(blockId)));
+  }
 
-    DbLtDescKey keyHash =
-        DbLtDescKey.builder().workchain(blockId.getWorkchain()).shard(blockId.shard).build();
+  /**
+   * Returns the transactions of one account in a block. Only the account's transactions are
+   * deserialized, the Block itself is not.
+   *
+   * @return transactions in lt order, empty if the account has none in this block
+   */
+  public List<Transaction> getTransactions(BlockId blockId, Address account) throws IOException {
+    BlockFilter filter = BlockFilter.builder().accounts(Collections.singleton(account)).build();
+    return new BlockTransactionSelector(filter)
+        .selectTransactions(getBlockCell(blockId), blockId.getWorkchain());
+  }
 
-    if (dbReader == null) {
-      dbReader = new DbReader(tonDatabaseRootPath);
+  /** returns root cell of the block by wc, shard and seqno (BlockId), without deserializing it */
+  public Cell getBlockCell(BlockId blockId) throws IOException {
+    Cell indexed =
+        getIndexedBlockCell(blockId.getWorkchain(), blockId.shard, blockId.getSeqno());
+    if (indexed != null) {
+      return indexed;
     }
 
-    int archiveIndex =
-        dbReader
-            .getGlobalIndexDbReader()
-            .getArchiveIndexBySeqno(blockId.getWorkchain(), blockId.getSeqno());
+    DbLtDescKey keyHash =
+        DbLtDescKey.builder().workchain(blockId.getWorkchain()).shard(blockId.shard).build();
+
+    int archiveIndex = getArchiveIndexBySeqno(blockId.getWorkchain(), blockId.getSeqno());
     //    log.info("archive index {}", archiveIndex);
 
     try (ArchiveIndexReader archiveIndexReader =
-        new ArchiveIndexReader(dbReader.getDbRootPath(), archiveIndex)) {
+        new ArchiveIndexReader(tonDatabaseRootPath, archiveIndex)) {
 
       // getting blockExtId
       org.ton.ton4j.tl.types.db.block.BlockIdExt blockIdExt =
@@ -1171,13 +1257,83 @@ public class Exporter {
               mcSeqno);
       try (PackageReader packageReader = new PackageReader(packFilename)) {
         PackageReader.PackageEntry packageEntry = packageReader.getEntryAt(offset);
-        return packageEntry.getBlock();
+        return packageEntry.getCell();
+      }
+    }
+  }
+
+  /**
+   * Builds the block location index used by getBlock, a sorted (wc, shard, seqno) table of package
+   * offsets that is memory-mapped on lookup. Blocks added to the database later are still found
+   * through the archive index, rebuild to include them.
+   *
+   * @param indexPath file to create, also set blockLocationIndexPath to use it
+   * @return number of indexed blocks
+   */
+  public long buildBlockLocationIndex(String indexPath) throws IOException {
+    if (StringUtils.isEmpty(indexPath)) {
+      throw new Error("indexPath is empty");
+    }
+    long count;
+    try (DbReader reader = new DbReader(tonDatabaseRootPath, packageCatalogPath)) {
+      count =
+          BlockLocationIndex.build(
+              reader.getAllPackFiles().values(), reader.getDbRootPath(), indexPath);
+    }
+    synchronized (this) {
+      if (blockLocationIndex != null && indexPath.equals(blockLocationIndexPath)) {
+        blockLocationIndex.close();
+        blockLocationIndex = null; // reopened with the new content on next lookup
       }
     }
+    return count;
+  }
+
+  /**
+   * Releases the block location index. The reader session, if any, belongs to the caller and is
+   * left open.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (blockLocationIndex != null) {
+        blockLocationIndex.close();
+        blockLocationIndex = null;
+      }
+    }
+  }
+
+  /** @return root cell of the block from the block location index, null if not indexed */
+  private Cell getIndexedBlockCell(int workchain, long shard, long seqno) throws IOException {
+    if (StringUtils.isEmpty(blockLocationIndexPath)) {
+      return null;
+    }
+    BlockLocationIndex index = blockLocationIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = blockLocationIndex;
+        if (index == null) {
+          if (!new File(blockLocationIndexPath).exists()) {
+            return null;
+          }
+          index = BlockLocationIndex.open(blockLocationIndexPath, tonDatabaseRootPath);
+          blockLocationIndex = index;
+        }
+      }
+    }
+    byte[] boc = index.readBlock(workchain, shard, seqno);
+    return boc == null ? null : CellBuilder.beginCell().fromBoc(boc).endCell();
   }
 
   /** Quickly returns the latest BlockIdExt */
   public org.ton.ton4j.tl.types.db.block.BlockIdExt getLastBlockIdExt() {
+    if (readerSession != null) {
+      try {
+        return readerSession.read(session -> session.getStateDbReader().getLastBlockIdExt());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
     try (StateDbReader stateReader = new StateDbReader(tonDatabaseRootPath)) {
 
       return stateReader.getLastBlockIdExt();
@@ -1191,33 +1347,7 @@ public class Exporter {
    * Gets the very last (most recently added) deserialized block from the local RocksDB database.
    */
   public Pair<org.ton.ton4j.tlb.BlockIdExt, Block> getLast() throws IOException {
-
-    try (GlobalIndexDbReader globalIndexReader =
-        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
-      IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
-
-      if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
-        log.warn("No temp packages found in global index");
-        return null;
-      }
-
-      // Get temp package timestamps (they are Unix timestamps)
-      List<Integer> tempPackageTimestamps = mainIndex.getTempPackages();
-      //      log.debug("Found {} temp packages in global index", tempPackageTimestamps.size());
-
-      // Sort timestamps in descending order (most recent first)
-      List<Integer> sortedTimestamps = new ArrayList<>(tempPackageTimestamps);
-
-      // sort in descending order
-      sortedTimestamps.sort(Collections.reverseOrder());
-
-      // get the top (most recent, with the biggest timestamp)
-      Integer packageTimestamp = sortedTimestamps.get(0);
-      try (TempPackageIndexReader tempIndexReader =
-          new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
-        return tempIndexReader.getLast();
-      }
-    }
+    return readLastTempPackage(tempIndexReader -> tempIndexReader.getLast());
   }
 
   /**
@@ -1225,33 +1355,7 @@ public class Exporter {
    * local RocksDB database.
    */
   public byte[] getLastAsBoc() throws IOException {
-
-    try (GlobalIndexDbReader globalIndexReader =
-        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
-      IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
-
-      if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
-        log.warn("No temp packages found in global index");
-        return null;
-      }
-
-      // Get temp package timestamps (they are Unix timestamps)
-      List<Integer> tempPackageTimestamps = mainIndex.getTempPackages();
-      log.debug("Found {} temp packages in global index", tempPackageTimestamps.size());
-
-      // Sort timestamps in descending order (most recent first)
-      List<Integer> sortedTimestamps = new ArrayList<>(tempPackageTimestamps);
-
-      // sort in descending order
-      sortedTimestamps.sort(Collections.reverseOrder());
-
-      // get the top (most recent, with the biggest timestamp)
-      Integer packageTimestamp = sortedTimestamps.get(0);
-      try (TempPackageIndexReader tempIndexReader =
-          new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
-        return tempIndexReader.getLastAsBoC();
-      }
-    }
+    return readLastTempPackage(TempPackageIndexReader::getLastAsBoC);
   }
 
   /**
@@ -1259,104 +1363,74 @@ public class Exporter {
    * RocksDB database.
    */
   public Cell getLastAsCell() throws IOException {
-
-    try (GlobalIndexDbReader globalIndexReader =
-        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
-      IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
-
-      if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
-        log.warn("No temp packages found in global index");
-        return null;
-      }
-
-      // Get temp package timestamps (they are Unix timestamps)
-      List<Integer> tempPackageTimestamps = mainIndex.getTempPackages();
-      log.debug("Found {} temp packages in global index", tempPackageTimestamps.size());
-
-      // Sort timestamps in descending order (most recent first)
-      List<Integer> sortedTimestamps = new ArrayList<>(tempPackageTimestamps);
-
-      // sort in descending order
-      sortedTimestamps.sort(Collections.reverseOrder());
-
-      // get the top (most recent, with the biggest timestamp)
-      Integer packageTimestamp = sortedTimestamps.get(0);
-      try (TempPackageIndexReader tempIndexReader =
-          new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
-        return tempIndexReader.getLastAsCell();
-      }
-    }
+    return readLastTempPackage(TempPackageIndexReader::getLastAsCell);
   }
 
   /**
    * Gets the very last (most recently added) <code>limit</code> blocks from the RocksDB database.
    */
   public TreeMap<org.ton.ton4j.tlb.BlockIdExt, Block> getLast(int limit) throws IOException {
-
-    try (GlobalIndexDbReader globalIndexReader =
-        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
-      IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
-
-      if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
-        log.warn("No temp packages found in global index");
-        return null;
-      }
-
-      // Get temp package timestamps (they are Unix timestamps)
-      List<Integer> tempPackageTimestamps = mainIndex.getTempPackages();
-      log.debug("Found {} temp packages in global index", tempPackageTimestamps.size());
-
-      // Sort timestamps in descending order (most recent first)
-      List<Integer> sortedTimestamps = new ArrayList<>(tempPackageTimestamps);
-
-      // sort in descending order
-      sortedTimestamps.sort(Collections.reverseOrder());
-
-      // get the top (most recent, with the biggest timestamp)
-      Integer packageTimestamp = sortedTimestamps.get(0);
-      try (TempPackageIndexReader tempIndexReader =
-          new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
-        return tempIndexReader.getLast(limit);
-      }
-    }
+    return readLastTempPackage(tempIndexReader -> tempIndexReader.getLast(limit));
   }
 
   /** Returns latest Block of particular wc and shard. */
   public Block getLast(int wc, long shard) throws IOException {
+    return readLastTempPackage(
+        tempIndexReader -> {
+          // blocks of other shards are skipped by the id in their filename, without decoding
+          Pair<org.ton.ton4j.tlb.BlockIdExt, Block> last = tempIndexReader.getLast(wc, shard);
+          return last == null ? null : last.getValue();
+        });
+  }
 
-    try (GlobalIndexDbReader globalIndexReader =
-        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
-      IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
-
-      if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
-        log.warn("No temp packages found in global index");
-        return null;
-      }
+  /**
+   * Gets ids of the very last (most recently added) <code>limit</code> blocks of any chain, most
+   * recent first. The ids are read from the package entry names, no block is decoded.
+   */
+  public List<org.ton.ton4j.tlb.BlockIdExt> getLastBlockIds(int limit) throws IOException {
+    List<org.ton.ton4j.tlb.BlockIdExt> ids =
+        readLastTempPackage(tempIndexReader -> tempIndexReader.getLastBlockIds(limit));
+    return ids == null ? Collections.emptyList() : ids;
+  }
 
-      // Get temp package timestamps (they are Unix timestamps)
-      List<Integer> tempPackageTimestamps = mainIndex.getTempPackages();
-      log.debug("Found {} temp packages in global index", tempPackageTimestamps.size());
+  /** Lookup in the most recent temp package. */
+  @FunctionalInterface
+  private interface TempPackageLookup<T> {
+    T apply(TempPackageIndexReader tempIndexReader) throws IOException;
+  }
 
-      // Sort timestamps in descending order (most recent first)
-      List<Integer> sortedTimestamps = new ArrayList<>(tempPackageTimestamps);
+  /**
+   * Runs the lookup in the most recent temp package, found through the reader session's global
+   * index, or through one opened for this call if there is no session.
+   *
+   * @return result of the lookup, null if the global index lists no temp packages
+   */
+  private <T> T readLastTempPackage(TempPackageLookup<T> lookup) throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session -> readLastTempPackage(session.getGlobalIndexDbReader(), lookup));
+    }
+    try (GlobalIndexDbReader globalIndexReader =
+        new GlobalIndexDbReader(tonDatabaseRootPath, false)) {
+      return readLastTempPackage(globalIndexReader, lookup);
+    }
+  }
 
-      // sort in descending order
-      sortedTimestamps.sort(Collections.reverseOrder());
+  private <T> T readLastTempPackage(
+      GlobalIndexDbReader globalIndexReader, TempPackageLookup<T> lookup) throws IOException {
+    IndexValue mainIndex = globalIndexReader.getMainIndexIndexValue();
 
-      // get the top (most recent, with the biggest timestamp)
-      Integer packageTimestamp = sortedTimestamps.get(0);
-      try (TempPackageIndexReader tempIndexReader =
-          new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
-        TreeMap<org.ton.ton4j.tlb.BlockIdExt, Block> lasts = tempIndexReader.getLast(10); // review
+    if (mainIndex == null || mainIndex.getTempPackages().isEmpty()) {
+      log.warn("No temp packages found in global index");
+      return null;
+    }
 
-        for (Map.Entry<org.ton.ton4j.tlb.BlockIdExt, Block> kv : lasts.entrySet()) {
-          if ((kv.getKey().getWorkchain() == wc) && (kv.getKey().shard == shard)) {
-            return kv.getValue();
-          }
-        }
-      }
+    // the most recent temp package has the biggest timestamp (they are Unix timestamps)
+    Integer packageTimestamp = Collections.max(mainIndex.getTempPackages());
+    try (TempPackageIndexReader tempIndexReader =
+        new TempPackageIndexReader(tonDatabaseRootPath, packageTimestamp)) {
+      return lookup.apply(tempIndexReader);
     }
-    return null;
   }
 
   public ShardAccountLazy getShardAccountByAddress(
@@ -1375,40 +1449,187 @@ public class Exporter {
   /** return ShardAccount only */
   public ShardAccountLazy getShardAccountByAddress(BlockIdExt blockIdExt, Address address)
       throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session -> getShardAccountByAddress(session.getCellDbReader(), blockIdExt, address));
+    }
+    try (CellDbReader cellDbReader = new CellDbReader(tonDatabaseRootPath)) {
+      return getShardAccountByAddress(cellDbReader, blockIdExt, address);
+    }
+  }
+
+  private static ShardAccountLazy getShardAccountByAddress(
+      CellDbReader cellDbReader, BlockIdExt blockIdExt, Address address) throws IOException {
+    return getShardAccounts(cellDbReader, blockIdExt).lookup(address);
+  }
+
+  /**
+   * Looks up many accounts of one shard state in a single walk of its accounts dictionary, see
+   * {@link ShardAccountsLazy#lookupAll(Collection, BiConsumer)}.
+   *
+   * @param consumer receives every found address with its account, missing ones are skipped
+   */
+  public void getShardAccountsByAddresses(
+      BlockIdExt blockIdExt,
+      Collection<Address> addresses,
+      BiConsumer<Address, ShardAccountLazy> consumer)
+      throws IOException {
+    if (readerSession != null) {
+      readerSession.read(
+          session -> {
+            getShardAccounts(session.getCellDbReader(), blockIdExt).lookupAll(addresses, consumer);
+            return null;
+          });
+      return;
+    }
+    try (CellDbReader cellDbReader = new CellDbReader(tonDatabaseRootPath)) {
+      getShardAccounts(cellDbReader, blockIdExt).lookupAll(addresses, consumer);
+    }
+  }
+
+  /**
+   * Passes every account of a shard state to the consumer, walking the accounts dictionary in
+   * parallel with the default {@link AccountScanConfig}.
+   *
+   * @return number of scanned accounts
+   */
+  public long scanAccounts(BlockIdExt blockIdExt, Consumer<ShardAccountLazy> consumer)
+      throws IOException {
+    return scanAccounts(blockIdExt, AccountScanConfig.builder().build(), consumer);
+  }
+
+  /**
+   * Passes the accounts of a shard state that pass the configured balance and code hash filters to
+   * the consumer, see {@link ShardAccountsLazy#scan(AccountScanConfig, Consumer)}. The consumer is
+   * called concurrently from the scanning threads.
+   *
+   * @return number of accounts passed to the consumer
+   */
+  public long scanAccounts(
+      BlockIdExt blockIdExt, AccountScanConfig config, Consumer<ShardAccountLazy> consumer)
+      throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session ->
+              getShardAccounts(session.getCellDbReader(), blockIdExt).scan(config, consumer));
+    }
     try (CellDbReader cellDbReader = new CellDbReader(tonDatabaseRootPath)) {
-      String key = "desc" + Utils.bytesToBase64(Utils.sha256AsArray(blockIdExt.serializeBoxed()));
-      byte[] value = cellDbReader.getCellDb().get(key.getBytes());
+      return getShardAccounts(cellDbReader, blockIdExt).scan(config, consumer);
+    }
+  }
 
-      CellDbValue cellDbValue = CellDbValue.deserialize(ByteBuffer.wrap(value));
-      byte[] shardStateRootHash = cellDbValue.rootHash;
+  /**
+   * Reports the accounts added, removed or changed between the shard states of two blocks of the
+   * same shard, see {@link ShardAccountsDiff}. Only the subtrees that differ are read, so the cost
+   * follows the number of changed accounts rather than the state size.
+   *
+   * @param before older block
+   * @param after newer block of the same shard
+   * @param consumer receives every change
+   * @return number of reported changes
+   */
+  public long diffAccounts(
+      BlockIdExt before, BlockIdExt after, Consumer<AccountChange> consumer) throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session -> diffAccounts(session.getCellDbReader(), before, after, consumer));
+    }
+    try (CellDbReader cellDbReader = new CellDbReader(tonDatabaseRootPath)) {
+      return diffAccounts(cellDbReader, before, after, consumer);
+    }
+  }
 
-      // find full cell containing ShardStateUnsplit by shardStateRootHash
-      byte[] rawShardStateUnsplit = cellDbReader.getCellDb().get(shardStateRootHash);
+  /**
+   * Reports the masterchain accounts added, removed or changed between two masterchain blocks.
+   *
+   * @return number of reported changes
+   */
+  public long diffMasterchainAccounts(
+      long fromSeqno, long toSeqno, Consumer<AccountChange> consumer) throws IOException {
+    BlockId from =
+        BlockId.builder().workchain(-1).shard(0x8000000000000000L).seqno(fromSeqno).build();
+    BlockId to =
+        BlockId.builder().workchain(-1).shard(0x8000000000000000L).seqno(toSeqno).build();
+    return diffAccounts(getBlockIdExt(from), getBlockIdExt(to), consumer);
+  }
 
-      Cell shardStateCell = parseCell(ByteBuffer.wrap(rawShardStateUnsplit));
+  private static long diffAccounts(
+      CellDbReader cellDbReader,
+      BlockIdExt before,
+      BlockIdExt after,
+      Consumer<AccountChange> consumer)
+      throws IOException {
+    if (before.getWorkchain() != after.getWorkchain() || before.getShard() != after.getShard()) {
+      throw new IllegalArgumentException("Blocks of different shards cannot be compared");
+    }
+    return ShardAccountsDiff.diff(
+        getShardAccounts(cellDbReader, before),
+        getShardAccounts(cellDbReader, after),
+        before.getWorkchain(),
+        consumer);
+  }
 
-      // looking in
-      ShardStateUnsplitLazy shardStateUnsplitLazy =
-          ShardStateUnsplitLazy.deserialize(
-              cellDbReader, CellSliceLazy.beginParse(cellDbReader, shardStateCell));
+  /**
+   * Analyzes the cells of the shard state of a block: cell counts, bytes, depths, shared subtrees
+   * and the bytes per contract, see {@link CellTreeAnalyzer}. Runs in bounded memory, visited cells
+   * are kept on disk.
+   *
+   * @param config parallelism, work directory and report sizes
+   * @param consumer receives the statistics of every account, called concurrently; null for none
+   * @return statistics of the whole state
+   */
+  public CellTreeStatistics analyzeShardState(
+      BlockIdExt blockIdExt,
+      CellTreeAnalyzerConfig config,
+      Consumer<ContractStatistics> consumer)
+      throws IOException {
+    if (readerSession != null) {
+      return readerSession.read(
+          session ->
+              new CellTreeAnalyzer(session.getCellDbReader(), config)
+                  .analyzeShardState(
+                      getShardStateRootHash(session.getCellDbReader(), blockIdExt), consumer));
+    }
+    try (CellDbReader cellDbReader = new CellDbReader(tonDatabaseRootPath)) {
+      return new CellTreeAnalyzer(cellDbReader, config)
+          .analyzeShardState(getShardStateRootHash(cellDbReader, blockIdExt), consumer);
+    }
+  }
 
-      return shardStateUnsplitLazy.getShardAccounts().lookup(address);
+  private static byte[] getShardStateRootHash(CellDbReader cellDbReader, BlockIdExt blockIdExt)
+      throws IOException {
+    String key = "desc" + Utils.bytesToBase64(Utils.sha256AsArray(blockIdExt.serializeBoxed()));
+    byte[] value = cellDbReader.getCellDb().get(key.getBytes());
+    if (value == null) {
+      throw new IOException("No shard state in CellDB for block " + blockIdExt);
     }
+    return CellDbValue.deserialize(ByteBuffer.wrap(value)).rootHash;
+  }
+
+  private static ShardAccountsLazy getShardAccounts(
+      CellDbReader cellDbReader, BlockIdExt blockIdExt) throws IOException {
+    byte[] shardStateRootHash = getShardStateRootHash(cellDbReader, blockIdExt);
+
+    // find full cell containing ShardStateUnsplit by shardStateRootHash
+    byte[] rawShardStateUnsplit = cellDbReader.getCellDb().get(shardStateRootHash);
+
+    Cell shardStateCell = parseCell(ByteBuffer.wrap(rawShardStateUnsplit));
+
+    // looking in
+    ShardStateUnsplitLazy shardStateUnsplitLazy =
+        ShardStateUnsplitLazy.deserialize(
+            cellDbReader, CellSliceLazy.beginParse(cellDbReader, shardStateCell));
+
+    return shardStateUnsplitLazy.getShardAccounts();
   }
 
   public BlockIdExt getBlockIdExt(BlockId blockId) throws IOException {
     DbLtDescKey keyHash =
         DbLtDescKey.builder().workchain(blockId.getWorkchain()).shard(blockId.shard).build();
-    if (dbReader == null) {
-      dbReader = new DbReader(tonDatabaseRootPath);
-    }
-    int archiveIndex =
-        dbReader
-            .getGlobalIndexDbReader()
-            .getArchiveIndexBySeqno(blockId.getWorkchain(), blockId.getSeqno());
+    int archiveIndex = getArchiveIndexBySeqno(blockId.getWorkchain(), blockId.getSeqno());
 
     try (ArchiveIndexReader archiveIndexReader =
-        new ArchiveIndexReader(dbReader.getDbRootPath(), archiveIndex)) {
+        new ArchiveIndexReader(tonDatabaseRootPath, archiveIndex)) {
 
       return archiveIndexReader.getBlockIdExtByDbLtDescKey(keyHash, blockId.getSeqno());
     }
@@ -1419,10 +1640,10 @@ public class Exporter {
    * there is no need to retrieve other shards' information.
    */
   public BigInteger getBalance(Address address) {
-    try (StateDbReader stateReader = new StateDbReader(tonDatabaseRootPath)) {
+    try {
 
       if (address.wc == -1) {
-        BlockIdExt lastBlockIdExt = stateReader.getLastBlockIdExt();
+        BlockIdExt lastBlockIdExt = getLastBlockIdExt();
         return getShardAccountByAddress(lastBlockIdExt, address).getBalance();
       } else {
         // 1. get latest block
@@ -1440,12 +1661,64 @@ public class Exporter {
     }
   }
 
+  /**
+   * Returns the latest balances of many addresses. Addresses are grouped by the shard they live in
+   * and every shard state is walked once, so this is much cheaper than calling {@link
+   * #getBalance(Address)} per address.
+   *
+   * @return balances of the found accounts, addresses without an account are not included
+   */
+  public Map<Address, BigInteger> getBalances(Collection<Address> addresses) {
+    try {
+      Map<BlockIdExt, List<Address>> byShard = new LinkedHashMap<>();
+      // resolved once, every masterchain address is looked up in the same state
+      BlockIdExt masterchainBlockIdExt =
+          addresses.stream().anyMatch(address -> address.wc == -1) ? getLastBlockIdExt() : null;
+      Block lastBlock = null;
+      for (Address address : addresses) {
+        BlockIdExt blockIdExt;
+        if (address.wc == -1) {
+          blockIdExt = masterchainBlockIdExt;
+        } else {
+          if (lastBlock == null) {
+            lastBlock = getLast().getValue();
+          }
+          org.ton.ton4j.tlb.BlockIdExt shardInfo =
+              ShardLookup.findShardBlock(lastBlock, address.wc, address.hashPart);
+          if (isNull(shardInfo)) {
+            throw new RuntimeException("Could not find shard for address " + address);
+          }
+          blockIdExt =
+              BlockIdExt.builder()
+                  .shard(shardInfo.shard)
+                  .workchain(shardInfo.getWorkchain())
+                  .seqno((int) shardInfo.getSeqno())
+                  .fileHash(shardInfo.fileHash)
+                  .rootHash(shardInfo.rootHash)
+                  .build();
+        }
+        byShard.computeIfAbsent(blockIdExt, k -> new ArrayList<>()).add(address);
+      }
+
+      Map<Address, BigInteger> balances = new ConcurrentHashMap<>(addresses.size() * 2);
+      for (Map.Entry<BlockIdExt, List<Address>> shard : byShard.entrySet()) {
+        getShardAccountsByAddresses(
+            shard.getKey(),
+            shard.getValue(),
+            (address, account) -> balances.put(address, account.getBalance()));
+      }
+      return balances;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
   /**
    * Returns balance by address and masterchain seqno. Retrieval of address located in a masterchain
    * is much faster, since there is no need to retrieve other shards' information.
    */
   public BigInteger getBalance(Address address, long seqno) {
-    try (StateDbReader ignored = new StateDbReader(tonDatabaseRootPath)) {
+    try {
       BlockId blockId =
           BlockId.builder().workchain(-1).shard(0x8000000000000000L).seqno(seqno).build();
 
@@ -1474,4 +1747,156 @@ public class Exporter {
       throw new RuntimeException(e);
     }
   }
+
+  /**
+   * Returns the balance of an address at every step-th masterchain block between fromSeqno and
+   * toSeqno. Unlike calling {@link #getBalance(Address, long)} per block, the archive index and
+   * CellDB readers stay open for the whole query, the shard blocks of each masterchain block are
+   * cached, and the account is looked up with an {@link AccountPathMemo}: the walk down the
+   * accounts dictionary stops at the first node that is unchanged since the previous sample, and
+   * a sample whose shard block is the same as the previous one is not read at all.
+   *
+   * @param address account address
+   * @param fromSeqno first masterchain seqno
+   * @param toSeqno last masterchain seqno, inclusive
+   * @param step distance between sampled masterchain seqnos
+   * @return balances by masterchain seqno, seqnos at which the account did not exist are omitted
+   */
+  public SortedMap<Long, BigInteger> getBalanceHistory(
+      Address address, long fromSeqno, long toSeqno, long step) {
+    if (step <= 0) {
+      throw new IllegalArgumentException("step must be positive");
+    }
+    SortedMap<Long, BigInteger> history = new TreeMap<>();
+    AccountPathMemo memo = new AccountPathMemo(address);
+    Map<Integer, ArchiveIndexReader> archiveReaders = new HashMap<>();
+    CellDbReader cellDbReader = null;
+    GlobalIndexDbReader packageIndex = null;
+    try {
+      if (readerSession == null) {
+        cellDbReader = new CellDbReader(tonDatabaseRootPath, null, new CellCache());
+        packageIndex = new GlobalIndexDbReader(tonDatabaseRootPath);
+      }
+      BlockIdExt previousBlock = null;
+      ShardAccountLazy account = null;
+      for (long seqno = fromSeqno; seqno <= toSeqno; seqno += step) {
+        BlockIdExt shardBlock = getAccountShardBlock(address, seqno, packageIndex, archiveReaders);
+        if (!shardBlock.equals(previousBlock)) {
+          account = lookupAccount(cellDbReader, shardBlock, memo);
+          previousBlock = shardBlock;
+        }
+        if (account != null && !account.getAccount().isNone()) {
+          history.put(seqno, account.getBalance());
+        }
+      }
+      log.debug(
+          "Balance history of {}: {} states read, {} ended in an unchanged subtree",
+          address,
+          memo.getLookups(),
+          memo.getReused());
+      return history;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    } finally {
+      for (ArchiveIndexReader archiveReader : archiveReaders.values()) {
+        try {
+          archiveReader.close();
+        } catch (IOException e) {
+          log.warn("Error closing archive index: {}", e.getMessage());
+        }
+      }
+      if (cellDbReader != null) {
+        try {
+          cellDbReader.close();
+        } catch (IOException e) {
+          log.warn("Error closing CellDB: {}", e.getMessage());
+        }
+      }
+      if (packageIndex != null) {
+        try {
+          packageIndex.close();
+        } catch (IOException e) {
+          log.warn("Error closing global index: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private ShardAccountLazy lookupAccount(
+      CellDbReader cellDbReader, BlockIdExt blockIdExt, AccountPathMemo memo) throws IOException {
+    if (cellDbReader == null) {
+      return readerSession.read(
+          session -> getShardAccounts(session.getCellDbReader(), blockIdExt).lookup(memo));
+    }
+    return getShardAccounts(cellDbReader, blockIdExt).lookup(memo);
+  }
+
+  /**
+   * Resolves the block whose state holds the account at a masterchain seqno, with the global index
+   * and archive index readers kept open by the caller. A null global index means the reader
+   * session's one is used.
+   */
+  private BlockIdExt getAccountShardBlock(
+      Address address,
+      long mcSeqno,
+      GlobalIndexDbReader packageIndex,
+      Map<Integer, ArchiveIndexReader> archiveReaders)
+      throws IOException {
+    int archiveIndex =
+        packageIndex == null
+            ? getArchiveIndexBySeqno(-1, mcSeqno)
+            : packageIndex.getArchiveIndexBySeqno(-1, mcSeqno);
+    ArchiveIndexReader archiveReader = archiveReaders.get(archiveIndex);
+    if (archiveReader == null) {
+      archiveReader = new ArchiveIndexReader(tonDatabaseRootPath, archiveIndex);
+      archiveReaders.put(archiveIndex, archiveReader);
+    }
+    DbLtDescKey mcKey = DbLtDescKey.builder().workchain(-1).shard(0x8000000000000000L).build();
+    BlockIdExt mcBlockIdExt = archiveReader.getBlockIdExtByDbLtDescKey(mcKey, mcSeqno);
+    if (address.wc == -1) {
+      return mcBlockIdExt;
+    }
+
+    Map<Long, List<org.ton.ton4j.tlb.BlockIdExt>> routing = getShardRouting();
+    List<org.ton.ton4j.tlb.BlockIdExt> shardBlocks = routing.get(mcSeqno);
+    if (shardBlocks == null) {
+      Block mcBlock = readBlock(archiveReader, archiveIndex, mcBlockIdExt);
+      shardBlocks = ShardLookup.getShardBlocks(mcBlock, address.wc);
+      routing.put(mcSeqno, shardBlocks);
+    }
+    org.ton.ton4j.tlb.BlockIdExt shardInfo =
+        ShardLookup.findShardBlock(shardBlocks, address.hashPart);
+    if (isNull(shardInfo)) {
+      throw new RuntimeException("Could not find shard for address " + address);
+    }
+    return BlockIdExt.builder()
+        .shard(shardInfo.shard)
+        .workchain(address.wc)
+        .seqno((int) shardInfo.getSeqno())
+        .fileHash(shardInfo.fileHash)
+        .rootHash(shardInfo.rootHash)
+        .build();
+  }
+
+  private Map<Long, List<org.ton.ton4j.tlb.BlockIdExt>> getShardRouting() {
+    Map<Long, List<org.ton.ton4j.tlb.BlockIdExt>> routing = shardRouting;
+    if (routing == null) {
+      synchronized (this) {
+        routing = shardRouting;
+        if (routing == null) {
+          routing =
+              Collections.synchronizedMap(
+                  new LinkedHashMap<Long, List<org.ton.ton4j.tlb.BlockIdExt>>(256, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(
+                        Map.Entry<Long, List<org.ton.ton4j.tlb.BlockIdExt>> eldest) {
+                      return size() > SHARD_ROUTING_CACHE_SIZE;
+                    }
+                  });
+          shardRouting = routing;
+        }
+      }
+    }
+    return routing;
+  }
 }
@@ -0,0 +1,333 @@
+package org.ton.ton4j.exporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Repairs an output file left behind by an interrupted export before it is continued. Lines after
+ * the last flush may be cut off, and a gzip file ends in a member without trailer: a member
+ * appended behind it would not be readable, gunzip stops at the truncated one.
+ *
+ * <p>Both repairs keep every complete line. A truncated gzip member still holds the lines written
+ * up to its last sync flush; they are compressed again into a new, complete member.
+ */
+@Slf4j
+final class OutputRecovery {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private static final int FHCRC = 2;
+
+  private OutputRecovery() {}
+
+  /** Content of a repaired file. */
+  static final class Result {
+    final long lines;
+    final long bytes;
+    final long storedBytes;
+
+    Result(long lines, long bytes, long storedBytes) {
+      this.lines = lines;
+      this.bytes = bytes;
+      this.storedBytes = storedBytes;
+    }
+  }
+
+  /**
+   * Cuts a text file back to its last complete line.
+   *
+   * @param countLines whether lines are counted, which reads the whole file
+   */
+  static Result repairText(Path path, boolean countLines) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      long keep = 0;
+      search:
+      for (long start = size; start > 0; ) {
+        int length = (int) Math.min(BUFFER_SIZE, start);
+        start -= length;
+        readFully(channel, buffer, start, length);
+        for (int i = length - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+            keep = start + i + 1;
+            break search;
+          }
+        }
+      }
+      if (keep < size) {
+        log.warn("Output file {} ends with an incomplete line, cut back to {} bytes", path, keep);
+        channel.truncate(keep);
+      }
+
+      long lines = 0;
+      if (countLines) {
+        for (long position = 0; position < keep; position += buffer.limit()) {
+          readFully(channel, buffer, position, (int) Math.min(BUFFER_SIZE, keep - position));
+          for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+              lines++;
+            }
+          }
+        }
+      }
+      return new Result(lines, keep, keep);
+    }
+  }
+
+  /**
+   * Cuts a gzip file back to its last complete member. The complete lines of a truncated member
+   * behind it are compressed again and appended as a new member. Every member is decompressed to
+   * find the member boundaries.
+   */
+  static Result repairGzip(Path path, int compressionLevel) throws IOException {
+    Inflater inflater = new Inflater(true);
+    byte[] out = new byte[BUFFER_SIZE];
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      Input in = new Input(channel, 0);
+      Content complete = new Content();
+      long completeEnd = 0;
+      while (in.hasMore()) {
+        Content member = new Content();
+        if (!inflateMember(in, inflater, out, member, null)) {
+          break;
+        }
+        complete.lines += member.lines;
+        complete.bytes += member.bytes;
+        completeEnd = in.position();
+      }
+      if (completeEnd == channel.size()) {
+        return new Result(complete.lines, complete.bytes, completeEnd);
+      }
+
+      log.warn(
+          "Output file {} ends with an incomplete gzip member after {} bytes, repairing",
+          path,
+          completeEnd);
+      Path directory = path.toAbsolutePath().getParent();
+      Path copy = Files.createTempFile(directory, path.getFileName().toString(), ".recovered");
+      try {
+        Content tail = new Content();
+        try (FileChannel copyChannel = FileChannel.open(copy, StandardOpenOption.WRITE)) {
+          inflateMember(new Input(channel, completeEnd), inflater, out, tail, copyChannel);
+        }
+        channel.truncate(completeEnd);
+        if (tail.completeLineBytes > 0) {
+          channel.position(completeEnd);
+          try (InputStream source = Files.newInputStream(copy);
+              GZIPOutputStream gzip =
+                  new GZIPOutputStream(new ChannelOutput(channel), BUFFER_SIZE) {
+                    {
+                      def.setLevel(compressionLevel);
+                    }
+                  }) {
+            for (long left = tail.completeLineBytes; left > 0; ) {
+              int n = source.read(out, 0, (int) Math.min(out.length, left));
+              if (n < 0) {
+                break;
+              }
+              gzip.write(out, 0, n);
+              left -= n;
+            }
+          }
+        }
+        log.info("Kept {} lines of the incomplete gzip member of {}", tail.lines, path);
+        return new Result(
+            complete.lines + tail.lines,
+            complete.bytes + tail.completeLineBytes,
+            channel.size());
+      } finally {
+        Files.deleteIfExists(copy);
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Inflates the gzip member at the current position.
+   *
+   * @param copy receives the decompressed bytes, may be null
+   * @return true if the member is complete including its trailer
+   */
+  private static boolean inflateMember(
+      Input in, Inflater inflater, byte[] out, Content content, FileChannel copy)
+      throws IOException {
+    if (!readHeader(in)) {
+      return false;
+    }
+    inflater.reset();
+    try {
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          if (!in.hasMore()) {
+            return false;
+          }
+          inflater.setInput(in.buf, in.pos, in.limit - in.pos);
+          in.pos = in.limit;
+        }
+        int n = inflater.inflate(out);
+        if (n > 0) {
+          content.add(out, n);
+          if (copy != null) {
+            ByteBuffer data = ByteBuffer.wrap(out, 0, n);
+            while (data.hasRemaining()) {
+              copy.write(data);
+            }
+          }
+        } else if (inflater.needsDictionary()) {
+          return false;
+        }
+      }
+    } catch (DataFormatException e) {
+      return false;
+    }
+    // input handed to the inflater but not consumed belongs to the trailer
+    in.pos -= inflater.getRemaining();
+    return in.skip(8);
+  }
+
+  private static boolean readHeader(Input in) throws IOException {
+    if (in.read() != 0x1f || in.read() != 0x8b || in.read() != 8) {
+      return false;
+    }
+    int flags = in.read();
+    if (flags < 0 || !in.skip(6)) {
+      return false;
+    }
+    if ((flags & FEXTRA) != 0) {
+      int low = in.read();
+      int high = in.read();
+      if (high < 0 || !in.skip(low | (high << 8))) {
+        return false;
+      }
+    }
+    for (int flag : new int[] {FNAME, FCOMMENT}) {
+      if ((flags & flag) != 0) {
+        int b;
+        while ((b = in.read()) > 0) {
+          // zero-terminated string
+        }
+        if (b < 0) {
+          return false;
+        }
+      }
+    }
+    return (flags & FHCRC) == 0 || in.skip(2);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+      throws IOException {
+    buffer.clear().limit(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file");
+      }
+    }
+    buffer.flip();
+  }
+
+  /** Decompressed bytes and lines of a member. */
+  private static final class Content {
+    private long bytes;
+    private long lines;
+    // bytes up to and including the last line separator
+    private long completeLineBytes;
+
+    void add(byte[] data, int length) {
+      for (int i = 0; i < length; i++) {
+        if (data[i] == '\n') {
+          lines++;
+          completeLineBytes = bytes + i + 1;
+        }
+      }
+      bytes += length;
+    }
+  }
+
+  /** Buffered reader of a file channel that knows its file position. */
+  private static final class Input {
+    private final FileChannel channel;
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int pos;
+    private int limit;
+
+    Input(FileChannel channel, long position) {
+      this.channel = channel;
+      this.bufferStart = position;
+    }
+
+    long position() {
+      return bufferStart + pos;
+    }
+
+    /** @return false at the end of the file */
+    boolean hasMore() throws IOException {
+      if (pos < limit) {
+        return true;
+      }
+      bufferStart += limit;
+      pos = 0;
+      limit = 0;
+      int n = channel.read(ByteBuffer.wrap(buf), bufferStart);
+      if (n <= 0) {
+        return false;
+      }
+      limit = n;
+      return true;
+    }
+
+    int read() throws IOException {
+      return hasMore() ? buf[pos++] & 0xff : -1;
+    }
+
+    boolean skip(long n) throws IOException {
+      while (n > 0) {
+        if (!hasMore()) {
+          return false;
+        }
+        int k = (int) Math.min(n, limit - pos);
+        pos += k;
+        n -= k;
+      }
+      return true;
+    }
+  }
+
+  /** Writes to the channel at its position, closing the stream leaves the channel open. */
+  private static final class ChannelOutput extends OutputStream {
+    private final FileChannel channel;
+
+    ChannelOutput(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      ByteBuffer data = ByteBuffer.wrap(b, off, len);
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+  }
+}
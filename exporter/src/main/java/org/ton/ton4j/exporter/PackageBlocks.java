@@ -0,0 +1,50 @@
+package org.ton.ton4j.exporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import org.ton.ton4j.exporter.reader.MappedPackageReader;
+import org.ton.ton4j.exporter.reader.PackageReader;
+
+/** Iterates the block entries ("block_" files) of a package file. */
+final class PackageBlocks {
+
+  @FunctionalInterface
+  interface BlockVisitor {
+    void visit(String filename, byte[] data) throws InterruptedException;
+  }
+
+  private PackageBlocks() {}
+
+  /**
+   * Calls the visitor for each block entry in file order. The package is memory-mapped, other
+   * entries are skipped without decoding their names; packages larger than 2 GB are streamed.
+   *
+   * @param packagePath path to the .pack file
+   * @param visitor receives the filename and a copy of the block boc
+   */
+  static void forEachBlock(String packagePath, BlockVisitor visitor)
+      throws IOException, InterruptedException {
+    if (new File(packagePath).length() > Integer.MAX_VALUE) {
+      // too large to be mapped, fall back to the streaming reader
+      try (PackageReader packageReader = new PackageReader(packagePath)) {
+        PackageReader.PackageEntry entry;
+        while ((entry = packageReader.readNextEntry()) != null) {
+          if (entry.getFilename().startsWith("block_")) {
+            visitor.visit(entry.getFilename(), entry.getData());
+          }
+        }
+      }
+      return;
+    }
+    try (MappedPackageReader packageReader = new MappedPackageReader(packagePath)) {
+      Iterator<MappedPackageReader.MappedEntry> entries = packageReader.iterator();
+      while (entries.hasNext()) {
+        MappedPackageReader.MappedEntry entry = entries.next();
+        if (entry.filenameStartsWith("block_")) {
+          visitor.visit(entry.getFilename(), entry.getDataBytes());
+        }
+      }
+    }
+  }
+}
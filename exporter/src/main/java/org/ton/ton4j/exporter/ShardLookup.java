@@ -1,5 +1,6 @@
 package org.ton.ton4j.exporter;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.ton.ton4j.tlb.*;
 
@@ -18,51 +19,76 @@ public class ShardLookup {
    * @return BlockIdExt containing the shard block details, or null if not found
    */
   public static BlockIdExt findShardBlock(Block mcBlock, int workchain, byte[] address) {
+    return findShardBlock(getShardBlocks(mcBlock, workchain), address);
+  }
+
+  /**
+   * Lists the shard blocks referenced by a masterchain block, e.g. to route many addresses
+   * without decoding the masterchain block again.
+   *
+   * @param mcBlock The masterchain block
+   * @param workchain The workchain set in the returned ids
+   * @return shard block ids, empty if the block has no shard hashes
+   */
+  public static List<BlockIdExt> getShardBlocks(Block mcBlock, int workchain) {
+    List<BlockIdExt> shardBlocks = new ArrayList<>();
     try {
       // 1. Parse masterchain block to get ShardHashes
       BlockExtra blockExtra = mcBlock.getExtra();
 
       if (blockExtra.getMcBlockExtra() == null) {
-        return null;
+        return shardBlocks;
       }
 
       McBlockExtra mcExtra = blockExtra.getMcBlockExtra();
       ShardHashes shardHashes = mcExtra.getShardHashes();
 
       if (shardHashes == null || shardHashes.getShardHashes() == null) {
-        return null;
+        return shardBlocks;
       }
 
       // 2. Get all ShardDescr entries with their computed shard IDs
       List<ShardDescr> shardDescrList = shardHashes.getShardDescrAsList();
-      if (shardDescrList == null || shardDescrList.isEmpty()) {
-        return null;
+      if (shardDescrList == null) {
+        return shardBlocks;
       }
 
-      // 3. Extract address prefix for comparison (first 64 bits)
-      long addressPrefix = extractAddressPrefix(address);
-
-      // 4. Find the shard that contains this address
       for (ShardDescr shardDescr : shardDescrList) {
-        long shardId = shardDescr.getComputedShardId();
-        
-        // Check if this shard contains the address
-        if (shardContainsAddress(shardId, addressPrefix)) {
-          return BlockIdExt.builder()
-              .workchain(workchain)
-              .seqno(shardDescr.getSeqNo())
-              .shard(shardId)
-              .rootHash(hexStringToByteArray(shardDescr.getRootHash()))
-              .fileHash(hexStringToByteArray(shardDescr.getFileHash()))
-              .build();
-        }
+        shardBlocks.add(
+            BlockIdExt.builder()
+                .workchain(workchain)
+                .seqno(shardDescr.getSeqNo())
+                .shard(shardDescr.getComputedShardId())
+                .rootHash(hexStringToByteArray(shardDescr.getRootHash()))
+                .fileHash(hexStringToByteArray(shardDescr.getFileHash()))
+                .build());
       }
-
-      return null;
+      return shardBlocks;
 
     } catch (Exception e) {
-      return null;
+      return shardBlocks;
+    }
+  }
+
+  /**
+   * Finds the shard block that contains a given account address.
+   *
+   * @param shardBlocks shard blocks of a masterchain block, see {@link #getShardBlocks}
+   * @param address The account's 256-bit address
+   * @return the shard block, or null if not found
+   */
+  public static BlockIdExt findShardBlock(List<BlockIdExt> shardBlocks, byte[] address) {
+    // 3. Extract address prefix for comparison (first 64 bits)
+    long addressPrefix = extractAddressPrefix(address);
+
+    // 4. Find the shard that contains this address
+    for (BlockIdExt shardBlock : shardBlocks) {
+      // Check if this shard contains the address
+      if (shardContainsAddress(shardBlock.shard, addressPrefix)) {
+        return shardBlock;
+      }
     }
+    return null;
   }
 
   /**
@@ -0,0 +1,61 @@
+package org.ton.ton4j.exporter;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.ExportStatus;
+
+/**
+ * Saves an {@link ExportStatus} in the background at a fixed interval, and only if it changed since
+ * the last save. Keeps the status file off the hot path of the export threads.
+ */
+@Slf4j
+class StatusCheckpointer implements AutoCloseable {
+
+  private final ExportStatus exportStatus;
+  private final AtomicBoolean dirty = new AtomicBoolean();
+  private final ScheduledExecutorService scheduler;
+
+  /**
+   * @param exportStatus status to persist
+   * @param intervalMs interval between checkpoints
+   */
+  StatusCheckpointer(ExportStatus exportStatus, long intervalMs) {
+    this.exportStatus = exportStatus;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "StatusCheckpointer");
+              t.setDaemon(true);
+              return t;
+            });
+    long interval = Math.max(1, intervalMs);
+    scheduler.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /** Marks the status as changed, it is saved with the next checkpoint. */
+  void markDirty() {
+    dirty.set(true);
+  }
+
+  /** Saves the status now if it changed since the last checkpoint. */
+  void checkpoint() {
+    if (dirty.getAndSet(false)) {
+      try {
+        StatusManager.getInstance().saveStatus(exportStatus);
+      } catch (Exception e) {
+        dirty.set(true);
+        log.warn("Error saving export status: {}", e.getMessage());
+      }
+    }
+  }
+
+  /** Stops the background checkpoints and saves pending changes. */
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    checkpoint();
+  }
+}
@@ -34,6 +34,11 @@ public class StatusManager {
     this.statusFilePath = Paths.get(customPath, STATUS_FILE_NAME);
   }
 
+  private StatusManager(Path statusFilePath) {
+    this.gson = new GsonBuilder().setPrettyPrinting().create();
+    this.statusFilePath = statusFilePath;
+  }
+
   /**
    * Gets the singleton instance of StatusManager
    *
@@ -67,6 +72,17 @@ public class StatusManager {
     return instance;
   }
 
+  /**
+   * Creates a status manager of its own, apart from the singleton, for a status that must not
+   * replace the export status
+   *
+   * @param statusFilePath status file
+   * @return new StatusManager instance
+   */
+  public static StatusManager forFile(Path statusFilePath) {
+    return new StatusManager(statusFilePath);
+  }
+
   /** Resets the singleton instance (mainly for testing) */
   public static void resetInstance() {
     synchronized (lock) {
@@ -161,6 +177,8 @@ public class StatusManager {
 
       // Create a copy of the processed packages set
       copy.getProcessedPackages().addAll(original.getProcessedPackages());
+      copy.getFollowOffsets().putAll(original.getFollowOffsets());
+      copy.getFollowSeqnos().putAll(original.getFollowSeqnos());
 
       return copy;
     }
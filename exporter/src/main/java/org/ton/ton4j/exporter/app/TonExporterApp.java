@@ -8,7 +8,9 @@ import java.io.InputStream;
 import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.tuple.Pair;
@@ -16,6 +18,10 @@ import org.ton.ton4j.address.Address;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.Cell;
 import org.ton.ton4j.exporter.Exporter;
+import org.ton.ton4j.exporter.server.QueryLoadTest;
+import org.ton.ton4j.exporter.server.QueryServer;
+import org.ton.ton4j.exporter.types.EndpointStatistics;
+import org.ton.ton4j.exporter.types.QueryServerConfig;
 import org.ton.ton4j.tlb.Block;
 import org.ton.ton4j.tlb.BlockIdExt;
 import org.ton.ton4j.tlb.adapters.BitStringTypeAdapter;
@@ -46,6 +52,12 @@ import org.ton.ton4j.utils.Utils;
  */
 public class TonExporterApp {
 
+  // kept in the working directory next to status.json
+  private static final String PACKAGE_CATALOG_FILE_NAME = "packages.catalog";
+  private static final String BLOCK_LOCATION_INDEX_FILE_NAME = "blocks.idx";
+
+  private static final int DEFAULT_QUERY_SERVER_PORT = 8080;
+
   // Statistics tracking variables
   private static final AtomicBoolean exportInterrupted = new AtomicBoolean(false);
   private static final AtomicBoolean exportCompleted = new AtomicBoolean(false);
@@ -77,6 +89,18 @@ public class TonExporterApp {
         return;
       }
 
+      // Check if this is a query server command
+      if ("serve".equals(args[1].toLowerCase())) {
+        handleServeCommand(tonDbRootPath, args);
+        return;
+      }
+
+      // Check if this is a load test command
+      if ("loadtest".equals(args[1].toLowerCase())) {
+        handleLoadTestCommand(tonDbRootPath, args);
+        return;
+      }
+
       // Original export functionality
       if (args.length < 4) {
         printUsage();
@@ -178,7 +202,11 @@ public class TonExporterApp {
 
       // Create exporter instance
       currentExporter =
-          Exporter.builder().tonDatabaseRootPath(tonDbRootPath).showProgress(showProgress).build();
+          Exporter.builder()
+              .tonDatabaseRootPath(tonDbRootPath)
+              .showProgress(showProgress)
+              .packageCatalogPath(PACKAGE_CATALOG_FILE_NAME)
+              .build();
 
       // Determine if output should be deserialized (json = true, boc = false)
       boolean deserialized = outputFormat.equals("json");
@@ -529,6 +557,118 @@ public class TonExporterApp {
     }
   }
 
+  /**
+   * Handles the "serve" command, runs the embedded query server until the process is stopped.
+   *
+   * @param tonDbRootPath the path to the TON database root directory
+   * @param args the command line arguments
+   * @throws Exception if the server cannot be started
+   */
+  private static void handleServeCommand(String tonDbRootPath, String[] args) throws Exception {
+    // args[0] = ton-db-root-path
+    // args[1] = "serve"
+    // args[2] = port (optional)
+    // args[3] = threads (optional)
+    // args[4] = record-file (optional)
+
+    int port = DEFAULT_QUERY_SERVER_PORT;
+    int threads = Runtime.getRuntime().availableProcessors();
+    try {
+      if (args.length >= 3) {
+        port = Integer.parseInt(args[2]);
+      }
+      if (args.length >= 4) {
+        threads = Integer.parseInt(args[3]);
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error: Invalid port or threads format. Must be a number.");
+      System.exit(1);
+    }
+    String recordFile = args.length >= 5 ? args[4] : null;
+
+    QueryServer server =
+        QueryServer.start(
+            tonDbRootPath,
+            QueryServerConfig.builder()
+                .port(port)
+                .threads(threads)
+                .packageCatalogPath(PACKAGE_CATALOG_FILE_NAME)
+                .blockLocationIndexPath(BLOCK_LOCATION_INDEX_FILE_NAME)
+                .recordFile(recordFile)
+                .build());
+
+    CountDownLatch stopped = new CountDownLatch(1);
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  server.close();
+                  for (EndpointStatistics endpoint : server.getStatistics()) {
+                    System.err.println(endpoint.toCompactString());
+                  }
+                  stopped.countDown();
+                }));
+    System.err.println(
+        "Query server listening on http://127.0.0.1:"
+            + server.getPort()
+            + "/ Press Ctrl+C to stop.");
+    stopped.await();
+  }
+
+  /**
+   * Handles the "loadtest" command, replays a recorded request mix against a query server started
+   * over the given database and prints the latencies.
+   *
+   * @param tonDbRootPath the path to the TON database root directory
+   * @param args the command line arguments
+   * @throws Exception if the server cannot be started or the requests cannot be sent
+   */
+  private static void handleLoadTestCommand(String tonDbRootPath, String[] args) throws Exception {
+    // args[0] = ton-db-root-path
+    // args[1] = "loadtest"
+    // args[2] = request-file (required)
+    // args[3] = concurrency (optional)
+    // args[4] = requests (optional)
+
+    if (args.length < 3) {
+      System.err.println("Error: Request file is required for loadtest command");
+      System.err.println(
+          "Usage: java -jar TonExporterApp.jar <ton-db-root-path> loadtest <request-file> [concurrency] [requests]");
+      System.exit(1);
+    }
+
+    int concurrency = 4;
+    long totalRequests = 10_000;
+    try {
+      if (args.length >= 4) {
+        concurrency = Integer.parseInt(args[3]);
+      }
+      if (args.length >= 5) {
+        totalRequests = Long.parseLong(args[4]);
+      }
+    } catch (NumberFormatException e) {
+      System.err.println("Error: Invalid concurrency or requests format. Must be a number.");
+      System.exit(1);
+    }
+
+    List<String> requests = QueryLoadTest.readRequests(args[2]);
+    try (QueryServer server =
+        QueryServer.start(
+            tonDbRootPath,
+            QueryServerConfig.builder()
+                .threads(concurrency)
+                .packageCatalogPath(PACKAGE_CATALOG_FILE_NAME)
+                .blockLocationIndexPath(BLOCK_LOCATION_INDEX_FILE_NAME)
+                .build())) {
+      List<EndpointStatistics> statistics =
+          QueryLoadTest.run(
+              "http://127.0.0.1:" + server.getPort(), requests, concurrency, totalRequests, true);
+      for (EndpointStatistics endpoint : statistics) {
+        System.out.println(endpoint.toCompactString());
+      }
+    }
+  }
+
   private static void printVersion() {
     Properties properties = new Properties();
     try (InputStream inputStream =
@@ -556,6 +696,10 @@ public class TonExporterApp {
         "  For stdout output: java -jar TonExporterApp.jar <ton-db-root-path> stdout <json|boc> <num-of-threads> [<true|false>] [last]");
     System.err.println(
         "  For balance query: java -jar TonExporterApp.jar <ton-db-root-path> balance <address> [seqno]");
+    System.err.println(
+        "  For query server: java -jar TonExporterApp.jar <ton-db-root-path> serve [port] [threads] [record-file]");
+    System.err.println(
+        "  For load test: java -jar TonExporterApp.jar <ton-db-root-path> loadtest <request-file> [concurrency] [requests]");
     System.err.println();
     System.err.println("Arguments:");
     System.err.println("  -v                : Show version information");
@@ -572,6 +716,14 @@ public class TonExporterApp {
     System.err.println("  balance          : Query account balance");
     System.err.println("  address          : TON address in string format (required for balance)");
     System.err.println("  seqno            : Block sequence number (optional for balance)");
+    System.err.println("  serve            : Run the embedded query server on 127.0.0.1");
+    System.err.println("  port             : Query server port (optional, default 8080)");
+    System.err.println("  record-file      : File every served request is appended to (optional)");
+    System.err.println("  loadtest         : Replay a recorded request mix and print latencies");
+    System.err.println("  request-file     : Recorded requests, one path with query per line");
+    System.err.println("  concurrency      : Number of client threads (optional, default 4)");
+    System.err.println(
+        "  requests         : Number of measured requests (optional, default 10000)");
     System.err.println();
     System.err.println("Last Mode:");
     System.err.println("  When 'last' is specified as the final argument:");
@@ -587,6 +739,15 @@ public class TonExporterApp {
     System.err.println("  - With seqno: returns balance at specified masterchain block");
     System.err.println("  - Balance is printed to stdout as a number");
     System.err.println();
+    System.err.println("Query Server Mode:");
+    System.err.println("  Serves lookups over HTTP on 127.0.0.1, keeping readers and caches warm:");
+    System.err.println("  - /last, /block?workchain=&shard=&seqno=[&format=boc]");
+    System.err.println("  - /account?address=[&seqno=]");
+    System.err.println("  - /transactions?workchain=&shard=&seqno=[&account=][&lt=]");
+    System.err.println("  - /stats for request latencies and cache hit rates");
+    System.err.println(
+        "  - blocks.idx in the working directory locates archived blocks, built at start if missing");
+    System.err.println();
     System.err.println("Examples:");
     System.err.println("  java -jar TonExporterApp.jar -v");
     System.err.println(
@@ -597,5 +758,8 @@ public class TonExporterApp {
     System.err.println("  java -jar TonExporterApp.jar /var/ton-work/db stdout json 1 last");
     System.err.println("  java -jar TonExporterApp.jar /var/ton-work/db balance EQD...");
     System.err.println("  java -jar TonExporterApp.jar /var/ton-work/db balance EQD... 12345678");
+    System.err.println("  java -jar TonExporterApp.jar /var/ton-work/db serve 8080 8 requests.txt");
+    System.err.println(
+        "  java -jar TonExporterApp.jar /var/ton-work/db loadtest requests.txt 8 100000");
   }
 }
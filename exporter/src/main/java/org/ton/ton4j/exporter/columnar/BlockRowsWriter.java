@@ -0,0 +1,302 @@
+package org.ton.ton4j.exporter.columnar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.tlb.AccountBlock;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.CommonMsgInfo;
+import org.ton.ton4j.tlb.ExternalMessageOutInfo;
+import org.ton.ton4j.tlb.HashUpdate;
+import org.ton.ton4j.tlb.InternalMessageInfo;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.Transaction;
+
+/**
+ * Flattens deserialized blocks into three columnar files inside an output directory:
+ *
+ * <ul>
+ *   <li>{@value #TRANSACTIONS_FILE} - one row per transaction
+ *   <li>{@value #MESSAGES_FILE} - one row per inbound or outbound message of a transaction
+ *   <li>{@value #ACCOUNT_UPDATES_FILE} - one row per account touched by a block
+ * </ul>
+ *
+ * Account addresses are stored in raw form ({@code wc:hex}) and dictionary-encoded per row group.
+ * Coin amounts that do not fit into a signed 64-bit value are stored as {@link Long#MAX_VALUE}.
+ * {@link #write(Block)} is thread-safe.
+ */
+@Slf4j
+public class BlockRowsWriter implements Closeable {
+
+  public static final String TRANSACTIONS_FILE = "transactions.tcol";
+  public static final String MESSAGES_FILE = "messages.tcol";
+  public static final String ACCOUNT_UPDATES_FILE = "account_updates.tcol";
+
+  public static final List<Column> TRANSACTION_COLUMNS =
+      Arrays.asList(
+          Column.of("workchain", ColumnType.INT32),
+          Column.of("shard", ColumnType.INT64),
+          Column.of("seqno", ColumnType.INT64),
+          Column.of("account", ColumnType.STRING),
+          Column.of("lt", ColumnType.INT64),
+          Column.of("now", ColumnType.INT64),
+          Column.of("prev_lt", ColumnType.INT64),
+          Column.of("orig_status", ColumnType.STRING),
+          Column.of("end_status", ColumnType.STRING),
+          Column.of("total_fees", ColumnType.INT64),
+          Column.of("out_msg_count", ColumnType.INT32));
+
+  public static final List<Column> MESSAGE_COLUMNS =
+      Arrays.asList(
+          Column.of("tx_account", ColumnType.STRING),
+          Column.of("tx_lt", ColumnType.INT64),
+          Column.of("direction", ColumnType.STRING),
+          Column.of("type", ColumnType.STRING),
+          Column.of("src", ColumnType.STRING),
+          Column.of("dst", ColumnType.STRING),
+          Column.of("value", ColumnType.INT64),
+          Column.of("fwd_fee", ColumnType.INT64),
+          Column.of("created_lt", ColumnType.INT64),
+          Column.of("created_at", ColumnType.INT64),
+          Column.of("bounce", ColumnType.BOOLEAN),
+          Column.of("bounced", ColumnType.BOOLEAN),
+          Column.of("op", ColumnType.INT64));
+
+  public static final List<Column> ACCOUNT_UPDATE_COLUMNS =
+      Arrays.asList(
+          Column.of("workchain", ColumnType.INT32),
+          Column.of("seqno", ColumnType.INT64),
+          Column.of("account", ColumnType.STRING),
+          Column.of("tx_count", ColumnType.INT32),
+          Column.of("first_lt", ColumnType.INT64),
+          Column.of("last_lt", ColumnType.INT64),
+          Column.of("old_hash", ColumnType.BYTES),
+          Column.of("new_hash", ColumnType.BYTES));
+
+  private final ColumnarFileWriter transactions;
+  private final ColumnarFileWriter messages;
+  private final ColumnarFileWriter accountUpdates;
+  @Getter private long blocks;
+
+  public BlockRowsWriter(String outputDirectory) throws IOException {
+    this(
+        outputDirectory,
+        ColumnarFileWriter.DEFAULT_ROW_GROUP_SIZE,
+        ColumnarFileWriter.DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * @param outputDirectory directory for the three files, created if missing
+   * @param rowGroupSize number of rows per row group
+   * @param compressionLevel deflate level 1-9, or 0 to store chunks uncompressed
+   */
+  public BlockRowsWriter(String outputDirectory, int rowGroupSize, int compressionLevel)
+      throws IOException {
+    Path dir = Paths.get(outputDirectory);
+    Files.createDirectories(dir);
+    this.transactions =
+        new ColumnarFileWriter(
+            dir.resolve(TRANSACTIONS_FILE).toString(),
+            TRANSACTION_COLUMNS,
+            rowGroupSize,
+            compressionLevel);
+    this.messages =
+        new ColumnarFileWriter(
+            dir.resolve(MESSAGES_FILE).toString(), MESSAGE_COLUMNS, rowGroupSize, compressionLevel);
+    this.accountUpdates =
+        new ColumnarFileWriter(
+            dir.resolve(ACCOUNT_UPDATES_FILE).toString(),
+            ACCOUNT_UPDATE_COLUMNS,
+            rowGroupSize,
+            compressionLevel);
+  }
+
+  /** Appends the rows of one block to all three files. */
+  public synchronized void write(Block block) throws IOException {
+    int workchain = block.getBlockInfo().getShard().getWorkchain();
+    long shard = block.getBlockInfo().getShard().convertShardIdentToShard().longValue();
+    long seqno = block.getBlockInfo().getSeqno();
+
+    if (block.getExtra() != null && block.getExtra().getShardAccountBlocks() != null) {
+      for (AccountBlock accountBlock :
+          block.getExtra().getShardAccountBlocks().getShardAccountBlocksAsList()) {
+        writeAccountBlock(workchain, shard, seqno, accountBlock);
+      }
+    }
+    blocks++;
+  }
+
+  private void writeAccountBlock(int workchain, long shard, long seqno, AccountBlock accountBlock)
+      throws IOException {
+    String account = workchain + ":" + hex64(accountBlock.getAddr());
+    List<Transaction> txs = accountBlock.getTransactionsAsList();
+    txs.sort((a, b) -> a.getLt().compareTo(b.getLt()));
+
+    for (Transaction tx : txs) {
+      long lt = tx.getLt().longValue();
+      transactions.setInt(0, workchain);
+      transactions.setLong(1, shard);
+      transactions.setLong(2, seqno);
+      transactions.setString(3, account);
+      transactions.setLong(4, lt);
+      transactions.setLong(5, tx.getNow());
+      transactions.setLong(6, tx.getPrevTxLt() == null ? 0 : tx.getPrevTxLt().longValue());
+      transactions.setString(7, tx.getOrigStatus() == null ? "" : tx.getOrigStatus().name());
+      transactions.setString(8, tx.getEndStatus() == null ? "" : tx.getEndStatus().name());
+      transactions.setLong(
+          9, tx.getTotalFees() == null ? 0 : coins(tx.getTotalFees().getCoins()));
+      transactions.setInt(10, (int) tx.getOutMsgCount());
+      transactions.endRow();
+
+      if (tx.getInOut() != null) {
+        if (tx.getInOut().getIn() != null) {
+          writeMessage(account, lt, "in", tx.getInOut().getIn());
+        }
+        if (tx.getInOut().getOut() != null) {
+          for (Message out : tx.getInOut().getOutMessages()) {
+            writeMessage(account, lt, "out", out);
+          }
+        }
+      }
+    }
+
+    accountUpdates.setInt(0, workchain);
+    accountUpdates.setLong(1, seqno);
+    accountUpdates.setString(2, account);
+    accountUpdates.setInt(3, txs.size());
+    if (!txs.isEmpty()) {
+      Transaction first = txs.get(0);
+      Transaction last = txs.get(txs.size() - 1);
+      accountUpdates.setLong(4, first.getLt().longValue());
+      accountUpdates.setLong(5, last.getLt().longValue());
+      byte[][] firstHashes = stateHashes(first.getStateUpdate());
+      byte[][] lastHashes = stateHashes(last.getStateUpdate());
+      if (firstHashes != null) {
+        accountUpdates.setBytes(6, firstHashes[0]);
+      }
+      if (lastHashes != null) {
+        accountUpdates.setBytes(7, lastHashes[1]);
+      }
+    }
+    accountUpdates.endRow();
+  }
+
+  private void writeMessage(String txAccount, long txLt, String direction, Message message)
+      throws IOException {
+    CommonMsgInfo info = message.getInfo();
+    messages.setString(0, txAccount);
+    messages.setLong(1, txLt);
+    messages.setString(2, direction);
+    if (info != null) {
+      messages.setString(3, info.getType());
+      messages.setString(4, address(info, true));
+      messages.setString(5, address(info, false));
+      messages.setLong(6, coins(info.getValueCoins()));
+      if (info instanceof InternalMessageInfo) {
+        InternalMessageInfo internal = (InternalMessageInfo) info;
+        messages.setLong(7, coins(internal.getFwdFee()));
+        messages.setLong(8, coins(internal.getCreatedLt()));
+        messages.setLong(9, internal.getCreatedAt());
+        messages.setBoolean(10, Boolean.TRUE.equals(internal.getBounce()));
+        messages.setBoolean(11, Boolean.TRUE.equals(internal.getBounced()));
+      } else if (info instanceof ExternalMessageOutInfo) {
+        ExternalMessageOutInfo external = (ExternalMessageOutInfo) info;
+        messages.setLong(8, coins(external.getCreatedLt()));
+        messages.setLong(9, external.getCreatedAt());
+      }
+    }
+    messages.setLong(12, opCode(message.getBody()));
+    messages.endRow();
+  }
+
+  private static String address(CommonMsgInfo info, boolean source) {
+    try {
+      String address = source ? info.getSourceAddress() : info.getDestinationAddress();
+      return address == null ? "" : address;
+    } catch (Exception e) {
+      // addr_none or an address that cannot be converted
+      return "";
+    }
+  }
+
+  /** @return the first 32 bits of the body, or -1 if the body is shorter */
+  private static long opCode(Cell body) {
+    if (body == null || body.getBits().getUsedBits() < 32) {
+      return -1;
+    }
+    return body.getBits().preReadUint(32).longValue();
+  }
+
+  private static long coins(BigInteger value) {
+    if (value == null) {
+      return 0;
+    }
+    return value.bitLength() < 64 ? value.longValue() : Long.MAX_VALUE;
+  }
+
+  private static String hex64(BigInteger value) {
+    String hex = value.toString(16);
+    StringBuilder sb = new StringBuilder(64);
+    for (int i = hex.length(); i < 64; i++) {
+      sb.append('0');
+    }
+    return sb.append(hex).toString();
+  }
+
+  /** @return old and new account state hash, or null if the update was not deserialized */
+  private static byte[][] stateHashes(HashUpdate update) {
+    if (update == null) {
+      return null;
+    }
+    try {
+      // the hash getters of HashUpdate are private, read the hashes back from its cell
+      CellSlice cs = CellSlice.beginParse(update.toCell()).skipBits(32);
+      return new byte[][] {cs.loadBytes(256), cs.loadBytes(256)};
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    IOException error = null;
+    for (ColumnarFileWriter writer : Arrays.asList(transactions, messages, accountUpdates)) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        if (error == null) {
+          error = e;
+        } else {
+          error.addSuppressed(e);
+        }
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+    log.debug(
+        "Columnar export closed: {} blocks, {} transactions, {} messages",
+        blocks,
+        transactions.getTotalRows(),
+        messages.getTotalRows());
+  }
+
+  /** @return number of transaction rows written so far */
+  public synchronized long getTransactionRows() {
+    return transactions.getTotalRows();
+  }
+
+  /** @return number of message rows written so far */
+  public synchronized long getMessageRows() {
+    return messages.getTotalRows();
+  }
+}
@@ -0,0 +1,21 @@
+package org.ton.ton4j.exporter.columnar;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/** Name and type of a column. */
+@Getter
+@ToString
+public class Column {
+  private final String name;
+  private final ColumnType type;
+
+  public Column(String name, ColumnType type) {
+    this.name = name;
+    this.type = type;
+  }
+
+  public static Column of(String name, ColumnType type) {
+    return new Column(name, type);
+  }
+}
@@ -0,0 +1,15 @@
+package org.ton.ton4j.exporter.columnar;
+
+/** Physical type and encoding of a column in a columnar export file. */
+public enum ColumnType {
+  /** 64-bit integers, delta and zigzag varint encoded (monotonic lt/seqno compress to ~1 byte) */
+  INT64,
+  /** 32-bit integers, zigzag varint encoded */
+  INT32,
+  /** bit-packed booleans */
+  BOOLEAN,
+  /** strings, dictionary encoded per row group (addresses, statuses, message types) */
+  STRING,
+  /** variable length binary values (hashes) */
+  BYTES
+}
@@ -0,0 +1,262 @@
+package org.ton.ton4j.exporter.columnar;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import lombok.Getter;
+
+/** Reads files written by {@link ColumnarFileWriter}, one row group at a time. */
+public class ColumnarFileReader implements Closeable {
+
+  private final RandomAccessFile file;
+  @Getter private final List<Column> columns;
+  private final Map<String, Integer> columnIndexes = new HashMap<>();
+  private final int codec;
+  private final long[] rowGroupOffsets;
+  private final int[] rowGroupRows;
+  @Getter private final long totalRows;
+
+  public ColumnarFileReader(String path) throws IOException {
+    this.file = new RandomAccessFile(path, "r");
+    try {
+      long length = file.length();
+      if (length < 16) {
+        throw new IOException("Not a columnar file: " + path);
+      }
+      file.seek(length - 8);
+      int footerLength = file.readInt();
+      byte[] magic = new byte[4];
+      file.readFully(magic);
+      if (!Arrays.equals(magic, ColumnarFileWriter.MAGIC)) {
+        throw new IOException("Not a columnar file: " + path);
+      }
+
+      byte[] footerData = new byte[footerLength];
+      file.seek(length - 8 - footerLength);
+      file.readFully(footerData);
+      DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerData));
+      int version = footer.readByte();
+      if (version != ColumnarFileWriter.VERSION) {
+        throw new IOException("Unsupported columnar file version " + version);
+      }
+      this.codec = footer.readByte();
+      int columnCount = footer.readInt();
+      List<Column> schema = new ArrayList<>(columnCount);
+      for (int i = 0; i < columnCount; i++) {
+        String name = footer.readUTF();
+        ColumnType type = ColumnType.values()[footer.readByte()];
+        schema.add(Column.of(name, type));
+        columnIndexes.put(name, i);
+      }
+      this.columns = Collections.unmodifiableList(schema);
+      int rowGroupCount = footer.readInt();
+      this.rowGroupOffsets = new long[rowGroupCount];
+      this.rowGroupRows = new int[rowGroupCount];
+      for (int i = 0; i < rowGroupCount; i++) {
+        rowGroupOffsets[i] = footer.readLong();
+        rowGroupRows[i] = footer.readInt();
+      }
+      this.totalRows = footer.readLong();
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  public int getRowGroupCount() {
+    return rowGroupOffsets.length;
+  }
+
+  /**
+   * Reads and decodes all columns of a row group.
+   *
+   * @param index row group index
+   * @return decoded row group
+   */
+  public RowGroup readRowGroup(int index) throws IOException {
+    int rows = rowGroupRows[index];
+    Object[] data = new Object[columns.size()];
+    file.seek(rowGroupOffsets[index]);
+    for (int i = 0; i < columns.size(); i++) {
+      int uncompressedLength = file.readInt();
+      int compressedLength = file.readInt();
+      byte[] chunk = new byte[compressedLength];
+      file.readFully(chunk);
+      if (codec == ColumnarFileWriter.CODEC_DEFLATE) {
+        chunk = inflate(chunk, uncompressedLength);
+      }
+      data[i] = decode(columns.get(i).getType(), new Decoder(chunk), rows);
+    }
+    return new RowGroup(rows, data);
+  }
+
+  private static byte[] inflate(byte[] compressed, int uncompressedLength) throws IOException {
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      byte[] result = new byte[uncompressedLength];
+      int offset = 0;
+      while (offset < uncompressedLength) {
+        int n = inflater.inflate(result, offset, uncompressedLength - offset);
+        if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        offset += n;
+      }
+      if (offset != uncompressedLength) {
+        throw new IOException("Corrupted column chunk");
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupted column chunk", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static Object decode(ColumnType type, Decoder decoder, int rows) {
+    switch (type) {
+      case INT64:
+        {
+          long[] values = new long[rows];
+          long previous = 0;
+          for (int i = 0; i < rows; i++) {
+            previous += unzigzag(decoder.readVarLong());
+            values[i] = previous;
+          }
+          return values;
+        }
+      case INT32:
+        {
+          int[] values = new int[rows];
+          for (int i = 0; i < rows; i++) {
+            values[i] = (int) unzigzag(decoder.readVarLong());
+          }
+          return values;
+        }
+      case BOOLEAN:
+        {
+          boolean[] values = new boolean[rows];
+          for (int i = 0; i < rows; i++) {
+            values[i] = (decoder.data[i >>> 3] & (1 << (i & 7))) != 0;
+          }
+          return values;
+        }
+      case STRING:
+        {
+          String[] dictionary = new String[(int) decoder.readVarLong()];
+          for (int i = 0; i < dictionary.length; i++) {
+            int length = (int) decoder.readVarLong();
+            dictionary[i] =
+                new String(decoder.data, decoder.position, length, StandardCharsets.UTF_8);
+            decoder.position += length;
+          }
+          String[] values = new String[rows];
+          for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[(int) decoder.readVarLong()];
+          }
+          return values;
+        }
+      case BYTES:
+        {
+          int[] lengths = new int[rows];
+          for (int i = 0; i < rows; i++) {
+            lengths[i] = (int) decoder.readVarLong();
+          }
+          byte[][] values = new byte[rows][];
+          for (int i = 0; i < rows; i++) {
+            values[i] =
+                Arrays.copyOfRange(decoder.data, decoder.position, decoder.position + lengths[i]);
+            decoder.position += lengths[i];
+          }
+          return values;
+        }
+      default:
+        throw new IllegalArgumentException("Unsupported column type " + type);
+    }
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+  /** Decoded columns of one row group. */
+  public class RowGroup {
+    @Getter private final int rowCount;
+    private final Object[] data;
+
+    private RowGroup(int rowCount, Object[] data) {
+      this.rowCount = rowCount;
+      this.data = data;
+    }
+
+    public long[] getLongs(String column) {
+      return (long[]) get(column, ColumnType.INT64);
+    }
+
+    public int[] getInts(String column) {
+      return (int[]) get(column, ColumnType.INT32);
+    }
+
+    public boolean[] getBooleans(String column) {
+      return (boolean[]) get(column, ColumnType.BOOLEAN);
+    }
+
+    public String[] getStrings(String column) {
+      return (String[]) get(column, ColumnType.STRING);
+    }
+
+    public byte[][] getBytes(String column) {
+      return (byte[][]) get(column, ColumnType.BYTES);
+    }
+
+    private Object get(String column, ColumnType type) {
+      Integer index = columnIndexes.get(column);
+      if (index == null) {
+        throw new IllegalArgumentException("Unknown column " + column);
+      }
+      if (columns.get(index).getType() != type) {
+        throw new IllegalArgumentException(
+            "Column " + column + " is " + columns.get(index).getType());
+      }
+      return data[index];
+    }
+  }
+
+  private static final class Decoder {
+    private final byte[] data;
+    private int position;
+
+    Decoder(byte[] data) {
+      this.data = data;
+    }
+
+    long readVarLong() {
+      long result = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[position++];
+        result |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return result;
+    }
+  }
+}
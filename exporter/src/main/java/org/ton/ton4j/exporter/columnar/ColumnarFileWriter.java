@@ -0,0 +1,456 @@
+package org.ton.ton4j.exporter.columnar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import lombok.Getter;
+
+/**
+ * Writes rows into a compressed columnar file (Parquet-like, without external dependencies).
+ *
+ * <p>Rows are buffered per column in primitive arrays and flushed as a row group every {@code
+ * rowGroupSize} rows. Each column chunk of a row group is encoded according to its {@link
+ * ColumnType} and deflate-compressed. The footer holds the schema and the row group offsets, so a
+ * reader can skip to any row group.
+ *
+ * <pre>
+ * file      = "TCOL" row_group* footer footer_length:int32 "TCOL"
+ * row_group = chunk{column_count}
+ * chunk     = uncompressed_length:int32 compressed_length:int32 bytes
+ * footer    = version:int8 codec:int8 column_count:int32 (name:utf type:int8)*
+ *             row_group_count:int32 (offset:int64 rows:int32)* total_rows:int64
+ * </pre>
+ *
+ * <p>Usage: set a value for the columns of the current row with the typed setters, then call
+ * {@link #endRow()}. Columns that were not set get a default value (0, false, empty). Not
+ * thread-safe.
+ */
+public class ColumnarFileWriter implements Closeable {
+
+  static final byte[] MAGIC = {'T', 'C', 'O', 'L'};
+  static final int VERSION = 1;
+  static final int CODEC_NONE = 0;
+  static final int CODEC_DEFLATE = 1;
+
+  public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+  public static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+
+  private static final byte[] EMPTY = new byte[0];
+
+  @Getter private final List<Column> columns;
+  private final ColumnBuffer[] buffers;
+  private final Map<String, Integer> columnIndexes = new HashMap<>();
+  private final OutputStream out;
+  private final int rowGroupSize;
+  private final Deflater deflater;
+  private final List<long[]> rowGroups = new ArrayList<>();
+  private final Encoder encoder = new Encoder();
+  private byte[] compressBuffer = new byte[64 * 1024];
+  private int rows;
+  @Getter private long totalRows;
+  @Getter private long bytesWritten;
+  private boolean closed;
+
+  public ColumnarFileWriter(String path, List<Column> columns) throws IOException {
+    this(path, columns, DEFAULT_ROW_GROUP_SIZE, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * @param path output file, overwritten if it exists
+   * @param columns schema
+   * @param rowGroupSize number of rows per row group
+   * @param compressionLevel deflate level 1-9, or 0 to store chunks uncompressed
+   */
+  public ColumnarFileWriter(
+      String path, List<Column> columns, int rowGroupSize, int compressionLevel)
+      throws IOException {
+    this.columns = new ArrayList<>(columns);
+    this.rowGroupSize = Math.max(1, rowGroupSize);
+    this.deflater = compressionLevel > 0 ? new Deflater(compressionLevel, true) : null;
+    this.buffers = new ColumnBuffer[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      Column column = columns.get(i);
+      if (columnIndexes.put(column.getName(), i) != null) {
+        throw new IllegalArgumentException("Duplicate column " + column.getName());
+      }
+      buffers[i] = newBuffer(column.getType());
+    }
+    this.out = new BufferedOutputStream(new FileOutputStream(path), 256 * 1024);
+    write(MAGIC, 0, MAGIC.length);
+  }
+
+  /** @return index of the column with the given name */
+  public int columnIndex(String name) {
+    Integer index = columnIndexes.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown column " + name);
+    }
+    return index;
+  }
+
+  public void setLong(int column, long value) {
+    ((LongColumnBuffer) buffer(column, ColumnType.INT64)).add(value);
+  }
+
+  public void setInt(int column, int value) {
+    ((IntColumnBuffer) buffer(column, ColumnType.INT32)).add(value);
+  }
+
+  public void setBoolean(int column, boolean value) {
+    ((BooleanColumnBuffer) buffer(column, ColumnType.BOOLEAN)).add(value);
+  }
+
+  /** @param value string, null is stored as an empty string */
+  public void setString(int column, String value) {
+    ((StringColumnBuffer) buffer(column, ColumnType.STRING)).add(value == null ? "" : value);
+  }
+
+  /** @param value bytes, null is stored as an empty value */
+  public void setBytes(int column, byte[] value) {
+    ((BytesColumnBuffer) buffer(column, ColumnType.BYTES)).add(value == null ? EMPTY : value);
+  }
+
+  /** Completes the current row and flushes a row group if it is full. */
+  public void endRow() throws IOException {
+    for (ColumnBuffer buffer : buffers) {
+      if (buffer.size == rows) {
+        buffer.addDefault();
+      }
+    }
+    rows++;
+    totalRows++;
+    if (rows >= rowGroupSize) {
+      flushRowGroup();
+    }
+  }
+
+  private ColumnBuffer buffer(int column, ColumnType expected) {
+    ColumnBuffer buffer = buffers[column];
+    if (columns.get(column).getType() != expected) {
+      throw new IllegalArgumentException(
+          "Column " + columns.get(column).getName() + " is " + columns.get(column).getType());
+    }
+    if (buffer.size != rows) {
+      throw new IllegalStateException(
+          "Column " + columns.get(column).getName() + " already set in this row");
+    }
+    return buffer;
+  }
+
+  private void flushRowGroup() throws IOException {
+    if (rows == 0) {
+      return;
+    }
+    rowGroups.add(new long[] {bytesWritten, rows});
+    for (ColumnBuffer buffer : buffers) {
+      encoder.reset();
+      buffer.encode(encoder);
+      writeChunk(encoder.buf, encoder.size);
+      buffer.reset();
+    }
+    rows = 0;
+  }
+
+  private void writeChunk(byte[] data, int length) throws IOException {
+    if (deflater == null) {
+      writeInt(length);
+      writeInt(length);
+      write(data, 0, length);
+      return;
+    }
+    deflater.reset();
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+    int compressed = 0;
+    while (!deflater.finished()) {
+      if (compressed == compressBuffer.length) {
+        compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+      }
+      compressed +=
+          deflater.deflate(compressBuffer, compressed, compressBuffer.length - compressed);
+    }
+    writeInt(length);
+    writeInt(compressed);
+    write(compressBuffer, 0, compressed);
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+    bytesWritten += 4;
+  }
+
+  private void write(byte[] data, int offset, int length) throws IOException {
+    out.write(data, offset, length);
+    bytesWritten += length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flushRowGroup();
+
+      ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+      DataOutputStream footer = new DataOutputStream(footerBytes);
+      footer.writeByte(VERSION);
+      footer.writeByte(deflater == null ? CODEC_NONE : CODEC_DEFLATE);
+      footer.writeInt(columns.size());
+      for (Column column : columns) {
+        footer.writeUTF(column.getName());
+        footer.writeByte(column.getType().ordinal());
+      }
+      footer.writeInt(rowGroups.size());
+      for (long[] rowGroup : rowGroups) {
+        footer.writeLong(rowGroup[0]);
+        footer.writeInt((int) rowGroup[1]);
+      }
+      footer.writeLong(totalRows);
+      footer.flush();
+
+      byte[] footerData = footerBytes.toByteArray();
+      write(footerData, 0, footerData.length);
+      writeInt(footerData.length);
+      write(MAGIC, 0, MAGIC.length);
+    } finally {
+      out.close();
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  private static ColumnBuffer newBuffer(ColumnType type) {
+    switch (type) {
+      case INT64:
+        return new LongColumnBuffer();
+      case INT32:
+        return new IntColumnBuffer();
+      case BOOLEAN:
+        return new BooleanColumnBuffer();
+      case STRING:
+        return new StringColumnBuffer();
+      case BYTES:
+        return new BytesColumnBuffer();
+      default:
+        throw new IllegalArgumentException("Unsupported column type " + type);
+    }
+  }
+
+  private abstract static class ColumnBuffer {
+    int size;
+
+    abstract void addDefault();
+
+    abstract void encode(Encoder encoder);
+
+    void reset() {
+      size = 0;
+    }
+  }
+
+  private static final class LongColumnBuffer extends ColumnBuffer {
+    long[] values = new long[1024];
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    @Override
+    void addDefault() {
+      add(0);
+    }
+
+    @Override
+    void encode(Encoder encoder) {
+      long previous = 0;
+      for (int i = 0; i < size; i++) {
+        encoder.writeVarLong(zigzag(values[i] - previous));
+        previous = values[i];
+      }
+    }
+  }
+
+  private static final class IntColumnBuffer extends ColumnBuffer {
+    int[] values = new int[1024];
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    @Override
+    void addDefault() {
+      add(0);
+    }
+
+    @Override
+    void encode(Encoder encoder) {
+      for (int i = 0; i < size; i++) {
+        encoder.writeVarLong(zigzag(values[i]));
+      }
+    }
+  }
+
+  private static final class BooleanColumnBuffer extends ColumnBuffer {
+    byte[] bits = new byte[128];
+
+    void add(boolean value) {
+      if (size >>> 3 == bits.length) {
+        bits = Arrays.copyOf(bits, bits.length * 2);
+      }
+      if (value) {
+        bits[size >>> 3] |= (byte) (1 << (size & 7));
+      }
+      size++;
+    }
+
+    @Override
+    void addDefault() {
+      add(false);
+    }
+
+    @Override
+    void encode(Encoder encoder) {
+      encoder.writeBytes(bits, 0, (size + 7) >>> 3);
+    }
+
+    @Override
+    void reset() {
+      Arrays.fill(bits, (byte) 0);
+      super.reset();
+    }
+  }
+
+  private static final class StringColumnBuffer extends ColumnBuffer {
+    final Map<String, Integer> dictionary = new HashMap<>();
+    final List<String> entries = new ArrayList<>();
+    int[] ids = new int[1024];
+
+    void add(String value) {
+      Integer id = dictionary.get(value);
+      if (id == null) {
+        id = entries.size();
+        dictionary.put(value, id);
+        entries.add(value);
+      }
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    @Override
+    void addDefault() {
+      add("");
+    }
+
+    @Override
+    void encode(Encoder encoder) {
+      encoder.writeVarLong(entries.size());
+      for (String entry : entries) {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        encoder.writeVarLong(bytes.length);
+        encoder.writeBytes(bytes, 0, bytes.length);
+      }
+      for (int i = 0; i < size; i++) {
+        encoder.writeVarLong(ids[i]);
+      }
+    }
+
+    @Override
+    void reset() {
+      dictionary.clear();
+      entries.clear();
+      super.reset();
+    }
+  }
+
+  private static final class BytesColumnBuffer extends ColumnBuffer {
+    final Encoder data = new Encoder();
+    int[] lengths = new int[1024];
+
+    void add(byte[] value) {
+      if (size == lengths.length) {
+        lengths = Arrays.copyOf(lengths, size * 2);
+      }
+      lengths[size++] = value.length;
+      data.writeBytes(value, 0, value.length);
+    }
+
+    @Override
+    void addDefault() {
+      add(EMPTY);
+    }
+
+    @Override
+    void encode(Encoder encoder) {
+      for (int i = 0; i < size; i++) {
+        encoder.writeVarLong(lengths[i]);
+      }
+      encoder.writeBytes(data.buf, 0, data.size);
+    }
+
+    @Override
+    void reset() {
+      data.reset();
+      super.reset();
+    }
+  }
+
+  static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  /** Growable byte array with varint encoding. */
+  private static final class Encoder {
+    byte[] buf = new byte[64 * 1024];
+    int size;
+
+    void reset() {
+      size = 0;
+    }
+
+    private void ensure(int extra) {
+      if (size + extra > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+      }
+    }
+
+    void writeVarLong(long value) {
+      ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        buf[size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[size++] = (byte) value;
+    }
+
+    void writeBytes(byte[] bytes, int offset, int length) {
+      ensure(length);
+      System.arraycopy(bytes, offset, buf, size, length);
+      size += length;
+    }
+  }
+}
@@ -0,0 +1,406 @@
+package org.ton.ton4j.exporter.json;
+
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Map;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.TonHashMap;
+import org.ton.ton4j.cell.TonHashMapAug;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.TonHashMapE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.tlb.AccountBlock;
+import org.ton.ton4j.tlb.AccountStates;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockExtra;
+import org.ton.ton4j.tlb.BlockInfo;
+import org.ton.ton4j.tlb.CurrencyCollection;
+import org.ton.ton4j.tlb.ExternalMessageInInfo;
+import org.ton.ton4j.tlb.ExternalMessageOutInfo;
+import org.ton.ton4j.tlb.HashUpdate;
+import org.ton.ton4j.tlb.InternalMessageInfo;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.MsgAddressIntStd;
+import org.ton.ton4j.tlb.ShardAccountBlocks;
+import org.ton.ton4j.tlb.ShardIdent;
+import org.ton.ton4j.tlb.Transaction;
+import org.ton.ton4j.tlb.TransactionIO;
+
+/**
+ * Streaming JSON encoder for deserialized blocks. The hot part of the model (block header, account
+ * blocks, transactions, messages, addresses and currency collections) is written field by field
+ * straight into a {@link JsonByteWriter}, without Gson reflection and without intermediate
+ * strings. Rarely populated or deeply polymorphic parts (value flow, merkle update, in/out message
+ * descriptors, masterchain extra, transaction descriptions, state init) are delegated to the given
+ * Gson instance, streaming into the same buffer.
+ *
+ * <p>The output is identical to {@code gson.toJson(block)}: fields appear in declaration order,
+ * null fields are omitted and cells are written as hex BoC strings. Thread-safe.
+ */
+public class BlockJsonEncoder {
+
+  private final Gson gson;
+
+  /** @param gson used for the parts of the model that are not encoded directly */
+  public BlockJsonEncoder(Gson gson) {
+    this.gson = gson;
+  }
+
+  /**
+   * Writes an export line {@code workchain,shard,seqno,json} without line separator, the same
+   * format the exporter produces for deserialized blocks.
+   */
+  public void writeLine(Block block, JsonByteWriter out) {
+    ShardIdent shard = block.getBlockInfo().getShard();
+    out.number(shard.getWorkchain())
+        .writeByte(',')
+        .ascii(shard.convertShardIdentToShard().toString(16))
+        .writeByte(',')
+        .number(block.getBlockInfo().getSeqno())
+        .writeByte(',');
+    writeBlock(block, out);
+  }
+
+  public void writeBlock(Block block, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(block.getMagic());
+    out.name("globalId").value(block.getGlobalId());
+    if (block.getBlockInfo() != null) {
+      out.name("blockInfo");
+      writeBlockInfo(block.getBlockInfo(), out);
+    }
+    delegatedField("valueFlow", block.getValueFlow(), out);
+    delegatedField("stateUpdate", block.getStateUpdate(), out);
+    if (block.getExtra() != null) {
+      out.name("extra");
+      writeBlockExtra(block.getExtra(), out);
+    }
+    out.endObject();
+  }
+
+  private void writeBlockInfo(BlockInfo info, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(info.getRawMagic());
+    out.name("version").value(info.getVersion());
+    out.name("notMaster").value(info.isNotMaster());
+    out.name("afterMerge").value(info.isAfterMerge());
+    out.name("beforeSplit").value(info.isBeforeSplit());
+    out.name("afterSplit").value(info.isAfterSplit());
+    out.name("wantSplit").value(info.isWantSplit());
+    out.name("wantMerge").value(info.isWantMerge());
+    out.name("keyBlock").value(info.isKeyBlock());
+    out.name("vertSeqnoIncr").value(info.isVertSeqnoIncr());
+    out.name("flags").value(info.getFlags());
+    out.name("seqno").value(info.getSeqno());
+    out.name("vertSeqno").value(info.getVertSeqno());
+    if (info.getShard() != null) {
+      out.name("shard");
+      writeShardIdent(info.getShard(), out);
+    }
+    out.name("genuTime").value(info.getGenuTime());
+    bigIntegerField("startLt", info.getStartLt(), out);
+    bigIntegerField("endLt", info.getEndLt(), out);
+    out.name("genValidatorListHashShort").value(info.getGenValidatorListHashShort());
+    out.name("genCatchainSeqno").value(info.getGenCatchainSeqno());
+    out.name("minRefMcSeqno").value(info.getMinRefMcSeqno());
+    out.name("prevKeyBlockSeqno").value(info.getPrevKeyBlockSeqno());
+    delegatedField("globalVersion", info.getGlobalVersion(), out);
+    delegatedField("masterRef", info.getMasterRef(), out);
+    delegatedField("prevRef", info.getPrevRef(), out);
+    delegatedField("prevVertRef", info.getPrevVertRef(), out);
+    out.endObject();
+  }
+
+  private void writeShardIdent(ShardIdent shard, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(shard.getRawMagic());
+    out.name("prefixBits").value(shard.getPrefixBits());
+    out.name("workchain").value(shard.getWorkchain());
+    bigIntegerField("shardPrefix", shard.getShardPrefix(), out);
+    out.endObject();
+  }
+
+  private void writeBlockExtra(BlockExtra extra, JsonByteWriter out) {
+    out.beginObject();
+    delegatedField("inMsgDesc", extra.getInMsgDesc(), out);
+    delegatedField("outMsgDesc", extra.getOutMsgDesc(), out);
+    if (extra.getShardAccountBlocks() != null) {
+      out.name("shardAccountBlocks");
+      writeShardAccountBlocks(extra.getShardAccountBlocks(), out);
+    }
+    bigIntegerField("randSeed", extra.randSeed, out);
+    bigIntegerField("createdBy", extra.createdBy, out);
+    delegatedField("mcBlockExtra", extra.getMcBlockExtra(), out);
+    out.endObject();
+  }
+
+  private void writeShardAccountBlocks(ShardAccountBlocks blocks, JsonByteWriter out) {
+    out.beginObject();
+    if (blocks.getShardAccountBlocks() != null) {
+      out.name("shardAccountBlocks");
+      writeValue(blocks.getShardAccountBlocks(), out);
+    }
+    out.endObject();
+  }
+
+  private void writeHashMapAug(TonHashMapAug map, JsonByteWriter out) {
+    out.beginObject();
+    if (map.elements != null) {
+      out.name("elements").beginObject();
+      for (Map.Entry<Object, ValueExtra> entry : map.elements.entrySet()) {
+        if (entry.getValue() != null) {
+          out.name(String.valueOf(entry.getKey()));
+          writeValueExtra(entry.getValue(), out);
+        }
+      }
+      out.endObject();
+    }
+    out.name("keySize").value(map.getKeySize());
+    out.endObject();
+  }
+
+  private void writeHashMap(TonHashMap map, JsonByteWriter out) {
+    out.beginObject();
+    if (map.elements != null) {
+      out.name("elements").beginObject();
+      for (Map.Entry<Object, Object> entry : map.elements.entrySet()) {
+        if (entry.getValue() != null) {
+          out.name(String.valueOf(entry.getKey()));
+          writeValue(entry.getValue(), out);
+        }
+      }
+      out.endObject();
+    }
+    out.name("keySize").value(map.getKeySize());
+    out.endObject();
+  }
+
+  private void writeValueExtra(ValueExtra valueExtra, JsonByteWriter out) {
+    out.beginObject();
+    Object value = valueExtra.getValue();
+    Object extra = valueExtra.getExtra();
+    if (value != null) {
+      out.name("value");
+      writeValue(value, out);
+    }
+    if (extra != null) {
+      out.name("extra");
+      writeValue(extra, out);
+    }
+    out.endObject();
+  }
+
+  private void writeAccountBlock(AccountBlock accountBlock, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(accountBlock.getMagic());
+    bigIntegerField("addr", accountBlock.getAddr(), out);
+    if (accountBlock.getTransactions() != null) {
+      out.name("transactions");
+      writeValue(accountBlock.getTransactions(), out);
+    }
+    cellField("stateUpdate", accountBlock.getStateUpdate(), out);
+    out.endObject();
+  }
+
+  private void writeTransaction(Transaction tx, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(tx.getRawMagic());
+    bigIntegerField("accountAddr", tx.getRawAccountAddr(), out);
+    bigIntegerField("lt", tx.getLt(), out);
+    bigIntegerField("prevTxHash", tx.getRawPrevTxHash(), out);
+    bigIntegerField("prevTxLt", tx.getPrevTxLt(), out);
+    out.name("now").value(tx.getNow());
+    out.name("outMsgCount").value(tx.getOutMsgCount());
+    if (tx.getOrigStatus() != null) {
+      out.name("origStatus").value(tx.getOrigStatus().name());
+    }
+    if (tx.getEndStatus() != null) {
+      out.name("endStatus").value(tx.getEndStatus().name());
+    }
+    if (tx.getInOut() != null) {
+      out.name("inOut");
+      writeTransactionIO(tx.getInOut(), out);
+    }
+    if (tx.getTotalFees() != null) {
+      out.name("totalFees");
+      writeValue(tx.getTotalFees(), out);
+    }
+    if (tx.getStateUpdate() != null) {
+      out.name("stateUpdate");
+      writeValue(tx.getStateUpdate(), out);
+    }
+    delegatedField("description", tx.getDescription(), out);
+    out.endObject();
+  }
+
+  private void writeTransactionIO(TransactionIO io, JsonByteWriter out) {
+    out.beginObject();
+    if (io.getIn() != null) {
+      out.name("in");
+      writeValue(io.getIn(), out);
+    }
+    if (io.getOut() != null) {
+      out.name("out");
+      writeValue(io.getOut(), out);
+    }
+    out.endObject();
+  }
+
+  private void writeMessage(Message message, JsonByteWriter out) {
+    out.beginObject();
+    if (message.getInfo() != null) {
+      out.name("info");
+      writeValue(message.getInfo(), out);
+    }
+    delegatedField("init", message.getInit(), out);
+    cellField("body", message.getBody(), out);
+    out.endObject();
+  }
+
+  private void writeInternalMessageInfo(InternalMessageInfo info, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(info.getRawMagic());
+    booleanField("iHRDisabled", info.getIHRDisabled(), out);
+    booleanField("bounce", info.getBounce(), out);
+    booleanField("bounced", info.getBounced(), out);
+    valueField("srcAddr", info.getSrcAddr(), out);
+    valueField("dstAddr", info.getDstAddr(), out);
+    valueField("value", info.getValue(), out);
+    bigIntegerField("extraFlags", info.getExtraFlags(), out);
+    bigIntegerField("fwdFee", info.getFwdFee(), out);
+    bigIntegerField("createdLt", info.getCreatedLt(), out);
+    out.name("createdAt").value(info.getCreatedAt());
+    out.endObject();
+  }
+
+  private void writeExternalMessageInInfo(ExternalMessageInInfo info, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(info.getRawMagic());
+    valueField("srcAddr", info.getSrcAddr(), out);
+    valueField("dstAddr", info.getDstAddr(), out);
+    bigIntegerField("importFee", info.getImportFee(), out);
+    out.endObject();
+  }
+
+  private void writeExternalMessageOutInfo(ExternalMessageOutInfo info, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(info.getRawMagic());
+    valueField("srcAddr", info.getSrcAddr(), out);
+    valueField("dstAddr", info.getDstAddr(), out);
+    bigIntegerField("createdLt", info.getCreatedLt(), out);
+    out.name("createdAt").value(info.getCreatedAt());
+    out.endObject();
+  }
+
+  private void writeAddress(MsgAddressIntStd address, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(address.getMagic());
+    delegatedField("anycast", address.getAnycast(), out);
+    out.name("workchainId").value(address.getWorkchainId());
+    bigIntegerField("address", address.getAddress(), out);
+    out.endObject();
+  }
+
+  private void writeCurrencyCollection(CurrencyCollection value, JsonByteWriter out) {
+    out.beginObject();
+    bigIntegerField("coins", value.getCoins(), out);
+    if (value.getExtraCurrencies() != null) {
+      out.name("extraCurrencies");
+      writeValue(value.getExtraCurrencies(), out);
+    }
+    out.endObject();
+  }
+
+  private void writeHashUpdate(HashUpdate update, JsonByteWriter out) {
+    out.beginObject();
+    out.name("magic").value(update.getRawMagic());
+    bigIntegerField("oldHash", update.getRawOldHash(), out);
+    bigIntegerField("newHash", update.getRawNewHash(), out);
+    out.endObject();
+  }
+
+  /** Writes a non-null value, dispatching on its runtime class like Gson does. */
+  private void writeValue(Object value, JsonByteWriter out) {
+    Class<?> type = value.getClass();
+    if (type == BigInteger.class) {
+      out.value((BigInteger) value);
+    } else if (type == Long.class || type == Integer.class || type == Short.class
+        || type == Byte.class) {
+      out.value(((Number) value).longValue());
+    } else if (type == Boolean.class) {
+      out.value((boolean) (Boolean) value);
+    } else if (type == String.class) {
+      out.value((String) value);
+    } else if (type == Cell.class) {
+      out.value(((Cell) value).toHex(false));
+    } else if (type == Transaction.class) {
+      writeTransaction((Transaction) value, out);
+    } else if (type == Message.class) {
+      writeMessage((Message) value, out);
+    } else if (type == InternalMessageInfo.class) {
+      writeInternalMessageInfo((InternalMessageInfo) value, out);
+    } else if (type == ExternalMessageInInfo.class) {
+      writeExternalMessageInInfo((ExternalMessageInInfo) value, out);
+    } else if (type == ExternalMessageOutInfo.class) {
+      writeExternalMessageOutInfo((ExternalMessageOutInfo) value, out);
+    } else if (type == MsgAddressIntStd.class) {
+      writeAddress((MsgAddressIntStd) value, out);
+    } else if (type == CurrencyCollection.class) {
+      writeCurrencyCollection((CurrencyCollection) value, out);
+    } else if (type == HashUpdate.class) {
+      writeHashUpdate((HashUpdate) value, out);
+    } else if (type == AccountBlock.class) {
+      writeAccountBlock((AccountBlock) value, out);
+    } else if (type == AccountStates.class) {
+      out.value(((AccountStates) value).name());
+    } else if (type == TonHashMapAug.class || type == TonHashMapAugE.class) {
+      writeHashMapAug((TonHashMapAug) value, out);
+    } else if (type == TonHashMap.class || type == TonHashMapE.class) {
+      writeHashMap((TonHashMap) value, out);
+    } else {
+      delegate(value, out);
+    }
+  }
+
+  private void valueField(String name, Object value, JsonByteWriter out) {
+    if (value != null) {
+      out.name(name);
+      writeValue(value, out);
+    }
+  }
+
+  private void delegatedField(String name, Object value, JsonByteWriter out) {
+    if (value != null) {
+      out.name(name);
+      delegate(value, out);
+    }
+  }
+
+  private static void bigIntegerField(String name, BigInteger value, JsonByteWriter out) {
+    if (value != null) {
+      out.name(name).value(value);
+    }
+  }
+
+  private static void booleanField(String name, Boolean value, JsonByteWriter out) {
+    if (value != null) {
+      out.name(name).value((boolean) value);
+    }
+  }
+
+  private static void cellField(String name, Cell value, JsonByteWriter out) {
+    if (value != null) {
+      out.name(name).value(value.toHex(false));
+    }
+  }
+
+  private void delegate(Object value, JsonByteWriter out) {
+    try {
+      gson.toJson(value, value.getClass(), gson.newJsonWriter(out.valueWriter()));
+    } catch (IOException e) {
+      // the writer never fails
+      throw new IllegalStateException(e);
+    }
+  }
+}
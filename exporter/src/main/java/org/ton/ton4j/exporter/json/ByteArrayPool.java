@@ -0,0 +1,52 @@
+package org.ton.ton4j.exporter.json;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of byte arrays used as encoding buffers. Arrays that grew beyond {@code
+ * maxRetainedSize} or that do not fit into the pool are left to the garbage collector, so the pool
+ * never holds more than {@code maxPooled * maxRetainedSize} bytes.
+ */
+public class ByteArrayPool {
+
+  private final BlockingQueue<byte[]> pool;
+  private final int initialSize;
+  private final int maxRetainedSize;
+
+  /**
+   * @param maxPooled maximal number of retained arrays
+   * @param initialSize size of newly allocated arrays
+   * @param maxRetainedSize arrays larger than this are not retained
+   */
+  public ByteArrayPool(int maxPooled, int initialSize, int maxRetainedSize) {
+    this.pool = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    this.initialSize = initialSize;
+    this.maxRetainedSize = maxRetainedSize;
+  }
+
+  /** @return a pooled array, or a new one if the pool is empty */
+  public byte[] acquire() {
+    byte[] array = pool.poll();
+    return array != null ? array : new byte[initialSize];
+  }
+
+  public void release(byte[] array) {
+    if (array != null && array.length <= maxRetainedSize) {
+      pool.offer(array);
+    }
+  }
+
+  /** Returns the array backing a buffer obtained from {@link JsonByteWriter#toByteBuffer()}. */
+  public void release(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      release(buffer.array());
+    }
+  }
+
+  /** @return number of arrays currently available */
+  public int size() {
+    return pool.size();
+  }
+}
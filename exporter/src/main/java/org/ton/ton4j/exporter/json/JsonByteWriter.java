@@ -0,0 +1,348 @@
+package org.ton.ton4j.exporter.json;
+
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Minimal streaming JSON writer that encodes UTF-8 directly into a growable byte array. Produces
+ * the same compact output as Gson with HTML escaping disabled. Not thread-safe; meant to be reused
+ * via {@link #reset()} or {@link #reset(byte[])} so that encoding a block allocates nothing but the
+ * occasional larger array.
+ */
+public final class JsonByteWriter {
+
+  private static final byte[] HEX = "0123456789abcdef".getBytes();
+  private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+  private byte[] buf;
+  private int size;
+  private boolean[] hasElement = new boolean[32];
+  private int depth;
+  private boolean afterName;
+  private final CharWriter charWriter = new CharWriter();
+
+  public JsonByteWriter(int initialCapacity) {
+    this.buf = new byte[Math.max(16, initialCapacity)];
+  }
+
+  public JsonByteWriter(byte[] buffer) {
+    this.buf = buffer;
+  }
+
+  /** Clears the content, keeps the current array. */
+  public JsonByteWriter reset() {
+    size = 0;
+    depth = 0;
+    afterName = false;
+    hasElement[0] = false;
+    return this;
+  }
+
+  /** Clears the content and continues writing into the given array. */
+  public JsonByteWriter reset(byte[] buffer) {
+    this.buf = buffer;
+    return reset();
+  }
+
+  /** @return backing array, holds {@link #size()} valid bytes */
+  public byte[] array() {
+    return buf;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** @return view of the written bytes, backed by {@link #array()} */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(buf, 0, size);
+  }
+
+  public JsonByteWriter beginObject() {
+    beforeValue();
+    writeByte('{');
+    push();
+    return this;
+  }
+
+  public JsonByteWriter endObject() {
+    depth--;
+    writeByte('}');
+    return this;
+  }
+
+  public JsonByteWriter beginArray() {
+    beforeValue();
+    writeByte('[');
+    push();
+    return this;
+  }
+
+  public JsonByteWriter endArray() {
+    depth--;
+    writeByte(']');
+    return this;
+  }
+
+  /** Writes a member name, the name must not need escaping. */
+  public JsonByteWriter name(String name) {
+    if (hasElement[depth]) {
+      writeByte(',');
+    }
+    hasElement[depth] = true;
+    writeByte('"');
+    ascii(name);
+    writeByte('"');
+    writeByte(':');
+    afterName = true;
+    return this;
+  }
+
+  public JsonByteWriter value(long value) {
+    beforeValue();
+    return number(value);
+  }
+
+  public JsonByteWriter value(boolean value) {
+    beforeValue();
+    ascii(value ? "true" : "false");
+    return this;
+  }
+
+  public JsonByteWriter value(BigInteger value) {
+    beforeValue();
+    if (value.bitLength() < 64) {
+      return number(value.longValue());
+    }
+    ascii(value.toString());
+    return this;
+  }
+
+  public JsonByteWriter value(String value) {
+    beforeValue();
+    string(value);
+    return this;
+  }
+
+  /** Writes the bytes as a lower-case hex JSON string. */
+  public JsonByteWriter hexValue(byte[] value) {
+    beforeValue();
+    writeByte('"');
+    hex(value);
+    writeByte('"');
+    return this;
+  }
+
+  /** Appends lower-case hex digits outside of the JSON structure. */
+  public JsonByteWriter hex(byte[] value) {
+    ensure(value.length * 2);
+    for (byte b : value) {
+      buf[size++] = HEX[(b >> 4) & 0xF];
+      buf[size++] = HEX[b & 0xF];
+    }
+    return this;
+  }
+
+  /** Appends a decimal number outside of the JSON structure. */
+  public JsonByteWriter number(long value) {
+    if (value == Long.MIN_VALUE) {
+      ensure(MIN_LONG.length);
+      System.arraycopy(MIN_LONG, 0, buf, size, MIN_LONG.length);
+      size += MIN_LONG.length;
+      return this;
+    }
+    ensure(20);
+    if (value < 0) {
+      buf[size++] = '-';
+      value = -value;
+    }
+    int start = size;
+    do {
+      buf[size++] = (byte) ('0' + value % 10);
+      value /= 10;
+    } while (value != 0);
+    for (int i = start, j = size - 1; i < j; i++, j--) {
+      byte t = buf[i];
+      buf[i] = buf[j];
+      buf[j] = t;
+    }
+    return this;
+  }
+
+  /** Appends ASCII characters outside of the JSON structure, without escaping. */
+  public JsonByteWriter ascii(CharSequence value) {
+    int length = value.length();
+    ensure(length);
+    for (int i = 0; i < length; i++) {
+      buf[size++] = (byte) value.charAt(i);
+    }
+    return this;
+  }
+
+  /** Appends a single byte outside of the JSON structure. */
+  public JsonByteWriter writeByte(int b) {
+    ensure(1);
+    buf[size++] = (byte) b;
+    return this;
+  }
+
+  /**
+   * Starts a value written by another serializer (e.g. Gson) through the returned writer. The
+   * writer encodes characters as UTF-8 into this buffer and must produce exactly one JSON value.
+   */
+  public Writer valueWriter() {
+    beforeValue();
+    return charWriter;
+  }
+
+  private void beforeValue() {
+    if (afterName) {
+      afterName = false;
+      return;
+    }
+    if (hasElement[depth]) {
+      writeByte(',');
+    }
+    hasElement[depth] = true;
+  }
+
+  private void push() {
+    depth++;
+    if (depth == hasElement.length) {
+      hasElement = Arrays.copyOf(hasElement, depth * 2);
+    }
+    hasElement[depth] = false;
+  }
+
+  private void string(String value) {
+    writeByte('"');
+    int length = value.length();
+    ensure(length);
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+        ensure(1);
+        buf[size++] = (byte) c;
+        continue;
+      }
+      switch (c) {
+        case '"':
+          ascii("\\\"");
+          break;
+        case '\\':
+          ascii("\\\\");
+          break;
+        case '\t':
+          ascii("\\t");
+          break;
+        case '\b':
+          ascii("\\b");
+          break;
+        case '\n':
+          ascii("\\n");
+          break;
+        case '\r':
+          ascii("\\r");
+          break;
+        case '\f':
+          ascii("\\f");
+          break;
+        case '\u2028':
+          ascii("\\u2028");
+          break;
+        case '\u2029':
+          ascii("\\u2029");
+          break;
+        default:
+          if (c < 0x20) {
+            ascii("\\u00");
+            writeByte(HEX[(c >> 4) & 0xF]);
+            writeByte(HEX[c & 0xF]);
+          } else if (Character.isHighSurrogate(c)
+              && i + 1 < length
+              && Character.isLowSurrogate(value.charAt(i + 1))) {
+            utf8(Character.toCodePoint(c, value.charAt(++i)));
+          } else {
+            utf8(c);
+          }
+      }
+    }
+    writeByte('"');
+  }
+
+  private void utf8(int codePoint) {
+    ensure(4);
+    if (codePoint < 0x80) {
+      buf[size++] = (byte) codePoint;
+    } else if (codePoint < 0x800) {
+      buf[size++] = (byte) (0xC0 | (codePoint >> 6));
+      buf[size++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      if (codePoint >= 0xD800 && codePoint <= 0xDFFF) {
+        // unpaired surrogate
+        buf[size++] = '?';
+        return;
+      }
+      buf[size++] = (byte) (0xE0 | (codePoint >> 12));
+      buf[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buf[size++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else {
+      buf[size++] = (byte) (0xF0 | (codePoint >> 18));
+      buf[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+      buf[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buf[size++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+  }
+
+  private void ensure(int extra) {
+    if (size + extra > buf.length) {
+      buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+    }
+  }
+
+  /** Character sink for delegated serializers, the output is already escaped JSON. */
+  private final class CharWriter extends Writer {
+    private char pendingHighSurrogate;
+
+    @Override
+    public void write(int c) {
+      char ch = (char) c;
+      if (pendingHighSurrogate != 0) {
+        char high = pendingHighSurrogate;
+        pendingHighSurrogate = 0;
+        if (Character.isLowSurrogate(ch)) {
+          utf8(Character.toCodePoint(high, ch));
+          return;
+        }
+        utf8(high);
+      }
+      if (Character.isHighSurrogate(ch)) {
+        pendingHighSurrogate = ch;
+      } else {
+        utf8(ch);
+      }
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+      for (int i = offset; i < offset + length; i++) {
+        write(chars[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+      for (int i = offset; i < offset + length; i++) {
+        write(str.charAt(i));
+      }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
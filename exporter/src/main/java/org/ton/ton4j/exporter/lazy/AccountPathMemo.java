@@ -0,0 +1,70 @@
+package org.ton.ton4j.exporter.lazy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.ton.ton4j.address.Address;
+
+/**
+ * Dictionary path of one account in the last state it was looked up in. Successive states share
+ * every subtree that did not change, so when {@link ShardAccountsLazy#lookup(AccountPathMemo)}
+ * meets a node of the remembered path at the same key position, the account below it is the one
+ * found last time and the walk stops there.
+ */
+public class AccountPathMemo {
+
+  private final Address address;
+  private final List<byte[]> hashes = new ArrayList<>();
+  private final List<Integer> keyOffsets = new ArrayList<>();
+  private ShardAccountLazy account;
+  private long lookups;
+  private long reused;
+
+  public AccountPathMemo(Address address) {
+    this.address = address;
+  }
+
+  public Address getAddress() {
+    return address;
+  }
+
+  /** @return number of lookups done with this memo */
+  public long getLookups() {
+    return lookups;
+  }
+
+  /** @return number of lookups answered from an unchanged subtree of the previous state */
+  public long getReused() {
+    return reused;
+  }
+
+  /** @return true if the node is on the remembered path at the same depth and key position */
+  boolean matches(int depth, int keyOffset, byte[] hash) {
+    return depth < hashes.size()
+        && keyOffsets.get(depth) == keyOffset
+        && Arrays.equals(hashes.get(depth), hash);
+  }
+
+  /** Takes the nodes above a matching node from the current state, the rest is unchanged. */
+  ShardAccountLazy reuse(List<byte[]> pathHashes, List<Integer> pathOffsets) {
+    lookups++;
+    reused++;
+    for (int i = 0; i < pathHashes.size(); i++) {
+      hashes.set(i, pathHashes.get(i));
+      keyOffsets.set(i, pathOffsets.get(i));
+    }
+    return account;
+  }
+
+  /** Replaces the path by the one of a completed lookup and its result, null if not found. */
+  ShardAccountLazy remember(
+      List<byte[]> pathHashes, List<Integer> pathOffsets, ShardAccountLazy found) {
+    lookups++;
+    hashes.clear();
+    hashes.addAll(pathHashes);
+    keyOffsets.clear();
+    keyOffsets.addAll(pathOffsets);
+    account = found;
+    return found;
+  }
+}
@@ -7,6 +7,7 @@ import lombok.Data;
 import org.ton.ton4j.cell.Cell;
 import org.ton.ton4j.cell.CellBuilder;
 import org.ton.ton4j.tlb.*;
+import org.ton.ton4j.utils.Utils;
 
 /**
  *
@@ -28,6 +29,9 @@ public class AccountStorageLazy implements Serializable {
 
   AccountState accountState;
 
+  /** hash of the code cell of an active account, null if there is none */
+  byte[] codeHash;
+
   public Cell toCell() {
 
     return CellBuilder.beginCell()
@@ -46,6 +50,7 @@ public class AccountStorageLazy implements Serializable {
     boolean isStatusActive = cs.preloadBit();
     if (isStatusActive) {
       accountStorage.setAccountStatus("ACTIVE");
+      accountStorage.setCodeHash(loadCodeHash(cs));
       //      accountStorage.setAccountState(AccountStateActive.deserialize(cs));
     } else {
 
@@ -62,4 +67,28 @@ public class AccountStorageLazy implements Serializable {
     accountStorage.setBalance(coins);
     return accountStorage;
   }
+
+  /**
+   * Reads the code reference of an active account without loading the code cell.
+   *
+   * <pre>
+   * account_active$1 _:StateInit = AccountState;
+   * _ fixed_prefix_length:(Maybe (## 5)) special:(Maybe TickTock)
+   *   code:(Maybe ^Cell) data:(Maybe ^Cell) library:(HashmapE 256 SimpleLib) = StateInit;
+   * </pre>
+   */
+  private static byte[] loadCodeHash(CellSliceLazy cs) {
+    cs.skipBit();
+    if (cs.loadBit()) {
+      cs.skipBits(5);
+    }
+    if (cs.loadBit()) {
+      cs.skipBits(2);
+    }
+    if (!cs.loadBit() || cs.getRefsCountLazy() == 0) {
+      return null;
+    }
+    // refs of the balance were already consumed, the code is the next one
+    return Utils.slice(cs.getHashes(), 0, 32);
+  }
 }
@@ -2,13 +2,10 @@ package org.ton.ton4j.exporter.lazy;
 
 import static java.util.Objects.isNull;
 import static java.util.Objects.nonNull;
-import static org.ton.ton4j.exporter.reader.CellDbReader.parseCell;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -17,6 +14,7 @@ import java.util.function.Function;
 import org.ton.ton4j.address.Address;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.*;
+import org.ton.ton4j.exporter.reader.CellCache;
 import org.ton.ton4j.exporter.reader.CellDbReader;
 import org.ton.ton4j.utils.Utils;
 
@@ -767,13 +765,22 @@ public class CellSliceLazy implements Serializable {
   }
 
   public Cell getRefByHash(byte[] hash) {
+    return getRefByHash(hash, CellCache.NO_DEPTH);
+  }
+
+  /**
+   * Loads a referenced cell from the CellDB, or from the reader's cell cache.
+   *
+   * @param hash cell hash
+   * @param depth depth of the cell in the dictionary being walked, the top levels stay cached
+   */
+  public Cell getRefByHash(byte[] hash, int depth) {
     try {
-      byte[] value = cellDbReader.getCellDb().get(hash);
-      //      System.out.println("looking for hash " + Utils.bytesToHex(hash));
-      if (value == null) {
+      Cell cell = cellDbReader.getCell(hash, depth);
+      if (cell == null) {
         throw new RuntimeException("Cannot find cell with hash " + Utils.bytesToHex(hash));
       }
-      return parseCell(ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN));
+      return cell;
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -0,0 +1,499 @@
+package org.ton.ton4j.exporter.lazy;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.ReadOptions;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.reader.VisitedCellSet;
+import org.ton.ton4j.exporter.types.CellTreeAnalyzerConfig;
+import org.ton.ton4j.exporter.types.CellTreeStatistics;
+import org.ton.ton4j.exporter.types.CellType;
+import org.ton.ton4j.exporter.types.ContractStatistics;
+import org.ton.ton4j.utils.Utils;
+
+/**
+ * Counts the cells, bytes and depths of a cell tree in the CellDB, in memory that does not grow
+ * with the tree. Cells are streamed depth first in batches of {@code batchSize} per multiGet and
+ * dropped as soon as their references are known; which cells were already counted is kept in a
+ * {@link VisitedCellSet} on disk. Shared subtrees are therefore walked once, every further
+ * reference is only counted as a duplicate.
+ *
+ * <p>The walk runs on a ForkJoinPool. A worker hands the older half of its stack, which holds the
+ * largest pending subtrees, to a new task whenever the pool has idle threads, so the work stays
+ * balanced however unevenly the tree is shaped.
+ *
+ * <p>For a shard state the accounts dictionary is followed down to the accounts, and the cells
+ * below every account are summed up per contract, see {@link ContractStatistics}.
+ */
+@Slf4j
+public class CellTreeAnalyzer {
+
+  private static final long SHARD_STATE_MAGIC = 0x9023afe2L;
+  private static final int ACCOUNTS_REF = 1;
+
+  private enum Kind {
+    CELL,
+    SHARD_STATE,
+    ACCOUNTS, // ShardAccounts, a HashmapAugE 256
+    DICTIONARY, // node of the accounts dictionary
+    ACCOUNT
+  }
+
+  private final CellDbReader cellDbReader;
+  private final CellTreeAnalyzerConfig config;
+
+  public CellTreeAnalyzer(CellDbReader cellDbReader, CellTreeAnalyzerConfig config) {
+    this.cellDbReader = cellDbReader;
+    this.config = config;
+  }
+
+  /**
+   * Analyzes any cell tree, e.g. a subtree reported by {@link
+   * CellTreeStatistics#getTopSharedCells()}.
+   *
+   * @param rootHash hash of the root cell
+   */
+  public CellTreeStatistics analyze(byte[] rootHash) throws IOException {
+    return analyze(rootHash, Kind.CELL, null);
+  }
+
+  /**
+   * Analyzes a shard state including the statistics per contract.
+   *
+   * @param rootHash hash of the ShardStateUnsplit cell
+   * @param consumer receives the statistics of every account as soon as its cells are counted,
+   *     called concurrently from the walking threads; null if only the top contracts are needed
+   */
+  public CellTreeStatistics analyzeShardState(
+      byte[] rootHash, Consumer<ContractStatistics> consumer) throws IOException {
+    return analyze(rootHash, Kind.SHARD_STATE, consumer);
+  }
+
+  private CellTreeStatistics analyze(
+      byte[] rootHash, Kind kind, Consumer<ContractStatistics> consumer) throws IOException {
+    long start = System.nanoTime();
+    Path directory =
+        config.getWorkDirectory() == null
+            ? Files.createTempDirectory("visited-cells")
+            : Files.createTempDirectory(Paths.get(config.getWorkDirectory()), "visited-cells");
+    try (VisitedCellSet visited = new VisitedCellSet(directory, config.getExpectedCells())) {
+      Analysis analysis = new Analysis(visited, consumer);
+      Deque<Item> stack = new ArrayDeque<>();
+      stack.push(new Item(rootHash, kind, 0, 0, null));
+      Walk walk = new Walk(analysis, stack);
+
+      ForkJoinPool pool = new ForkJoinPool(Math.max(1, config.getParallelThreads()));
+      try {
+        pool.invoke(walk);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      } finally {
+        pool.shutdownNow();
+      }
+
+      TopN<CellTreeStatistics.SharedCell> shared = new TopN<>(config.getTopSharedCells());
+      visited.forEach(
+          (hash, count) -> {
+            if (count > 1 && shared.accepts(count)) {
+              shared.offer(
+                  count,
+                  CellTreeStatistics.SharedCell.builder()
+                      .hash(Utils.bytesToHex(hash))
+                      .references(count)
+                      .build());
+            }
+          });
+
+      Totals totals = walk.totals;
+      Map<CellType, Long> typeCounts = new EnumMap<>(CellType.class);
+      for (CellType type : CellType.values()) {
+        if (totals.types[type.ordinal()] > 0) {
+          typeCounts.put(type, totals.types[type.ordinal()]);
+        }
+      }
+      int maxDepth = totals.maxDepth();
+      CellTreeStatistics statistics =
+          CellTreeStatistics.builder()
+              .rootHash(Utils.bytesToHex(rootHash))
+              .totalCells(totals.cells)
+              .typeCounts(typeCounts)
+              .totalSize(totals.bytes)
+              .maxDepth(maxDepth)
+              .references(totals.references)
+              .duplicateReferences(totals.duplicateReferences)
+              .depthHistogram(Arrays.copyOf(totals.depths, maxDepth + 1))
+              .contracts(analysis.contracts.get())
+              .topContracts(analysis.topContracts.sorted())
+              .topSharedCells(shared.sorted())
+              .build();
+      log.info(
+          "Analyzed {} cells, {} bytes in {} ms, visited set {} MB",
+          totals.cells,
+          totals.bytes,
+          (System.nanoTime() - start) / 1_000_000,
+          visited.getFileSize() >> 20);
+      return statistics;
+    }
+  }
+
+  /** Cell still to visit. */
+  private static final class Item {
+    final byte[] hash;
+    final Kind kind;
+    final int depth;
+    final int offset; // key bits consumed above a dictionary node
+    final Contract owner;
+
+    Item(byte[] hash, Kind kind, int depth, int offset, Contract owner) {
+      this.hash = hash;
+      this.kind = kind;
+      this.depth = depth;
+      this.offset = offset;
+      this.owner = owner;
+    }
+  }
+
+  /** Account whose cells are being counted, possibly by several workers. */
+  private static final class Contract {
+    final Address address;
+    final String accountHash;
+    final AtomicLong cells = new AtomicLong();
+    final AtomicLong bytes = new AtomicLong();
+    final AtomicLong duplicateReferences = new AtomicLong();
+    // items of the contract not yet processed, the account cell itself to begin with
+    final AtomicLong pending = new AtomicLong(1);
+
+    Contract(Address address, String accountHash) {
+      this.address = address;
+      this.accountHash = accountHash;
+    }
+  }
+
+  /** Counters of one walk task, summed up when the tasks are joined. */
+  private static final class Totals {
+    long cells;
+    long bytes;
+    long references;
+    long duplicateReferences;
+    final long[] types = new long[CellType.values().length];
+    long[] depths = new long[64];
+
+    void cell(CellType type, int size, int depth) {
+      cells++;
+      bytes += size;
+      types[type.ordinal()]++;
+      if (depth >= depths.length) {
+        depths = Arrays.copyOf(depths, Math.max(depth + 1, depths.length * 2));
+      }
+      depths[depth]++;
+    }
+
+    void add(Totals other) {
+      cells += other.cells;
+      bytes += other.bytes;
+      references += other.references;
+      duplicateReferences += other.duplicateReferences;
+      for (int i = 0; i < types.length; i++) {
+        types[i] += other.types[i];
+      }
+      if (other.depths.length > depths.length) {
+        depths = Arrays.copyOf(depths, other.depths.length);
+      }
+      for (int i = 0; i < other.depths.length; i++) {
+        depths[i] += other.depths[i];
+      }
+    }
+
+    int maxDepth() {
+      for (int i = depths.length - 1; i > 0; i--) {
+        if (depths[i] > 0) {
+          return i;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /** State shared by all walk tasks. */
+  private final class Analysis {
+    final VisitedCellSet visited;
+    final Consumer<ContractStatistics> consumer;
+    final AtomicLong contracts = new AtomicLong();
+    final TopN<ContractStatistics> topContracts = new TopN<>(config.getTopContracts());
+
+    Analysis(VisitedCellSet visited, Consumer<ContractStatistics> consumer) {
+      this.visited = visited;
+      this.consumer = consumer;
+    }
+
+    /** Counts a batch of cells and pushes the references of the ones not seen before. */
+    void process(List<Item> batch, ReadOptions readOptions, Deque<Item> stack, Totals totals)
+        throws IOException {
+      List<Item> fresh = new ArrayList<>(batch.size());
+      List<byte[]> hashes = new ArrayList<>(batch.size());
+      for (Item item : batch) {
+        totals.references++;
+        if (visited.add(item.hash)) {
+          fresh.add(item);
+          hashes.add(item.hash);
+        } else {
+          totals.duplicateReferences++;
+          if (item.owner != null) {
+            item.owner.duplicateReferences.incrementAndGet();
+            finish(item.owner);
+          }
+        }
+      }
+      if (fresh.isEmpty()) {
+        return;
+      }
+
+      List<byte[]> values = cellDbReader.getCellDb().multiGet(readOptions, hashes);
+      for (int i = 0; i < fresh.size(); i++) {
+        Item item = fresh.get(i);
+        byte[] value = values.get(i);
+        if (value == null) {
+          throw new IOException("Cannot find cell with hash " + Utils.bytesToHex(item.hash));
+        }
+        Cell cell = CellDbReader.parseCell(ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN));
+        totals.cell(typeOf(cell), value.length, item.depth);
+
+        Contract owner = item.owner;
+        if (item.kind == Kind.ACCOUNT) {
+          owner = new Contract(address(cell), Utils.bytesToHex(item.hash));
+        }
+        int children = pushReferences(item, cell, owner, stack);
+        if (owner != null) {
+          owner.cells.incrementAndGet();
+          owner.bytes.addAndGet(value.length);
+          owner.pending.addAndGet(children);
+          finish(owner);
+        }
+      }
+    }
+
+    /** @return number of pushed references */
+    private int pushReferences(Item item, Cell cell, Contract owner, Deque<Item> stack) {
+      int refs = Math.max(0, cell.getRefsCount()); // cells stored as BoC carry no reference hashes
+      if (refs == 0) {
+        return 0;
+      }
+      byte[] hashes = cell.getHashes();
+      int depth = item.depth + 1;
+      // references not covered below are plain cells
+      int dictionaryRefs = 0;
+      int dictionaryOffset = 0;
+      int accountRef = -1;
+      int accountsRef = -1;
+
+      switch (item.kind) {
+        case SHARD_STATE:
+          if (cell.getBits().getUsedBits() >= 32
+              && cell.getBits().preReadUint(32).longValue() == SHARD_STATE_MAGIC
+              && refs > ACCOUNTS_REF) {
+            accountsRef = ACCOUNTS_REF;
+          }
+          break;
+        case ACCOUNTS:
+          // ^ShardAccounts holds a non-empty dictionary as a bit and a reference to its root
+          if (cell.getBits().getUsedBits() > 0 && cell.getBits().get(0)) {
+            dictionaryRefs = 1;
+          }
+          break;
+        case DICTIONARY:
+          if (!cell.isExotic()) {
+            LabelParser label = new LabelParser(cellDbReader, cell, 256 - item.offset, 0);
+            if (label.getRemainder() != null) {
+              int offset = item.offset + label.getLBits();
+              if (offset >= 256) {
+                // ahmn_leaf#_ extra:DepthBalanceInfo value:ShardAccount, ^Account comes last
+                accountRef = refs - 1;
+              } else {
+                // ahmn_fork#_ left:^ right:^ extra:DepthBalanceInfo
+                dictionaryRefs = Math.min(2, refs);
+                dictionaryOffset = offset + 1;
+              }
+            }
+          }
+          break;
+        default:
+          break;
+      }
+
+      for (int i = refs - 1; i >= 0; i--) {
+        byte[] hash = Arrays.copyOfRange(hashes, i * 32, i * 32 + 32);
+        if (i < dictionaryRefs) {
+          stack.push(new Item(hash, Kind.DICTIONARY, depth, dictionaryOffset, owner));
+        } else if (i == accountRef) {
+          stack.push(new Item(hash, Kind.ACCOUNT, depth, 0, owner));
+        } else if (i == accountsRef) {
+          stack.push(new Item(hash, Kind.ACCOUNTS, depth, 0, owner));
+        } else {
+          stack.push(new Item(hash, Kind.CELL, depth, 0, owner));
+        }
+      }
+      return refs;
+    }
+
+    private void finish(Contract contract) {
+      if (contract.pending.decrementAndGet() != 0) {
+        return;
+      }
+      ContractStatistics statistics =
+          ContractStatistics.builder()
+              .address(contract.address)
+              .accountHash(contract.accountHash)
+              .cells(contract.cells.get())
+              .bytes(contract.bytes.get())
+              .duplicateReferences(contract.duplicateReferences.get())
+              .build();
+      contracts.incrementAndGet();
+      topContracts.offer(statistics.getBytes(), statistics);
+      if (consumer != null) {
+        consumer.accept(statistics);
+      }
+    }
+  }
+
+  private static CellType typeOf(Cell cell) {
+    if (!cell.isExotic() || cell.getBits().getUsedBits() < 8) {
+      return CellType.ORDINARY;
+    }
+    return CellType.fromTypeId(cell.getBits().preReadUint(8).intValue());
+  }
+
+  /**
+   * Reads the address of an account cell.
+   *
+   * <pre>
+   * account$1 addr:MsgAddressInt storage_stat:StorageInfo storage:AccountStorage = Account;
+   * addr_std$10 anycast:(Maybe Anycast) workchain_id:int8 address:bits256 = MsgAddressInt;
+   * </pre>
+   *
+   * @return address, null for account_none and addr_var
+   */
+  private static Address address(Cell cell) {
+    CellSlice cs = CellSlice.beginParse(cell);
+    if (cs.getRestBits() < 1 + 2 + 1 + 8 + 256 || !cs.loadBit() || cs.loadUint(2).intValue() != 2) {
+      return null; // not account$1 addr_std$10
+    }
+    if (cs.loadBit()) {
+      cs.skipBits(cs.loadUint(5).intValue()); // anycast rewrite_pfx
+    }
+    if (cs.getRestBits() < 8 + 256) {
+      return null;
+    }
+    int workchain = cs.loadInt(8).intValue();
+    return Address.of(workchain + ":" + String.format("%064x", cs.loadUint(256)));
+  }
+
+  /** Walks a part of the tree, splitting off work while threads of the pool are idle. */
+  private final class Walk extends RecursiveAction {
+    private final Analysis analysis;
+    private final Deque<Item> stack;
+    private final Totals totals = new Totals();
+
+    Walk(Analysis analysis, Deque<Item> stack) {
+      this.analysis = analysis;
+      this.stack = stack;
+    }
+
+    @Override
+    protected void compute() {
+      List<Walk> forks = new ArrayList<>();
+      try (ReadOptions readOptions = new ReadOptions().setFillCache(false)) {
+        int batchSize = Math.max(1, config.getBatchSize());
+        List<Item> batch = new ArrayList<>(batchSize);
+        while (!stack.isEmpty()) {
+          if (stack.size() > 1 && getSurplusQueuedTaskCount() <= 0) {
+            Deque<Item> half = new ArrayDeque<>();
+            for (int n = stack.size() / 2; n > 0; n--) {
+              half.addFirst(stack.pollLast());
+            }
+            Walk fork = new Walk(analysis, half);
+            fork.fork();
+            forks.add(fork);
+          }
+          batch.clear();
+          while (!stack.isEmpty() && batch.size() < batchSize) {
+            batch.add(stack.pop());
+          }
+          analysis.process(batch, readOptions, stack, totals);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      for (Walk fork : forks) {
+        fork.join();
+        totals.add(fork.totals);
+      }
+    }
+  }
+
+  /** The entries with the largest keys offered so far. */
+  private static final class TopN<T> {
+    private final int limit;
+    private final PriorityQueue<Entry<T>> queue =
+        new PriorityQueue<>(Comparator.comparingLong(entry -> entry.key));
+
+    TopN(int limit) {
+      this.limit = limit;
+    }
+
+    synchronized boolean accepts(long key) {
+      return limit > 0 && (queue.size() < limit || key > queue.peek().key);
+    }
+
+    synchronized void offer(long key, T value) {
+      if (accepts(key)) {
+        queue.add(new Entry<>(key, value));
+        if (queue.size() > limit) {
+          queue.poll();
+        }
+      }
+    }
+
+    /** @return values, largest key first */
+    synchronized List<T> sorted() {
+      List<Entry<T>> entries = new ArrayList<>(queue);
+      entries.sort(Comparator.comparingLong((Entry<T> entry) -> entry.key).reversed());
+      List<T> result = new ArrayList<>(entries.size());
+      for (Entry<T> entry : entries) {
+        result.add(entry.value);
+      }
+      return result;
+    }
+
+    private static final class Entry<T> {
+      final long key;
+      final T value;
+
+      Entry(long key, T value) {
+        this.key = key;
+        this.value = value;
+      }
+    }
+  }
+}
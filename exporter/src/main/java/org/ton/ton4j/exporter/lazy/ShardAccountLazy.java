@@ -54,9 +54,19 @@ public class ShardAccountLazy implements Serializable {
       //      throw new IllegalStateException("shard account has no hashes");
     }
     //    byte[] hash = Utils.slice(cs.getHashes(), 32, 32);
-    byte[] hash = Utils.slice(cs.getHashes(), cs.getHashes().length - 32, 32);
+    byte[] hash = getAccountHash(cs);
     // cs.hashes = Arrays.copyOfRange(cs.getHashes(), 32, cs.getHashes().length);
     Cell accountCell = cs.getRefByHash(hash);
+    return deserialize(cs, accountCell);
+  }
+
+  /**
+   * Deserializes a shard account whose account cell was already loaded, e.g. in a batch.
+   *
+   * @param cs shard account slice
+   * @param accountCell cell with hash {@link #getAccountHash(CellSliceLazy)}
+   */
+  public static ShardAccountLazy deserialize(CellSliceLazy cs, Cell accountCell) {
     return ShardAccountLazy.builder()
         .account(AccountLazy.deserialize(CellSliceLazy.beginParse(cs.cellDbReader, accountCell)))
         .lastTransHash(cs.loadUint(256))
@@ -64,6 +74,11 @@ public class ShardAccountLazy implements Serializable {
         .build();
   }
 
+  /** @return hash of the account:^Account cell referenced by a shard account slice */
+  public static byte[] getAccountHash(CellSliceLazy cs) {
+    return Utils.slice(cs.getHashes(), cs.getHashes().length - 32, 32);
+  }
+
   public BigInteger getBalance() {
     return account.getAccountStorage().getBalance().getCoins();
   }
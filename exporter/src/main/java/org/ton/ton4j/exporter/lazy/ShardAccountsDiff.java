@@ -0,0 +1,266 @@
+package org.ton.ton4j.exporter.lazy;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.bitstring.BitString;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.types.AccountChange;
+import org.ton.ton4j.utils.Utils;
+
+/**
+ * Compares the accounts dictionaries of two shard states of the same shard. States share every
+ * unchanged subtree, so both dictionaries are walked side by side and a subtree is only descended
+ * into where the cell hashes of the two sides differ. The cost is proportional to the number of
+ * changed accounts times the dictionary depth, not to the size of the state.
+ *
+ * <p>The Patricia trees of the two states may split the key space at different bits, e.g. after
+ * an account was added below an edge with a long label. The walk aligns such edges by consuming
+ * the longer label bit by bit, and reports the whole subtree as added or removed where the labels
+ * diverge.
+ *
+ * <pre>
+ * _ (HashmapAugE 256 ShardAccount DepthBalanceInfo) = ShardAccounts;
+ * ahmn_leaf#_ extra:Y value:X = HashmapAugNode 0 X Y;
+ * ahmn_fork#_ left:^(HashmapAug n X Y) right:^(HashmapAug n X Y) extra:Y
+ *   = HashmapAugNode (n + 1) X Y;
+ * </pre>
+ */
+public class ShardAccountsDiff {
+
+  private final CellDbReader cellDbReader;
+  private final int workchain;
+  private final Consumer<AccountChange> consumer;
+  private long changes;
+
+  private ShardAccountsDiff(
+      CellDbReader cellDbReader, int workchain, Consumer<AccountChange> consumer) {
+    this.cellDbReader = cellDbReader;
+    this.workchain = workchain;
+    this.consumer = consumer;
+  }
+
+  /**
+   * Reports the accounts added, removed or changed between two states.
+   *
+   * @param before accounts of the older state
+   * @param after accounts of the newer state, read with the same CellDB
+   * @param workchain workchain of the shard, used for the reported addresses
+   * @param consumer receives every change
+   * @return number of reported changes
+   */
+  public static long diff(
+      ShardAccountsLazy before,
+      ShardAccountsLazy after,
+      int workchain,
+      Consumer<AccountChange> consumer) {
+    ShardAccountsDiff diff = new ShardAccountsDiff(before.getCellDbReader(), workchain, consumer);
+    try {
+      Edge a = diff.root(before);
+      Edge b = diff.root(after);
+      if (a != null && b != null) {
+        diff.diff(a, b);
+      } else if (a != null) {
+        diff.report(a, AccountChange.Type.REMOVED);
+      } else if (b != null) {
+        diff.report(b, AccountChange.Type.ADDED);
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return diff.changes;
+  }
+
+  private Edge root(ShardAccountsLazy accounts) throws IOException {
+    if (accounts.getRootSlice() == null) {
+      return null;
+    }
+    CellSliceLazy root = accounts.getRootSlice().clone();
+    if (!root.loadBit() || root.getRefsCountLazy() < 1) {
+      return null;
+    }
+    return edge(Utils.slice(root.hashes, 0, 32), new byte[32], 0, 0);
+  }
+
+  /** Compares two edges starting at the same key prefix. */
+  private void diff(Edge a, Edge b) throws IOException {
+    if (a.hash != null && b.hash != null && Arrays.equals(a.hash, b.hash)) {
+      return; // shared subtree
+    }
+    int common = 0;
+    int min = Math.min(a.labelLength, b.labelLength);
+    while (common < min && a.labelBit(common) == b.labelBit(common)) {
+      common++;
+    }
+    if (common < min) {
+      // different keys below the two edges
+      report(a, AccountChange.Type.REMOVED);
+      report(b, AccountChange.Type.ADDED);
+      return;
+    }
+
+    if (a.labelLength == b.labelLength) {
+      if (a.offset + a.labelLength >= 256) {
+        compareLeaves(a, b);
+      } else {
+        diff(child(a, false), child(b, false));
+        diff(child(a, true), child(b, true));
+      }
+    } else if (a.labelLength < b.labelLength) {
+      // a forks where b still follows its label
+      boolean bit = b.labelBit(a.labelLength);
+      diff(child(a, bit), b.skip(a.labelLength + 1));
+      report(child(a, !bit), AccountChange.Type.REMOVED);
+    } else {
+      boolean bit = a.labelBit(b.labelLength);
+      diff(a.skip(b.labelLength + 1), child(b, bit));
+      report(child(b, !bit), AccountChange.Type.ADDED);
+    }
+  }
+
+  private void compareLeaves(Edge a, Edge b) {
+    Leaf before = new Leaf(a.node.clone());
+    Leaf after = new Leaf(b.node.clone());
+    if (Arrays.equals(before.accountHash, after.accountHash)
+        && before.lastTransLt.equals(after.lastTransLt)) {
+      return; // only the split depth differs
+    }
+    emit(AccountChange.Type.CHANGED, a.keyWithLabel(), before, after);
+  }
+
+  /** Reports every account below an edge as added or removed. */
+  private void report(Edge edge, AccountChange.Type type) throws IOException {
+    if (edge.offset + edge.labelLength >= 256) {
+      Leaf leaf = new Leaf(edge.node.clone());
+      if (type == AccountChange.Type.ADDED) {
+        emit(type, edge.keyWithLabel(), null, leaf);
+      } else {
+        emit(type, edge.keyWithLabel(), leaf, null);
+      }
+      return;
+    }
+    report(child(edge, false), type);
+    report(child(edge, true), type);
+  }
+
+  private void emit(AccountChange.Type type, byte[] key, Leaf before, Leaf after) {
+    changes++;
+    consumer.accept(
+        AccountChange.builder()
+            .type(type)
+            .address(Address.of(workchain + ":" + Utils.bytesToHex(key)))
+            .oldBalance(before == null ? null : before.balance)
+            .newBalance(after == null ? null : after.balance)
+            .oldLastTransLt(before == null ? null : before.lastTransLt)
+            .newLastTransLt(after == null ? null : after.lastTransLt)
+            .build());
+  }
+
+  /** @return the left or right child of the fork an edge leads to */
+  private Edge child(Edge fork, boolean right) throws IOException {
+    byte[] key = fork.keyWithLabel();
+    int offset = fork.offset + fork.labelLength;
+    if (right) {
+      setBit(key, offset);
+    }
+    byte[] hash = Utils.slice(fork.node.hashes, right ? 32 : 0, 32);
+    return edge(hash, key, offset + 1, fork.depth + 1);
+  }
+
+  private Edge edge(byte[] hash, byte[] key, int offset, int depth) throws IOException {
+    Cell cell = cellDbReader.getCell(hash, depth);
+    if (cell == null) {
+      throw new RuntimeException("Cannot find cell with hash " + Utils.bytesToHex(hash));
+    }
+    LabelParser label = new LabelParser(cellDbReader, cell, 256 - offset, 0);
+    if (label.getRemainder() == null) {
+      throw new RuntimeException("Invalid dictionary node label");
+    }
+    BitString labelBits = new BitString(Math.max(label.getLBits(), 1));
+    label.extractLabelTo(labelBits); // also skips the label in the remainder
+    return new Edge(hash, labelBits, 0, label.getLBits(), label.getRemainder(), key, offset, depth);
+  }
+
+  private static void setBit(byte[] key, int i) {
+    key[i >> 3] |= (byte) (0x80 >>> (i & 7));
+  }
+
+  /**
+   * Dictionary edge: the label bits not consumed yet and the node they lead to. An edge whose
+   * label was partly consumed to align it with the other state has no hash.
+   */
+  private static final class Edge {
+    final byte[] hash;
+    final BitString label;
+    final int labelStart;
+    final int labelLength;
+    final CellSliceLazy node;
+    final byte[] key; // key bits above the edge, the rest is zero
+    final int offset; // number of key bits above the edge
+    final int depth;
+
+    Edge(
+        byte[] hash,
+        BitString label,
+        int labelStart,
+        int labelLength,
+        CellSliceLazy node,
+        byte[] key,
+        int offset,
+        int depth) {
+      this.hash = hash;
+      this.label = label;
+      this.labelStart = labelStart;
+      this.labelLength = labelLength;
+      this.node = node;
+      this.key = key;
+      this.offset = offset;
+      this.depth = depth;
+    }
+
+    boolean labelBit(int i) {
+      return label.get(labelStart + i);
+    }
+
+    /** @return the edge after the first n label bits */
+    Edge skip(int n) {
+      byte[] skipped = key.clone();
+      for (int i = 0; i < n; i++) {
+        if (labelBit(i)) {
+          setBit(skipped, offset + i);
+        }
+      }
+      return new Edge(
+          null, label, labelStart + n, labelLength - n, node, skipped, offset + n, depth);
+    }
+
+    byte[] keyWithLabel() {
+      byte[] full = key.clone();
+      for (int i = 0; i < labelLength; i++) {
+        if (labelBit(i)) {
+          setBit(full, offset + i);
+        }
+      }
+      return full;
+    }
+  }
+
+  /** ShardAccount fields read from a leaf without loading the account cell */
+  private static final class Leaf {
+    final BigInteger balance;
+    final BigInteger lastTransLt;
+    final byte[] accountHash;
+
+    Leaf(CellSliceLazy cs) {
+      accountHash = ShardAccountLazy.getAccountHash(cs);
+      cs.skipBits(5); // split_depth
+      balance = cs.loadCoins();
+      cs.skipBit(); // extra currencies
+      cs.skipBits(256); // last_trans_hash
+      lastTransLt = cs.loadUint(64);
+    }
+  }
+}
@@ -1,16 +1,25 @@
 package org.ton.ton4j.exporter.lazy;
 
+import java.io.IOException;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import lombok.Builder;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.ReadOptions;
 import org.ton.ton4j.address.Address;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.*;
+import org.ton.ton4j.exporter.reader.CellCache;
 import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.types.AccountScanConfig;
 import org.ton.ton4j.utils.Utils;
 
 /**
@@ -24,6 +33,8 @@ import org.ton.ton4j.utils.Utils;
 @Builder
 @Data
 public class ShardAccountsLazy {
+  private static final int SCAN_BATCH = 64;
+
   CellSliceLazy rootSlice;
   CellDbReader cellDbReader;
   TonHashMapAugELazy shardAccounts;
@@ -84,7 +95,7 @@ public class ShardAccountsLazy {
 
     // find by hash and load non-empty dictAugE
     byte[] rootHash = Utils.slice(rootSlice.hashes, 0, 32);
-    Cell rootCell = rootSlice.getRefByHash(rootHash);
+    Cell rootCell = rootSlice.getRefByHash(rootHash, 0);
 
     // Prepare the key
     BigInteger key = address.toBigInteger();
@@ -148,7 +159,439 @@ public class ShardAccountsLazy {
       int hashOffset = (sw ? 1 : 0) * 32;
       byte[] hash = Utils.slice(label.getRemainder().hashes, hashOffset, 32);
 
-      rootCell = label.getRemainder().getRefByHash(hash);
+      rootCell = label.getRemainder().getRefByHash(hash, iteration);
+    }
+  }
+
+  /**
+   * Looks up the memo's account, stopping as soon as the walk reaches a node that was on the
+   * account's path in the previously looked up state. Meant for walking many successive states,
+   * e.g. for a balance history, where most lookups end after a few cells. Unlike {@link
+   * #lookup(Address)} this does not consume {@link #rootSlice}.
+   *
+   * @return the account, or null if there is no account with that address
+   */
+  public ShardAccountLazy lookup(AccountPathMemo memo) {
+    List<byte[]> path = new ArrayList<>();
+    List<Integer> offsets = new ArrayList<>();
+    if (rootSlice == null) {
+      return memo.remember(path, offsets, null);
+    }
+    CellSliceLazy root = rootSlice.clone();
+    if (!root.loadBit() || root.getRefsCountLazy() < 1) {
+      return memo.remember(path, offsets, null);
+    }
+
+    byte[] key = memo.getAddress().hashPart;
+    byte[] hash = Utils.slice(root.hashes, 0, 32);
+    int keyOffset = 0;
+    try {
+      for (int depth = 0; ; depth++) {
+        if (memo.matches(depth, keyOffset, hash)) {
+          return memo.reuse(path, offsets);
+        }
+        path.add(hash);
+        offsets.add(keyOffset);
+
+        Cell cell = cellDbReader.getCell(hash, depth);
+        if (cell == null) {
+          throw new RuntimeException("Cannot find cell with hash " + Utils.bytesToHex(hash));
+        }
+        LabelParser label = new LabelParser(cellDbReader, cell, 256 - keyOffset, 0);
+        if (label.getRemainder() == null) {
+          throw new RuntimeException("Invalid dictionary node label");
+        }
+        BitString labelBits = new BitString(Math.max(label.getLBits(), 1));
+        label.extractLabelTo(labelBits); // also skips the label in the remainder
+        if (!matches(key, keyOffset, labelBits, label.getLBits())) {
+          return memo.remember(path, offsets, null);
+        }
+        keyOffset += label.getLBits();
+        CellSliceLazy remainder = label.getRemainder();
+        if (keyOffset >= 256) {
+          DepthBalanceInfoLazy.deserialize(remainder); // skip extra
+          return memo.remember(path, offsets, ShardAccountLazy.deserialize(remainder));
+        }
+        hash = Utils.slice(remainder.hashes, bit(key, keyOffset) ? 32 : 0, 32);
+        keyOffset++;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Looks up many accounts in one walk of the accounts dictionary.
+   *
+   * @return found accounts, addresses missing from the dictionary are not included
+   */
+  public Map<Address, ShardAccountLazy> lookupAll(Collection<Address> addresses) {
+    Map<Address, ShardAccountLazy> accounts = new HashMap<>(addresses.size() * 2);
+    lookupAll(addresses, accounts::put);
+    return accounts;
+  }
+
+  /**
+   * Looks up many accounts in one walk of the accounts dictionary. The keys are sorted, so that
+   * addresses sharing a prefix share the visited nodes, and the tree is walked level by level: the
+   * cells of a level and the account cells of the leaves reached on it are each read with a single
+   * RocksDB multiGet. Accounts are passed to the consumer as soon as their level is done;
+   * addresses missing from the dictionary are not reported.
+   *
+   * <p>Unlike {@link #lookup(Address)} this does not consume {@link #rootSlice}, so it can be
+   * called repeatedly.
+   *
+   * @param addresses accounts to look up, only the 256-bit hash part is used as the key
+   * @param consumer receives every found address with its account
+   */
+  public void lookupAll(
+      Collection<Address> addresses, BiConsumer<Address, ShardAccountLazy> consumer) {
+    if (rootSlice == null || addresses.isEmpty()) {
+      return;
+    }
+    CellSliceLazy root = rootSlice.clone();
+    if (!root.loadBit() || root.getRefsCountLazy() < 1) {
+      return;
+    }
+
+    // sorted unique keys, one key may stand for several Address objects
+    TreeMap<byte[], List<Address>> byKey = new TreeMap<>(Arrays::compareUnsigned);
+    for (Address address : addresses) {
+      byKey.computeIfAbsent(address.hashPart, k -> new ArrayList<>(1)).add(address);
+    }
+    byte[][] keys = byKey.keySet().toArray(new byte[0][]);
+    List<List<Address>> owners = new ArrayList<>(byKey.values());
+
+    List<Node> frontier = new ArrayList<>();
+    frontier.add(new Node(Utils.slice(root.hashes, 0, 32), 0, keys.length, 0));
+    try {
+      for (int depth = 0; !frontier.isEmpty(); depth++) {
+        List<byte[]> hashes = new ArrayList<>(frontier.size());
+        for (Node node : frontier) {
+          hashes.add(node.hash);
+        }
+        List<Cell> cells = cellDbReader.getCells(hashes, depth);
+
+        List<Node> next = new ArrayList<>();
+        List<CellSliceLazy> leaves = new ArrayList<>();
+        List<Integer> leafKeys = new ArrayList<>();
+        for (int i = 0; i < frontier.size(); i++) {
+          Node node = frontier.get(i);
+          Cell cell = cells.get(i);
+          if (cell == null) {
+            throw new RuntimeException("Cannot find cell with hash " + Utils.bytesToHex(node.hash));
+          }
+          visit(node, cell, keys, next, leaves, leafKeys);
+        }
+
+        List<byte[]> accountHashes = new ArrayList<>(leaves.size());
+        for (CellSliceLazy leaf : leaves) {
+          accountHashes.add(ShardAccountLazy.getAccountHash(leaf));
+        }
+        List<Cell> accountCells = cellDbReader.getCells(accountHashes, CellCache.NO_DEPTH);
+        for (int i = 0; i < leaves.size(); i++) {
+          if (accountCells.get(i) == null) {
+            throw new RuntimeException(
+                "Cannot find cell with hash " + Utils.bytesToHex(accountHashes.get(i)));
+          }
+          ShardAccountLazy account =
+              ShardAccountLazy.deserialize(leaves.get(i), accountCells.get(i));
+          for (Address address : owners.get(leafKeys.get(i))) {
+            consumer.accept(address, account);
+          }
+        }
+        frontier = next;
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Narrows the node's key range to the keys matching its label, then either splits the range
+   * between the two children of a fork or, at 256 bits, collects the leaf.
+   */
+  private void visit(
+      Node node,
+      Cell cell,
+      byte[][] keys,
+      List<Node> next,
+      List<CellSliceLazy> leaves,
+      List<Integer> leafKeys) {
+    LabelParser label = new LabelParser(cellDbReader, cell, 256 - node.offset, 0);
+    if (label.getRemainder() == null) {
+      throw new RuntimeException("Invalid dictionary node label");
+    }
+    BitString labelBits = new BitString(Math.max(label.getLBits(), 1));
+    label.extractLabelTo(labelBits); // also skips the label in the remainder
+    CellSliceLazy remainder = label.getRemainder();
+
+    // keys in the range share the path so far, the ones also matching the label are contiguous
+    int from = -1;
+    int to = -1;
+    for (int k = node.from; k < node.to; k++) {
+      if (matches(keys[k], node.offset, labelBits, label.getLBits())) {
+        if (from < 0) {
+          from = k;
+        }
+        to = k + 1;
+      }
+    }
+    if (from < 0) {
+      return;
+    }
+
+    int offset = node.offset + label.getLBits();
+    if (offset >= 256) {
+      if (remainder.type == CellType.PRUNED_BRANCH || remainder.getHashes().length == 0) {
+        log.error("shard account has no hashes");
+        return;
+      }
+      DepthBalanceInfoLazy.deserialize(remainder); // skip extra
+      leaves.add(remainder);
+      leafKeys.add(from);
+      return;
+    }
+
+    int split = from;
+    while (split < to && !bit(keys[split], offset)) {
+      split++;
+    }
+    if (split > from) {
+      next.add(new Node(Utils.slice(remainder.hashes, 0, 32), from, split, offset + 1));
+    }
+    if (to > split) {
+      next.add(new Node(Utils.slice(remainder.hashes, 32, 32), split, to, offset + 1));
+    }
+  }
+
+  /**
+   * Passes every account of the dictionary that passes the configured filters to the consumer.
+   * The top {@code splitBits} key bits are walked by the calling thread, the subtrees below are
+   * walked in parallel on a ForkJoinPool. Each worker reads its subtree depth first in batches of
+   * {@value #SCAN_BATCH} cells per multiGet, with its own read options that neither fill the
+   * RocksDB block cache nor the cell cache, so that a full scan does not evict the cells of
+   * concurrent lookups.
+   *
+   * <p>Fork nodes and leaves carry the total balance of their subtree, a subtree with less than
+   * {@code minBalance} is pruned without being read. Code hashes are checked after the account
+   * cell is read, the code cell itself is never loaded.
+   *
+   * <p>The consumer is called concurrently from the worker threads, in no particular order.
+   *
+   * @param config parallelism and filters
+   * @param consumer receives the accounts that pass the filters
+   * @return number of accounts passed to the consumer
+   */
+  public long scan(AccountScanConfig config, Consumer<ShardAccountLazy> consumer) {
+    if (rootSlice == null) {
+      return 0;
+    }
+    CellSliceLazy root = rootSlice.clone();
+    if (!root.loadBit() || root.getRefsCountLazy() < 1) {
+      return 0;
+    }
+
+    AtomicLong count = new AtomicLong();
+    List<ScanNode> subtrees = new ArrayList<>();
+    List<ScanNode> frontier = new ArrayList<>();
+    frontier.add(new ScanNode(Utils.slice(root.hashes, 0, 32), 0, 0));
+    try {
+      // the top levels go through the caches, they are shared by all lookups
+      while (!frontier.isEmpty()) {
+        List<ScanNode> next = new ArrayList<>();
+        scanBatch(frontier, frontier.get(0).depth, null, config, next, consumer, count);
+        frontier = new ArrayList<>();
+        for (ScanNode node : next) {
+          (node.offset < config.getSplitBits() ? frontier : subtrees).add(node);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    log.debug("Scanning {} account subtrees", subtrees.size());
+
+    List<Callable<Void>> tasks = new ArrayList<>(subtrees.size());
+    for (ScanNode subtree : subtrees) {
+      tasks.add(
+          () -> {
+            scanSubtree(subtree, config, consumer, count);
+            return null;
+          });
+    }
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, config.getParallelThreads()));
+    try {
+      for (Future<Void> future : pool.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Account scan interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return count.get();
+  }
+
+  private void scanSubtree(
+      ScanNode subtree,
+      AccountScanConfig config,
+      Consumer<ShardAccountLazy> consumer,
+      AtomicLong count)
+      throws IOException {
+    try (ReadOptions readOptions = new ReadOptions().setFillCache(false)) {
+      Deque<ScanNode> stack = new ArrayDeque<>();
+      stack.push(subtree);
+      List<ScanNode> batch = new ArrayList<>(SCAN_BATCH);
+      List<ScanNode> children = new ArrayList<>();
+      while (!stack.isEmpty()) {
+        batch.clear();
+        while (!stack.isEmpty() && batch.size() < SCAN_BATCH) {
+          batch.add(stack.pop());
+        }
+        children.clear();
+        scanBatch(batch, CellCache.NO_DEPTH, readOptions, config, children, consumer, count);
+        for (ScanNode child : children) {
+          stack.push(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a batch of dictionary nodes, collects the children of the forks that are not pruned and
+   * passes the accounts of the leaves that pass the filters to the consumer.
+   */
+  private void scanBatch(
+      List<ScanNode> nodes,
+      int depth,
+      ReadOptions readOptions,
+      AccountScanConfig config,
+      List<ScanNode> children,
+      Consumer<ShardAccountLazy> consumer,
+      AtomicLong count)
+      throws IOException {
+    List<byte[]> hashes = new ArrayList<>(nodes.size());
+    for (ScanNode node : nodes) {
+      hashes.add(node.hash);
+    }
+    List<Cell> cells = cellDbReader.getCells(hashes, depth, readOptions);
+
+    List<CellSliceLazy> leaves = new ArrayList<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      ScanNode node = nodes.get(i);
+      Cell cell = cells.get(i);
+      if (cell == null) {
+        throw new RuntimeException("Cannot find cell with hash " + Utils.bytesToHex(node.hash));
+      }
+      LabelParser label = new LabelParser(cellDbReader, cell, 256 - node.offset, 0);
+      if (label.getRemainder() == null) {
+        throw new RuntimeException("Invalid dictionary node label");
+      }
+      label.skipLabel();
+      CellSliceLazy remainder = label.getRemainder();
+      int offset = node.offset + label.getLBits();
+      // ahmn_leaf#_ extra:Y value:X, ahmn_fork#_ left:^ right:^ extra:Y
+      BigInteger balance = loadBalance(remainder);
+      if (config.getMinBalance() != null && balance.compareTo(config.getMinBalance()) < 0) {
+        continue;
+      }
+      if (offset >= 256) {
+        leaves.add(remainder);
+      } else {
+        byte[] refs = remainder.hashes;
+        children.add(new ScanNode(Utils.slice(refs, 0, 32), offset + 1, node.depth + 1));
+        children.add(new ScanNode(Utils.slice(refs, 32, 32), offset + 1, node.depth + 1));
+      }
+    }
+    if (leaves.isEmpty()) {
+      return;
+    }
+
+    List<byte[]> accountHashes = new ArrayList<>(leaves.size());
+    for (CellSliceLazy leaf : leaves) {
+      accountHashes.add(ShardAccountLazy.getAccountHash(leaf));
+    }
+    List<Cell> accountCells = cellDbReader.getCells(accountHashes, CellCache.NO_DEPTH, readOptions);
+    for (int i = 0; i < leaves.size(); i++) {
+      if (accountCells.get(i) == null) {
+        throw new RuntimeException(
+            "Cannot find cell with hash " + Utils.bytesToHex(accountHashes.get(i)));
+      }
+      ShardAccountLazy account = ShardAccountLazy.deserialize(leaves.get(i), accountCells.get(i));
+      if (hasCode(account, config.getCodeHashes())) {
+        consumer.accept(account);
+        count.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Reads the grams of a DepthBalanceInfo without loading its extra currencies, whose reference
+   * would be taken for a child of a fork node.
+   */
+  private static BigInteger loadBalance(CellSliceLazy cs) {
+    cs.skipBits(5); // split_depth
+    BigInteger grams = cs.loadCoins();
+    cs.skipBit(); // extra currencies, the reference stays in place
+    return grams;
+  }
+
+  private static boolean hasCode(ShardAccountLazy account, Set<String> codeHashes) {
+    if (codeHashes == null) {
+      return true;
+    }
+    AccountLazy accountLazy = account.getAccount();
+    if (accountLazy == null || accountLazy.getAccountStorage() == null) {
+      return false;
+    }
+    byte[] codeHash = accountLazy.getAccountStorage().getCodeHash();
+    return codeHash != null && codeHashes.contains(Utils.bytesToHex(codeHash));
+  }
+
+  private static boolean matches(byte[] key, int offset, BitString label, int length) {
+    for (int i = 0; i < length; i++) {
+      if (bit(key, offset + i) != label.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean bit(byte[] key, int i) {
+    return (key[i >> 3] & (0x80 >>> (i & 7))) != 0;
+  }
+
+  /** Dictionary node still to scan */
+  private static final class ScanNode {
+    final byte[] hash;
+    final int offset; // key bits consumed above the node
+    final int depth;
+
+    ScanNode(byte[] hash, int offset, int depth) {
+      this.hash = hash;
+      this.offset = offset;
+      this.depth = depth;
+    }
+  }
+
+  /** Dictionary node still to visit, with the range of sorted keys below it */
+  private static final class Node {
+    final byte[] hash;
+    final int from;
+    final int to;
+    final int offset; // key bits consumed above the node
+
+    Node(byte[] hash, int from, int to, int offset) {
+      this.hash = hash;
+      this.from = from;
+      this.to = to;
+      this.offset = offset;
     }
   }
 }
@@ -0,0 +1,70 @@
+package org.ton.ton4j.exporter.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two buckets from 1 µs to 17 s. Recording is one atomic
+ * increment, so it can be called for every item of a pipeline stage.
+ */
+public class LatencyHistogram {
+
+  private static final int FIRST_BOUND_SHIFT = 10; // 1024 ns
+  private static final int BOUNDED_BUCKETS = 25;
+
+  /** number of buckets, the last one counts everything above the largest bound */
+  public static final int BUCKETS = BOUNDED_BUCKETS + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  public void record(long nanos) {
+    counts.incrementAndGet(bucket(nanos));
+  }
+
+  /** @return count per bucket, see {@link #upperBoundNanos(int)} */
+  public long[] snapshot() {
+    long[] result = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      result[i] = counts.get(i);
+    }
+    return result;
+  }
+
+  /** @return inclusive upper bound of a bucket, Long.MAX_VALUE for the last one */
+  public static long upperBoundNanos(int bucket) {
+    return bucket < BOUNDED_BUCKETS ? 1L << (FIRST_BOUND_SHIFT + bucket) : Long.MAX_VALUE;
+  }
+
+  static int bucket(long nanos) {
+    if (nanos <= 1L << FIRST_BOUND_SHIFT) {
+      return 0;
+    }
+    int bucket = 64 - Long.numberOfLeadingZeros(nanos - 1) - FIRST_BOUND_SHIFT;
+    return Math.min(bucket, BOUNDED_BUCKETS);
+  }
+
+  /**
+   * Estimates a quantile as the upper bound of the bucket that contains it.
+   *
+   * @param buckets counts as returned by {@link #snapshot()}
+   * @param quantile 0..1
+   * @return latency in nanoseconds, 0 if nothing was recorded
+   */
+  public static long quantileNanos(long[] buckets, double quantile) {
+    long total = 0;
+    for (long count : buckets) {
+      total += count;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i];
+      if (seen >= rank && buckets[i] > 0) {
+        return upperBoundNanos(i);
+      }
+    }
+    return upperBoundNanos(buckets.length - 1);
+  }
+}
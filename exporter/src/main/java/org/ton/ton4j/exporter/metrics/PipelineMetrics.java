@@ -0,0 +1,346 @@
+package org.ton.ton4j.exporter.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.MetricsConfig;
+import org.ton.ton4j.exporter.types.StageStatistics;
+
+/**
+ * Publishes the per-stage statistics of a running export as JMX MBeans, as a Prometheus text file
+ * and on a Prometheus scrape endpoint, see {@link MetricsConfig}. Statistics are taken from the
+ * pipeline whenever they are read, so publishing costs nothing between scrapes.
+ *
+ * <p>Besides the stage counters and latency histograms the Prometheus output contains the GC
+ * counts and times and the used heap, so allocation rates of the stages can be related to GC
+ * activity.
+ */
+@Slf4j
+public class PipelineMetrics implements Closeable {
+
+  private static final String JMX_DOMAIN = "org.ton.ton4j.exporter";
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final MetricsConfig config;
+  private final Supplier<List<StageStatistics>> statistics;
+  private final List<ObjectName> registered = new ArrayList<>();
+  private ScheduledExecutorService fileWriter;
+  private HttpServer server;
+
+  private PipelineMetrics(MetricsConfig config, Supplier<List<StageStatistics>> statistics) {
+    this.config = config;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Starts publishing.
+   *
+   * @param config destinations
+   * @param statistics current statistics of the pipeline, called from publishing threads
+   * @return running publisher, close it when the export has finished
+   */
+  public static PipelineMetrics start(
+      MetricsConfig config, Supplier<List<StageStatistics>> statistics) throws IOException {
+    PipelineMetrics metrics = new PipelineMetrics(config, statistics);
+    try {
+      if (config.isJmx()) {
+        metrics.registerMBeans();
+      }
+      if (config.getPrometheusFile() != null) {
+        metrics.startFileWriter();
+      }
+      if (config.getPrometheusPort() > 0) {
+        metrics.startServer();
+      }
+    } catch (IOException | RuntimeException e) {
+      metrics.close();
+      throw e;
+    }
+    return metrics;
+  }
+
+  /** @return port of the scrape endpoint, -1 if not started */
+  public int getPort() {
+    return server == null ? -1 : server.getAddress().getPort();
+  }
+
+  private void registerMBeans() throws IOException {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for (StageStatistics stage : statistics.get()) {
+        ObjectName name =
+            new ObjectName(JMX_DOMAIN + ":type=ExportStage,name=" + stage.getStage());
+        if (mBeanServer.isRegistered(name)) {
+          mBeanServer.unregisterMBean(name); // left by a previous export in this JVM
+        }
+        mBeanServer.registerMBean(new StageMetrics(stage.getStage(), statistics), name);
+        registered.add(name);
+      }
+    } catch (JMException e) {
+      throw new IOException("Cannot register export stage MBeans: " + e.getMessage(), e);
+    }
+  }
+
+  private void startFileWriter() {
+    fileWriter =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "MetricsWriter");
+              t.setDaemon(true);
+              return t;
+            });
+    fileWriter.scheduleWithFixedDelay(
+        this::writeFile, 0, Math.max(100, config.getIntervalMs()), TimeUnit.MILLISECONDS);
+  }
+
+  private void startServer() throws IOException {
+    server =
+        HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPrometheusPort()), 0);
+    server.createContext(
+        "/metrics",
+        exchange -> {
+          try {
+            byte[] body = toPrometheus(statistics.get()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(body);
+            }
+          } finally {
+            exchange.close();
+          }
+        });
+    server.start();
+    log.info(
+        "Prometheus metrics at http://{}:{}/metrics",
+        server.getAddress().getHostString(),
+        server.getAddress().getPort());
+  }
+
+  private void writeFile() {
+    Path target = Paths.get(config.getPrometheusFile());
+    Path temp = Paths.get(config.getPrometheusFile() + ".tmp");
+    try {
+      Files.write(temp, toPrometheus(statistics.get()).getBytes(StandardCharsets.UTF_8));
+      // the textfile collector must never see a partially written file
+      Files.move(
+          temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Cannot write metrics file {}: {}", target, e.getMessage());
+    }
+  }
+
+  /** Stops publishing. The Prometheus file is written once more with the final values. */
+  @Override
+  public void close() {
+    if (fileWriter != null) {
+      fileWriter.shutdownNow();
+      try {
+        fileWriter.awaitTermination(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      writeFile();
+    }
+    if (server != null) {
+      server.stop(0);
+    }
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    for (ObjectName name : registered) {
+      try {
+        mBeanServer.unregisterMBean(name);
+      } catch (JMException e) {
+        log.debug("Cannot unregister {}: {}", name, e.getMessage());
+      }
+    }
+    registered.clear();
+  }
+
+  /**
+   * Formats statistics in the Prometheus text exposition format.
+   *
+   * @param stages statistics of all stages
+   * @return metrics text, ending with a line separator
+   */
+  public static String toPrometheus(List<StageStatistics> stages) {
+    StringBuilder sb = new StringBuilder(8192);
+    family(sb, "ton_exporter_stage_threads", "gauge", "Threads of the stage.");
+    for (StageStatistics stage : stages) {
+      sample(sb, "ton_exporter_stage_threads", stage, stage.getThreads());
+    }
+    family(sb, "ton_exporter_stage_items_total", "counter", "Items that left the stage.");
+    for (StageStatistics stage : stages) {
+      sample(sb, "ton_exporter_stage_items_total", stage, stage.getProcessed());
+    }
+    family(sb, "ton_exporter_stage_queue_size", "gauge", "Items queued in front of the stage.");
+    for (StageStatistics stage : stages) {
+      sample(sb, "ton_exporter_stage_queue_size", stage, stage.getQueueSize());
+    }
+    family(
+        sb, "ton_exporter_stage_busy_seconds_total", "counter", "Thread time spent processing.");
+    for (StageStatistics stage : stages) {
+      sample(sb, "ton_exporter_stage_busy_seconds_total", stage, stage.getBusyNanos() / 1e9);
+    }
+    family(sb, "ton_exporter_stage_bytes_total", "counter", "Bytes read or written by the stage.");
+    for (StageStatistics stage : stages) {
+      sample(sb, "ton_exporter_stage_bytes_total", stage, stage.getBytes());
+    }
+    family(
+        sb,
+        "ton_exporter_stage_allocated_bytes_total",
+        "counter",
+        "Heap bytes allocated by the stage threads.");
+    for (StageStatistics stage : stages) {
+      if (stage.getAllocatedBytes() >= 0) {
+        sample(sb, "ton_exporter_stage_allocated_bytes_total", stage, stage.getAllocatedBytes());
+      }
+    }
+
+    String latency = "ton_exporter_stage_latency_seconds";
+    family(sb, latency, "histogram", "Processing time per item.");
+    for (StageStatistics stage : stages) {
+      long[] buckets = stage.getLatencyBuckets();
+      if (buckets == null) {
+        continue;
+      }
+      long cumulative = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        cumulative += buckets[i];
+        long bound = LatencyHistogram.upperBoundNanos(i);
+        String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1e9);
+        sb.append(latency)
+            .append("_bucket{stage=\"")
+            .append(stage.getStage())
+            .append("\",le=\"")
+            .append(le)
+            .append("\"} ")
+            .append(cumulative)
+            .append('\n');
+      }
+      sample(sb, latency + "_sum", stage, stage.getBusyNanos() / 1e9);
+      sample(sb, latency + "_count", stage, cumulative);
+    }
+
+    family(sb, "ton_exporter_gc_collections_total", "counter", "Garbage collections.");
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    for (GarbageCollectorMXBean gc : collectors) {
+      gcSample(sb, "ton_exporter_gc_collections_total", gc, gc.getCollectionCount());
+    }
+    family(sb, "ton_exporter_gc_seconds_total", "counter", "Time spent in garbage collection.");
+    for (GarbageCollectorMXBean gc : collectors) {
+      gcSample(sb, "ton_exporter_gc_seconds_total", gc, gc.getCollectionTime() / 1e3);
+    }
+    family(sb, "ton_exporter_heap_used_bytes", "gauge", "Used heap memory.");
+    sb.append("ton_exporter_heap_used_bytes ")
+        .append(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed())
+        .append('\n');
+    return sb.toString();
+  }
+
+  private static void family(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, StageStatistics stage, long value) {
+    sb.append(name).append("{stage=\"").append(stage.getStage()).append("\"} ").append(value);
+    sb.append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, StageStatistics stage, double value) {
+    sb.append(name).append("{stage=\"").append(stage.getStage()).append("\"} ").append(value);
+    sb.append('\n');
+  }
+
+  private static void gcSample(
+      StringBuilder sb, String name, GarbageCollectorMXBean gc, Object value) {
+    String collector = gc.getName().replace("\\", "\\\\").replace("\"", "\\\"");
+    sb.append(name).append("{gc=\"").append(collector).append("\"} ").append(value).append('\n');
+  }
+
+  /** Reads the statistics of one stage on every attribute access. */
+  private static final class StageMetrics implements StageMetricsMXBean {
+    private final String stage;
+    private final Supplier<List<StageStatistics>> statistics;
+
+    StageMetrics(String stage, Supplier<List<StageStatistics>> statistics) {
+      this.stage = stage;
+      this.statistics = statistics;
+    }
+
+    private StageStatistics current() {
+      for (StageStatistics candidate : statistics.get()) {
+        if (candidate.getStage().equals(stage)) {
+          return candidate;
+        }
+      }
+      return StageStatistics.builder().stage(stage).build();
+    }
+
+    @Override
+    public int getThreads() {
+      return current().getThreads();
+    }
+
+    @Override
+    public long getProcessed() {
+      return current().getProcessed();
+    }
+
+    @Override
+    public int getQueueSize() {
+      return current().getQueueSize();
+    }
+
+    @Override
+    public double getItemsPerSecond() {
+      return current().getItemsPerSecond();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+      return current().getBytesPerSecond();
+    }
+
+    @Override
+    public double getAllocatedBytesPerSecond() {
+      return current().getAllocatedBytesPerSecond();
+    }
+
+    @Override
+    public double getUtilization() {
+      return current().getUtilization();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+      return current().getLatencyQuantileNanos(0.5);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+      return current().getLatencyQuantileNanos(0.99);
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package org.ton.ton4j.exporter.metrics;
+
+/** JMX view of one export pipeline stage, registered by {@link PipelineMetrics}. */
+public interface StageMetricsMXBean {
+
+  int getThreads();
+
+  long getProcessed();
+
+  int getQueueSize();
+
+  double getItemsPerSecond();
+
+  double getBytesPerSecond();
+
+  /** @return heap allocation rate of the stage threads, 0 if not measured */
+  double getAllocatedBytesPerSecond();
+
+  /** @return share of the stage's thread time spent processing, 0..1 */
+  double getUtilization();
+
+  long getLatencyP50Nanos();
+
+  long getLatencyP99Nanos();
+}
@@ -0,0 +1,40 @@
+package org.ton.ton4j.exporter.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Heap bytes allocated by the current thread, read from the HotSpot thread MXBean. Pipeline stages
+ * sample it around every item to attribute allocation (and so GC pressure) to a stage.
+ */
+public final class ThreadAllocation {
+
+  private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+  private ThreadAllocation() {}
+
+  /** @return whether {@link #currentThreadBytes()} returns allocation counts */
+  public static boolean isSupported() {
+    return THREADS != null;
+  }
+
+  /** @return bytes allocated by the current thread so far, -1 if not supported */
+  public static long currentThreadBytes() {
+    return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    try {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (threads.isThreadAllocatedMemorySupported()
+            && threads.isThreadAllocatedMemoryEnabled()) {
+          return threads;
+        }
+      }
+    } catch (LinkageError | UnsupportedOperationException e) {
+      // not a HotSpot JVM
+    }
+    return null;
+  }
+}
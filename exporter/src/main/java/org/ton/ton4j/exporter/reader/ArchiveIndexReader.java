@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -20,6 +21,7 @@ import org.ton.ton4j.tl.types.db.lt.desc.DbLtDescKey;
 import org.ton.ton4j.tl.types.db.lt.desc.DbLtDescValue;
 import org.ton.ton4j.tl.types.db.lt.el.DbLtElKey;
 import org.ton.ton4j.tl.types.db.lt.el.DbLtElValue;
+import org.ton.ton4j.utils.Utils;
 
 /**
  * Reader for individual archive index databases (archive.XXXXX.index). Each archive package has a
@@ -183,11 +185,19 @@ public class ArchiveIndexReader implements Closeable {
   }
 
   public long getOffsetByHash(String hash) throws IOException {
-    return Long.parseLong(new String(indexDb.get(hash.getBytes())));
+    byte[] value = indexDb.get(hash.getBytes());
+    if (value == null) {
+      throw new NoSuchElementException("Can't find offset by hash " + hash);
+    }
+    return Long.parseLong(new String(value));
   }
 
   public BlockInfo getDbInfoByHash(byte[] hash) throws IOException {
-    return BlockInfo.deserialize(indexDb.get(hash));
+    byte[] value = indexDb.get(hash);
+    if (value == null) {
+      throw new NoSuchElementException("Can't find BlockInfo by hash " + Utils.bytesToHex(hash));
+    }
+    return BlockInfo.deserialize(value);
   }
 
   public BlockIdExt getBlockIdExtByDbLtDescKey(DbLtDescKey dbLtDescKey, long seqno)
@@ -195,7 +205,7 @@ public class ArchiveIndexReader implements Closeable {
 
     byte[] value = indexDb.get(dbLtDescKey.serialize());
     if (value == null) {
-      throw new RuntimeException("Can't find DbLtDescValue by " + dbLtDescKey);
+      throw new NoSuchElementException("Can't find DbLtDescValue by " + dbLtDescKey);
     }
     DbLtDescValue dbLtDescValue = DbLtDescValue.deserialize(ByteBuffer.wrap(value));
 
@@ -206,8 +216,11 @@ public class ArchiveIndexReader implements Closeable {
               .workchain(dbLtDescKey.getWorkchain())
               .idx(i)
               .build();
-      DbLtElValue dbLtElValue =
-          DbLtElValue.deserialize(ByteBuffer.wrap(indexDb.get(dbLtElKey.serialize())));
+      byte[] element = indexDb.get(dbLtElKey.serialize());
+      if (element == null) {
+        continue;
+      }
+      DbLtElValue dbLtElValue = DbLtElValue.deserialize(ByteBuffer.wrap(element));
       if (dbLtElValue.getId().getSeqno() == seqno) {
         return BlockIdExt.builder()
             .seqno(dbLtElValue.getId().getSeqno())
@@ -218,7 +231,7 @@ public class ArchiveIndexReader implements Closeable {
             .build();
       }
     }
-    throw new RuntimeException("Can't find DbLtElValue in ArchiveIndex for seqno " + seqno);
+    throw new NoSuchElementException("Can't find DbLtElValue in ArchiveIndex for seqno " + seqno);
   }
 
   /**
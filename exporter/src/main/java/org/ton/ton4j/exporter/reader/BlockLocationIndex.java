@@ -0,0 +1,393 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.BlockLocation;
+import org.ton.ton4j.tlb.BlockId;
+
+/**
+ * Memory-mapped table of block locations, sorted by (workchain, shard, seqno) and searched by
+ * binary search. A lookup touches a few pages of the index and one mapped package, no RocksDB
+ * instance is opened.
+ *
+ * <p>File layout, little-endian: a 32 byte header (magic, version, entry count, offset of the
+ * package table), fixed-size entries {@code wc:int32 seqno:int32 shard:int64 offset:int64
+ * package:int32 size:int32} and a table of package paths relative to the database root. Offsets
+ * follow the archive index convention (relative to the end of the package header).
+ *
+ * <p>The index is a snapshot: blocks added to the database after {@link #build} are not found and
+ * callers fall back to the archive index.
+ */
+@Slf4j
+public class BlockLocationIndex implements Closeable {
+
+  private static final int MAGIC = 0x494c4254; // "TBLI"
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 32;
+  private static final int ENTRY_SIZE = 32;
+  private static final int ENTRIES_PER_CHUNK = 1 << 25; // 1 GB per mapping
+
+  @Getter private final long entryCount;
+  private final ByteBuffer[] chunks;
+  private final String[] packagePaths;
+  private final Map<Integer, MappedPackageReader> packageReaders = new ConcurrentHashMap<>();
+
+  private BlockLocationIndex(long entryCount, ByteBuffer[] chunks, String[] packagePaths) {
+    this.entryCount = entryCount;
+    this.chunks = chunks;
+    this.packagePaths = packagePaths;
+  }
+
+  /**
+   * Opens an index built by {@link #build}.
+   *
+   * @param indexPath index file
+   * @param dbRootPath database root the package paths are resolved against
+   */
+  public static BlockLocationIndex open(String indexPath, String dbRootPath) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(indexPath), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, header, 0);
+      header.flip();
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException("Not a block location index: " + indexPath);
+      }
+      long count = header.getLong();
+      long packagesOffset = header.getLong();
+      if (packagesOffset != HEADER_SIZE + count * ENTRY_SIZE || packagesOffset > channel.size()) {
+        throw new IOException("Truncated block location index: " + indexPath);
+      }
+
+      int chunkCount = (int) ((count + ENTRIES_PER_CHUNK - 1) / ENTRIES_PER_CHUNK);
+      ByteBuffer[] chunks = new ByteBuffer[chunkCount];
+      for (int i = 0; i < chunkCount; i++) {
+        long first = (long) i * ENTRIES_PER_CHUNK;
+        long size = Math.min(ENTRIES_PER_CHUNK, count - first) * ENTRY_SIZE;
+        chunks[i] =
+            channel
+                .map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * ENTRY_SIZE, size)
+                .order(ByteOrder.LITTLE_ENDIAN);
+      }
+
+      ByteBuffer table =
+          ByteBuffer.allocate((int) (channel.size() - packagesOffset))
+              .order(ByteOrder.LITTLE_ENDIAN);
+      readFully(channel, table, packagesOffset);
+      table.flip();
+      String[] paths = new String[table.getInt()];
+      for (int i = 0; i < paths.length; i++) {
+        byte[] name = new byte[table.getShort() & 0xFFFF];
+        table.get(name);
+        paths[i] = Paths.get(dbRootPath, new String(name, StandardCharsets.UTF_8)).toString();
+      }
+      return new BlockLocationIndex(count, chunks, paths);
+    }
+  }
+
+  /**
+   * Scans the block entries of all packages and writes a new index. Only entry headers are read,
+   * block payloads are not decoded. The file is written next to the target and moved into place,
+   * so readers of a previous index are not disturbed.
+   *
+   * @param packFiles packages to index, e.g. {@link DbReader#getAllPackFiles()}
+   * @param dbRootPath database root, package paths are stored relative to it
+   * @param indexPath index file to create
+   * @return number of indexed blocks
+   */
+  public static long build(
+      Collection<ArchiveInfo> packFiles, String dbRootPath, String indexPath) throws IOException {
+    List<String> packages = new ArrayList<>();
+    for (ArchiveInfo info : packFiles) {
+      packages.add(info.getPackagePath());
+    }
+    packages.sort(null);
+
+    Locations locations = new Locations();
+    Map<ShardKey, SeqnoList> shards = new TreeMap<>();
+    for (int p = 0; p < packages.size(); p++) {
+      String packagePath = packages.get(p);
+      if (new File(packagePath).length() > Integer.MAX_VALUE) {
+        log.warn("Package {} is too large to be mapped, not indexed", packagePath);
+        continue;
+      }
+      try (MappedPackageReader reader = new MappedPackageReader(packagePath)) {
+        Iterator<MappedPackageReader.MappedEntry> entries = reader.iterator();
+        while (entries.hasNext()) {
+          MappedPackageReader.MappedEntry entry = entries.next();
+          if (!entry.filenameStartsWith("block_")) {
+            continue;
+          }
+          BlockId blockId = parseBlockFilename(entry.getFilename());
+          if (blockId == null) {
+            continue;
+          }
+          int index = locations.add(p, entry.getOffset(), entry.getDataSize());
+          ShardKey key = new ShardKey(blockId.getWorkchain(), blockId.shard);
+          // seqno in the upper half, so that sorting orders by seqno and then by package order
+          shards.computeIfAbsent(key, k -> new SeqnoList()).add(blockId.getSeqno() << 32 | index);
+        }
+      } catch (IOException e) {
+        log.warn("Cannot index package {}: {}", packagePath, e.getMessage());
+      }
+    }
+
+    Path target = Paths.get(indexPath);
+    Path temp = Paths.get(indexPath + ".tmp");
+    long count = 0;
+    try (FileChannel channel =
+        FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer out = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+      channel.position(HEADER_SIZE);
+      for (Map.Entry<ShardKey, SeqnoList> shard : shards.entrySet()) {
+        ShardKey key = shard.getKey();
+        long[] values = shard.getValue().values;
+        int size = shard.getValue().size;
+        Arrays.sort(values, 0, size);
+        long previousSeqno = -1;
+        for (int i = 0; i < size; i++) {
+          long seqno = values[i] >>> 32;
+          if (seqno == previousSeqno) {
+            continue; // same block stored in several packages, keep the first
+          }
+          previousSeqno = seqno;
+          int index = (int) values[i];
+          if (out.remaining() < ENTRY_SIZE) {
+            writeFully(channel, out);
+          }
+          out.putInt(key.workchain)
+              .putInt((int) seqno)
+              .putLong(key.shard)
+              .putLong(locations.offsets[index])
+              .putInt(locations.packages[index])
+              .putInt(locations.sizes[index]);
+          count++;
+        }
+      }
+      writeFully(channel, out);
+
+      long packagesOffset = channel.position();
+      Path root = Paths.get(dbRootPath).toAbsolutePath();
+      out.putInt(packages.size());
+      for (String packagePath : packages) {
+        byte[] name =
+            root.relativize(Paths.get(packagePath).toAbsolutePath())
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+        if (out.remaining() < 2 + name.length) {
+          writeFully(channel, out);
+        }
+        out.putShort((short) name.length).put(name);
+      }
+      writeFully(channel, out);
+
+      out.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(packagesOffset).putLong(0);
+      out.flip();
+      channel.write(out, 0);
+      channel.force(true);
+    }
+    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    log.info("Indexed {} blocks of {} packages into {}", count, packages.size(), indexPath);
+    return count;
+  }
+
+  /**
+   * @param shard shard id as unsigned 64-bit value, e.g. 0x8000000000000000 for the whole chain
+   * @return location of the block, packageId is the position in the index's package table, or
+   *     null if the block is not indexed
+   */
+  public BlockLocation find(int workchain, long shard, long seqno) {
+    long low = 0;
+    long high = entryCount - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      ByteBuffer chunk = chunks[(int) (mid / ENTRIES_PER_CHUNK)];
+      int pos = (int) (mid % ENTRIES_PER_CHUNK) * ENTRY_SIZE;
+      int cmp = Integer.compare(chunk.getInt(pos), workchain);
+      if (cmp == 0) {
+        cmp = Long.compareUnsigned(chunk.getLong(pos + 8), shard);
+      }
+      if (cmp == 0) {
+        cmp = Long.compare(chunk.getInt(pos + 4) & 0xFFFFFFFFL, seqno);
+      }
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return BlockLocation.create(
+            chunk.getInt(pos + 24), chunk.getLong(pos + 16), chunk.getInt(pos + 28));
+      }
+    }
+    return null;
+  }
+
+  /** @return absolute path of a package of the index's package table */
+  public String getPackagePath(int packageId) {
+    return packagePaths[packageId];
+  }
+
+  /**
+   * Reads a block's boc through a mapped package, the mapping is kept for further lookups.
+   *
+   * @return boc of the block, or null if the block is not indexed
+   */
+  public byte[] readBlock(int workchain, long shard, long seqno) throws IOException {
+    BlockLocation location = find(workchain, shard, seqno);
+    if (location == null) {
+      return null;
+    }
+    int packageId = (int) location.getPackageId();
+    MappedPackageReader reader = packageReaders.get(packageId);
+    if (reader == null) {
+      reader =
+          packageReaders.computeIfAbsent(
+              packageId,
+              id -> {
+                try {
+                  return new MappedPackageReader(packagePaths[id]);
+                } catch (IOException e) {
+                  throw new IllegalStateException(e.getMessage(), e);
+                }
+              });
+    }
+    return reader.getEntryAt(location.getOffset().longValue()).getDataBytes();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (MappedPackageReader reader : packageReaders.values()) {
+      reader.close();
+    }
+    packageReaders.clear();
+  }
+
+  /**
+   * Parses "block_(wc,shard,seqno):rootHash:fileHash".
+   *
+   * @return id of the block, or null if the filename has another format
+   */
+  public static BlockId parseBlockFilename(String filename) {
+    int open = filename.indexOf('(');
+    int close = filename.indexOf(')', open);
+    if (open < 0 || close < 0) {
+      return null;
+    }
+    String[] parts = filename.substring(open + 1, close).split(",");
+    if (parts.length != 3) {
+      return null;
+    }
+    try {
+      return BlockId.builder()
+          .workchain(Integer.parseInt(parts[0]))
+          .shard(Long.parseUnsignedLong(parts[1], 16))
+          .seqno(Long.parseLong(parts[2]))
+          .build();
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of block location index");
+      }
+      position += read;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /** Workchain and shard, ordered like the index entries. */
+  private static final class ShardKey implements Comparable<ShardKey> {
+    private final int workchain;
+    private final long shard;
+
+    ShardKey(int workchain, long shard) {
+      this.workchain = workchain;
+      this.shard = shard;
+    }
+
+    @Override
+    public int compareTo(ShardKey other) {
+      int cmp = Integer.compare(workchain, other.workchain);
+      return cmp != 0 ? cmp : Long.compareUnsigned(shard, other.shard);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof ShardKey && compareTo((ShardKey) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * workchain + Long.hashCode(shard);
+    }
+  }
+
+  /** Packed (seqno, location index) values of one shard. */
+  private static final class SeqnoList {
+    private long[] values = new long[16];
+    private int size;
+
+    void add(long value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+
+  /** Growable columns of package ordinal, offset and size, addressed by insertion order. */
+  private static final class Locations {
+    private int[] packages = new int[1024];
+    private long[] offsets = new long[1024];
+    private int[] sizes = new int[1024];
+    private int size;
+
+    int add(int packageId, long offset, int dataSize) {
+      if (size == packages.length) {
+        packages = Arrays.copyOf(packages, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2);
+        sizes = Arrays.copyOf(sizes, size * 2);
+      }
+      packages[size] = packageId;
+      offsets[size] = offset;
+      sizes[size] = dataSize;
+      return size++;
+    }
+  }
+}
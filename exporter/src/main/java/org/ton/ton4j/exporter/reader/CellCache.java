@@ -0,0 +1,326 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.ton.ton4j.cell.Cell;
+
+/**
+ * Size-bounded cache of cells parsed from the CellDB, keyed by the 32-byte cell hash. Cells are
+ * content addressed, so an entry never becomes stale and the cache can outlive the RocksDB handle
+ * it was filled from.
+ *
+ * <p>Entries are weighted by their serialized size and evicted in LRU order from a fixed number of
+ * independently locked segments. Cells of the top {@code pinnedLevels} levels of a dictionary
+ * (see {@link #put(byte[], Cell, int, int)}) are kept resident outside the LRU, so that repeated
+ * account lookups in the same shard state only read the lower levels from RocksDB. Pinned cells
+ * may use up to a quarter of the weight budget, beyond that they are cached like any other cell.
+ *
+ * <p>Pinned cells age with a second-chance scheme: once pins no longer fit, pinned cells that were
+ * not read since the previous aging round move to the LRU segments. When lookups move on to a
+ * newer state, the top levels of the old one therefore make room for those of the new root.
+ *
+ * <p>Cached cells are shared between threads and must be treated as read-only, {@link
+ * org.ton.ton4j.exporter.lazy.CellSliceLazy} only reads them.
+ */
+public class CellCache {
+
+  public static final long DEFAULT_MAX_WEIGHT = 64L * 1024 * 1024;
+  public static final int DEFAULT_PINNED_LEVELS = 12;
+
+  /** Depth passed for cells that are not part of a dictionary walk, never pinned */
+  public static final int NO_DEPTH = -1;
+
+  // key, entry and parsed cell objects on top of the serialized cell
+  private static final int ENTRY_OVERHEAD = 160;
+  private static final int SEGMENTS = 16;
+  // pins that did not fit before pinned cells are aged, at least
+  private static final int MIN_REJECTED_PINS = 64;
+
+  private final long maxWeight;
+  private final long maxPinnedWeight;
+  private final int pinnedLevels;
+  private final Segment[] segments = new Segment[SEGMENTS];
+  private final Map<Key, Pinned> pinned = new ConcurrentHashMap<>();
+  private final AtomicLong pinnedWeight = new AtomicLong();
+  private final AtomicInteger rejectedPins = new AtomicInteger();
+  private final Object agingLock = new Object();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /** Creates a 64 MB cache that pins the top 12 dictionary levels */
+  public CellCache() {
+    this(DEFAULT_MAX_WEIGHT, DEFAULT_PINNED_LEVELS);
+  }
+
+  /**
+   * @param maxWeight approximate memory budget in bytes
+   * @param pinnedLevels number of top dictionary levels kept resident, 0 disables pinning
+   */
+  public CellCache(long maxWeight, int pinnedLevels) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("maxWeight must be positive");
+    }
+    this.maxWeight = maxWeight;
+    this.maxPinnedWeight = maxWeight / 4;
+    this.pinnedLevels = pinnedLevels;
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment((maxWeight - maxPinnedWeight) / SEGMENTS);
+    }
+  }
+
+  /** @return cached cell or null, counted as a hit or a miss */
+  public Cell get(byte[] hash) {
+    Key key = new Key(hash);
+    Cell cell;
+    Pinned entry = pinned.get(key);
+    if (entry != null) {
+      entry.used = true;
+      cell = entry.cell;
+    } else {
+      cell = segmentFor(key).get(key);
+    }
+    if (cell == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return cell;
+  }
+
+  /**
+   * Adds a cell. The hash array is kept as the key and must not be modified afterwards.
+   *
+   * @param hash cell hash
+   * @param cell parsed cell
+   * @param size serialized size of the cell in bytes
+   * @param depth depth of the cell in the dictionary being walked, or {@link #NO_DEPTH}
+   */
+  public void put(byte[] hash, Cell cell, int size, int depth) {
+    Key key = new Key(hash);
+    long weight = (long) size + ENTRY_OVERHEAD;
+    if (depth >= 0 && depth < pinnedLevels && !pinned.containsKey(key)) {
+      if (pinnedWeight.get() + weight > maxPinnedWeight) {
+        agePinned();
+      }
+      if (pinnedWeight.addAndGet(weight) <= maxPinnedWeight) {
+        if (pinned.putIfAbsent(key, new Pinned(cell, weight)) == null) {
+          return;
+        }
+      }
+      pinnedWeight.addAndGet(-weight);
+    }
+    if (!pinned.containsKey(key)) {
+      segmentFor(key).put(key, cell, weight);
+    }
+  }
+
+  /** Drops all cells, including pinned ones, and resets the counters. */
+  public void clear() {
+    synchronized (agingLock) {
+      pinned.clear();
+      pinnedWeight.set(0);
+    }
+    for (Segment segment : segments) {
+      segment.clear();
+    }
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** @return hits / (hits + misses), 0 before the first lookup */
+  public double getHitRate() {
+    long h = hits.sum();
+    long total = h + misses.sum();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  /** @return number of cached cells, pinned ones included */
+  public long getSize() {
+    long size = pinned.size();
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  public long getPinnedSize() {
+    return pinned.size();
+  }
+
+  /** @return estimated memory held by the cached cells in bytes */
+  public long getWeight() {
+    long weight = pinnedWeight.get();
+    for (Segment segment : segments) {
+      weight += segment.getWeight();
+    }
+    return weight;
+  }
+
+  public long getMaxWeight() {
+    return maxWeight;
+  }
+
+  public int getPinnedLevels() {
+    return pinnedLevels;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "CellCache{size=%d, pinned=%d, weight=%d/%d, hits=%d, misses=%d, evictions=%d, "
+            + "hitRate=%.2f%%}",
+        getSize(),
+        getPinnedSize(),
+        getWeight(),
+        maxWeight,
+        getHits(),
+        getMisses(),
+        getEvictions(),
+        getHitRate() * 100);
+  }
+
+  private Segment segmentFor(Key key) {
+    return segments[key.hashCode & (SEGMENTS - 1)];
+  }
+
+  /**
+   * Moves pinned cells that were not read since the previous round to the LRU segments and marks
+   * the others as unread. Runs once per an eighth of the pinned cells of rejected pins, so that
+   * the scan is amortized over the puts that triggered it.
+   */
+  private void agePinned() {
+    if (rejectedPins.incrementAndGet() < Math.max(MIN_REJECTED_PINS, pinned.size() / 8)) {
+      return;
+    }
+    synchronized (agingLock) {
+      rejectedPins.set(0);
+      Iterator<Map.Entry<Key, Pinned>> iterator = pinned.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Pinned> entry = iterator.next();
+        Pinned cell = entry.getValue();
+        if (cell.used) {
+          cell.used = false;
+        } else {
+          iterator.remove();
+          pinnedWeight.addAndGet(-cell.weight);
+          segmentFor(entry.getKey()).put(entry.getKey(), cell.cell, cell.weight);
+        }
+      }
+    }
+  }
+
+  /** Cell hash as a map key. The hash is uniformly distributed, so its first bytes are enough. */
+  private static final class Key {
+    private final byte[] hash;
+    private final int hashCode;
+
+    Key(byte[] hash) {
+      this.hash = hash;
+      int h = 0;
+      for (int i = 0; i < Math.min(4, hash.length); i++) {
+        h = (h << 8) | (hash[i] & 0xFF);
+      }
+      this.hashCode = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(hash, ((Key) o).hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /** Pinned cell, with the flag of the second-chance aging. */
+  private static final class Pinned {
+    final Cell cell;
+    final long weight;
+    // set on every read; a new pin that is not read again leaves in the next round
+    volatile boolean used;
+
+    Pinned(Cell cell, long weight) {
+      this.cell = cell;
+      this.weight = weight;
+    }
+  }
+
+  private static final class Entry {
+    final Cell cell;
+    final long weight;
+
+    Entry(Cell cell, long weight) {
+      this.cell = cell;
+      this.weight = weight;
+    }
+  }
+
+  /** LRU segment, every access is done under the segment's monitor. */
+  private final class Segment {
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long weight;
+
+    Segment(long maxWeight) {
+      this.maxWeight = maxWeight;
+    }
+
+    synchronized Cell get(Key key) {
+      Entry entry = entries.get(key);
+      return entry == null ? null : entry.cell;
+    }
+
+    synchronized void put(Key key, Cell cell, long entryWeight) {
+      if (entryWeight > maxWeight) {
+        return; // would evict the whole segment
+      }
+      Entry previous = entries.put(key, new Entry(cell, entryWeight));
+      if (previous != null) {
+        weight -= previous.weight;
+      }
+      weight += entryWeight;
+      Iterator<Entry> eldest = entries.values().iterator();
+      while (weight > maxWeight && eldest.hasNext()) {
+        weight -= eldest.next().weight;
+        eldest.remove();
+        evictions.increment();
+      }
+    }
+
+    synchronized void clear() {
+      entries.clear();
+      weight = 0;
+    }
+
+    synchronized int size() {
+      return entries.size();
+    }
+
+    synchronized long getWeight() {
+      return weight;
+    }
+  }
+}
@@ -3,12 +3,15 @@ package org.ton.ton4j.exporter.reader;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.Cache;
+import org.rocksdb.ReadOptions;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.*;
 import org.ton.ton4j.exporter.types.*;
@@ -35,8 +38,8 @@ public class CellDbReader implements Closeable {
   private final String dbPath;
   private RocksDbWrapper cellDb;
 
-  // Cache for parsed entries
-  private final Map<String, CellDbValue> entryCache = new HashMap<>();
+  // Cache of parsed cells, null when cells are always read from the database
+  private final CellCache cellCache;
   private CellDbValue emptyEntry;
 
   /**
@@ -46,12 +49,36 @@ public class CellDbReader implements Closeable {
    * @throws IOException If an I/O error occurs
    */
   public CellDbReader(String dbPath) throws IOException {
+    this(dbPath, null);
+  }
+
+  /**
+   * Creates a new CellDbReader.
+   *
+   * @param dbPath Path to the database root directory (should contain celldb subdirectory)
+   * @param blockCache RocksDB block cache, null for the default
+   * @throws IOException If an I/O error occurs
+   */
+  public CellDbReader(String dbPath, Cache blockCache) throws IOException {
+    this(dbPath, blockCache, null);
+  }
+
+  /**
+   * Creates a new CellDbReader.
+   *
+   * @param dbPath Path to the database root directory (should contain celldb subdirectory)
+   * @param blockCache RocksDB block cache, null for the default
+   * @param cellCache cache of parsed cells, may be shared by several readers, null for none
+   * @throws IOException If an I/O error occurs
+   */
+  public CellDbReader(String dbPath, Cache blockCache, CellCache cellCache) throws IOException {
     this.dbPath = dbPath;
-    initializeCellDatabase();
+    this.cellCache = cellCache;
+    initializeCellDatabase(blockCache);
   }
 
   /** Initializes the CellDB database connection. */
-  private void initializeCellDatabase() throws IOException {
+  private void initializeCellDatabase(Cache blockCache) throws IOException {
     Path cellDbPath = Paths.get(dbPath, "celldb");
 
     if (!Files.exists(cellDbPath)) {
@@ -59,13 +86,95 @@ public class CellDbReader implements Closeable {
     }
 
     try {
-      cellDb = new RocksDbWrapper(cellDbPath.toString());
+      cellDb = new RocksDbWrapper(cellDbPath.toString(), blockCache);
       //      log.info("Initialized CellDB database: {}", cellDbPath);
     } catch (IOException e) {
       throw new IOException("Could not initialize CellDB database: " + e.getMessage(), e);
     }
   }
 
+  /**
+   * Reads and parses a cell, going through the cell cache if there is one.
+   *
+   * @param hash cell hash, kept by the cache and must not be modified afterwards
+   * @param depth depth of the cell in the dictionary being walked, or {@link CellCache#NO_DEPTH}
+   * @return parsed cell or null if the cell is not in the database
+   */
+  public Cell getCell(byte[] hash, int depth) throws IOException {
+    if (cellCache != null) {
+      Cell cell = cellCache.get(hash);
+      if (cell != null) {
+        return cell;
+      }
+    }
+    byte[] value = cellDb.get(hash);
+    if (value == null) {
+      return null;
+    }
+    Cell cell = parseCell(ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN));
+    if (cellCache != null) {
+      cellCache.put(hash, cell, value.length, depth);
+    }
+    return cell;
+  }
+
+  /**
+   * Reads and parses several cells, the ones not in the cell cache with a single multiGet.
+   *
+   * @param hashes cell hashes, kept by the cache and must not be modified afterwards
+   * @param depth depth of the cells in the dictionary being walked, or {@link CellCache#NO_DEPTH}
+   * @return parsed cells in the order of the hashes, null for cells not in the database
+   */
+  public List<Cell> getCells(List<byte[]> hashes, int depth) throws IOException {
+    return getCells(hashes, depth, null);
+  }
+
+  /**
+   * Reads and parses several cells with the caller's read options. With {@code fillCache} off,
+   * cells read from the database are not added to the cell cache either, so that a full scan does
+   * not evict the cells of other lookups.
+   *
+   * @param hashes cell hashes, kept by the cache and must not be modified afterwards
+   * @param depth depth of the cells in the dictionary being walked, or {@link CellCache#NO_DEPTH}
+   * @param readOptions read options, null for the reader's default ones
+   * @return parsed cells in the order of the hashes, null for cells not in the database
+   */
+  public List<Cell> getCells(List<byte[]> hashes, int depth, ReadOptions readOptions)
+      throws IOException {
+    List<Cell> cells = new ArrayList<>(hashes.size());
+    List<byte[]> missing = new ArrayList<>();
+    for (byte[] hash : hashes) {
+      Cell cell = cellCache == null ? null : cellCache.get(hash);
+      if (cell == null) {
+        missing.add(hash);
+      }
+      cells.add(cell);
+    }
+    if (missing.isEmpty()) {
+      return cells;
+    }
+
+    List<byte[]> values =
+        readOptions == null ? cellDb.multiGet(missing) : cellDb.multiGet(readOptions, missing);
+    boolean fillCache = cellCache != null && (readOptions == null || readOptions.fillCache());
+    int m = 0;
+    for (int i = 0; i < cells.size(); i++) {
+      if (cells.get(i) != null) {
+        continue;
+      }
+      byte[] value = values.get(m++);
+      if (value == null) {
+        continue;
+      }
+      Cell cell = parseCell(ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN));
+      if (fillCache) {
+        cellCache.put(hashes.get(i), cell, value.length, depth);
+      }
+      cells.set(i, cell);
+    }
+    return cells;
+  }
+
   public static Cell parseCell(ByteBuffer data) throws IOException {
 
     //    log.info("cell in hex {}", Utils.bytesToHex(data.array()));
@@ -22,6 +22,7 @@ public class DbReader implements Closeable {
   private final String dbRootPath;
   //  private final Map<String, RocksDbWrapper> openDbs = new HashMap<>();
 
+  private final String packageCatalogPath;
   private final GlobalIndexDbReader globalIndexDbReader;
   private final Map<String, ArchiveInfo> packFilesInfo = new HashMap<>();
 
@@ -32,7 +33,20 @@ public class DbReader implements Closeable {
    * @throws IOException If an I/O error occurs
    */
   public DbReader(String dbRootPath) throws IOException {
+    this(dbRootPath, null);
+  }
+
+  /**
+   * Creates a new DbReader that keeps the list of archive packages in a catalog file.
+   *
+   * @param dbRootPath Path to the TON database root directory
+   * @param packageCatalogPath catalog file of {@link PackageCatalog}, null to scan all archive
+   *     directories
+   * @throws IOException If an I/O error occurs
+   */
+  public DbReader(String dbRootPath, String packageCatalogPath) throws IOException {
     this.dbRootPath = dbRootPath;
+    this.packageCatalogPath = packageCatalogPath;
 
     // Validate the path
     Path path = Paths.get(dbRootPath);
@@ -57,65 +71,15 @@ public class DbReader implements Closeable {
 
   /**
    * Discovers ALL archive packages by directly scanning the filesystem. This is the faster than
-   * searching using global index db.
+   * searching using global index db. Archive directories are scanned in parallel, and with a
+   * package catalog only the directories changed since the previous start are scanned.
    */
   public void discoverAllArchivePackagesFromFilesystem(Map<String, ArchiveInfo> existingArchives) {
-    Path archivePackagesDir = Paths.get(dbRootPath, "archive", "packages");
-
     try {
-      // Scan for archive directories (arch0000, arch0001, etc.)
-      Files.list(archivePackagesDir)
-          .filter(Files::isDirectory)
-          .filter(path -> path.getFileName().toString().startsWith("arch"))
-          .forEach(
-              archDir -> {
-                //                log.debug("Scanning archive directory: {}", archDir);
-
-                try {
-                  // Find all .pack files in this archive directory
-                  Files.list(archDir)
-                      .filter(Files::isRegularFile)
-                      .filter(path -> path.getFileName().toString().endsWith(".pack"))
-                      .forEach(
-                          packFile -> {
-                            try {
-                              String packFileName = packFile.getFileName().toString();
-
-                              Path parentDir = packFile.getParent();
-                              String dirName = parentDir.getFileName().toString();
-
-                              String packageBaseName =
-                                  packFileName.substring(0, packFileName.lastIndexOf('.'));
-                              String archiveKey = dirName + "/" + packageBaseName;
-
-                              // Extract archive ID from directory name (arch0000 -> 0)
-                              int archiveId = 0;
-                              if (dirName.startsWith("arch")) {
-                                try {
-                                  archiveId = Integer.parseInt(dirName.substring(4));
-                                } catch (NumberFormatException e) {
-                                  log.debug(
-                                      "Could not parse archive ID from directory name: {}",
-                                      dirName);
-                                }
-                              }
-
-                              existingArchives.put(
-                                  archiveKey,
-                                  new ArchiveInfo(
-                                      archiveId, packFile.toString(), Files.size(packFile)));
-
-                            } catch (Exception e) {
-                              log.debug(
-                                  "Error processing archive package file {}: {}",
-                                  packFile,
-                                  e.getMessage());
-                            }
-                          });
-                } catch (IOException e) {
-                  log.debug("Error scanning archive directory {}: {}", archDir, e.getMessage());
-                }
-              });
+      existingArchives.putAll(
+          PackageCatalog.load(
+                  dbRootPath, packageCatalogPath, Runtime.getRuntime().availableProcessors())
+              .getPackages());
     } catch (IOException e) {
       log.error("Error scanning archive packages directory: {}", e.getMessage());
     }
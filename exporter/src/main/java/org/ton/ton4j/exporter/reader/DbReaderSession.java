@@ -0,0 +1,233 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.LRUCache;
+import org.rocksdb.RocksDB;
+
+/**
+ * Long-lived read-only CellDB, state and global index readers shared by concurrent lookups, so that
+ * a lookup does not pay for opening RocksDB. The three databases share one LRU block cache.
+ *
+ * <p>A read-only RocksDB handle sees the database as it was when opened. While the node keeps
+ * writing, the session reopens its handles on the first lookup after {@code refreshIntervalMs};
+ * lookups hold a read lock, so a refresh waits for running lookups and never closes a handle in
+ * use. Handles are opened on first use and released by {@link #close()}.
+ *
+ * <p>Parsed cells are cached in a {@link CellCache} that is kept across refreshes, since cells are
+ * addressed by their hash and never change.
+ */
+@Slf4j
+public class DbReaderSession implements Closeable {
+
+  public static final long DEFAULT_BLOCK_CACHE_SIZE = 256L * 1024 * 1024;
+  public static final long DEFAULT_REFRESH_INTERVAL_MS = 10_000;
+
+  static {
+    RocksDB.loadLibrary();
+  }
+
+  /** Lookup executed with the session's readers. */
+  @FunctionalInterface
+  public interface Lookup<T> {
+    T apply(DbReaderSession session) throws IOException;
+  }
+
+  private final String dbRootPath;
+  private final long refreshIntervalMs;
+  private final LRUCache blockCache;
+  private final CellCache cellCache;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+
+  // replaced under the write lock, opened lazily under the monitor of this session
+  private volatile CellDbReader cellDbReader;
+  private volatile StateDbReader stateDbReader;
+  private volatile GlobalIndexDbReader globalIndexDbReader;
+  private volatile GlobalIndexDbReader packageIndexDbReader;
+  private volatile long openedAt = System.currentTimeMillis();
+  private volatile boolean closed;
+
+  /** Creates a session with a 256 MB block cache and a 64 MB cell cache, refreshed every 10 s */
+  public DbReaderSession(String dbRootPath) {
+    this(dbRootPath, DEFAULT_BLOCK_CACHE_SIZE, DEFAULT_REFRESH_INTERVAL_MS);
+  }
+
+  /**
+   * @param dbRootPath database root directory
+   * @param blockCacheSize bytes of the LRU block cache shared by the three databases
+   * @param refreshIntervalMs age after which handles are reopened to see new data, 0 never reopens
+   */
+  public DbReaderSession(String dbRootPath, long blockCacheSize, long refreshIntervalMs) {
+    this(dbRootPath, blockCacheSize, refreshIntervalMs, new CellCache());
+  }
+
+  /**
+   * @param dbRootPath database root directory
+   * @param blockCacheSize bytes of the LRU block cache shared by the three databases
+   * @param refreshIntervalMs age after which handles are reopened to see new data, 0 never reopens
+   * @param cellCache cache of parsed CellDB cells, null to always read cells from the database
+   */
+  public DbReaderSession(
+      String dbRootPath, long blockCacheSize, long refreshIntervalMs, CellCache cellCache) {
+    this.dbRootPath = dbRootPath;
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.blockCache = new LRUCache(blockCacheSize);
+    this.cellCache = cellCache;
+  }
+
+  /**
+   * Runs a lookup while the session's handles are guaranteed to stay open. Safe to call from any
+   * number of threads.
+   */
+  public <T> T read(Lookup<T> lookup) throws IOException {
+    refreshIfStale();
+    lock.readLock().lock();
+    try {
+      if (closed) {
+        throw new IOException("Reader session is closed");
+      }
+      return lookup.apply(this);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** @return CellDB reader, only valid within {@link #read} */
+  public CellDbReader getCellDbReader() throws IOException {
+    CellDbReader reader = cellDbReader;
+    if (reader == null) {
+      synchronized (this) {
+        reader = cellDbReader;
+        if (reader == null) {
+          reader = new CellDbReader(dbRootPath, blockCache, cellCache);
+          cellDbReader = reader;
+        }
+      }
+    }
+    return reader;
+  }
+
+  /** @return state database reader, only valid within {@link #read} */
+  public StateDbReader getStateDbReader() throws IOException {
+    StateDbReader reader = stateDbReader;
+    if (reader == null) {
+      synchronized (this) {
+        reader = stateDbReader;
+        if (reader == null) {
+          reader = new StateDbReader(dbRootPath, blockCache);
+          stateDbReader = reader;
+        }
+      }
+    }
+    return reader;
+  }
+
+  /** @return global index reader without preloaded packages, only valid within {@link #read} */
+  public GlobalIndexDbReader getGlobalIndexDbReader() throws IOException {
+    GlobalIndexDbReader reader = globalIndexDbReader;
+    if (reader == null) {
+      synchronized (this) {
+        reader = globalIndexDbReader;
+        if (reader == null) {
+          reader = new GlobalIndexDbReader(dbRootPath, false, blockCache);
+          globalIndexDbReader = reader;
+        }
+      }
+    }
+    return reader;
+  }
+
+  /**
+   * @return global index reader with the in-memory package index used by getArchiveIndexBySeqno,
+   *     built when first used after opening or refreshing; only valid within {@link #read}
+   */
+  public GlobalIndexDbReader getPackageIndexDbReader() throws IOException {
+    GlobalIndexDbReader reader = packageIndexDbReader;
+    if (reader == null) {
+      synchronized (this) {
+        reader = packageIndexDbReader;
+        if (reader == null) {
+          reader = new GlobalIndexDbReader(dbRootPath, true, blockCache);
+          packageIndexDbReader = reader;
+        }
+      }
+    }
+    return reader;
+  }
+
+  public String getDbRootPath() {
+    return dbRootPath;
+  }
+
+  /** @return cache of parsed cells with its hit and miss counters, may be null */
+  public CellCache getCellCache() {
+    return cellCache;
+  }
+
+  /** Closes all handles, the next lookup reopens them and sees the current database. */
+  public void refresh() {
+    lock.writeLock().lock();
+    try {
+      closeReaders();
+      openedAt = System.currentTimeMillis();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void refreshIfStale() {
+    if (refreshIntervalMs <= 0
+        || System.currentTimeMillis() - openedAt < refreshIntervalMs
+        || lock.getReadHoldCount() > 0
+        || !refreshing.compareAndSet(false, true)) {
+      return; // fresh, nested in a lookup of this thread, or another thread is refreshing
+    }
+    try {
+      // waits for running lookups, the following ones see the reopened handles
+      refresh();
+    } finally {
+      refreshing.set(false);
+    }
+  }
+
+  private synchronized void closeReaders() {
+    closeQuietly(cellDbReader);
+    closeQuietly(stateDbReader);
+    closeQuietly(globalIndexDbReader);
+    closeQuietly(packageIndexDbReader);
+    cellDbReader = null;
+    stateDbReader = null;
+    globalIndexDbReader = null;
+    packageIndexDbReader = null;
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable == null) {
+      return;
+    }
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      log.warn("Error closing reader: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      closeReaders();
+      blockCache.close();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+}
@@ -8,9 +8,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.Cache;
 import org.ton.ton4j.exporter.types.ArchiveFileLocation;
 import org.ton.ton4j.exporter.types.ArchiveInfo;
 import org.ton.ton4j.tl.types.db.files.GlobalIndexKey;
@@ -44,6 +44,10 @@ public class GlobalIndexDbReader implements Closeable {
 
   private IndexValue mainIndexIndexValue;
 
+  // db.files.index.key and the constructor of db.files.package.key, little-endian TL ids
+  private static final byte[] MAIN_INDEX_KEY = {0x02, 0x05, (byte) 0xc4, 0x7d};
+  private static final byte[] PACKAGE_KEY_PREFIX = {0x3e, 0x03, 0x04, (byte) 0xa5};
+
   // Optimized index for fast archive lookup by seqno
   // Key: workchain, Value: TreeMap of (seqno -> packageId)
   private final Map<Integer, TreeMap<Integer, Integer>> packageIndexByWorkchain = new HashMap<>();
@@ -56,7 +60,7 @@ public class GlobalIndexDbReader implements Closeable {
    */
   public GlobalIndexDbReader(String dbPath) throws IOException {
     this.dbPath = dbPath;
-    initializeFilesDatabase();
+    initializeFilesDatabase(null);
     loadMainIndex();
     buildPackageIndex();
   }
@@ -71,8 +75,21 @@ public class GlobalIndexDbReader implements Closeable {
    * @throws IOException If an I/O error occurs
    */
   public GlobalIndexDbReader(String dbPath, boolean withPreloadedList) throws IOException {
+    this(dbPath, withPreloadedList, null);
+  }
+
+  /**
+   * Creates a new FilesDbReader.
+   *
+   * @param dbPath Path to the database root directory (should contain files/globalindex)
+   * @param withPreloadedList if true - builds the in-memory index for package lookup by seqno
+   * @param blockCache RocksDB block cache, null for the default
+   * @throws IOException If an I/O error occurs
+   */
+  public GlobalIndexDbReader(String dbPath, boolean withPreloadedList, Cache blockCache)
+      throws IOException {
     this.dbPath = dbPath;
-    initializeFilesDatabase();
+    initializeFilesDatabase(blockCache);
     loadMainIndex();
     if (withPreloadedList) {
       buildPackageIndex();
@@ -80,7 +97,7 @@ public class GlobalIndexDbReader implements Closeable {
   }
 
   /** Initializes the Files database global index. */
-  private void initializeFilesDatabase() throws IOException {
+  private void initializeFilesDatabase(Cache blockCache) throws IOException {
     Path filesPath = Paths.get(dbPath, "files");
     Path globalIndexPath = filesPath.resolve("globalindex");
 
@@ -89,7 +106,7 @@ public class GlobalIndexDbReader implements Closeable {
     }
 
     try {
-      globalIndexDb = new RocksDbWrapper(globalIndexPath.toString());
+      globalIndexDb = new RocksDbWrapper(globalIndexPath.toString(), blockCache);
 
     } catch (IOException e) {
       throw new IOException(
@@ -99,30 +116,15 @@ public class GlobalIndexDbReader implements Closeable {
 
   /**
    * Loads the main index entry using db.files.index.key (empty key). This contains the list of all
-   * packages in the Files database.
+   * packages in the Files database. The key is the bare TL constructor id, so the entry is read
+   * with a point lookup instead of iterating the index.
    */
   private void loadMainIndex() throws IOException {
     try {
-
-      AtomicBoolean found = new AtomicBoolean(false);
-      // Search for the main index entry by iterating through all entries
-      globalIndexDb.forEach(
-          (key, value) -> {
-            if (found.get()) return; // Already found, skip
-
-            try {
-              // Try to deserialize as IndexKey to see if it's the main index entry
-              GlobalIndexKey globalKey = GlobalIndexKey.deserialize(key);
-
-              if (globalKey instanceof IndexKey) {
-                mainIndexIndexValue = (IndexValue) GlobalIndexValue.deserialize(value);
-
-                found.set(true);
-              }
-            } catch (Exception e) {
-              // Not a TL-serialized key, skip
-            }
-          });
+      byte[] value = globalIndexDb.get(MAIN_INDEX_KEY);
+      if (value != null) {
+        mainIndexIndexValue = (IndexValue) GlobalIndexValue.deserialize(value);
+      }
 
       if (mainIndexIndexValue == null) {
         log.warn("Main index entry not found in Files database");
@@ -147,7 +149,9 @@ public class GlobalIndexDbReader implements Closeable {
   private void buildPackageIndex() {
     int packageCount = 0;
 
-    globalIndexDb.forEach(
+    // only the package entries, not the file hash entries that make up most of the index
+    globalIndexDb.forEachWithPrefix(
+        PACKAGE_KEY_PREFIX,
         (key, value) -> {
           try {
             GlobalIndexKey globalIndexKey = GlobalIndexKey.deserialize(key);
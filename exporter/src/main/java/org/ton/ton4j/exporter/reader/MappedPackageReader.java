@@ -0,0 +1,334 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.Getter;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.tlb.Block;
+
+/**
+ * Memory-mapped reader for TON package files.
+ *
+ * <p>The whole .pack file is mapped once, entry headers are decoded directly from the mapped
+ * buffer, and block payloads are handed out as zero-copy read-only {@link ByteBuffer} slices.
+ * The reader has no mutable position (only absolute reads are used), so one instance can be shared
+ * by any number of threads.
+ *
+ * <p>The mapping is released by the garbage collector once the reader and all slices are
+ * unreachable; {@link #close()} only prevents further use.
+ */
+public class MappedPackageReader implements PackageReaderInterface {
+
+  private static final int PACKAGE_HEADER_MAGIC = 0xae8fdd01;
+  private static final short ENTRY_HEADER_MAGIC = 0x1e8b;
+  private static final int PACKAGE_HEADER_SIZE = 4;
+  private static final int ENTRY_HEADER_SIZE = 8;
+
+  @Getter private final String path;
+  private final ByteBuffer buffer;
+  private volatile boolean closed = false;
+
+  /**
+   * Maps a package file.
+   *
+   * @param path Path to the package file
+   * @throws IOException If the file cannot be mapped or is not a package file
+   */
+  public MappedPackageReader(String path) throws IOException {
+    this.path = path;
+    Path filePath = Paths.get(path);
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Package file too large to be mapped: " + size + " bytes");
+      }
+      if (size < PACKAGE_HEADER_SIZE) {
+        throw new IOException("Package file is too small: " + path);
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      this.buffer = mapped.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Verify package header magic
+    int magic = buffer.getInt(0);
+    if (magic != PACKAGE_HEADER_MAGIC) {
+      throw new IOException(
+          "Invalid package header magic: 0x"
+              + Integer.toHexString(magic)
+              + ", expected: 0x"
+              + Integer.toHexString(PACKAGE_HEADER_MAGIC));
+    }
+  }
+
+  /** @return size of the mapped file in bytes */
+  public long getFileSize() {
+    return buffer.capacity();
+  }
+
+  /**
+   * Gets an entry at a specific offset, as stored in the archive index (relative to the end of the
+   * package header).
+   *
+   * @param offset The offset in the package
+   * @return The entry
+   * @throws IOException If there is no valid entry at the offset
+   */
+  @Override
+  public MappedEntry getEntryAt(long offset) throws IOException {
+    if (offset < 0) {
+      throw new IOException("Negative seek offset: " + offset);
+    }
+    MappedEntry entry = readEntry(offset + PACKAGE_HEADER_SIZE);
+    if (entry == null) {
+      throw new IOException("Offset beyond file size: " + offset);
+    }
+    return entry;
+  }
+
+  /**
+   * Decodes the entry starting at an absolute file position.
+   *
+   * @param position absolute position of the entry header
+   * @return the entry, or null if position is at the end of the file or the remaining bytes do not
+   *     hold a complete entry (e.g. a package that is still being written)
+   * @throws IOException If the entry header magic is invalid
+   */
+  public MappedEntry readEntry(long position) throws IOException {
+    ensureOpen();
+    int limit = buffer.capacity();
+    if (position + ENTRY_HEADER_SIZE > limit) {
+      return null;
+    }
+    int pos = (int) position;
+
+    // First 4 bytes: entry_header_magic (lower 16 bits) + filename_size (upper 16 bits)
+    int header0 = buffer.getInt(pos);
+    int entryMagic = header0 & 0xFFFF;
+    int filenameLength = (header0 >>> 16) & 0xFFFF;
+    if (entryMagic != ENTRY_HEADER_MAGIC) {
+      throw new IOException(
+          "Invalid entry header magic at position "
+              + position
+              + ": 0x"
+              + Integer.toHexString(entryMagic)
+              + ", expected: 0x"
+              + Integer.toHexString(ENTRY_HEADER_MAGIC));
+    }
+
+    // Next 4 bytes: data_size
+    int dataSize = buffer.getInt(pos + 4);
+    int filenameOffset = pos + ENTRY_HEADER_SIZE;
+    long dataOffset = (long) filenameOffset + filenameLength;
+    if (dataSize < 0 || dataOffset + dataSize > limit) {
+      return null;
+    }
+    return new MappedEntry(buffer, pos, filenameOffset, filenameLength, (int) dataOffset, dataSize);
+  }
+
+  /**
+   * Iterates through all entries in the package. Interface implementation using Object consumer.
+   *
+   * @param consumer Consumer for entries
+   * @throws IOException If an I/O error occurs
+   */
+  @Override
+  public void forEach(Consumer<Object> consumer) throws IOException {
+    Iterator<MappedEntry> entries = iterator();
+    while (entries.hasNext()) {
+      consumer.accept(entries.next());
+    }
+  }
+
+  /**
+   * Iterates through all entries in the package with typed consumer.
+   *
+   * @param consumer Consumer for entries
+   */
+  public void forEachTyped(Consumer<MappedEntry> consumer) {
+    Iterator<MappedEntry> entries = iterator();
+    while (entries.hasNext()) {
+      consumer.accept(entries.next());
+    }
+  }
+
+  /**
+   * Reads all entries from the package and returns them as a Map. Payloads are copied.
+   *
+   * @return Map containing all entries with filename as key and data as value
+   */
+  @Override
+  public Map<String, byte[]> readAllEntries() {
+    Map<String, byte[]> result = new HashMap<>();
+    forEachTyped(entry -> result.put(entry.getFilename(), entry.getDataBytes()));
+    return result;
+  }
+
+  /**
+   * Iterator over entries in file order. Each iterator has its own position, so several threads
+   * may iterate the same reader independently. Iteration stops at the first incomplete entry.
+   */
+  public Iterator<MappedEntry> iterator() {
+    return new Iterator<MappedEntry>() {
+      private long position = PACKAGE_HEADER_SIZE;
+      private MappedEntry next = advance();
+
+      private MappedEntry advance() {
+        try {
+          MappedEntry entry = readEntry(position);
+          if (entry != null) {
+            position = entry.getNextEntryPosition();
+          }
+          return entry;
+        } catch (IOException e) {
+          throw new IllegalStateException(e.getMessage(), e);
+        }
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public MappedEntry next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        MappedEntry current = next;
+        next = advance();
+        return current;
+      }
+    };
+  }
+
+  /** @return sequential stream of entries in file order */
+  public Stream<MappedEntry> entries() {
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            iterator(), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+        false);
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Package reader is closed: " + path);
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+  }
+
+  /**
+   * Entry of a mapped package. The filename is decoded lazily and the payload is a view of the
+   * mapped file, valid for as long as the entry is referenced.
+   */
+  public static class MappedEntry {
+    private final ByteBuffer buffer;
+    @Getter private final int position;
+    private final int filenameOffset;
+    private final int filenameLength;
+    @Getter private final int dataOffset;
+    @Getter private final int dataSize;
+    private String filename;
+
+    private MappedEntry(
+        ByteBuffer buffer,
+        int position,
+        int filenameOffset,
+        int filenameLength,
+        int dataOffset,
+        int dataSize) {
+      this.buffer = buffer;
+      this.position = position;
+      this.filenameOffset = filenameOffset;
+      this.filenameLength = filenameLength;
+      this.dataOffset = dataOffset;
+      this.dataSize = dataSize;
+    }
+
+    /** @return offset of this entry as used by the archive index (after the package header) */
+    public long getOffset() {
+      return position - PACKAGE_HEADER_SIZE;
+    }
+
+    /** @return absolute position of the entry following this one */
+    public long getNextEntryPosition() {
+      return (long) dataOffset + dataSize;
+    }
+
+    public String getFilename() {
+      String result = filename;
+      if (result == null) {
+        byte[] bytes = new byte[filenameLength];
+        ByteBuffer view = buffer.duplicate();
+        view.position(filenameOffset);
+        view.get(bytes);
+        result = new String(bytes, StandardCharsets.UTF_8);
+        filename = result;
+      }
+      return result;
+    }
+
+    /** @return true if the filename starts with the given prefix, without decoding it */
+    public boolean filenameStartsWith(String prefix) {
+      if (prefix.length() > filenameLength) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (buffer.get(filenameOffset + i) != (byte) prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /** @return zero-copy read-only view of the payload (boc) */
+    public ByteBuffer getData() {
+      ByteBuffer view = buffer.duplicate();
+      view.position(dataOffset).limit(dataOffset + dataSize);
+      return view.slice();
+    }
+
+    /** @return copy of the payload (boc) */
+    public byte[] getDataBytes() {
+      byte[] data = new byte[dataSize];
+      ByteBuffer view = buffer.duplicate();
+      view.position(dataOffset);
+      view.get(data);
+      return data;
+    }
+
+    public Cell getCell() {
+      return CellBuilder.beginCell().fromBoc(getDataBytes()).endCell();
+    }
+
+    public Block getBlock() {
+      return Block.deserialize(CellSlice.beginParse(getCell()));
+    }
+
+    /** @return copy of this entry in the format used by {@link PackageReader} */
+    public PackageReader.PackageEntry toPackageEntry() {
+      return new PackageReader.PackageEntry(getFilename(), getDataBytes());
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+
+/**
+ * Persisted list of the archive packages under archive/packages, so that opening a database does
+ * not list every archive directory again. An archive directory is taken from the catalog as long
+ * as its modification time is unchanged, i.e. no package was added or removed. Appending to a
+ * package changes its size and modification time but not the directory's, so each package taken
+ * from the catalog is checked against its own size and modification time and updated if either
+ * changed. Directories are listed and checked in parallel.
+ *
+ * <p>File layout, as written by {@link DataOutputStream}: magic, version and directory count, then
+ * per directory its name, modification time in milliseconds and package count, and per package
+ * its file name, size and modification time in milliseconds. The file is written next to the
+ * target and moved into place.
+ */
+@Slf4j
+@Getter
+public class PackageCatalog {
+
+  private static final int MAGIC = 0x434b5054; // "TPKC"
+  private static final int VERSION = 2;
+
+  /** archive key (e.g. arch0000/archive.00000) to package */
+  private final Map<String, ArchiveInfo> packages;
+
+  /** number of archive directories listed from the filesystem */
+  private final int scannedDirectories;
+
+  /** number of archive directories taken from the catalog */
+  private final int cachedDirectories;
+
+  /** number of packages taken from the catalog whose size or modification time had changed */
+  private final int changedPackages;
+
+  private PackageCatalog(
+      Map<String, ArchiveInfo> packages,
+      int scannedDirectories,
+      int cachedDirectories,
+      int changedPackages) {
+    this.packages = packages;
+    this.scannedDirectories = scannedDirectories;
+    this.cachedDirectories = cachedDirectories;
+    this.changedPackages = changedPackages;
+  }
+
+  /**
+   * Discovers the archive packages of a database.
+   *
+   * @param dbRootPath database root
+   * @param catalogPath catalog file, created or updated if needed; null to always scan
+   * @param parallelThreads number of directories scanned at the same time
+   * @return packages found
+   */
+  public static PackageCatalog load(String dbRootPath, String catalogPath, int parallelThreads)
+      throws IOException {
+    Path packagesDir = Paths.get(dbRootPath, "archive", "packages");
+    List<Path> archDirs;
+    try (Stream<Path> list = Files.list(packagesDir)) {
+      archDirs =
+          list.filter(Files::isDirectory)
+              .filter(path -> path.getFileName().toString().startsWith("arch"))
+              .sorted()
+              .collect(Collectors.toList());
+    }
+
+    Map<String, Directory> cached = catalogPath == null ? new HashMap<>() : read(catalogPath);
+    List<Directory> toValidate = new ArrayList<>();
+    List<Path> toScan = new ArrayList<>();
+    for (Path archDir : archDirs) {
+      Directory directory = cached.get(archDir.getFileName().toString());
+      if (directory != null && directory.modified == lastModified(archDir)) {
+        toValidate.add(directory);
+      } else {
+        toScan.add(archDir);
+      }
+    }
+    AtomicInteger changedPackages = new AtomicInteger();
+    List<Directory> directories =
+        inParallel(
+            toValidate,
+            directory -> validate(packagesDir.resolve(directory.name), directory, changedPackages),
+            parallelThreads);
+    directories.addAll(inParallel(toScan, PackageCatalog::scanQuietly, parallelThreads));
+
+    Map<String, ArchiveInfo> packages = new HashMap<>();
+    for (Directory directory : directories) {
+      int archiveId = archiveId(directory.name);
+      for (Package pack : directory.packages) {
+        String baseName = pack.name.substring(0, pack.name.lastIndexOf('.'));
+        packages.put(
+            directory.name + "/" + baseName,
+            new ArchiveInfo(
+                archiveId,
+                packagesDir.resolve(directory.name).resolve(pack.name).toString(),
+                pack.size));
+      }
+    }
+
+    if (catalogPath != null && !isUnchanged(cached, directories)) {
+      write(catalogPath, directories);
+    }
+    log.info(
+        "Discovered {} archive packages, {} directories scanned, {} from catalog, {} changed",
+        packages.size(),
+        toScan.size(),
+        toValidate.size(),
+        changedPackages.get());
+    return new PackageCatalog(packages, toScan.size(), toValidate.size(), changedPackages.get());
+  }
+
+  /** Applies the task to the items on parallelThreads threads, null results are dropped. */
+  private static <T> List<Directory> inParallel(
+      List<T> items, Function<T, Directory> task, int parallelThreads) throws IOException {
+    if (items.isEmpty()) {
+      return new ArrayList<>();
+    }
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelThreads));
+    try {
+      List<Directory> directories =
+          pool.submit(() -> items.parallelStream().map(task).collect(Collectors.toList())).get();
+      directories.removeIf(directory -> directory == null);
+      return directories;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while scanning archive directories", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Error scanning archive directories: " + e.getMessage(), e);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Checks the packages of a directory taken from the catalog against their size and modification
+   * time, a package whose attributes changed is taken with the current ones.
+   */
+  private static Directory validate(
+      Path archDir, Directory directory, AtomicInteger changedPackages) {
+    List<Package> packages = new ArrayList<>(directory.packages.size());
+    boolean changed = false;
+    for (Package pack : directory.packages) {
+      Path packFile = archDir.resolve(pack.name);
+      try {
+        BasicFileAttributes attributes =
+            Files.readAttributes(packFile, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (size == pack.size && modified == pack.modified) {
+          packages.add(pack);
+        } else {
+          packages.add(new Package(pack.name, size, modified));
+          changedPackages.incrementAndGet();
+          changed = true;
+        }
+      } catch (IOException e) {
+        log.debug("Archive package {} is gone: {}", packFile, e.getMessage());
+        changedPackages.incrementAndGet();
+        changed = true;
+      }
+    }
+    return changed ? new Directory(directory.name, directory.modified, packages) : directory;
+  }
+
+  private static Directory scanQuietly(Path archDir) {
+    try {
+      // taken before listing, a package added meanwhile makes the next start rescan the directory
+      long modified = lastModified(archDir);
+      List<Package> packages = new ArrayList<>();
+      try (Stream<Path> list = Files.list(archDir)) {
+        for (Path packFile : (Iterable<Path>) list::iterator) {
+          String name = packFile.getFileName().toString();
+          if (!name.endsWith(".pack")) {
+            continue;
+          }
+          try {
+            BasicFileAttributes attributes =
+                Files.readAttributes(packFile, BasicFileAttributes.class);
+            packages.add(
+                new Package(name, attributes.size(), attributes.lastModifiedTime().toMillis()));
+          } catch (NoSuchFileException e) {
+            log.debug("Archive package {} was removed while scanning", packFile);
+          }
+        }
+      }
+      packages.sort((a, b) -> a.name.compareTo(b.name));
+      return new Directory(archDir.getFileName().toString(), modified, packages);
+    } catch (IOException e) {
+      log.debug("Error scanning archive directory {}: {}", archDir, e.getMessage());
+      return null;
+    }
+  }
+
+  private static boolean isUnchanged(Map<String, Directory> cached, List<Directory> directories) {
+    if (cached.size() != directories.size()) {
+      return false;
+    }
+    for (Directory directory : directories) {
+      if (!directory.equals(cached.get(directory.name))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static Map<String, Directory> read(String catalogPath) {
+    Map<String, Directory> directories = new HashMap<>();
+    Path path = Paths.get(catalogPath);
+    if (!Files.exists(path)) {
+      return directories;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        log.warn("Not a package catalog of this version, ignored: {}", catalogPath);
+        return directories;
+      }
+      int directoryCount = in.readInt();
+      for (int i = 0; i < directoryCount; i++) {
+        String name = in.readUTF();
+        long modified = in.readLong();
+        int packageCount = in.readInt();
+        List<Package> packages = new ArrayList<>(packageCount);
+        for (int j = 0; j < packageCount; j++) {
+          packages.add(new Package(in.readUTF(), in.readLong(), in.readLong()));
+        }
+        directories.put(name, new Directory(name, modified, packages));
+      }
+      return directories;
+    } catch (IOException e) {
+      log.warn("Cannot read package catalog {}, rescanning: {}", catalogPath, e.toString());
+      return new HashMap<>();
+    }
+  }
+
+  private static void write(String catalogPath, List<Directory> directories) {
+    Path target = Paths.get(catalogPath);
+    Path temp = Paths.get(catalogPath + ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(directories.size());
+        for (Directory directory : directories) {
+          out.writeUTF(directory.name);
+          out.writeLong(directory.modified);
+          out.writeInt(directory.packages.size());
+          for (Package pack : directory.packages) {
+            out.writeUTF(pack.name);
+            out.writeLong(pack.size);
+            out.writeLong(pack.modified);
+          }
+        }
+      }
+      Files.move(
+          temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the catalog only speeds up the next start
+      log.warn("Cannot write package catalog {}: {}", catalogPath, e.getMessage());
+    }
+  }
+
+  private static long lastModified(Path path) throws IOException {
+    return Files.getLastModifiedTime(path).toMillis();
+  }
+
+  /** Extracts the archive ID from a directory name (arch0000 -> 0) */
+  private static int archiveId(String dirName) {
+    try {
+      return Integer.parseInt(dirName.substring(4));
+    } catch (NumberFormatException e) {
+      log.debug("Could not parse archive ID from directory name: {}", dirName);
+      return 0;
+    }
+  }
+
+  @Value
+  private static class Directory {
+    String name;
+    long modified;
+    List<Package> packages;
+  }
+
+  @Value
+  private static class Package {
+    String name;
+    long size;
+    long modified;
+  }
+}
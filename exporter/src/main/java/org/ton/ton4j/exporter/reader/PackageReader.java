@@ -12,6 +12,7 @@ import org.ton.ton4j.cell.Cell;
 import org.ton.ton4j.cell.CellBuilder;
 import org.ton.ton4j.cell.CellSlice;
 import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockInfo;
 
 /** Reader for TON package files. */
 public class PackageReader implements PackageReaderInterface {
@@ -119,6 +120,39 @@ public class PackageReader implements PackageReaderInterface {
     }
   }
 
+  /**
+   * Reads only the filename of the entry at a specific offset, without reading its data.
+   *
+   * @param offset The offset in the file, as for {@link #getEntryAt(long)}
+   * @return The filename
+   * @throws IOException If an I/O error occurs
+   */
+  public String getFilenameAt(long offset) throws IOException {
+    if (offset < 0) {
+      throw new IOException("Negative seek offset: " + offset);
+    }
+    if (offset + 4 >= file.length()) {
+      throw new IOException("Offset beyond file size: " + offset);
+    }
+
+    file.seek(offset + 4); // Skip package header
+    int header0 = readInt();
+    int entryMagic = header0 & 0xFFFF;
+    int filenameLength = (header0 >>> 16) & 0xFFFF;
+    if (entryMagic != ENTRY_HEADER_MAGIC) {
+      throw new IOException(
+          "Invalid entry header magic at offset "
+              + offset
+              + ": 0x"
+              + Integer.toHexString(entryMagic));
+    }
+    readInt(); // data_size
+
+    byte[] filenameBytes = new byte[filenameLength];
+    file.readFully(filenameBytes);
+    return new String(filenameBytes);
+  }
+
   public PackageEntry getEntryAtSkipPackageHeader(long offset) throws IOException {
     if (offset < 0) {
       throw new IOException("Negative seek offset: " + offset);
@@ -225,5 +259,14 @@ public class PackageReader implements PackageReaderInterface {
       return Block.deserialize(
           CellSlice.beginParse(CellBuilder.beginCell().fromBoc(data).endCell()));
     }
+
+    /**
+     * Decodes only the block header, BlockInfo from the first reference of the block cell, and
+     * skips ValueFlow, the state update and BlockExtra with the transactions.
+     */
+    public BlockInfo getBlockInfo() {
+      Cell block = getCell();
+      return BlockInfo.deserialize(CellSlice.beginParse(block.getRefs().get(0)));
+    }
   }
 }
@@ -6,6 +6,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.Cache;
 import org.rocksdb.Options;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
@@ -29,10 +31,25 @@ public class RocksDbWrapper implements Closeable {
    * @throws IOException If an I/O error occurs
    */
   public RocksDbWrapper(String path) throws IOException {
+    this(path, null);
+  }
+
+  /**
+   * Opens a RocksDB database in read-only mode with a block cache that can be shared between
+   * databases.
+   *
+   * @param path Path to the RocksDB database
+   * @param blockCache cache of uncompressed data blocks, null for the RocksDB default
+   * @throws IOException If an I/O error occurs
+   */
+  public RocksDbWrapper(String path, Cache blockCache) throws IOException {
     try {
       Options options = new Options();
       options.setCreateIfMissing(false);
       options.setErrorIfExists(false);
+      if (blockCache != null) {
+        options.setTableFormatConfig(new BlockBasedTableConfig().setBlockCache(blockCache));
+      }
 
       readOptions = new ReadOptions();
 
@@ -57,6 +74,34 @@ public class RocksDbWrapper implements Closeable {
     }
   }
 
+  /**
+   * Gets the values of several keys with one RocksDB multiGet.
+   *
+   * @param keys The keys
+   * @return The values in the order of the keys, null where a key doesn't exist
+   * @throws IOException If an I/O error occurs
+   */
+  public List<byte[]> multiGet(List<byte[]> keys) throws IOException {
+    return multiGet(readOptions, keys);
+  }
+
+  /**
+   * Gets the values of several keys with one RocksDB multiGet and the caller's read options, e.g.
+   * options that do not fill the block cache during a full scan.
+   *
+   * @param options read options, owned by the caller
+   * @param keys The keys
+   * @return The values in the order of the keys, null where a key doesn't exist
+   * @throws IOException If an I/O error occurs
+   */
+  public List<byte[]> multiGet(ReadOptions options, List<byte[]> keys) throws IOException {
+    try {
+      return db.multiGetAsList(options, keys);
+    } catch (RocksDBException e) {
+      throw new IOException("Failed to get values: " + e.getMessage(), e);
+    }
+  }
+
   /**
    * Gets all key-value pairs in the database.
    *
@@ -87,6 +132,37 @@ public class RocksDbWrapper implements Closeable {
     }
   }
 
+  /**
+   * Iterates through the key-value pairs whose key starts with a prefix. Keys are sorted
+   * bytewise, so the iterator seeks to the prefix and stops at the first key without it.
+   *
+   * @param prefix key prefix
+   * @param consumer Consumer for key-value pairs
+   */
+  public void forEachWithPrefix(byte[] prefix, BiConsumer<byte[], byte[]> consumer) {
+    try (RocksIterator iterator = db.newIterator(readOptions)) {
+      for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+        byte[] key = iterator.key();
+        if (!startsWith(key, prefix)) {
+          break;
+        }
+        consumer.accept(key, iterator.value());
+      }
+    }
+  }
+
+  private static boolean startsWith(byte[] key, byte[] prefix) {
+    if (key.length < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (key[i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Gets statistics about the RocksDB database.
    *
@@ -11,6 +11,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.Cache;
 import org.rocksdb.Options;
 import org.ton.ton4j.cell.Cell;
 import org.ton.ton4j.cell.CellBuilder;
@@ -53,21 +54,32 @@ public class StateDbReader implements Closeable {
    * @throws IOException If an I/O error occurs
    */
   public StateDbReader(String dbPath) throws IOException {
+    this(dbPath, null);
+  }
+
+  /**
+   * Creates a new StateDbReader.
+   *
+   * @param dbPath Path to the database root directory
+   * @param blockCache RocksDB block cache, null for the default
+   * @throws IOException If an I/O error occurs
+   */
+  public StateDbReader(String dbPath, Cache blockCache) throws IOException {
     this.statesPath = Paths.get(dbPath, "archive", "states").toString();
     this.stateDbPath = Paths.get(dbPath, "state").toString();
 
     // Initialize RocksDB for state database access
-    initializeRocksDb();
+    initializeRocksDb(blockCache);
 
     // Discover all state files
     discoverStateFiles();
   }
 
   /** Initializes RocksDB for state database access. */
-  private void initializeRocksDb() {
+  private void initializeRocksDb(Cache blockCache) {
     try {
 
-      stateRocksDb = new RocksDbWrapper(stateDbPath);
+      stateRocksDb = new RocksDbWrapper(stateDbPath, blockCache);
       //      log.debug("Opened RocksDB state database at: {}", stateDbPath);
 
     } catch (IOException e) {
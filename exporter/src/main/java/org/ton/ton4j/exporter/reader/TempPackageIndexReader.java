@@ -16,6 +16,7 @@ import org.ton.ton4j.cell.Cell;
 import org.ton.ton4j.tlb.Block;
 import org.ton.ton4j.tlb.BlockId;
 import org.ton.ton4j.tlb.BlockIdExt;
+import org.ton.ton4j.tlb.BlockInfo;
 import org.ton.ton4j.utils.Utils;
 
 /**
@@ -166,98 +167,133 @@ public class TempPackageIndexReader implements Closeable {
         new TreeMap<>(Comparator.comparing(BlockIdExt::getSeqno).reversed());
     TreeMap<Long, Long> mappings = getAllSortedOffsets();
 
-    PackageReader packageReader = new PackageReader(packagePath);
-    int count = 0;
-
-    for (Map.Entry<Long, Long> kv : mappings.entrySet()) {
-      PackageReader.PackageEntry entryObj = packageReader.getEntryAt(kv.getKey());
-      if (entryObj == null) {
-        continue;
-      }
-      if (entryObj.getFilename().startsWith("block_")) {
-        String rootHash = StringUtils.substringBetween(entryObj.getFilename(), ":", ":");
-        String fileHash = StringUtils.substringAfterLast(entryObj.getFilename(), ":");
-        Block block = entryObj.getBlock();
-        blocks.put(
-            BlockIdExt.builder()
-                .workchain(block.getBlockInfo().getShard().getWorkchain())
-                .shard(block.getBlockInfo().getShard().convertShardIdentToShard().longValue())
-                .seqno(block.getBlockInfo().getSeqno())
-                .rootHash(Utils.hexToSignedBytes(rootHash))
-                .fileHash(Utils.hexToSignedBytes(fileHash))
-                .build(),
-            block);
+    try (PackageReader packageReader = new PackageReader(packagePath)) {
+      int count = 0;
+      for (Long offset : mappings.keySet()) {
+        BlockIdExt blockIdExt = getBlockIdExtAt(packageReader, offset);
+        if (blockIdExt == null) {
+          continue;
+        }
+        blocks.put(blockIdExt, packageReader.getEntryAt(offset).getBlock());
         count++;
         if (count >= limit) {
           break;
         }
       }
     }
-    packageReader.close();
     return blocks;
   }
 
+  /**
+   * Returns ids of the last <code>limit</code> blocks of any chain, most recent first, without
+   * decoding the blocks.
+   */
+  public List<BlockIdExt> getLastBlockIds(int limit) throws IOException {
+    List<BlockIdExt> blockIds = new ArrayList<>();
+    TreeMap<Long, Long> mappings = getAllSortedOffsets();
+
+    try (PackageReader packageReader = new PackageReader(packagePath)) {
+      for (Long offset : mappings.keySet()) {
+        BlockIdExt blockIdExt = getBlockIdExtAt(packageReader, offset);
+        if (blockIdExt != null) {
+          blockIds.add(blockIdExt);
+          if (blockIds.size() >= limit) {
+            break;
+          }
+        }
+      }
+    }
+    return blockIds;
+  }
+
   /** returns last master chain block */
   public Pair<BlockIdExt, Block> getLast() throws IOException {
+    return getLast(-1, null);
+  }
 
+  /**
+   * Returns the last block of a workchain and shard. Only the matching block is decoded, the ones
+   * after it are skipped by their id.
+   *
+   * @param shard shard id, null for any shard
+   */
+  public Pair<BlockIdExt, Block> getLast(int wc, Long shard) throws IOException {
     TreeMap<Long, Long> mappings = getAllSortedOffsets();
 
-    PackageReader packageReader = new PackageReader(packagePath);
-
-    for (Map.Entry<Long, Long> kv : mappings.entrySet()) {
-      PackageReader.PackageEntry entryObj = packageReader.getEntryAt(kv.getKey());
-      if (entryObj == null) {
-        continue;
-      }
-      if (entryObj.getFilename().startsWith("block_")) {
-        String rootHash = StringUtils.substringBetween(entryObj.getFilename(), ":", ":");
-        String fileHash = StringUtils.substringAfterLast(entryObj.getFilename(), ":");
-        Block block = entryObj.getBlock();
-
-        BlockIdExt blockIdExt =
-            BlockIdExt.builder()
-                .workchain(block.getBlockInfo().getShard().getWorkchain())
-                .shard(block.getBlockInfo().getShard().convertShardIdentToShard().longValue())
-                .seqno(block.getBlockInfo().getSeqno())
-                .rootHash(Utils.hexToSignedBytes(rootHash))
-                .fileHash(Utils.hexToSignedBytes(fileHash))
-                .build();
-
-        //        log.info("block {}", block);
-        if (block.getBlockInfo().getShard().getWorkchain() == -1) {
-          packageReader.close();
-          return Pair.of(blockIdExt, block);
+    try (PackageReader packageReader = new PackageReader(packagePath)) {
+      for (Long offset : mappings.keySet()) {
+        BlockIdExt blockIdExt = getBlockIdExtAt(packageReader, offset);
+        if (blockIdExt != null
+            && blockIdExt.getWorkchain() == wc
+            && (shard == null || blockIdExt.shard == shard)) {
+          return Pair.of(blockIdExt, packageReader.getEntryAt(offset).getBlock());
         }
       }
     }
-    packageReader.close();
     return null;
   }
 
   /** returns last master chain block as BoC */
   public byte[] getLastAsBoC() throws IOException {
-
     TreeMap<Long, Long> mappings = getAllSortedOffsets();
 
-    PackageReader packageReader = new PackageReader(packagePath);
-
-    for (Map.Entry<Long, Long> kv : mappings.entrySet()) {
-      PackageReader.PackageEntry entryObj = packageReader.getEntryAt(kv.getKey());
-      if (entryObj == null) {
-        continue;
-      }
-      if (entryObj.getFilename().startsWith("block_")) {
-        Block block = entryObj.getBlock();
-        if (block.getBlockInfo().getShard().getWorkchain() == -1) {
-          packageReader.close();
-          return entryObj.getData();
+    try (PackageReader packageReader = new PackageReader(packagePath)) {
+      for (Long offset : mappings.keySet()) {
+        BlockIdExt blockIdExt = getBlockIdExtAt(packageReader, offset);
+        if (blockIdExt != null && blockIdExt.getWorkchain() == -1) {
+          return packageReader.getEntryAt(offset).getData();
         }
       }
     }
-    packageReader.close();
     return null;
   }
 
+  /**
+   * Reads the id of the block stored at the offset. The id is taken from the entry's filename,
+   * "block_(wc,shard,seqno):rootHash:fileHash", so the block data is not read at all; only if the
+   * filename has no id, the block header is decoded.
+   *
+   * @return block id, or null if the entry is not a block
+   */
+  private static BlockIdExt getBlockIdExtAt(PackageReader packageReader, long offset)
+      throws IOException {
+    String filename = packageReader.getFilenameAt(offset);
+    if (!filename.startsWith("block_")) {
+      return null;
+    }
+    BlockIdExt blockIdExt = parseBlockIdExt(filename);
+    if (blockIdExt != null) {
+      return blockIdExt;
+    }
+
+    PackageReader.PackageEntry entry = packageReader.getEntryAt(offset);
+    BlockInfo blockInfo = entry.getBlockInfo();
+    return BlockIdExt.builder()
+        .workchain(blockInfo.getShard().getWorkchain())
+        .shard(blockInfo.getShard().convertShardIdentToShard().longValue())
+        .seqno(blockInfo.getSeqno())
+        .rootHash(entry.getCell().getHash())
+        .fileHash(Utils.sha256AsArray(entry.getData()))
+        .build();
+  }
+
+  /** @return id of a "block_(wc,shard,seqno):rootHash:fileHash" entry, or null */
+  public static BlockIdExt parseBlockIdExt(String filename) {
+    BlockId blockId = BlockLocationIndex.parseBlockFilename(filename);
+    String rootHash = StringUtils.substringBetween(filename, ":", ":");
+    String fileHash = StringUtils.substringAfterLast(filename, ":");
+    if (blockId == null || rootHash == null || rootHash.length() != 64 || fileHash.length() != 64) {
+      return null;
+    }
+    return BlockIdExt.builder()
+        .workchain(blockId.getWorkchain())
+        .shard(blockId.shard)
+        .seqno(blockId.getSeqno())
+        .rootHash(Utils.hexToSignedBytes(rootHash))
+        .fileHash(Utils.hexToSignedBytes(fileHash))
+        .build();
+  }
+
   /**
    * @return Block as cell and Block as TL-B
    */
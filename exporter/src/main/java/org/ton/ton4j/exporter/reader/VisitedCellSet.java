@@ -0,0 +1,243 @@
+package org.ton.ton4j.exporter.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ObjIntConsumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Set of cell hashes kept in memory-mapped files instead of the heap, so that a walk over billions
+ * of cells needs no more heap than a walk over a few. The OS pages the files in and out as needed.
+ * Every hash also counts how often it was added.
+ *
+ * <p>Hashes are spread over {@value #SEGMENTS} segments by their first bits, each an open
+ * addressing table in its own file that is doubled when it gets {@value #MAX_LOAD_PERCENT}% full.
+ * Segments are locked independently, so concurrent adds rarely contend.
+ */
+@Slf4j
+public class VisitedCellSet implements Closeable {
+
+  private static final int SEGMENT_BITS = 10;
+  private static final int SEGMENTS = 1 << SEGMENT_BITS;
+  // count:int32 hash:bits256, a count of 0 marks a free slot
+  private static final int SLOT_SIZE = 4 + 32;
+  private static final int MIN_SLOTS = 1 << 10;
+  // largest power of two whose table still fits into one mapping
+  private static final int MAX_SLOTS = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_SIZE);
+  private static final int MAX_LOAD_PERCENT = 70;
+
+  private final Path directory;
+  private final Segment[] segments = new Segment[SEGMENTS];
+
+  /**
+   * Creates an empty set.
+   *
+   * @param directory directory for the table files, created if missing; the files are deleted on
+   *     close
+   * @param expectedCells number of hashes the tables are sized for initially
+   */
+  public VisitedCellSet(Path directory, long expectedCells) throws IOException {
+    this.directory = Files.createDirectories(directory);
+    long perSegment = expectedCells * 100 / MAX_LOAD_PERCENT / SEGMENTS;
+    int slots = MIN_SLOTS;
+    while (slots < perSegment && slots < MAX_SLOTS) {
+      slots <<= 1;
+    }
+    try {
+      for (int i = 0; i < SEGMENTS; i++) {
+        segments[i] = new Segment(i, slots);
+      }
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /**
+   * Adds a hash, or counts it once more if it is already in the set.
+   *
+   * @param hash 32 byte cell hash
+   * @return true if the hash was not in the set
+   */
+  public boolean add(byte[] hash) throws IOException {
+    int segment = ((hash[0] & 0xff) << 8 | hash[1] & 0xff) >>> (16 - SEGMENT_BITS);
+    return segments[segment].add(hash);
+  }
+
+  /** @return number of distinct hashes */
+  public long size() {
+    long size = 0;
+    for (Segment segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /** @return bytes of the table files */
+  public long getFileSize() {
+    long bytes = 0;
+    for (Segment segment : segments) {
+      bytes += segment.fileSize();
+    }
+    return bytes;
+  }
+
+  /**
+   * Passes every hash with the number of times it was added (at most Integer.MAX_VALUE) to the
+   * consumer, segment by segment. The hash array is reused between calls.
+   */
+  public void forEach(ObjIntConsumer<byte[]> consumer) {
+    byte[] hash = new byte[32];
+    for (Segment segment : segments) {
+      segment.forEach(hash, consumer);
+    }
+  }
+
+  /** Deletes the table files. */
+  @Override
+  public void close() {
+    for (Segment segment : segments) {
+      if (segment != null) {
+        segment.delete();
+      }
+    }
+    try {
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      log.debug("Cannot delete {}: {}", directory, e.getMessage());
+    }
+  }
+
+  private final class Segment {
+    private final int index;
+    private int generation;
+    private Path file;
+    private ByteBuffer table;
+    private int slots;
+    private int size;
+
+    Segment(int index, int slots) throws IOException {
+      this.index = index;
+      map(slots);
+    }
+
+    private void map(int slots) throws IOException {
+      file = directory.resolve("segment-" + index + "-" + generation++);
+      try (FileChannel channel =
+          FileChannel.open(
+              file,
+              StandardOpenOption.CREATE_NEW,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.SPARSE)) {
+        MappedByteBuffer mapped =
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * SLOT_SIZE);
+        table = mapped.order(ByteOrder.BIG_ENDIAN);
+      }
+      this.slots = slots;
+    }
+
+    synchronized boolean add(byte[] hash) throws IOException {
+      int position = find(table, slots, hash);
+      int count = table.getInt(position);
+      if (count != 0) {
+        if (count != Integer.MAX_VALUE) {
+          table.putInt(position, count + 1);
+        }
+        return false;
+      }
+      table.position(position + 4);
+      table.put(hash, 0, 32);
+      table.putInt(position, 1);
+      if (++size * 100L > (long) slots * MAX_LOAD_PERCENT) {
+        grow();
+      }
+      return true;
+    }
+
+    private void grow() throws IOException {
+      if (slots >= MAX_SLOTS) {
+        throw new IllegalStateException(
+            "Visited cell set segment " + index + " is full with " + size + " hashes");
+      }
+      Path oldFile = file;
+      ByteBuffer oldTable = table;
+      int oldSlots = slots;
+      map(slots * 2);
+      byte[] hash = new byte[32];
+      for (int i = 0; i < oldSlots; i++) {
+        int position = i * SLOT_SIZE;
+        int count = oldTable.getInt(position);
+        if (count != 0) {
+          oldTable.position(position + 4);
+          oldTable.get(hash);
+          int target = find(table, slots, hash);
+          table.putInt(target, count);
+          table.position(target + 4);
+          table.put(hash);
+        }
+      }
+      // the old mapping is released by the garbage collector, the file can go already
+      Files.deleteIfExists(oldFile);
+    }
+
+    /** @return position of the slot holding the hash or of the free slot it belongs to */
+    private int find(ByteBuffer table, int slots, byte[] hash) {
+      ByteBuffer key = ByteBuffer.wrap(hash);
+      long h0 = key.getLong(0);
+      long h1 = key.getLong(8);
+      long h2 = key.getLong(16);
+      long h3 = key.getLong(24);
+      // the first bits choose the segment, the next ones the slot
+      int mask = slots - 1;
+      int i = (int) h1 & mask;
+      while (true) {
+        int position = i * SLOT_SIZE;
+        if (table.getInt(position) == 0
+            || table.getLong(position + 4) == h0
+                && table.getLong(position + 12) == h1
+                && table.getLong(position + 20) == h2
+                && table.getLong(position + 28) == h3) {
+          return position;
+        }
+        i = (i + 1) & mask;
+      }
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized long fileSize() {
+      return (long) slots * SLOT_SIZE;
+    }
+
+    synchronized void forEach(byte[] hash, ObjIntConsumer<byte[]> consumer) {
+      for (int i = 0; i < slots; i++) {
+        int position = i * SLOT_SIZE;
+        int count = table.getInt(position);
+        if (count != 0) {
+          table.position(position + 4);
+          table.get(hash);
+          consumer.accept(hash, count);
+        }
+      }
+    }
+
+    synchronized void delete() {
+      table = null;
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        log.debug("Cannot delete {}: {}", file, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package org.ton.ton4j.exporter.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.ton.ton4j.exporter.metrics.LatencyHistogram;
+import org.ton.ton4j.exporter.types.EndpointStatistics;
+
+/** Request counters and latency histogram of one endpoint, updated without locking. */
+class EndpointMetrics {
+
+  private final String endpoint;
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  EndpointMetrics(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  void record(long nanos, boolean failed) {
+    latency.record(nanos);
+    requests.incrementAndGet();
+    if (failed) {
+      errors.incrementAndGet();
+    }
+  }
+
+  EndpointStatistics snapshot(long elapsedNanos) {
+    return EndpointStatistics.builder()
+        .endpoint(endpoint)
+        .requests(requests.get())
+        .errors(errors.get())
+        .elapsedNanos(elapsedNanos)
+        .latencyBuckets(latency.snapshot())
+        .build();
+  }
+}
@@ -0,0 +1,147 @@
+package org.ton.ton4j.exporter.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.ton.ton4j.exporter.types.EndpointStatistics;
+
+/**
+ * Replays a recorded request mix against a running {@link QueryServer} and measures the latency
+ * seen by the clients. Requests are the lines of a file written with {@link
+ * org.ton.ton4j.exporter.types.QueryServerConfig#getRecordFile()}, so a mix captured from real
+ * traffic can be replayed against a test database.
+ *
+ * <p>Each client thread takes the next request of the mix until the requested number has been
+ * sent, so the mix is replayed in its recorded proportions. Connections are kept alive.
+ */
+@Slf4j
+public class QueryLoadTest {
+
+  /** endpoint name of the statistics over all requests */
+  public static final String ALL = "all";
+
+  private static final int CONNECT_TIMEOUT_MS = 5_000;
+  private static final int READ_TIMEOUT_MS = 60_000;
+
+  private QueryLoadTest() {}
+
+  /**
+   * Reads a request mix, one path with query per line; blank lines and lines starting with # are
+   * skipped.
+   */
+  public static List<String> readRequests(String file) throws IOException {
+    return Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8).stream()
+        .map(String::trim)
+        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Replays requests.
+   *
+   * @param baseUrl server address, e.g. http://127.0.0.1:8080
+   * @param requests request mix, paths with query
+   * @param concurrency number of client threads
+   * @param totalRequests number of measured requests, the mix is repeated as needed
+   * @param warmUp whether every distinct request is sent once before measuring
+   * @return statistics over all requests first, then per endpoint by name
+   */
+  public static List<EndpointStatistics> run(
+      String baseUrl, List<String> requests, int concurrency, long totalRequests, boolean warmUp)
+      throws IOException {
+    if (requests.isEmpty()) {
+      throw new IllegalArgumentException("request mix is empty");
+    }
+    String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    if (warmUp) {
+      long start = System.nanoTime();
+      for (String request : new LinkedHashSet<>(requests)) {
+        send(base + request);
+      }
+      log.info("Warm-up took {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    EndpointMetrics all = new EndpointMetrics(ALL);
+    Map<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+    AtomicLong next = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+    long start = System.nanoTime();
+    try {
+      List<Future<?>> clients = new ArrayList<>();
+      for (int i = 0; i < Math.max(1, concurrency); i++) {
+        clients.add(
+            executor.submit(
+                () -> {
+                  for (long n = next.getAndIncrement();
+                      n < totalRequests;
+                      n = next.getAndIncrement()) {
+                    String request = requests.get((int) (n % requests.size()));
+                    long begin = System.nanoTime();
+                    boolean failed = send(base + request) != 200;
+                    long nanos = System.nanoTime() - begin;
+                    all.record(nanos, failed);
+                    endpoints
+                        .computeIfAbsent(endpoint(request), EndpointMetrics::new)
+                        .record(nanos, failed);
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> client : clients) {
+        client.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Load test interrupted", e);
+    } catch (Exception e) {
+      throw new IOException("Load test failed: " + e.getMessage(), e);
+    } finally {
+      executor.shutdownNow();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    List<EndpointStatistics> result = new ArrayList<>();
+    result.add(all.snapshot(elapsed));
+    endpoints.values().stream()
+        .map(endpoint -> endpoint.snapshot(elapsed))
+        .sorted(Comparator.comparing(EndpointStatistics::getEndpoint))
+        .forEach(result::add);
+    return result;
+  }
+
+  /** @return HTTP status, the body is read fully so that the connection can be reused */
+  private static int send(String url) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    connection.setReadTimeout(READ_TIMEOUT_MS);
+    int status = connection.getResponseCode();
+    try (InputStream in =
+        status == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+      if (in != null) {
+        in.readAllBytes();
+      }
+    }
+    return status;
+  }
+
+  private static String endpoint(String request) {
+    int query = request.indexOf('?');
+    return query < 0 ? request : request.substring(0, query);
+  }
+}
@@ -0,0 +1,609 @@
+package org.ton.ton4j.exporter.server;
+
+import static java.util.Objects.isNull;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.exporter.Exporter;
+import org.ton.ton4j.exporter.ShardLookup;
+import org.ton.ton4j.exporter.lazy.ShardAccountLazy;
+import org.ton.ton4j.exporter.reader.CellCache;
+import org.ton.ton4j.exporter.reader.DbReaderSession;
+import org.ton.ton4j.exporter.types.EndpointStatistics;
+import org.ton.ton4j.exporter.types.QueryServerConfig;
+import org.ton.ton4j.tl.types.db.block.BlockIdExt;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockId;
+import org.ton.ton4j.tlb.Transaction;
+import org.ton.ton4j.utils.Utils;
+
+/**
+ * Long-running query service over a local TON database. Unlike the one-shot commands of the
+ * exporter app, the database readers, the block location index, the cell cache and the encoded
+ * responses stay warm between requests, so repeated lookups are answered from memory.
+ *
+ * <p>Endpoints on http://127.0.0.1:port, all GET, answering JSON:
+ *
+ * <ul>
+ *   <li>{@code /last} - id of the latest masterchain block
+ *   <li>{@code /block?workchain=&shard=&seqno=[&format=boc]} - block as JSON or as hex BoC
+ *   <li>{@code /account?address=[&seqno=]} - account balance and last transaction, latest or at a
+ *       masterchain seqno
+ *   <li>{@code /transactions?workchain=&shard=&seqno=[&account=][&lt=]} - transactions of a
+ *       block, only the account's are decoded if given
+ *   <li>{@code /stats} - request counts and latencies per endpoint, cache hit rates
+ * </ul>
+ *
+ * <p>Shards are given in hex with the tag bit, e.g. 8000000000000000, and may be omitted for the
+ * masterchain. Blocks and account states at a given block never change, so their responses are
+ * cached until evicted. Lookups of the latest state resolve the shard block from the last
+ * masterchain block, which a background thread reads again every {@link
+ * QueryServerConfig#getLastBlockRefreshMs()}.
+ */
+@Slf4j
+public class QueryServer implements Closeable {
+
+  public static final String LAST = "/last";
+  public static final String BLOCK = "/block";
+  public static final String ACCOUNT = "/account";
+  public static final String TRANSACTIONS = "/transactions";
+  public static final String STATS = "/stats";
+
+  private static final String CONTENT_TYPE = "application/json; charset=utf-8";
+  private static final long MASTERCHAIN_SHARD = 0x8000000000000000L;
+  private static final int ROUTING_CACHE_SIZE = 4096;
+
+  /** Answers a request, null if nothing was found. */
+  @FunctionalInterface
+  private interface Handler {
+    byte[] handle(Map<String, String> params) throws Exception;
+  }
+
+  /** Latest masterchain block and the shard blocks it references. */
+  private static final class Latest {
+    private final BlockIdExt masterchain;
+    private final Block block;
+    private final Map<Integer, List<org.ton.ton4j.tlb.BlockIdExt>> shards =
+        new ConcurrentHashMap<>();
+
+    private Latest(BlockIdExt masterchain, Block block) {
+      this.masterchain = masterchain;
+      this.block = block;
+    }
+  }
+
+  private final QueryServerConfig config;
+  private final DbReaderSession session;
+  private final Exporter exporter;
+  private final ResponseCache responses;
+  private final Map<String, EndpointMetrics> endpoints = new LinkedHashMap<>();
+  // masterchain block ids and shard blocks per workchain by masterchain seqno
+  private final Map<Long, BlockIdExt> masterchainIds = lruMap();
+  private final Map<String, List<org.ton.ton4j.tlb.BlockIdExt>> shardRouting = lruMap();
+  private final long startedAt = System.nanoTime();
+  // without masterchain id until the latest block could be read
+  private volatile Latest latest = new Latest(null, null);
+  private BufferedWriter recorder;
+  private ExecutorService executor;
+  private ScheduledExecutorService latestRefresher;
+  private HttpServer server;
+
+  private QueryServer(String dbRootPath, QueryServerConfig config) {
+    this.config = config;
+    this.session =
+        new DbReaderSession(
+            dbRootPath, config.getBlockCacheSize(), config.getRefreshIntervalMs(), new CellCache());
+    this.exporter =
+        Exporter.builder()
+            .tonDatabaseRootPath(dbRootPath)
+            .readerSession(session)
+            .blockLocationIndexPath(config.getBlockLocationIndexPath())
+            .packageCatalogPath(config.getPackageCatalogPath())
+            .build();
+    this.responses = new ResponseCache(config.getResponseCacheSize());
+  }
+
+  /**
+   * Opens the database, warms up the readers and starts serving.
+   *
+   * @param dbRootPath database root directory
+   * @param config server settings
+   * @return running server, close it to release the port and the database
+   */
+  public static QueryServer start(String dbRootPath, QueryServerConfig config) throws IOException {
+    QueryServer queryServer = new QueryServer(dbRootPath, config);
+    try {
+      queryServer.startServer();
+    } catch (IOException | RuntimeException e) {
+      queryServer.close();
+      throw e;
+    }
+    return queryServer;
+  }
+
+  /** @return port the server listens on */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  /** @return request counts and latencies per endpoint, in registration order */
+  public List<EndpointStatistics> getStatistics() {
+    long elapsed = System.nanoTime() - startedAt;
+    return endpoints.values().stream()
+        .map(endpoint -> endpoint.snapshot(elapsed))
+        .collect(Collectors.toList());
+  }
+
+  private void startServer() throws IOException {
+    if (StringUtils.isNotEmpty(config.getRecordFile())) {
+      recorder =
+          new BufferedWriter(new FileWriter(config.getRecordFile(), StandardCharsets.UTF_8, true));
+    }
+    warmUp();
+    if (config.getLastBlockRefreshMs() > 0) {
+      latestRefresher =
+          Executors.newSingleThreadScheduledExecutor(
+              r -> {
+                Thread t = new Thread(r, "QueryServer-latest");
+                t.setDaemon(true);
+                return t;
+              });
+      latestRefresher.scheduleWithFixedDelay(
+          this::refreshLatest,
+          config.getLastBlockRefreshMs(),
+          config.getLastBlockRefreshMs(),
+          TimeUnit.MILLISECONDS);
+    }
+
+    AtomicInteger threadCounter = new AtomicInteger();
+    executor =
+        Executors.newFixedThreadPool(
+            Math.max(1, config.getThreads()),
+            r -> {
+              Thread t = new Thread(r, "QueryServer-" + threadCounter.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+    server =
+        HttpServer.create(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort()), 0);
+    server.setExecutor(executor);
+    register(LAST, params -> last());
+    register(BLOCK, this::block);
+    register(ACCOUNT, this::account);
+    register(TRANSACTIONS, this::transactions);
+    register(STATS, params -> stats());
+    server.start();
+    log.info(
+        "Query server at http://{}:{}/",
+        server.getAddress().getHostString(),
+        server.getAddress().getPort());
+  }
+
+  /**
+   * Opens the database handles and reads the latest masterchain block, so that the first requests
+   * do not pay for it. The block location index is built if its file does not exist yet, archive
+   * lookups would otherwise open the archive index and package per request. A database without
+   * blocks is still served, lookups fail until it has some.
+   */
+  private void warmUp() {
+    long start = System.nanoTime();
+    String indexPath = config.getBlockLocationIndexPath();
+    if (StringUtils.isNotEmpty(indexPath) && !new File(indexPath).exists()) {
+      try {
+        long blocks = exporter.buildBlockLocationIndex(indexPath);
+        log.info("Built block location index {} with {} blocks", indexPath, blocks);
+      } catch (Exception | Error e) {
+        log.warn("Cannot build block location index {}: {}", indexPath, e.getMessage());
+      }
+    }
+    try {
+      session.read(DbReaderSession::getCellDbReader);
+      refreshLatest();
+      Latest current = latest;
+      if (current.masterchain != null) {
+        exporter.getBlockIdExt(
+            BlockId.builder()
+                .workchain(-1)
+                .shard(MASTERCHAIN_SHARD)
+                .seqno(current.masterchain.getSeqno())
+                .build());
+      }
+    } catch (Exception | Error e) {
+      log.warn("Warm-up incomplete: {}", e.getMessage());
+    }
+    log.info("Warm-up took {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private void register(String path, Handler handler) {
+    EndpointMetrics metrics = new EndpointMetrics(path);
+    endpoints.put(path, metrics);
+    server.createContext(path, exchange -> handle(exchange, metrics, handler));
+  }
+
+  private void handle(HttpExchange exchange, EndpointMetrics metrics, Handler handler) {
+    long start = System.nanoTime();
+    int status = 200;
+    byte[] body;
+    try {
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        status = 405;
+        body = error("only GET is supported");
+      } else {
+        record(exchange);
+        body = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+        if (body == null) {
+          status = 404;
+          body = error("not found");
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      status = 400;
+      body = error(e.getMessage());
+    } catch (NoSuchElementException e) { // block not present in the archive index
+      status = 404;
+      body = error(e.getMessage());
+    } catch (Exception | Error e) { // TL-B and address parsing report errors as Error
+      log.debug("Error serving {}: {}", exchange.getRequestURI(), e.getMessage(), e);
+      status = 500;
+      body = error(e.getMessage());
+    }
+    try {
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } catch (IOException e) {
+      log.debug("Cannot send response to {}: {}", exchange.getRemoteAddress(), e.getMessage());
+    } finally {
+      exchange.close();
+      metrics.record(System.nanoTime() - start, status != 200);
+    }
+  }
+
+  private void record(HttpExchange exchange) throws IOException {
+    if (recorder == null || STATS.equals(exchange.getRequestURI().getPath())) {
+      return; // monitoring is not part of the request mix
+    }
+    synchronized (recorder) {
+      recorder.write(exchange.getRequestURI().toString());
+      recorder.newLine();
+    }
+  }
+
+  private byte[] last() {
+    BlockIdExt masterchain = latest.masterchain;
+    return masterchain == null ? null : json(blockId(masterchain));
+  }
+
+  private byte[] block(Map<String, String> params) throws IOException {
+    BlockId blockId = parseBlockId(params);
+    boolean boc = "boc".equals(params.get("format"));
+    String key = (boc ? "boc:" : "block:") + blockKey(blockId);
+    byte[] body = responses.get(key);
+    if (body == null) {
+      Cell cell = exporter.getBlockCell(blockId);
+      if (boc) {
+        body = json(Collections.singletonMap("boc", Utils.bytesToHex(cell.toBoc())));
+      } else {
+        body = json(Block.deserialize(CellSlice.beginParse(cell)));
+      }
+      responses.put(key, body);
+    }
+    return body;
+  }
+
+  private byte[] account(Map<String, String> params) throws IOException {
+    Address address = parseAddress(required(params, "address"));
+    String seqno = params.get("seqno");
+    BlockIdExt shardBlock =
+        seqno == null
+            ? getLatestShardBlock(address)
+            : getShardBlock(address, Long.parseLong(seqno));
+    if (shardBlock == null) {
+      return null;
+    }
+    String key = "account:" + shardBlock.getRootHash() + ":" + address.toString(false);
+    byte[] body = responses.get(key);
+    if (body == null) {
+      ShardAccountLazy account = exporter.getShardAccountByAddress(shardBlock, address);
+      boolean exists =
+          account != null && account.getAccount() != null && !account.getAccount().isNone();
+      Map<String, Object> result = new LinkedHashMap<>();
+      result.put("address", address.toString(false));
+      result.put("block", blockId(shardBlock));
+      result.put("exists", exists);
+      result.put("balance", exists ? account.getBalance() : BigInteger.ZERO);
+      if (exists) {
+        result.put("lastTransLt", account.getLastTransLt());
+        result.put("lastTransHash", account.getLastTransHash());
+      }
+      body = json(result);
+      responses.put(key, body);
+    }
+    return body;
+  }
+
+  private byte[] transactions(Map<String, String> params) throws IOException {
+    BlockId blockId = parseBlockId(params);
+    Address account =
+        params.containsKey("account") ? parseAddress(params.get("account")) : null;
+    BigInteger lt = params.containsKey("lt") ? new BigInteger(params.get("lt")) : null;
+    String key =
+        "transactions:"
+            + blockKey(blockId)
+            + ":"
+            + (account == null ? "" : account.toString(false))
+            + ":"
+            + (lt == null ? "" : lt);
+    byte[] body = responses.get(key);
+    if (body == null) {
+      List<Transaction> transactions =
+          account == null
+              ? Block.deserialize(CellSlice.beginParse(exporter.getBlockCell(blockId)))
+                  .getAllTransactions()
+              : exporter.getTransactions(blockId, account);
+      if (lt != null) {
+        transactions =
+            transactions.stream().filter(tx -> lt.equals(tx.getLt())).collect(Collectors.toList());
+      }
+      body = json(transactions);
+      responses.put(key, body);
+    }
+    return body;
+  }
+
+  private byte[] stats() {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("uptimeMs", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+    List<Map<String, Object>> endpointStats = new ArrayList<>();
+    for (EndpointStatistics endpoint : getStatistics()) {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("endpoint", endpoint.getEndpoint());
+      stats.put("requests", endpoint.getRequests());
+      stats.put("errors", endpoint.getErrors());
+      stats.put("p50Micros", endpoint.getLatencyQuantileNanos(0.5) / 1000);
+      stats.put("p99Micros", endpoint.getLatencyQuantileNanos(0.99) / 1000);
+      endpointStats.add(stats);
+    }
+    result.put("endpoints", endpointStats);
+    Map<String, Object> responseCache = new LinkedHashMap<>();
+    responseCache.put("entries", responses.getSize());
+    responseCache.put("bytes", responses.getWeight());
+    responseCache.put("hits", responses.getHits());
+    responseCache.put("misses", responses.getMisses());
+    result.put("responseCache", responseCache);
+    CellCache cellCache = session.getCellCache();
+    if (cellCache != null) {
+      Map<String, Object> cells = new LinkedHashMap<>();
+      cells.put("entries", cellCache.getSize());
+      cells.put("bytes", cellCache.getWeight());
+      cells.put("hits", cellCache.getHits());
+      cells.put("misses", cellCache.getMisses());
+      result.put("cellCache", cells);
+    }
+    return json(result);
+  }
+
+  /** Reads the latest masterchain block, the previous one is kept if the read fails. */
+  private void refreshLatest() {
+    try {
+      latest = readLatest();
+    } catch (Exception | Error e) {
+      log.warn("Cannot read the latest block, serving the previous one: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Reads the latest masterchain block. Its id is taken from the same read as the block, so both
+   * describe one block; the state DB is asked only while no temp package holds a block.
+   */
+  private Latest readLatest() throws IOException {
+    Pair<org.ton.ton4j.tlb.BlockIdExt, Block> last = exporter.getLast();
+    if (isNull(last)) {
+      return new Latest(exporter.getLastBlockIdExt(), null);
+    }
+    org.ton.ton4j.tlb.BlockIdExt id = last.getKey();
+    BlockIdExt masterchain =
+        BlockIdExt.builder()
+            .workchain(id.getWorkchain())
+            .shard(id.shard)
+            .seqno((int) id.getSeqno())
+            .rootHash(id.rootHash)
+            .fileHash(id.fileHash)
+            .build();
+    return new Latest(masterchain, last.getValue());
+  }
+
+  /** Requests never read the latest block themselves, they use the one of the last refresh. */
+  private BlockIdExt getLatestShardBlock(Address address) {
+    Latest current = latest;
+    if (address.wc == -1) {
+      return current.masterchain;
+    }
+    if (current.block == null) {
+      return null;
+    }
+    List<org.ton.ton4j.tlb.BlockIdExt> shards =
+        current.shards.computeIfAbsent(
+            address.wc, wc -> ShardLookup.getShardBlocks(current.block, wc));
+    return toBlockIdExt(address, ShardLookup.findShardBlock(shards, address.hashPart));
+  }
+
+  /** Resolves the block whose state holds the account at a masterchain seqno. */
+  private BlockIdExt getShardBlock(Address address, long mcSeqno) throws IOException {
+    BlockId mcBlockId =
+        BlockId.builder().workchain(-1).shard(MASTERCHAIN_SHARD).seqno(mcSeqno).build();
+    if (address.wc == -1) {
+      BlockIdExt masterchain = masterchainIds.get(mcSeqno);
+      if (masterchain == null) {
+        masterchain = exporter.getBlockIdExt(mcBlockId);
+        masterchainIds.put(mcSeqno, masterchain);
+      }
+      return masterchain;
+    }
+    String routingKey = address.wc + ":" + mcSeqno;
+    List<org.ton.ton4j.tlb.BlockIdExt> shards = shardRouting.get(routingKey);
+    if (shards == null) {
+      shards = ShardLookup.getShardBlocks(exporter.getBlock(mcBlockId), address.wc);
+      shardRouting.put(routingKey, shards);
+    }
+    return toBlockIdExt(address, ShardLookup.findShardBlock(shards, address.hashPart));
+  }
+
+  private static BlockIdExt toBlockIdExt(
+      Address address, org.ton.ton4j.tlb.BlockIdExt shardInfo) {
+    if (shardInfo == null) {
+      return null;
+    }
+    return BlockIdExt.builder()
+        .shard(shardInfo.shard)
+        .workchain(address.wc)
+        .seqno((int) shardInfo.getSeqno())
+        .fileHash(shardInfo.fileHash)
+        .rootHash(shardInfo.rootHash)
+        .build();
+  }
+
+  private static BlockId parseBlockId(Map<String, String> params) {
+    int workchain = Integer.parseInt(required(params, "workchain"));
+    String shard = params.get("shard");
+    if (shard == null && workchain != -1) {
+      throw new IllegalArgumentException("shard is required outside the masterchain");
+    }
+    return BlockId.builder()
+        .workchain(workchain)
+        .shard(shard == null ? MASTERCHAIN_SHARD : Long.parseUnsignedLong(shard, 16))
+        .seqno(Long.parseLong(required(params, "seqno")))
+        .build();
+  }
+
+  private static String blockKey(BlockId blockId) {
+    return blockId.getWorkchain()
+        + ":"
+        + Long.toHexString(blockId.shard)
+        + ":"
+        + blockId.getSeqno();
+  }
+
+  private static Map<String, Object> blockId(BlockIdExt blockIdExt) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("workchain", blockIdExt.getWorkchain());
+    result.put("shard", Long.toHexString(blockIdExt.getShard()));
+    result.put("seqno", blockIdExt.getSeqno());
+    result.put("rootHash", blockIdExt.getRootHash());
+    result.put("fileHash", blockIdExt.getFileHash());
+    return result;
+  }
+
+  private static Address parseAddress(String address) {
+    try {
+      return Address.of(address);
+    } catch (Error e) {
+      throw new IllegalArgumentException(e.getMessage());
+    }
+  }
+
+  private static String required(Map<String, String> params, String name) {
+    String value = params.get(name);
+    if (StringUtils.isEmpty(value)) {
+      throw new IllegalArgumentException(name + " is required");
+    }
+    return value;
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> params = new HashMap<>();
+    if (StringUtils.isEmpty(query)) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      int eq = pair.indexOf('=');
+      if (eq > 0) {
+        params.put(
+            URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return params;
+  }
+
+  private static byte[] json(Object value) {
+    return Exporter.gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] error(String message) {
+    return json(Collections.singletonMap("error", String.valueOf(message)));
+  }
+
+  private static <K, V> Map<K, V> lruMap() {
+    return Collections.synchronizedMap(
+        new LinkedHashMap<K, V>(256, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > ROUTING_CACHE_SIZE;
+          }
+        });
+  }
+
+  /** Stops serving and closes the database handles. Recorded requests are flushed. */
+  @Override
+  public void close() {
+    if (server != null) {
+      server.stop(0);
+    }
+    if (latestRefresher != null) {
+      latestRefresher.shutdownNow();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (recorder != null) {
+      synchronized (recorder) {
+        try {
+          recorder.close();
+        } catch (IOException e) {
+          log.warn("Cannot write request record {}: {}", config.getRecordFile(), e.getMessage());
+        }
+      }
+    }
+    try {
+      exporter.close();
+    } catch (IOException e) {
+      log.warn("Cannot close block location index: {}", e.getMessage());
+    }
+    session.close();
+  }
+}
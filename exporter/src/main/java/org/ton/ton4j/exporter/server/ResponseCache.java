@@ -0,0 +1,64 @@
+package org.ton.ton4j.exporter.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of encoded responses bounded by their total size. Only responses of immutable lookups
+ * are cached, so entries are never invalidated, only evicted.
+ */
+class ResponseCache {
+
+  private final long maxWeight;
+  private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long weight;
+
+  ResponseCache(long maxWeight) {
+    this.maxWeight = maxWeight;
+  }
+
+  /** @return cached response, null if absent */
+  byte[] get(String key) {
+    byte[] value;
+    synchronized (this) {
+      value = entries.get(key);
+    }
+    (value == null ? misses : hits).incrementAndGet();
+    return value;
+  }
+
+  void put(String key, byte[] value) {
+    if (value.length > maxWeight / 8) {
+      return; // a single huge block would evict everything else
+    }
+    synchronized (this) {
+      byte[] previous = entries.put(key, value);
+      weight += value.length - (previous == null ? 0 : previous.length);
+      Iterator<Map.Entry<String, byte[]>> eldest = entries.entrySet().iterator();
+      while (weight > maxWeight && eldest.hasNext()) {
+        weight -= eldest.next().getValue().length;
+        eldest.remove();
+      }
+    }
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  synchronized int getSize() {
+    return entries.size();
+  }
+
+  synchronized long getWeight() {
+    return weight;
+  }
+}
@@ -0,0 +1,36 @@
+package org.ton.ton4j.exporter.types;
+
+import java.math.BigInteger;
+import lombok.Builder;
+import lombok.Data;
+import org.ton.ton4j.address.Address;
+
+/**
+ * Account that differs between two shard states. Balances and logical times are read from the
+ * accounts dictionary itself, the account cells are not loaded.
+ */
+@Builder
+@Data
+public class AccountChange {
+
+  public enum Type {
+    ADDED,
+    REMOVED,
+    CHANGED
+  }
+
+  private final Type type;
+  private final Address address;
+
+  /** balance in nanotons in the older state, null for added accounts */
+  private final BigInteger oldBalance;
+
+  /** balance in nanotons in the newer state, null for removed accounts */
+  private final BigInteger newBalance;
+
+  /** logical time of the last transaction in the older state, null for added accounts */
+  private final BigInteger oldLastTransLt;
+
+  /** logical time of the last transaction in the newer state, null for removed accounts */
+  private final BigInteger newLastTransLt;
+}
@@ -0,0 +1,34 @@
+package org.ton.ton4j.exporter.types;
+
+import java.math.BigInteger;
+import java.util.Set;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Parallelism and filters of a full scan of a shard state's accounts. The accounts dictionary is
+ * split at its top {@code splitBits} key bits into independent subtrees that are walked by a
+ * ForkJoinPool.
+ *
+ * <p>The balance filter is checked against the balances the dictionary keeps per subtree, so a
+ * subtree holding less than {@code minBalance} in total is skipped without being read. The code
+ * hash filter needs the account cell, but not the code cell.
+ */
+@Builder
+@Getter
+@ToString
+public class AccountScanConfig {
+
+  /** threads walking subtrees */
+  @Builder.Default private int parallelThreads = Runtime.getRuntime().availableProcessors();
+
+  /** key bits the dictionary is split at, up to 2^splitBits subtrees */
+  @Builder.Default private int splitBits = 8;
+
+  /** minimal balance in nanotons, null for no balance filter */
+  private BigInteger minBalance;
+
+  /** accepted code hashes as lowercase hex, null for no code filter */
+  private Set<String> codeHashes;
+}
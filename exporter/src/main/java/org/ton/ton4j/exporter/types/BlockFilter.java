@@ -0,0 +1,99 @@
+package org.ton.ton4j.exporter.types;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.utils.Utils;
+
+/**
+ * Selects the blocks and transactions of an export before they are decoded. Workchain and shard
+ * are taken from the package entry name, so other blocks are not even parsed. With accounts or op
+ * codes set, only the keys of the block's account blocks are read and only the matching
+ * transactions are decoded, the Block itself is not deserialized. Unset criteria match everything.
+ */
+@Builder
+@Getter
+@ToString
+public class BlockFilter {
+
+  /** workchains to export, null for all */
+  private final Set<Integer> workchains;
+
+  /**
+   * shards to export as shard ids with the tag bit, e.g. 0xa000000000000000 for the accounts whose
+   * address starts with bits 10; a block matches if its shard overlaps one of them, so the filter
+   * also works across splits and merges; null for all
+   */
+  private final Set<Long> shards;
+
+  /** accounts whose transactions are exported, null for all */
+  private final Set<Address> accounts;
+
+  /**
+   * op codes (first 32 bits of the body) of the inbound or outbound messages of the exported
+   * transactions, null for all
+   */
+  private final Set<Long> opCodes;
+
+  /** @return whether transactions are selected, i.e. blocks are exported as their transactions */
+  public boolean isTransactionFilter() {
+    return accounts != null || opCodes != null;
+  }
+
+  /**
+   * @return sha256 hex of the sorted criteria; equal for equal filters regardless of set order,
+   *     used to check that a resumed export continues with the same filter
+   */
+  public String digest() {
+    return Utils.sha256(
+        "workchains="
+            + canonical(workchains, String::valueOf)
+            + ";shards="
+            + canonical(shards, Long::toHexString)
+            + ";accounts="
+            + canonical(accounts, Address::toRaw)
+            + ";opCodes="
+            + canonical(opCodes, Long::toHexString));
+  }
+
+  private static <T> String canonical(Collection<T> values, Function<T, String> format) {
+    if (values == null) {
+      return "*";
+    }
+    return values.stream().map(format).sorted().collect(Collectors.joining(","));
+  }
+
+  /** @return whether a block of the given shard can contain exported data */
+  public boolean matchesShard(int workchain, long shard) {
+    if (workchains != null && !workchains.contains(workchain)) {
+      return false;
+    }
+    if (accounts != null && accounts.stream().noneMatch(address -> address.wc == workchain)) {
+      return false;
+    }
+    if (shards == null) {
+      return true;
+    }
+    for (long selected : shards) {
+      if (contains(selected, shard) || contains(shard, selected)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** @return whether shard parent contains shard child, both given as shard ids with tag bit */
+  private static boolean contains(long parent, long child) {
+    long parentTag = Long.lowestOneBit(parent);
+    if (Long.compareUnsigned(Long.lowestOneBit(child), parentTag) > 0) {
+      return false;
+    }
+    long prefixMask = ~((parentTag << 1) - 1);
+    return ((parent ^ child) & prefixMask) == 0;
+  }
+}
@@ -0,0 +1,34 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Parallelism and memory use of a cell tree analysis. Visited cells are remembered in files under
+ * {@code workDirectory}, the heap only holds the cells being processed, about {@code
+ * parallelThreads * batchSize} of them.
+ */
+@Builder
+@Getter
+@ToString
+public class CellTreeAnalyzerConfig {
+
+  /** threads walking the tree */
+  @Builder.Default private int parallelThreads = Runtime.getRuntime().availableProcessors();
+
+  /** cells read per multiGet by each thread */
+  @Builder.Default private int batchSize = 256;
+
+  /** directory for the visited cell set, the system temp directory if not set */
+  private String workDirectory;
+
+  /** number of distinct cells the visited set is sized for, it grows beyond as needed */
+  @Builder.Default private long expectedCells = 1 << 20;
+
+  /** number of contracts reported in {@link CellTreeStatistics#getTopContracts()} */
+  @Builder.Default private int topContracts = 100;
+
+  /** number of cells reported in {@link CellTreeStatistics#getTopSharedCells()} */
+  @Builder.Default private int topSharedCells = 100;
+}
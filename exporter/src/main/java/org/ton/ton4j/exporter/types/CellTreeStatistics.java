@@ -1,39 +1,144 @@
 package org.ton.ton4j.exporter.types;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
 import lombok.Getter;
 
-/** Statistics about a cell tree. */
+/**
+ * Statistics about a cell tree. Cells are counted once, however often they are referenced; sizes
+ * are the sizes of the cells as stored in the CellDB.
+ */
 public class CellTreeStatistics {
   // Getters
   @Getter private final String rootHash;
-  @Getter private final int totalCells;
-  private final Map<CellType, Integer> typeCounts;
-  @Getter private final int totalSize;
+
+  /** distinct cells */
+  @Getter private final long totalCells;
+
+  private final Map<CellType, Long> typeCounts;
+
+  /** bytes of the distinct cells */
+  @Getter private final long totalSize;
+
+  /** depth of the deepest cell, the root has depth 0 */
   @Getter private final int maxDepth;
 
+  /** references followed, including the root */
+  @Getter private final long references;
+
+  /** references to cells that were already counted, their subtrees are not walked again */
+  @Getter private final long duplicateReferences;
+
+  /** distinct cells per depth, a cell has the depth of the path it was first reached by */
+  private final long[] depthHistogram;
+
+  /** accounts of a shard state, 0 if the tree was not analyzed as a shard state */
+  @Getter private final long contracts;
+
+  /** accounts with the most bytes, largest first */
+  @Getter private final List<ContractStatistics> topContracts;
+
+  /** cells with the most references, most referenced first */
+  @Getter private final List<SharedCell> topSharedCells;
+
+  @Builder
   public CellTreeStatistics(
       String rootHash,
-      int totalCells,
-      Map<CellType, Integer> typeCounts,
-      int totalSize,
-      int maxDepth) {
+      long totalCells,
+      Map<CellType, Long> typeCounts,
+      long totalSize,
+      int maxDepth,
+      long references,
+      long duplicateReferences,
+      long[] depthHistogram,
+      long contracts,
+      List<ContractStatistics> topContracts,
+      List<SharedCell> topSharedCells) {
     this.rootHash = rootHash;
     this.totalCells = totalCells;
-    this.typeCounts = new HashMap<>(typeCounts);
+    this.typeCounts = new EnumMap<>(CellType.class);
+    if (typeCounts != null) {
+      this.typeCounts.putAll(typeCounts);
+    }
     this.totalSize = totalSize;
     this.maxDepth = maxDepth;
+    this.references = references;
+    this.duplicateReferences = duplicateReferences;
+    this.depthHistogram = depthHistogram == null ? new long[0] : depthHistogram.clone();
+    this.contracts = contracts;
+    this.topContracts = topContracts == null ? new ArrayList<>() : new ArrayList<>(topContracts);
+    this.topSharedCells =
+        topSharedCells == null ? new ArrayList<>() : new ArrayList<>(topSharedCells);
   }
 
-  public Map<CellType, Integer> getTypeCounts() {
-    return new HashMap<>(typeCounts);
+  /** @deprecated counts are long now, use {@link #builder()} */
+  @Deprecated
+  public CellTreeStatistics(
+      String rootHash,
+      int totalCells,
+      Map<CellType, Integer> typeCounts,
+      int totalSize,
+      int maxDepth) {
+    this(
+        rootHash,
+        totalCells,
+        toLongCounts(typeCounts),
+        totalSize,
+        maxDepth,
+        0,
+        0,
+        null,
+        0,
+        null,
+        null);
+  }
+
+  private static Map<CellType, Long> toLongCounts(Map<CellType, Integer> typeCounts) {
+    Map<CellType, Long> counts = new EnumMap<>(CellType.class);
+    if (typeCounts != null) {
+      typeCounts.forEach((type, count) -> counts.put(type, count.longValue()));
+    }
+    return counts;
+  }
+
+  public Map<CellType, Long> getTypeCounts() {
+    return new EnumMap<>(typeCounts);
+  }
+
+  /** @return distinct cells per depth, indexed by depth */
+  public long[] getDepthHistogram() {
+    return depthHistogram.clone();
+  }
+
+  /** Cell referenced more than once. */
+  @Builder
+  @Data
+  public static class SharedCell {
+    /** cell hash as hex */
+    private final String hash;
+
+    /** number of references to the cell */
+    private final long references;
   }
 
   @Override
   public String toString() {
     return String.format(
-        "CellTreeStatistics{root=%s, cells=%d, size=%d, types=%s}",
-        rootHash, totalCells, totalSize, typeCounts);
+        "CellTreeStatistics{root=%s, cells=%d, size=%d, maxDepth=%d, references=%d,"
+            + " duplicateReferences=%d, contracts=%d, types=%s, depths=%s}",
+        rootHash,
+        totalCells,
+        totalSize,
+        maxDepth,
+        references,
+        duplicateReferences,
+        contracts,
+        typeCounts,
+        Arrays.toString(depthHistogram));
   }
 }
@@ -0,0 +1,30 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Data;
+import org.ton.ton4j.address.Address;
+
+/**
+ * Cells of one account in a shard state. A cell referenced by several accounts, e.g. a common
+ * contract code, is counted for the account that reached it first and as a duplicate reference
+ * for the others.
+ */
+@Builder
+@Data
+public class ContractStatistics {
+
+  /** account address, null if the account cell has no standard address */
+  private final Address address;
+
+  /** hash of the account cell as hex */
+  private final String accountHash;
+
+  /** distinct cells first reached from this account, including the account cell */
+  private final long cells;
+
+  /** bytes of these cells as stored in the CellDB */
+  private final long bytes;
+
+  /** references from this account to cells that were already counted */
+  private final long duplicateReferences;
+}
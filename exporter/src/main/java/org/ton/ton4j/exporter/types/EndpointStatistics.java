@@ -0,0 +1,50 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.ton.ton4j.exporter.metrics.LatencyHistogram;
+
+/** Snapshot of the requests of one query server endpoint, as served or as seen by a client. */
+@Builder
+@Getter
+@ToString
+public class EndpointStatistics {
+  private final String endpoint;
+
+  /** requests answered, including failed ones */
+  private final long requests;
+
+  /** requests answered with a status other than 200 */
+  private final long errors;
+
+  /** time since the server or the load test started */
+  private final long elapsedNanos;
+
+  /** time per request, counts per {@link LatencyHistogram} bucket */
+  @ToString.Exclude private final long[] latencyBuckets;
+
+  public double getRequestsPerSecond() {
+    return elapsedNanos > 0 ? requests * 1_000_000_000.0 / elapsedNanos : 0;
+  }
+
+  /**
+   * @param quantile 0..1, e.g. 0.99
+   * @return upper bound of the histogram bucket holding the quantile of the request latency
+   */
+  public long getLatencyQuantileNanos(double quantile) {
+    return latencyBuckets == null ? 0 : LatencyHistogram.quantileNanos(latencyBuckets, quantile);
+  }
+
+  public String toCompactString() {
+    return String.format(
+        "%s: %d requests, %d errors, %.0f/s, p50 %.3fms, p99 %.3fms, p999 %.3fms",
+        endpoint,
+        requests,
+        errors,
+        getRequestsPerSecond(),
+        getLatencyQuantileNanos(0.5) / 1_000_000.0,
+        getLatencyQuantileNanos(0.99) / 1_000_000.0,
+        getLatencyQuantileNanos(0.999) / 1_000_000.0);
+  }
+}
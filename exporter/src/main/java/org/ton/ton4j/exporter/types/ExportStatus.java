@@ -2,6 +2,7 @@ package org.ton.ton4j.exporter.types;
 
 import com.google.gson.annotations.SerializedName;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import lombok.AllArgsConstructor;
@@ -56,6 +57,14 @@ public class ExportStatus {
   @SerializedName("completed")
   private volatile boolean completed;
 
+  // follow mode: bytes consumed per package, relative to the database root
+  @SerializedName("follow_offsets")
+  private Map<String, Long> followOffsets = new ConcurrentHashMap<>();
+
+  // follow mode: last emitted seqno per "workchain:shard"
+  @SerializedName("follow_seqnos")
+  private Map<String, Long> followSeqnos = new ConcurrentHashMap<>();
+
   public ExportStatus(
       String exportId,
       long totalPackages,
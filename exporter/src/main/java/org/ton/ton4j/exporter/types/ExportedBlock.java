@@ -1,8 +1,12 @@
 package org.ton.ton4j.exporter.types;
 
+import java.util.List;
 import lombok.Builder;
 import lombok.Data;
+import org.ton.ton4j.exporter.reader.BlockLocationIndex;
 import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockId;
+import org.ton.ton4j.tlb.Transaction;
 import org.ton.ton4j.utils.Utils;
 
 /** Data class representing an exported block object that can be used in streams */
@@ -15,6 +19,12 @@ public class ExportedBlock {
   private final Block deserializedBlock;
   private final boolean isDeserialized;
 
+  /**
+   * transactions selected by the accounts and op codes of a {@link BlockFilter}, in account and lt
+   * order; only set by exports with a transaction filter, which do not deserialize the Block
+   */
+  private final List<Transaction> transactions;
+
   /**
    * Get the block as a deserialized Block object
    *
@@ -46,7 +56,8 @@ public class ExportedBlock {
     if (deserializedBlock != null) {
       return deserializedBlock.getBlockInfo().getShard().getWorkchain();
     }
-    return -1; // Unknown if not deserialized
+    BlockId blockId = blockIdFromKey();
+    return blockId != null ? blockId.getWorkchain() : -1; // Unknown if not deserialized
   }
 
   /**
@@ -58,7 +69,8 @@ public class ExportedBlock {
     if (deserializedBlock != null) {
       return deserializedBlock.getBlockInfo().getShard().convertShardIdentToShard().toString(16);
     }
-    return null; // Unknown if not deserialized
+    BlockId blockId = blockIdFromKey();
+    return blockId != null ? Long.toUnsignedString(blockId.shard, 16) : null;
   }
 
   /**
@@ -70,6 +82,11 @@ public class ExportedBlock {
     if (deserializedBlock != null) {
       return deserializedBlock.getBlockInfo().getSeqno();
     }
-    return -1; // Unknown if not deserialized
+    BlockId blockId = blockIdFromKey();
+    return blockId != null ? blockId.getSeqno() : -1; // Unknown if not deserialized
+  }
+
+  private BlockId blockIdFromKey() {
+    return blockKey == null ? null : BlockLocationIndex.parseBlockFilename(blockKey);
   }
 }
@@ -0,0 +1,32 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/** Manifest entry of a completed output file written by a rotating AsyncFileWriter. */
+@Builder
+@Getter
+@ToString
+public class FileSegment {
+
+  /** file name, relative to the manifest */
+  private String file;
+
+  /** position of the file in the output sequence, starting at 0 */
+  private int index;
+
+  /** number of lines (blocks) in the file */
+  private long lines;
+
+  /** uncompressed size in bytes */
+  private long bytes;
+
+  /** size on disk in bytes, equals bytes if not compressed */
+  private long storedBytes;
+
+  private String compression;
+
+  /** time the file was completed, epoch milliseconds */
+  private long completedAt;
+}
@@ -0,0 +1,62 @@
+package org.ton.ton4j.exporter.types;
+
+import java.util.zip.Deflater;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Output settings of {@link org.ton.ton4j.exporter.AsyncFileWriter}: buffering, compression, file
+ * rotation and fsync policy. The defaults write a single uncompressed file without fsync.
+ */
+@Builder
+@Getter
+@ToString
+public class FileWriterConfig {
+
+  public enum Compression {
+    /** plain text, written by the writer thread */
+    NONE,
+    /** gzip members, compressed by a dedicated thread */
+    GZIP
+  }
+
+  public enum FsyncPolicy {
+    /** leave syncing to the operating system */
+    NEVER,
+    /** force file content to disk on every flush, rotation and close */
+    ON_FLUSH,
+    /** force file content to disk when a file is completed by rotation or close */
+    ON_ROTATE
+  }
+
+  /** capacity of the queue between producers and the writer thread */
+  @Builder.Default private int queueCapacity = 10000;
+
+  /** size of the output buffer, also the unit handed to the compression thread */
+  @Builder.Default private int bufferSize = 128 * 1024;
+
+  /** number of lines between flushes */
+  @Builder.Default private int flushInterval = 5000;
+
+  @Builder.Default private Compression compression = Compression.NONE;
+
+  /** deflate level 1 (fastest) to 9 (smallest), only used with GZIP */
+  @Builder.Default private int compressionLevel = Deflater.BEST_SPEED;
+
+  /** number of filled buffers queued for the compression thread */
+  @Builder.Default private int compressionQueueSize = 4;
+
+  /** starts a new file once this many uncompressed bytes were written, 0 disables */
+  @Builder.Default private long rotateBytes = 0;
+
+  /** starts a new file once this many lines (blocks) were written, 0 disables */
+  @Builder.Default private long rotateBlocks = 0;
+
+  @Builder.Default private FsyncPolicy fsyncPolicy = FsyncPolicy.NEVER;
+
+  /** @return whether output is split into numbered files listed in a manifest */
+  public boolean isRotating() {
+    return rotateBytes > 0 || rotateBlocks > 0;
+  }
+}
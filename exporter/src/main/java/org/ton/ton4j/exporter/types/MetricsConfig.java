@@ -0,0 +1,28 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Where the per-stage metrics of a running export are published: JMX MBeans, a Prometheus text
+ * file (for the node_exporter textfile collector) and a Prometheus scrape endpoint on the loopback
+ * interface. Everything is off by default.
+ */
+@Builder
+@Getter
+@ToString
+public class MetricsConfig {
+
+  /** registers one MBean per stage as org.ton.ton4j.exporter:type=ExportStage,name=stage */
+  @Builder.Default private boolean jmx = false;
+
+  /** file rewritten with the Prometheus text format every interval, null disables */
+  private String prometheusFile;
+
+  /** port of the http://127.0.0.1:port/metrics scrape endpoint, 0 disables */
+  @Builder.Default private int prometheusPort = 0;
+
+  /** interval between rewrites of the Prometheus file */
+  @Builder.Default private long intervalMs = 10_000;
+}
@@ -0,0 +1,65 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Thread counts and queue capacity of the staged export pipeline (read entries, parse BoC,
+ * deserialize Block, encode line, write). Stages are connected by bounded queues, so a slow stage
+ * throttles the ones before it instead of letting decoded blocks pile up in memory.
+ */
+@Builder
+@Getter
+@ToString
+public class PipelineConfig {
+
+  /** threads reading package files, each takes the largest remaining package next */
+  @Builder.Default private int readerThreads = 1;
+
+  /** threads parsing BoC into cells and checking the block magic */
+  @Builder.Default private int bocThreads = 1;
+
+  /** threads deserializing Block TL-B objects, only used for deserialized exports */
+  @Builder.Default private int deserializeThreads = 1;
+
+  /** threads encoding blocks to output lines (JSON or hex) */
+  @Builder.Default private int encodeThreads = 1;
+
+  /** threads handing lines to the output writer */
+  @Builder.Default private int writerThreads = 1;
+
+  /** capacity of each queue between two stages */
+  @Builder.Default private int queueCapacity = 1024;
+
+  /**
+   * Splits a total thread budget between stages. Deserialization and JSON encoding dominate
+   * deserialized exports, BoC parsing and hex encoding dominate raw exports.
+   *
+   * @param parallelThreads total number of worker threads
+   * @param deserialized whether blocks are exported as JSON
+   * @return pipeline configuration
+   */
+  public static PipelineConfig forThreads(int parallelThreads, boolean deserialized) {
+    int threads = Math.max(1, parallelThreads);
+    int readers = Math.max(1, threads / 8);
+    if (deserialized) {
+      int compute = Math.max(3, threads - readers);
+      return PipelineConfig.builder()
+          .readerThreads(readers)
+          .bocThreads(Math.max(1, compute / 5))
+          .deserializeThreads(Math.max(1, compute * 2 / 5))
+          .encodeThreads(Math.max(1, compute * 2 / 5))
+          .queueCapacity(Math.max(256, threads * 64))
+          .build();
+    }
+    int compute = Math.max(2, threads - readers);
+    return PipelineConfig.builder()
+        .readerThreads(readers)
+        .bocThreads(Math.max(1, compute / 2))
+        .deserializeThreads(0)
+        .encodeThreads(Math.max(1, compute / 2))
+        .queueCapacity(Math.max(256, threads * 64))
+        .build();
+  }
+}
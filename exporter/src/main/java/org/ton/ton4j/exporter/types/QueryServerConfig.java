@@ -0,0 +1,52 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.ton.ton4j.exporter.reader.DbReaderSession;
+
+/**
+ * Settings of the embedded query server, which keeps database readers, caches and indices open
+ * between requests and serves block, account and transaction lookups on the loopback interface.
+ */
+@Builder
+@Getter
+@ToString
+public class QueryServerConfig {
+
+  /** port of http://127.0.0.1:port/, 0 picks a free port */
+  @Builder.Default private int port = 0;
+
+  /** threads handling requests */
+  @Builder.Default private int threads = Runtime.getRuntime().availableProcessors();
+
+  /** bytes of the RocksDB block cache shared by CellDB, state and global index */
+  @Builder.Default private long blockCacheSize = DbReaderSession.DEFAULT_BLOCK_CACHE_SIZE;
+
+  /** age after which the database handles are reopened to see new data, 0 never reopens */
+  @Builder.Default private long refreshIntervalMs = DbReaderSession.DEFAULT_REFRESH_INTERVAL_MS;
+
+  /**
+   * bytes of encoded responses kept for repeated lookups; blocks and account states at a given
+   * block never change, so cached responses are never stale
+   */
+  @Builder.Default private long responseCacheSize = 256L * 1024 * 1024;
+
+  /**
+   * interval at which a background thread reads the latest masterchain block again for lookups
+   * without a seqno, 0 reads it only at start
+   */
+  @Builder.Default private long lastBlockRefreshMs = 1000;
+
+  /**
+   * block location index created by Exporter.buildBlockLocationIndex, built at start if the file
+   * does not exist, null to not use one
+   */
+  private String blockLocationIndexPath;
+
+  /** package catalog file, see Exporter.packageCatalogPath, null to scan all archives */
+  private String packageCatalogPath;
+
+  /** file the path and query of every lookup is appended to, replayable by QueryLoadTest */
+  private String recordFile;
+}
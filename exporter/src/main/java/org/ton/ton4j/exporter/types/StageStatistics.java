@@ -0,0 +1,77 @@
+package org.ton.ton4j.exporter.types;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.ton.ton4j.exporter.metrics.LatencyHistogram;
+
+/** Snapshot of the throughput of one export pipeline stage. */
+@Builder
+@Getter
+@ToString
+public class StageStatistics {
+  private final String stage;
+  private final int threads;
+
+  /** items that left the stage, including dropped and failed ones */
+  private final long processed;
+
+  /** items waiting in the queue in front of the stage */
+  private final int queueSize;
+
+  /** total time the stage threads spent processing items */
+  private final long busyNanos;
+
+  /** time since the pipeline started */
+  private final long elapsedNanos;
+
+  /** payload bytes read from packages (read stage) or handed to the output (write stage), else 0 */
+  private final long bytes;
+
+  /** heap bytes allocated by the stage threads while processing items, -1 if not measured */
+  private final long allocatedBytes;
+
+  /** processing time per item, counts per {@link LatencyHistogram} bucket */
+  @ToString.Exclude private final long[] latencyBuckets;
+
+  public double getItemsPerSecond() {
+    return elapsedNanos > 0 ? processed * 1_000_000_000.0 / elapsedNanos : 0;
+  }
+
+  public double getBytesPerSecond() {
+    return elapsedNanos > 0 ? bytes * 1_000_000_000.0 / elapsedNanos : 0;
+  }
+
+  /** @return allocation rate of the stage threads, 0 if not measured */
+  public double getAllocatedBytesPerSecond() {
+    return elapsedNanos > 0 && allocatedBytes > 0
+        ? allocatedBytes * 1_000_000_000.0 / elapsedNanos
+        : 0;
+  }
+
+  /** @return share of the stage's thread time spent processing, 0..1 */
+  public double getUtilization() {
+    return elapsedNanos > 0 && threads > 0
+        ? Math.min(1.0, busyNanos / (double) (elapsedNanos * threads))
+        : 0;
+  }
+
+  /**
+   * @param quantile 0..1, e.g. 0.99
+   * @return upper bound of the histogram bucket holding the quantile of the item latency
+   */
+  public long getLatencyQuantileNanos(double quantile) {
+    return latencyBuckets == null ? 0 : LatencyHistogram.quantileNanos(latencyBuckets, quantile);
+  }
+
+  public String toCompactString() {
+    return String.format(
+        "%s[%d]: %.0f/s, queue %d, busy %.0f%%, p99 %.2fms",
+        stage,
+        threads,
+        getItemsPerSecond(),
+        queueSize,
+        getUtilization() * 100,
+        getLatencyQuantileNanos(0.99) / 1_000_000.0);
+  }
+}
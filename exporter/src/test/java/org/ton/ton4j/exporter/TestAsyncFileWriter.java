@@ -0,0 +1,258 @@
+package org.ton.ton4j.exporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.exporter.json.ByteArrayPool;
+import org.ton.ton4j.exporter.json.JsonByteWriter;
+import org.ton.ton4j.exporter.types.FileSegment;
+import org.ton.ton4j.exporter.types.FileWriterConfig;
+
+@Slf4j
+public class TestAsyncFileWriter {
+
+  @Test
+  public void testGzipRoundTrip() throws Exception {
+    File file = File.createTempFile("blocks", ".txt.gz");
+    file.deleteOnExit();
+
+    FileWriterConfig config =
+        FileWriterConfig.builder()
+            .compression(FileWriterConfig.Compression.GZIP)
+            .compressionLevel(6)
+            .bufferSize(4096)
+            .flushInterval(100)
+            .fsyncPolicy(FileWriterConfig.FsyncPolicy.ON_FLUSH)
+            .build();
+
+    List<String> expected = new ArrayList<>();
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), false, config)) {
+      for (int i = 0; i < 5000; i++) {
+        String line = line(i);
+        expected.add(line);
+        if (i % 2 == 0) {
+          writer.writeLine(line);
+        } else {
+          writer.writeLine(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)), null);
+        }
+      }
+      // larger than the buffer, handed to the compressor in parts
+      String large = new String(new char[10_000]).replace('\0', 'x');
+      expected.add(large);
+      writer.writeLine(large);
+    }
+
+    assertThat(readGzip(file)).containsExactlyElementsOf(expected);
+    assertThat(file.length()).isLessThan(expected.size() * 20L);
+
+    // appending adds a second gzip member
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), true, config)) {
+      writer.writeLine("appended");
+    }
+    expected.add("appended");
+    assertThat(readGzip(file)).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void testRotationByBlocksWritesManifest() throws Exception {
+    File dir = Files.createTempDirectory("rotation").toFile();
+    dir.deleteOnExit();
+    String base = new File(dir, "blocks.txt").getAbsolutePath();
+
+    FileWriterConfig config =
+        FileWriterConfig.builder()
+            .compression(FileWriterConfig.Compression.GZIP)
+            .rotateBlocks(1000)
+            .fsyncPolicy(FileWriterConfig.FsyncPolicy.ON_ROTATE)
+            .build();
+
+    try (AsyncFileWriter writer = new AsyncFileWriter(base, false, config)) {
+      for (int i = 0; i < 2500; i++) {
+        writer.writeLine(line(i));
+      }
+    }
+
+    List<FileSegment> segments = AsyncFileWriter.readManifest(base);
+    assertThat(segments).extracting(FileSegment::getLines).containsExactly(1000L, 1000L, 500L);
+    assertThat(segments)
+        .extracting(FileSegment::getFile)
+        .containsExactly("blocks.txt.00000.gz", "blocks.txt.00001.gz", "blocks.txt.00002.gz");
+
+    int n = 0;
+    for (FileSegment segment : segments) {
+      File file = new File(dir, segment.getFile());
+      assertThat(file.length()).isEqualTo(segment.getStoredBytes());
+      for (String line : readGzip(file)) {
+        assertThat(line).isEqualTo(line(n++));
+      }
+    }
+    assertThat(n).isEqualTo(2500);
+
+    // a resumed export continues with the next file
+    try (AsyncFileWriter writer = new AsyncFileWriter(base, true, config)) {
+      writer.writeLine(line(n));
+    }
+    assertThat(AsyncFileWriter.readManifest(base))
+        .extracting(FileSegment::getFile)
+        .endsWith("blocks.txt.00003.gz");
+  }
+
+  @Test
+  public void testRotationBySizeUncompressed() throws Exception {
+    File dir = Files.createTempDirectory("rotation").toFile();
+    dir.deleteOnExit();
+    String base = new File(dir, "blocks.txt").getAbsolutePath();
+
+    FileWriterConfig config = FileWriterConfig.builder().rotateBytes(10_000).build();
+    long total;
+    try (AsyncFileWriter writer = new AsyncFileWriter(base, false, config)) {
+      for (int i = 0; i < 1000; i++) {
+        writer.writeLine(line(i));
+      }
+      writer.close();
+      total = writer.getBytesWritten();
+      assertThat(writer.getStoredBytes()).isEqualTo(total);
+    }
+
+    List<FileSegment> segments = AsyncFileWriter.readManifest(base);
+    assertThat(segments.size()).isGreaterThan(1);
+    assertThat(segments.stream().mapToLong(FileSegment::getLines).sum()).isEqualTo(1000);
+    assertThat(segments.stream().mapToLong(FileSegment::getBytes).sum()).isEqualTo(total);
+    for (FileSegment segment : segments.subList(0, segments.size() - 1)) {
+      assertThat(segment.getBytes()).isBetween(10_000L, 10_100L);
+    }
+    assertThat(new File(base)).doesNotExist();
+  }
+
+  @Test
+  public void testResumeRepairsTruncatedGzipMember() throws Exception {
+    File file = File.createTempFile("blocks", ".txt.gz");
+    file.deleteOnExit();
+    FileWriterConfig config =
+        FileWriterConfig.builder().compression(FileWriterConfig.Compression.GZIP).build();
+
+    List<String> expected = new ArrayList<>();
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), false, config)) {
+      writer.writeLine(line(0));
+    }
+    expected.add(line(0));
+    // an interrupted session: synced lines and a cut-off line, but no gzip trailer
+    try (FileOutputStream out = new FileOutputStream(file, true)) {
+      GZIPOutputStream gzip = new GZIPOutputStream(out, true);
+      for (int i = 1; i < 100; i++) {
+        gzip.write((line(i) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        expected.add(line(i));
+      }
+      gzip.write("0,8000000000000000,100,{\"cut".getBytes(StandardCharsets.UTF_8));
+      gzip.flush();
+    }
+
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), true, config)) {
+      writer.writeLine("appended");
+    }
+    expected.add("appended");
+    assertThat(readGzip(file)).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void testResumeAdoptsUnrecordedFile() throws Exception {
+    File dir = Files.createTempDirectory("rotation").toFile();
+    dir.deleteOnExit();
+    String base = new File(dir, "blocks.txt").getAbsolutePath();
+    FileWriterConfig config =
+        FileWriterConfig.builder()
+            .compression(FileWriterConfig.Compression.GZIP)
+            .rotateBlocks(10)
+            .build();
+
+    try (AsyncFileWriter writer = new AsyncFileWriter(base, false, config)) {
+      for (int i = 0; i < 10; i++) {
+        writer.writeLine(line(i));
+      }
+    }
+    // the next file was being written when the export was killed
+    File orphan = new File(AsyncFileWriter.segmentPath(base, config, 1));
+    try (FileOutputStream out = new FileOutputStream(orphan)) {
+      GZIPOutputStream gzip = new GZIPOutputStream(out, true);
+      for (int i = 10; i < 15; i++) {
+        gzip.write((line(i) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+      }
+      gzip.flush();
+    }
+
+    try (AsyncFileWriter writer = new AsyncFileWriter(base, true, config)) {
+      writer.writeLine(line(15));
+    }
+
+    List<FileSegment> segments = AsyncFileWriter.readManifest(base);
+    assertThat(segments)
+        .extracting(FileSegment::getFile)
+        .containsExactly("blocks.txt.00000.gz", "blocks.txt.00001.gz", "blocks.txt.00002.gz");
+    assertThat(segments).extracting(FileSegment::getLines).containsExactly(10L, 5L, 1L);
+    assertThat(orphan.length()).isEqualTo(segments.get(1).getStoredBytes());
+    List<String> lines = readGzip(orphan);
+    assertThat(lines).hasSize(5).startsWith(line(10)).endsWith(line(14));
+  }
+
+  static String line(int i) {
+    return "0,8000000000000000," + i + ",{\"seqno\":" + i + ",\"lt\":" + (i * 1000L) + "}";
+  }
+
+  private static List<String> readGzip(File file) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    }
+    return lines;
+  }
+
+  @Test
+  public void testWritesEncodedChunks() throws Exception {
+    File file = File.createTempFile("async", ".txt");
+    file.deleteOnExit();
+    AtomicInteger recycled = new AtomicInteger();
+    ByteArrayPool pool = new ByteArrayPool(4, 8, 1024);
+
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), false, 10, 16, 2)) {
+      writer.writeLine("first");
+      for (int i = 0; i < 3; i++) {
+        JsonByteWriter out = new JsonByteWriter(pool.acquire());
+        out.beginObject().name("i").value(i).name("pad").value("0123456789abcdef").endObject();
+        writer.writeLine(
+            out.toByteBuffer(),
+            buffer -> {
+              recycled.incrementAndGet();
+              pool.release(buffer);
+            });
+      }
+      writer.write(ByteBuffer.wrap("raw".getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    List<String> lines = Files.readAllLines(file.toPath());
+    assertThat(lines)
+        .containsExactly(
+            "first",
+            "{\"i\":0,\"pad\":\"0123456789abcdef\"}",
+            "{\"i\":1,\"pad\":\"0123456789abcdef\"}",
+            "{\"i\":2,\"pad\":\"0123456789abcdef\"}",
+            "raw");
+    assertThat(recycled.get()).isEqualTo(3);
+    assertThat(pool.size()).isBetween(1, 3);
+  }
+}
@@ -0,0 +1,106 @@
+package org.ton.ton4j.exporter;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.ton.ton4j.exporter.json.BlockJsonEncoder;
+import org.ton.ton4j.exporter.json.JsonByteWriter;
+import org.ton.ton4j.exporter.json.SampleBlocks;
+import org.ton.ton4j.exporter.types.FileWriterConfig;
+
+/**
+ * Throughput and CPU cost of AsyncFileWriter compression levels, writing 256 MB of synthetic block
+ * JSON lines. Measured on a single vCPU (JDK 17), so the compression thread competes with the
+ * producer; with spare cores the writer keeps the producer's pace up to the compressor's MB/s:
+ *
+ * <pre>
+ * compression  MB/s  CPU s/GB  ratio
+ * NONE         336   2.6       1.000
+ * GZIP 1       147   6.8       0.041
+ * GZIP 3       157   6.4       0.039
+ * GZIP 6        69  14.2       0.033
+ * GZIP 9        62  16.0       0.031
+ * </pre>
+ *
+ * The synthetic lines are more repetitive than real blocks, so real ratios are higher, but the
+ * ordering holds: levels 1-3 give most of the size reduction at less than half the CPU of 6-9,
+ * which is why level 1 is the default.
+ */
+@Slf4j
+@Ignore
+public class TestAsyncFileWriterBenchmark {
+
+  private static final long TOTAL_BYTES = 256L * 1024 * 1024;
+
+  @Test
+  public void testCompressionLevels() throws Exception {
+    List<ByteBuffer> lines = sampleLines();
+    run("NONE", FileWriterConfig.builder().build(), lines);
+    for (int level : new int[] {1, 3, 6, 9}) {
+      run(
+          "GZIP " + level,
+          FileWriterConfig.builder()
+              .compression(FileWriterConfig.Compression.GZIP)
+              .compressionLevel(level)
+              .build(),
+          lines);
+    }
+  }
+
+  private void run(String name, FileWriterConfig config, List<ByteBuffer> lines)
+      throws Exception {
+    File file = File.createTempFile("benchmark", ".txt");
+    file.deleteOnExit();
+
+    long cpuStart = processCpuTime();
+    long start = System.nanoTime();
+    long written = 0;
+    long stored;
+    try (AsyncFileWriter writer = new AsyncFileWriter(file.getAbsolutePath(), false, config)) {
+      for (int i = 0; written < TOTAL_BYTES; i++) {
+        ByteBuffer line = lines.get(i % lines.size()).duplicate();
+        written += line.remaining() + 1;
+        writer.writeLine(line, null);
+      }
+      writer.close();
+      stored = writer.getStoredBytes();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double cpuSeconds = (processCpuTime() - cpuStart) / 1e9;
+    double gigabytes = written / (1024.0 * 1024 * 1024);
+
+    log.info(
+        "{}: {} MB/s, {} CPU s/GB, ratio {}",
+        name,
+        String.format("%.0f", written / (1024.0 * 1024) / seconds),
+        String.format("%.1f", cpuSeconds / gigabytes),
+        String.format("%.3f", (double) stored / written));
+    file.delete();
+  }
+
+  /** @return distinct block JSON lines, so that the compressor cannot just repeat one line */
+  private static List<ByteBuffer> sampleLines() {
+    BlockJsonEncoder encoder = new BlockJsonEncoder(Exporter.gson);
+    List<ByteBuffer> lines = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      JsonByteWriter out = new JsonByteWriter(4096);
+      BigInteger account = BigInteger.valueOf(i).shiftLeft(200).add(BigInteger.valueOf(i * 7919L));
+      encoder.writeLine(SampleBlocks.shardBlock(account), out);
+      lines.add(ByteBuffer.wrap(Arrays.copyOf(out.array(), out.size())));
+    }
+    return lines;
+  }
+
+  private static long processCpuTime() {
+    return ((com.sun.management.OperatingSystemMXBean)
+            ManagementFactory.getOperatingSystemMXBean())
+        .getProcessCpuTime();
+  }
+}
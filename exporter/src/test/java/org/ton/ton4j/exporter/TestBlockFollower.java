@@ -0,0 +1,155 @@
+package org.ton.ton4j.exporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ton.ton4j.exporter.types.ExportStatus;
+import org.ton.ton4j.exporter.types.ExportedBlock;
+
+@Slf4j
+public class TestBlockFollower {
+
+  private static final String HASH = repeat("ab", 32);
+
+  private Path root;
+  private Path temp;
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("follow");
+    Path packages = Files.createDirectories(root.resolve("files").resolve("packages"));
+    temp = packages.resolve("temp.archive.1700000000.pack");
+    ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0xae8fdd01);
+    Files.write(temp, magic.array());
+    StatusManager.resetInstance();
+    StatusManager.getInstance(root.toString());
+  }
+
+  @After
+  public void tearDown() {
+    StatusManager.getInstance().deleteStatus();
+    StatusManager.forFile(root.resolve(BlockFollower.STATUS_FILE_NAME)).deleteStatus();
+    StatusManager.resetInstance();
+  }
+
+  @Test
+  public void testFollowNewBlocksInSeqnoOrder() throws IOException {
+    append(temp, entry("block_(-1,8000000000000000,1):" + HASH + ":" + HASH));
+    try (BlockFollower follower = new BlockFollower(root.toString(), false, 10, false)) {
+      // blocks that existed before following started are not emitted
+      assertThat(follower.poll()).isEmpty();
+
+      append(
+          temp,
+          entry("block_(-1,8000000000000000,3):" + HASH + ":" + HASH),
+          entry("proof_(-1,8000000000000000,3):" + HASH + ":" + HASH),
+          entry("block_(-1,8000000000000000,2):" + HASH + ":" + HASH),
+          entry("block_(-1,8000000000000000,1):" + HASH + ":" + HASH));
+      assertThat(blockKeys(follower.poll()))
+          .containsExactly(
+              "block_(-1,8000000000000000,2):" + HASH + ":" + HASH,
+              "block_(-1,8000000000000000,3):" + HASH + ":" + HASH);
+      assertThat(follower.poll()).isEmpty();
+    }
+  }
+
+  @Test
+  public void testPartiallyWrittenEntryIsDeferred() throws IOException {
+    try (BlockFollower follower = new BlockFollower(root.toString(), false, 10, false)) {
+      byte[] entry = entry("block_(0,8000000000000000,5):" + HASH + ":" + HASH);
+      append(temp, Arrays.copyOf(entry, entry.length - 3));
+      assertThat(follower.poll()).isEmpty();
+
+      append(temp, Arrays.copyOfRange(entry, entry.length - 3, entry.length));
+      List<ExportedBlock> blocks = follower.poll();
+      assertThat(blockKeys(blocks))
+          .containsExactly("block_(0,8000000000000000,5):" + HASH + ":" + HASH);
+      assertThat(blocks.get(0).getArchiveKey())
+          .isEqualTo(root.relativize(temp).toString());
+      assertThat(blocks.get(0).getRawDataBytes()).hasSize(16);
+    }
+  }
+
+  @Test
+  public void testResumeFromCheckpoint() throws IOException {
+    try (BlockFollower follower = new BlockFollower(root.toString(), false, 10, false)) {
+      append(temp, entry("block_(0,8000000000000000,7):" + HASH + ":" + HASH));
+      assertThat(follower.poll()).hasSize(1);
+      follower.commit();
+
+      // read but never committed, emitted again after a restart
+      append(temp, entry("block_(0,8000000000000000,8):" + HASH + ":" + HASH));
+      assertThat(follower.poll()).hasSize(1);
+    }
+
+    StatusManager.resetInstance();
+    StatusManager.getInstance(root.toString());
+    try (BlockFollower follower = new BlockFollower(root.toString(), false, 10, true)) {
+      assertThat(blockKeys(follower.poll()))
+          .containsExactly("block_(0,8000000000000000,8):" + HASH + ":" + HASH);
+    }
+  }
+
+  @Test
+  public void testBatchExportStatusIsKept() throws IOException {
+    ExportStatus batch = StatusManager.getInstance().createNewStatus(10, "file", "out", false, 1);
+    StatusManager.getInstance().saveStatus(batch);
+
+    try (BlockFollower follower = new BlockFollower(root.toString(), false, 10, false)) {
+      follower.commit();
+    }
+    assertThat(StatusManager.getInstance().loadStatus().getExportId())
+        .isEqualTo(batch.getExportId());
+    assertThat(Files.exists(root.resolve(BlockFollower.STATUS_FILE_NAME))).isTrue();
+  }
+
+  @Test
+  public void testCloseEndsWaitingPoll() throws Exception {
+    BlockFollower follower = new BlockFollower(root.toString(), false, 60_000, false);
+    Thread consumer = new Thread(() -> follower.tryAdvance(block -> {}));
+    consumer.start();
+    Thread.sleep(200);
+    follower.close();
+    consumer.join(5_000);
+    assertThat(consumer.isAlive()).isFalse();
+  }
+
+  private static List<String> blockKeys(List<ExportedBlock> blocks) {
+    return blocks.stream().map(ExportedBlock::getBlockKey).collect(Collectors.toList());
+  }
+
+  private static byte[] entry(String filename) {
+    byte[] name = filename.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer =
+        ByteBuffer.allocate(8 + name.length + 16).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0x1e8b | (name.length << 16)).putInt(16).put(name).put(new byte[16]);
+    return buffer.array();
+  }
+
+  private static void append(Path path, byte[]... entries) throws IOException {
+    for (byte[] entry : entries) {
+      Files.write(path, entry, StandardOpenOption.APPEND);
+    }
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+}
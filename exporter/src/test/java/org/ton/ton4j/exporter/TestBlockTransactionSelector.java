@@ -0,0 +1,259 @@
+package org.ton.ton4j.exporter;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.junit.Test;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.cell.TonHashMapAug;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.TonHashMapE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.exporter.types.BlockFilter;
+import org.ton.ton4j.tlb.AccountStates;
+import org.ton.ton4j.tlb.CurrencyCollection;
+import org.ton.ton4j.tlb.InternalMessageInfo;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.MsgAddressIntStd;
+import org.ton.ton4j.tlb.Transaction;
+import org.ton.ton4j.tlb.TransactionIO;
+
+public class TestBlockTransactionSelector {
+
+  private static final long TRANSFER = 0x0f8a7ea5L;
+  private static final long EXCESSES = 0xd53276dbL;
+
+  private static final BigInteger ALICE = BigInteger.valueOf(0xA11CE);
+  private static final BigInteger BOB = new BigInteger("B0B", 16).shiftLeft(240);
+
+  // alice: a transfer with an excesses reply and a plain transfer; bob: a message without body
+  private final Cell block =
+      block(
+          Arrays.asList(
+              transaction(ALICE, 100, TRANSFER, EXCESSES),
+              transaction(ALICE, 105, TRANSFER, -1),
+              transaction(BOB, 101, -1, -1)));
+
+  @Test
+  public void testSelectsTransactionsOfAccounts() {
+    assertThat(lts(select(BlockFilter.builder().build()))).containsExactly(100L, 105L, 101L);
+
+    assertThat(select(BlockFilter.builder().accounts(accounts(0, BOB)).build()))
+        .hasSize(1)
+        .allMatch(tx -> new BigInteger(tx.getAccountAddr(), 16).equals(BOB));
+    assertThat(lts(select(BlockFilter.builder().accounts(accounts(0, ALICE, BOB)).build())))
+        .containsExactly(100L, 105L, 101L);
+    // same address in another workchain
+    assertThat(select(BlockFilter.builder().accounts(accounts(-1, ALICE)).build())).isEmpty();
+  }
+
+  @Test
+  public void testSelectsTransactionsByInboundOrOutboundOpCode() {
+    assertThat(lts(select(BlockFilter.builder().opCodes(Collections.singleton(TRANSFER)).build())))
+        .containsExactly(100L, 105L);
+    assertThat(lts(select(BlockFilter.builder().opCodes(Collections.singleton(EXCESSES)).build())))
+        .containsExactly(100L);
+    assertThat(select(BlockFilter.builder().opCodes(Collections.singleton(0xdeadbeefL)).build()))
+        .isEmpty();
+    assertThat(
+            select(
+                BlockFilter.builder()
+                    .accounts(accounts(0, BOB))
+                    .opCodes(Collections.singleton(TRANSFER))
+                    .build()))
+        .isEmpty();
+  }
+
+  @Test
+  public void testMatchesFilenameByWorkchainShardAndAccounts() {
+    String basechain = "block_(0,a000000000000000,1234):AB:CD";
+    String masterchain = "block_(-1,8000000000000000,99):AB:CD";
+
+    BlockTransactionSelector workchains =
+        new BlockTransactionSelector(
+            BlockFilter.builder().workchains(Collections.singleton(-1)).build());
+    assertThat(workchains.matchesFilename(masterchain)).isTrue();
+    assertThat(workchains.matchesFilename(basechain)).isFalse();
+    assertThat(workchains.matchesFilename("proof_something")).isTrue(); // not a block name
+
+    // shard 10* matches its parents and children, not its siblings
+    BlockFilter shard =
+        BlockFilter.builder().shards(Collections.singleton(0xa000000000000000L)).build();
+    assertThat(shard.matchesShard(0, 0x8000000000000000L)).isTrue();
+    assertThat(shard.matchesShard(0, 0xc000000000000000L)).isTrue();
+    assertThat(shard.matchesShard(0, 0xa000000000000000L)).isTrue();
+    assertThat(shard.matchesShard(0, 0x9000000000000000L)).isTrue();
+    assertThat(shard.matchesShard(0, 0xb000000000000000L)).isTrue();
+    assertThat(shard.matchesShard(0, 0xe000000000000000L)).isFalse();
+    assertThat(shard.matchesShard(0, 0x6000000000000000L)).isFalse();
+
+    // accounts restrict the workchains
+    BlockTransactionSelector accounts =
+        new BlockTransactionSelector(BlockFilter.builder().accounts(accounts(-1, ALICE)).build());
+    assertThat(accounts.matchesFilename(masterchain)).isTrue();
+    assertThat(accounts.matchesFilename(basechain)).isFalse();
+  }
+
+  @Test
+  public void testDigestDoesNotDependOnSetOrder() {
+    BlockFilter filter =
+        BlockFilter.builder()
+            .accounts(accounts(0, ALICE, BOB))
+            .opCodes(new LinkedHashSet<>(Arrays.asList(TRANSFER, EXCESSES)))
+            .build();
+    BlockFilter reordered =
+        BlockFilter.builder()
+            .accounts(new LinkedHashSet<>(Arrays.asList(address(0, BOB), address(0, ALICE))))
+            .opCodes(new LinkedHashSet<>(Arrays.asList(EXCESSES, TRANSFER)))
+            .build();
+    assertThat(reordered.digest()).isEqualTo(filter.digest()).hasSize(64);
+
+    assertThat(BlockFilter.builder().accounts(accounts(0, ALICE)).build().digest())
+        .isNotEqualTo(filter.digest());
+    // no op codes at all is not the same as all op codes
+    assertThat(BlockFilter.builder().opCodes(Collections.emptySet()).build().digest())
+        .isNotEqualTo(BlockFilter.builder().build().digest());
+  }
+
+  private List<Transaction> select(BlockFilter filter) {
+    return new BlockTransactionSelector(filter).selectTransactions(block, 0);
+  }
+
+  private static HashSet<Address> accounts(int workchain, BigInteger... addresses) {
+    HashSet<Address> result = new HashSet<>();
+    for (BigInteger address : addresses) {
+      result.add(address(workchain, address));
+    }
+    return result;
+  }
+
+  private static Address address(int workchain, BigInteger address) {
+    return Address.of(workchain + ":" + String.format("%064x", address));
+  }
+
+  private static List<Long> lts(List<Transaction> transactions) {
+    return transactions.stream().map(tx -> tx.getLt().longValue()).collect(toList());
+  }
+
+  private static Cell coins(long value) {
+    return CurrencyCollection.builder().coins(BigInteger.valueOf(value)).build().toCell();
+  }
+
+  private static Message message(BigInteger src, BigInteger dst, long opCode) {
+    return Message.builder()
+        .info(
+            InternalMessageInfo.builder()
+                .bounce(true)
+                .srcAddr(MsgAddressIntStd.builder().workchainId((byte) 0).address(src).build())
+                .dstAddr(MsgAddressIntStd.builder().workchainId((byte) 0).address(dst).build())
+                .value(CurrencyCollection.builder().coins(BigInteger.valueOf(5000)).build())
+                .fwdFee(BigInteger.valueOf(7))
+                .createdLt(BigInteger.valueOf(99))
+                .createdAt(1700000000L)
+                .build())
+        .body(opCode < 0 ? null : CellBuilder.beginCell().storeUint(opCode, 32).endCell())
+        .build();
+  }
+
+  /** Transaction with an inbound message and up to one outbound message, -1 for none. */
+  private static Transaction transaction(BigInteger account, long lt, long inOp, long outOp) {
+    TonHashMapE out = new TonHashMapE(15);
+    if (outOp >= 0) {
+      out.elements.put(BigInteger.ZERO, message(account, BigInteger.ONE, outOp));
+    }
+    return Transaction.builder()
+        .accountAddr(account)
+        .lt(BigInteger.valueOf(lt))
+        .prevTxHash(BigInteger.ZERO)
+        .prevTxLt(BigInteger.ZERO)
+        .now(1700000001L)
+        .outMsgCount(out.elements.size())
+        .origStatus(AccountStates.ACTIVE)
+        .endStatus(AccountStates.ACTIVE)
+        .totalFees(CurrencyCollection.builder().coins(BigInteger.TEN).build())
+        .inOut(
+            TransactionIO.builder().in(message(BigInteger.ONE, account, inOp)).out(out).build())
+        .build();
+  }
+
+  /** Transaction cell with state update and description written by hand. */
+  private static Cell cell(Transaction tx) {
+    Cell cell = tx.toCell();
+    Cell stateUpdate =
+        CellBuilder.beginCell().storeUint(0x72, 8).storeUint(1, 256).storeUint(2, 256).endCell();
+    // trans_ord$0000 without storage, credit and action phases, compute phase skipped (no state)
+    Cell description = CellBuilder.beginCell().storeUint(0, 4 + 3 + 3 + 4).endCell();
+    return CellBuilder.beginCell()
+        .storeBitString(cell.getBits())
+        .storeRefs(cell.getRefs().get(0), stateUpdate, description)
+        .endCell();
+  }
+
+  /**
+   * Block cell with the given transactions in its account blocks, other parts are empty. Leaves
+   * are passed with their extra as values, the library serializers store the extra after the
+   * value.
+   */
+  private static Cell block(List<Transaction> transactions) {
+    TonHashMapAugE accountBlocks = new TonHashMapAugE(256);
+    List<String> accounts =
+        transactions.stream().map(Transaction::getAccountAddr).distinct().collect(toList());
+    for (String account : accounts) {
+      TonHashMapAug accountTransactions = new TonHashMapAug(64);
+      for (Transaction tx : transactions) {
+        if (tx.getAccountAddr().equals(account)) {
+          accountTransactions.elements.put(
+              tx.getLt(),
+              new ValueExtra(
+                  CellBuilder.beginCell().storeCell(coins(0)).storeRef(cell(tx)).endCell(),
+                  null));
+        }
+      }
+      Cell transactionsCell =
+          accountTransactions.serialize(
+              k -> CellBuilder.beginCell().storeUint((BigInteger) k, 64).endCell().getBits(),
+              v -> v,
+              null,
+              (l, r) -> CellBuilder.beginCell().storeCell(coins(0)));
+      Cell accountBlock =
+          CellBuilder.beginCell()
+              .storeCell(coins(0))
+              .storeUint(5, 4)
+              .storeUint(new BigInteger(account, 16), 256)
+              .storeCell(transactionsCell)
+              .storeRef(CellBuilder.beginCell().endCell())
+              .endCell();
+      accountBlocks.elements.put(new BigInteger(account, 16), new ValueExtra(accountBlock, null));
+    }
+    Cell accountBlocksCell =
+        accountBlocks.serialize(
+            k -> CellBuilder.beginCell().storeUint((BigInteger) k, 256).endCell().getBits(),
+            v -> v,
+            null,
+            (l, r) -> CellBuilder.beginCell().storeCell(coins(0)));
+    Cell empty = CellBuilder.beginCell().endCell();
+    Cell extra =
+        CellBuilder.beginCell()
+            .storeUint(0x4a33f6fd, 32)
+            .storeRef(empty)
+            .storeRef(empty)
+            .storeRef(accountBlocksCell)
+            .endCell();
+    return CellBuilder.beginCell()
+        .storeUint(0x11ef55aaL, 32)
+        .storeRef(empty)
+        .storeRef(empty)
+        .storeRef(empty)
+        .storeRef(extra)
+        .endCell();
+  }
+}
@@ -0,0 +1,211 @@
+package org.ton.ton4j.exporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.PipelineConfig;
+import org.ton.ton4j.exporter.types.StageStatistics;
+
+@Slf4j
+public class TestExportPipeline {
+
+  /** Writes a package with "blocks" (cells starting with the block magic) and non-block cells. */
+  static File writePackage(int blocks, int nonBlocks) throws IOException {
+    File file = File.createTempFile("pipeline", ".pack");
+    file.deleteOnExit();
+    ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0xae8fdd01);
+    for (int i = 0; i < blocks + nonBlocks; i++) {
+      long magic = i < blocks ? 0x11ef55aaL : 0x12345678L;
+      byte[] data =
+          CellBuilder.beginCell().storeUint(magic, 32).storeUint(i, 32).endCell().toBoc();
+      byte[] filename =
+          ("block_(0,8000000000000000," + i + "):" + i + "AB:CD").getBytes(StandardCharsets.UTF_8);
+      buffer.putInt(0x1e8b | (filename.length << 16));
+      buffer.putInt(data.length);
+      buffer.put(filename);
+      buffer.put(data);
+    }
+    Files.write(file.toPath(), Arrays.copyOf(buffer.array(), buffer.position()));
+    return file;
+  }
+
+  @Test
+  public void testPipelineProcessesAllPackages() throws Exception {
+    Map<String, ArchiveInfo> packages = new LinkedHashMap<>();
+    for (int i = 0; i < 5; i++) {
+      File file = writePackage(100 * (i + 1), 10);
+      packages.put("pack" + i, new ArchiveInfo(i, file.getAbsolutePath(), file.length()));
+    }
+
+    List<String> lines = new CopyOnWriteArrayList<>();
+    AtomicInteger written = new AtomicInteger();
+    AtomicInteger nonBlocks = new AtomicInteger();
+    Map<String, Integer> completed = new ConcurrentHashMap<>();
+
+    ExportPipeline pipeline =
+        new ExportPipeline(
+            PipelineConfig.builder()
+                .readerThreads(2)
+                .bocThreads(3)
+                .encodeThreads(2)
+                .queueCapacity(16)
+                .build(),
+            false,
+            lines::add,
+            new ExportPipeline.Listener() {
+              @Override
+              public void onBlockWritten() {
+                written.incrementAndGet();
+              }
+
+              @Override
+              public void onNonBlock() {
+                nonBlocks.incrementAndGet();
+              }
+
+              @Override
+              public void onError(String blockKey, byte[] data, Throwable error) {
+                throw new AssertionError("unexpected error in " + blockKey, error);
+              }
+
+              @Override
+              public void onPackageCompleted(
+                  String archiveKey,
+                  ArchiveInfo archiveInfo,
+                  int parsedBlocks,
+                  int nonBlocks,
+                  long elapsedMs) {
+                completed.put(archiveKey, parsedBlocks);
+              }
+            },
+            () -> false);
+
+    pipeline.start(packages);
+    assertThat(pipeline.awaitCompletion(30, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(written.get()).isEqualTo(1500);
+    assertThat(lines).hasSize(1500);
+    assertThat(nonBlocks.get()).isEqualTo(50);
+    assertThat(completed).hasSize(5);
+    assertThat(completed.get("pack4")).isEqualTo(500);
+
+    List<StageStatistics> statistics = pipeline.getStatistics();
+    assertThat(statistics)
+        .extracting(StageStatistics::getStage)
+        .containsExactly("read", "boc", "encode", "write");
+    assertThat(statistics.get(0).getProcessed()).isEqualTo(1550);
+    assertThat(statistics.get(0).getBytes()).isPositive();
+    assertThat(statistics.get(3).getBytes()).isPositive();
+    for (StageStatistics stage : statistics) {
+      assertThat(Arrays.stream(stage.getLatencyBuckets()).sum()).isEqualTo(stage.getProcessed());
+      assertThat(stage.getLatencyQuantileNanos(0.99))
+          .isGreaterThanOrEqualTo(stage.getLatencyQuantileNanos(0.5));
+    }
+    for (StageStatistics stage : statistics) {
+      log.info(stage.toCompactString());
+    }
+  }
+
+  @Test
+  public void testShutdownStopsBeforeNextPackage() throws Exception {
+    Map<String, ArchiveInfo> packages = new LinkedHashMap<>();
+    for (int i = 0; i < 3; i++) {
+      File file = writePackage(10, 0);
+      packages.put("pack" + i, new ArchiveInfo(i, file.getAbsolutePath(), file.length()));
+    }
+    AtomicInteger completed = new AtomicInteger();
+    AtomicInteger shutdownChecks = new AtomicInteger();
+    ExportPipeline pipeline =
+        new ExportPipeline(
+            PipelineConfig.builder().build(),
+            false,
+            line -> {},
+            new ExportPipeline.Listener() {
+              @Override
+              public void onBlockWritten() {}
+
+              @Override
+              public void onNonBlock() {}
+
+              @Override
+              public void onError(String blockKey, byte[] data, Throwable error) {}
+
+              @Override
+              public void onPackageCompleted(
+                  String archiveKey,
+                  ArchiveInfo archiveInfo,
+                  int parsedBlocks,
+                  int nonBlocks,
+                  long elapsedMs) {
+                completed.incrementAndGet();
+              }
+            },
+            // request shutdown once the first package has been taken
+            () -> shutdownChecks.getAndIncrement() > 0);
+
+    pipeline.start(packages);
+    assertThat(pipeline.awaitCompletion(30, TimeUnit.SECONDS)).isTrue();
+    // the package that was already started is drained and completed
+    assertThat(completed.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testDeadStageDoesNotBlockUpstream() throws Exception {
+    Map<String, ArchiveInfo> packages = new LinkedHashMap<>();
+    File file = writePackage(200, 0);
+    packages.put("pack0", new ArchiveInfo(0, file.getAbsolutePath(), file.length()));
+    AtomicInteger completed = new AtomicInteger();
+    ExportPipeline pipeline =
+        new ExportPipeline(
+            PipelineConfig.builder().queueCapacity(2).build(),
+            false,
+            line -> {},
+            new ExportPipeline.Listener() {
+              @Override
+              public void onBlockWritten() {
+                // kills the only writer thread
+                throw new IllegalStateException("listener failed");
+              }
+
+              @Override
+              public void onNonBlock() {}
+
+              @Override
+              public void onError(String blockKey, byte[] data, Throwable error) {}
+
+              @Override
+              public void onPackageCompleted(
+                  String archiveKey,
+                  ArchiveInfo archiveInfo,
+                  int parsedBlocks,
+                  int nonBlocks,
+                  long elapsedMs) {
+                completed.incrementAndGet();
+              }
+            },
+            () -> false);
+
+    pipeline.start(packages);
+    assertThat(pipeline.awaitCompletion(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(pipeline.isFailed()).isTrue();
+    assertThat(completed.get()).isZero();
+  }
+}
@@ -0,0 +1,130 @@
+package org.ton.ton4j.exporter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.BlockFilter;
+import org.ton.ton4j.exporter.types.ExportedBlock;
+
+@Slf4j
+public class TestExportedBlockSpliterator {
+
+  private static Map<String, ArchiveInfo> packages(int count, int blocks) throws Exception {
+    Map<String, ArchiveInfo> packages = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      File file = TestExportPipeline.writePackage(blocks, 5);
+      packages.put("pack" + i, new ArchiveInfo(i, file.getAbsolutePath(), file.length()));
+    }
+    return packages;
+  }
+
+  private static class RecordingListener implements ExportedBlockSpliterator.Listener {
+    final Map<String, Integer> completed = new ConcurrentHashMap<>();
+    final AtomicReference<Boolean> finished = new AtomicReference<>();
+
+    @Override
+    public void onPackageCompleted(String archiveKey, int parsedBlocks, int nonBlocks, int errors) {
+      completed.put(archiveKey, parsedBlocks);
+    }
+
+    @Override
+    public void onFinished(boolean allPackagesCompleted) {
+      finished.set(allPackagesCompleted);
+    }
+  }
+
+  @Test
+  public void testStreamsAllBlocksWithParallelConsumers() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ExportedBlockSpliterator spliterator =
+        new ExportedBlockSpliterator(packages(6, 200), false, 4, 8, listener);
+    AtomicInteger count = new AtomicInteger();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try (Stream<ExportedBlock> stream =
+        StreamSupport.stream(spliterator, true).onClose(spliterator::close)) {
+      pool.submit(() -> stream.forEach(block -> count.incrementAndGet())).get();
+    } finally {
+      pool.shutdown();
+    }
+
+    assertThat(count.get()).isEqualTo(1200);
+    assertThat(listener.completed).hasSize(6).containsEntry("pack3", 200);
+    assertThat(listener.finished.get()).isTrue();
+  }
+
+  @Test
+  public void testPackageCompletesOnlyAfterItsBlocksAreConsumed() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ExportedBlockSpliterator spliterator =
+        new ExportedBlockSpliterator(packages(1, 50), false, 1, 4, listener);
+    try (Stream<ExportedBlock> stream =
+        StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+      // the buffer holds 4 blocks, the decoder cannot run ahead and finish the package
+      assertThat(stream.limit(10).count()).isEqualTo(10);
+      Thread.sleep(200);
+      assertThat(listener.completed).isEmpty();
+    }
+    assertThat(listener.completed).isEmpty();
+    assertThat(listener.finished.get()).isFalse();
+  }
+
+  @Test
+  public void testSkipsBlocksOfOtherShardsBeforeParsing() throws Exception {
+    // test packages hold blocks of shard (0,8000000000000000)
+    BlockFilter quarter =
+        BlockFilter.builder().shards(Collections.singleton(0xa000000000000000L)).build();
+    RecordingListener listener = new RecordingListener();
+    ExportedBlockSpliterator spliterator =
+        new ExportedBlockSpliterator(packages(2, 30), false, 2, 8, quarter, listener);
+    try (Stream<ExportedBlock> stream =
+        StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+      assertThat(stream.filter(block -> block.getWorkchain() == 0).count()).isEqualTo(60);
+    }
+
+    BlockFilter masterchain =
+        BlockFilter.builder().workchains(Collections.singleton(-1)).build();
+    listener = new RecordingListener();
+    spliterator = new ExportedBlockSpliterator(packages(2, 30), false, 2, 8, masterchain, listener);
+    try (Stream<ExportedBlock> stream =
+        StreamSupport.stream(spliterator, false).onClose(spliterator::close)) {
+      assertThat(stream.count()).isZero();
+    }
+    assertThat(listener.completed).hasSize(2).containsEntry("pack1", 0);
+    assertThat(listener.finished.get()).isTrue();
+  }
+
+  @Test
+  public void testConsumerSeesEndAfterClose() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    ExportedBlockSpliterator spliterator =
+        new ExportedBlockSpliterator(packages(1, 50), false, 1, 4, listener);
+    assertThat(spliterator.tryAdvance(block -> {})).isTrue();
+    spliterator.close();
+    // without an END marker a consumer would wait for blocks that are never decoded
+    CompletableFuture<Integer> consumed =
+        CompletableFuture.supplyAsync(
+            () -> {
+              int count = 0;
+              while (spliterator.tryAdvance(block -> {})) {
+                count++;
+              }
+              return count;
+            });
+    assertThat(consumed.get(5, TimeUnit.SECONDS)).isZero();
+    assertThat(listener.finished.get()).isFalse();
+  }
+}
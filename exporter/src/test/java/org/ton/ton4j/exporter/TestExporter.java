@@ -6,10 +6,18 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.ToNumberPolicy;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
@@ -20,6 +28,7 @@ import org.ton.ton4j.address.Address;
 import org.ton.ton4j.bitstring.BitString;
 import org.ton.ton4j.cell.*;
 import org.ton.ton4j.exporter.lazy.ShardAccountLazy;
+import org.ton.ton4j.exporter.reader.DbReaderSession;
 import org.ton.ton4j.exporter.types.*;
 import org.ton.ton4j.tlb.Block;
 import org.ton.ton4j.tlb.BlockId;
@@ -105,6 +114,33 @@ public class TestExporter {
     exporter.exportToFile("blocks-boc.txt", false, 32);
   }
 
+  @Test
+  public void testExporterToColumnarVsJson() throws IOException {
+    Files.deleteIfExists(Path.of("status.json"));
+    Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+    long start = System.currentTimeMillis();
+    exporter.exportToFile("blocks-tlb.txt", true, 16);
+    long jsonMs = System.currentTimeMillis() - start;
+    long jsonBytes = Files.size(Path.of("blocks-tlb.txt"));
+
+    start = System.currentTimeMillis();
+    long blocks = exporter.exportToColumnar("blocks-columnar", 16);
+    long columnarMs = System.currentTimeMillis() - start;
+    long columnarBytes = 0;
+    try (Stream<Path> files = Files.list(Path.of("blocks-columnar"))) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        columnarBytes += Files.size(file);
+      }
+    }
+    log.info(
+        "json: {} ms, {} bytes; columnar: {} blocks, {} ms, {} bytes",
+        jsonMs,
+        jsonBytes,
+        blocks,
+        columnarMs,
+        columnarBytes);
+  }
+
   @Test
   public void testExporterToStdout() throws IOException {
     Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
@@ -222,6 +258,31 @@ public class TestExporter {
     log.info("elapsed time: {} ms", endTime - startTime);
   }
 
+  @Test
+  public void testExporterGetBlockByBlockLocationIndex() throws IOException {
+    Path indexPath = Files.createTempFile("blocks", ".idx");
+    Exporter exporter =
+        Exporter.builder()
+            .tonDatabaseRootPath(TON_DB_ROOT_PATH)
+            .blockLocationIndexPath(indexPath.toString())
+            .build();
+
+    long startTime = System.currentTimeMillis();
+    long blocks = exporter.buildBlockLocationIndex(indexPath.toString());
+    log.info("indexed {} blocks in {} ms", blocks, System.currentTimeMillis() - startTime);
+
+    BlockId blockIdMc =
+        BlockId.builder().workchain(-1).seqno(229441).shard(0x8000000000000000L).build();
+    Block expected =
+        Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build().getBlock(blockIdMc);
+
+    startTime = System.currentTimeMillis();
+    Block block = exporter.getBlock(blockIdMc);
+    log.info("elapsed time: {} ms", System.currentTimeMillis() - startTime);
+    assertThat(block.getBlockInfo().getSeqno()).isEqualTo(expected.getBlockInfo().getSeqno());
+    assertThat(block.toCell().getHash()).isEqualTo(expected.toCell().getHash());
+  }
+
   @Test
   public void testExporterGetLastShards() throws IOException {
     Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
@@ -574,6 +635,93 @@ public class TestExporter {
     log.info("Balance {}", Utils.formatNanoValue(exporter.getBalance(address)));
   }
 
+  @Test
+  public void testCellDbReaderGetBalanceWithReaderSession() throws Exception {
+    List<Address> addresses =
+        List.of(
+            Address.of("-1:0000000000000000000000000000000000000000000000000000000000000000"),
+            Address.of("-1:3333333333333333333333333333333333333333333333333333333333333333"),
+            Address.of("0:7216e9db71acddecba3944137540c400f11fbabebeb23138fa5535c6a8784f2c"));
+    Exporter plain = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+
+    try (DbReaderSession session = new DbReaderSession(TON_DB_ROOT_PATH)) {
+      Exporter exporter =
+          Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).readerSession(session).build();
+      exporter.getBalance(addresses.get(0)); // opens the handles
+
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      long startTime = System.currentTimeMillis();
+      List<Future<BigInteger>> balances = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        Address address = addresses.get(i % addresses.size());
+        balances.add(executor.submit(() -> exporter.getBalance(address)));
+      }
+      for (int i = 0; i < balances.size(); i++) {
+        assertThat(balances.get(i).get())
+            .isEqualTo(plain.getBalance(addresses.get(i % addresses.size())));
+      }
+      log.info("100 balances with session in {} ms", System.currentTimeMillis() - startTime);
+      log.info("{}", session.getCellCache());
+      assertThat(session.getCellCache().getHits()).isGreaterThan(0);
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCellDbReaderGetBalances() {
+    List<Address> addresses =
+        List.of(
+            Address.of("-1:0000000000000000000000000000000000000000000000000000000000000000"),
+            Address.of("-1:3333333333333333333333333333333333333333333333333333333333333333"),
+            Address.of("0:7216e9db71acddecba3944137540c400f11fbabebeb23138fa5535c6a8784f2c"));
+    Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+    long startTime = System.currentTimeMillis();
+    Map<Address, BigInteger> balances = exporter.getBalances(addresses);
+    log.info("{} balances in {} ms", balances.size(), System.currentTimeMillis() - startTime);
+    for (Address address : addresses) {
+      assertThat(balances.get(address)).isEqualTo(exporter.getBalance(address));
+    }
+  }
+
+  @Test
+  public void testCellDbReaderScanAccounts() throws IOException {
+    Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+    org.ton.ton4j.tl.types.db.block.BlockIdExt lastBlockIdExt = exporter.getLastBlockIdExt();
+    AtomicLong total = new AtomicLong();
+    long startTime = System.currentTimeMillis();
+    long count =
+        exporter.scanAccounts(
+            lastBlockIdExt,
+            AccountScanConfig.builder().minBalance(Utils.toNano(1)).build(),
+            account -> total.addAndGet(account.getBalance().longValue()));
+    log.info(
+        "{} masterchain accounts with at least 1 TON, {} in total, in {} ms",
+        count,
+        Utils.formatNanoValue(BigInteger.valueOf(total.get())),
+        System.currentTimeMillis() - startTime);
+  }
+
+  @Test
+  public void testCellDbReaderDiffMasterchainAccounts() throws IOException {
+    Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+    long startTime = System.currentTimeMillis();
+    long count =
+        exporter.diffMasterchainAccounts(
+            219000, 220000, change -> log.info("{} {}", change.getType(), change));
+    log.info("{} changed accounts in {} ms", count, System.currentTimeMillis() - startTime);
+  }
+
+  @Test
+  public void testCellDbReaderGetBalanceHistory() {
+    Address address =
+        Address.of("-1:3333333333333333333333333333333333333333333333333333333333333333");
+    Exporter exporter = Exporter.builder().tonDatabaseRootPath(TON_DB_ROOT_PATH).build();
+    long startTime = System.currentTimeMillis();
+    SortedMap<Long, BigInteger> history = exporter.getBalanceHistory(address, 210000, 220000, 100);
+    log.info("{} balances in {} ms", history.size(), System.currentTimeMillis() - startTime);
+    assertThat(history.get(220000L)).isEqualTo(exporter.getBalance(address, 220000));
+  }
+
   @Test
   public void testCellDbReaderGetBalanceBySeqno() {
     Address address =
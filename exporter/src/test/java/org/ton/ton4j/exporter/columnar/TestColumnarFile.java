@@ -0,0 +1,198 @@
+package org.ton.ton4j.exporter.columnar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.TonHashMapE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.tlb.AccountBlock;
+import org.ton.ton4j.tlb.AccountStates;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockExtra;
+import org.ton.ton4j.tlb.BlockInfo;
+import org.ton.ton4j.tlb.CurrencyCollection;
+import org.ton.ton4j.tlb.HashUpdate;
+import org.ton.ton4j.tlb.InternalMessageInfo;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.MsgAddressIntStd;
+import org.ton.ton4j.tlb.ShardAccountBlocks;
+import org.ton.ton4j.tlb.ShardIdent;
+import org.ton.ton4j.tlb.Transaction;
+import org.ton.ton4j.tlb.TransactionIO;
+
+@Slf4j
+public class TestColumnarFile {
+
+  @Test
+  public void testRoundTripOverSeveralRowGroups() throws Exception {
+    File file = File.createTempFile("columnar", ".tcol");
+    file.deleteOnExit();
+    List<Column> columns =
+        Arrays.asList(
+            Column.of("lt", ColumnType.INT64),
+            Column.of("wc", ColumnType.INT32),
+            Column.of("bounce", ColumnType.BOOLEAN),
+            Column.of("account", ColumnType.STRING),
+            Column.of("hash", ColumnType.BYTES));
+
+    int rows = 2500;
+    try (ColumnarFileWriter writer =
+        new ColumnarFileWriter(file.getAbsolutePath(), columns, 1000, 6)) {
+      for (int i = 0; i < rows; i++) {
+        writer.setLong(0, 1_000_000_000_000L + i * 7L - (i % 3 == 0 ? 5 : 0));
+        writer.setInt(1, i % 2 == 0 ? -1 : 0);
+        writer.setBoolean(2, i % 5 == 0);
+        if (i % 10 != 0) {
+          writer.setString(3, "0:" + (i % 4));
+        }
+        writer.setBytes(4, new byte[] {(byte) i, (byte) (i >> 8)});
+        writer.endRow();
+      }
+    }
+
+    try (ColumnarFileReader reader = new ColumnarFileReader(file.getAbsolutePath())) {
+      assertThat(reader.getTotalRows()).isEqualTo(rows);
+      assertThat(reader.getRowGroupCount()).isEqualTo(3);
+      assertThat(reader.getColumns()).extracting(Column::getName).contains("lt", "hash");
+
+      int row = 0;
+      for (int g = 0; g < reader.getRowGroupCount(); g++) {
+        ColumnarFileReader.RowGroup group = reader.readRowGroup(g);
+        long[] lts = group.getLongs("lt");
+        int[] wcs = group.getInts("wc");
+        boolean[] bounces = group.getBooleans("bounce");
+        String[] accounts = group.getStrings("account");
+        byte[][] hashes = group.getBytes("hash");
+        for (int i = 0; i < group.getRowCount(); i++, row++) {
+          assertThat(lts[i]).isEqualTo(1_000_000_000_000L + row * 7L - (row % 3 == 0 ? 5 : 0));
+          assertThat(wcs[i]).isEqualTo(row % 2 == 0 ? -1 : 0);
+          assertThat(bounces[i]).isEqualTo(row % 5 == 0);
+          assertThat(accounts[i]).isEqualTo(row % 10 != 0 ? "0:" + (row % 4) : "");
+          assertThat(hashes[i]).containsExactly((byte) row, (byte) (row >> 8));
+        }
+      }
+      assertThat(row).isEqualTo(rows);
+    }
+  }
+
+  @Test
+  public void testBlockRowsWriter() throws Exception {
+    File dir = Files.createTempDirectory("columnar").toFile();
+    dir.deleteOnExit();
+
+    BigInteger account = BigInteger.valueOf(0xABCDEF);
+    Message in =
+        Message.builder()
+            .info(
+                InternalMessageInfo.builder()
+                    .bounce(true)
+                    .bounced(false)
+                    .srcAddr(
+                        MsgAddressIntStd.builder()
+                            .workchainId((byte) 0)
+                            .address(BigInteger.ONE)
+                            .build())
+                    .dstAddr(
+                        MsgAddressIntStd.builder().workchainId((byte) 0).address(account).build())
+                    .value(CurrencyCollection.builder().coins(BigInteger.valueOf(5000)).build())
+                    .fwdFee(BigInteger.valueOf(7))
+                    .createdLt(BigInteger.valueOf(99))
+                    .createdAt(1700000000L)
+                    .build())
+            .body(CellBuilder.beginCell().storeUint(0x0f8a7ea5L, 32).storeUint(1, 64).endCell())
+            .build();
+
+    TonHashMapAugE transactions = new TonHashMapAugE(64);
+    for (int i = 0; i < 2; i++) {
+      Transaction tx =
+          Transaction.builder()
+              .accountAddr(account)
+              .lt(BigInteger.valueOf(100 + i))
+              .prevTxLt(BigInteger.valueOf(i == 0 ? 50 : 100))
+              .now(1700000001L + i)
+              .outMsgCount(0)
+              .origStatus(AccountStates.ACTIVE)
+              .endStatus(AccountStates.ACTIVE)
+              .inOut(TransactionIO.builder().in(in).out(new TonHashMapE(15)).build())
+              .totalFees(CurrencyCollection.builder().coins(BigInteger.valueOf(10 + i)).build())
+              .stateUpdate(
+                  HashUpdate.builder()
+                      .oldHash(BigInteger.valueOf(i + 1))
+                      .newHash(BigInteger.valueOf(i + 2))
+                      .build())
+              .build();
+      transactions.elements.put(BigInteger.valueOf(100 + i), new ValueExtra(tx, null));
+    }
+    TonHashMapAugE accountBlocks = new TonHashMapAugE(256);
+    accountBlocks.elements.put(
+        account,
+        new ValueExtra(
+            AccountBlock.builder().addr(account).transactions(transactions).build(), null));
+
+    Block block =
+        Block.builder()
+            .blockInfo(
+                BlockInfo.builder()
+                    .seqno(42)
+                    .shard(
+                        ShardIdent.builder()
+                            .workchain(0)
+                            .shardPrefix(new BigInteger("8000000000000000", 16))
+                            .build())
+                    .build())
+            .extra(
+                BlockExtra.builder()
+                    .shardAccountBlocks(
+                        ShardAccountBlocks.builder().shardAccountBlocks(accountBlocks).build())
+                    .build())
+            .build();
+
+    try (BlockRowsWriter writer = new BlockRowsWriter(dir.getAbsolutePath())) {
+      writer.write(block);
+      assertThat(writer.getBlocks()).isEqualTo(1);
+    }
+
+    String expectedAccount = "0:" + String.format("%064x", account);
+    try (ColumnarFileReader reader =
+        new ColumnarFileReader(new File(dir, BlockRowsWriter.TRANSACTIONS_FILE).getPath())) {
+      ColumnarFileReader.RowGroup group = reader.readRowGroup(0);
+      assertThat(group.getRowCount()).isEqualTo(2);
+      assertThat(group.getLongs("lt")).containsExactly(100, 101);
+      assertThat(group.getLongs("seqno")).containsExactly(42, 42);
+      assertThat(group.getLongs("shard")).containsExactly(Long.MIN_VALUE, Long.MIN_VALUE);
+      assertThat(group.getStrings("account")).containsExactly(expectedAccount, expectedAccount);
+      assertThat(group.getStrings("end_status")).containsExactly("ACTIVE", "ACTIVE");
+      assertThat(group.getLongs("total_fees")).containsExactly(10, 11);
+    }
+
+    try (ColumnarFileReader reader =
+        new ColumnarFileReader(new File(dir, BlockRowsWriter.MESSAGES_FILE).getPath())) {
+      ColumnarFileReader.RowGroup group = reader.readRowGroup(0);
+      assertThat(group.getRowCount()).isEqualTo(2);
+      assertThat(group.getStrings("direction")).containsExactly("in", "in");
+      assertThat(group.getLongs("value")).containsExactly(5000, 5000);
+      assertThat(group.getLongs("op")).containsExactly(0x0f8a7ea5L, 0x0f8a7ea5L);
+      assertThat(group.getBooleans("bounce")).containsExactly(true, true);
+      assertThat(group.getStrings("dst")).containsExactly(expectedAccount, expectedAccount);
+    }
+
+    try (ColumnarFileReader reader =
+        new ColumnarFileReader(new File(dir, BlockRowsWriter.ACCOUNT_UPDATES_FILE).getPath())) {
+      ColumnarFileReader.RowGroup group = reader.readRowGroup(0);
+      assertThat(group.getRowCount()).isEqualTo(1);
+      assertThat(group.getInts("tx_count")).containsExactly(2);
+      assertThat(group.getLongs("first_lt")).containsExactly(100);
+      assertThat(group.getLongs("last_lt")).containsExactly(101);
+      assertThat(group.getBytes("old_hash")[0]).hasSize(32).endsWith((byte) 1);
+      assertThat(group.getBytes("new_hash")[0]).hasSize(32).endsWith((byte) 3);
+    }
+  }
+}
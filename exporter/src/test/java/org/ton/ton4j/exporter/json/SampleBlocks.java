@@ -0,0 +1,95 @@
+package org.ton.ton4j.exporter.json;
+
+import java.math.BigInteger;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.TonHashMapE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.tlb.AccountBlock;
+import org.ton.ton4j.tlb.AccountStates;
+import org.ton.ton4j.tlb.Block;
+import org.ton.ton4j.tlb.BlockExtra;
+import org.ton.ton4j.tlb.BlockInfo;
+import org.ton.ton4j.tlb.CurrencyCollection;
+import org.ton.ton4j.tlb.HashUpdate;
+import org.ton.ton4j.tlb.InternalMessageInfo;
+import org.ton.ton4j.tlb.Message;
+import org.ton.ton4j.tlb.MsgAddressIntStd;
+import org.ton.ton4j.tlb.ShardAccountBlocks;
+import org.ton.ton4j.tlb.ShardIdent;
+import org.ton.ton4j.tlb.Transaction;
+import org.ton.ton4j.tlb.TransactionIO;
+
+/** Block objects built in code, for encoder tests and benchmarks that need transactions. */
+public final class SampleBlocks {
+
+  private SampleBlocks() {}
+
+  /** @return shard block with one account and two transactions of the given account */
+  public static Block shardBlock(BigInteger account) {
+    Message in =
+        Message.builder()
+            .info(
+                InternalMessageInfo.builder()
+                    .bounce(true)
+                    .bounced(false)
+                    .srcAddr(
+                        MsgAddressIntStd.builder()
+                            .workchainId((byte) 0)
+                            .address(BigInteger.ONE)
+                            .build())
+                    .dstAddr(
+                        MsgAddressIntStd.builder().workchainId((byte) 0).address(account).build())
+                    .value(CurrencyCollection.builder().coins(BigInteger.valueOf(5000)).build())
+                    .fwdFee(BigInteger.valueOf(7))
+                    .createdLt(BigInteger.valueOf(99))
+                    .createdAt(1700000000L)
+                    .build())
+            .body(CellBuilder.beginCell().storeUint(0x0f8a7ea5L, 32).storeUint(1, 64).endCell())
+            .build();
+
+    TonHashMapAugE transactions = new TonHashMapAugE(64);
+    for (int i = 0; i < 2; i++) {
+      Transaction tx =
+          Transaction.builder()
+              .accountAddr(account)
+              .lt(BigInteger.valueOf(100 + i))
+              .prevTxLt(BigInteger.valueOf(i == 0 ? 50 : 100))
+              .now(1700000001L + i)
+              .outMsgCount(0)
+              .origStatus(AccountStates.ACTIVE)
+              .endStatus(AccountStates.ACTIVE)
+              .inOut(TransactionIO.builder().in(in).out(new TonHashMapE(15)).build())
+              .totalFees(CurrencyCollection.builder().coins(BigInteger.valueOf(10 + i)).build())
+              .stateUpdate(
+                  HashUpdate.builder()
+                      .oldHash(BigInteger.valueOf(i + 1))
+                      .newHash(BigInteger.valueOf(i + 2))
+                      .build())
+              .build();
+      transactions.elements.put(BigInteger.valueOf(100 + i), new ValueExtra(tx, null));
+    }
+    TonHashMapAugE accountBlocks = new TonHashMapAugE(256);
+    accountBlocks.elements.put(
+        account,
+        new ValueExtra(
+            AccountBlock.builder().addr(account).transactions(transactions).build(), null));
+
+    return Block.builder()
+        .blockInfo(
+            BlockInfo.builder()
+                .seqno(42)
+                .shard(
+                    ShardIdent.builder()
+                        .workchain(0)
+                        .shardPrefix(new BigInteger("8000000000000000", 16))
+                        .build())
+                .build())
+        .extra(
+            BlockExtra.builder()
+                .shardAccountBlocks(
+                    ShardAccountBlocks.builder().shardAccountBlocks(accountBlocks).build())
+                .build())
+        .build();
+  }
+}
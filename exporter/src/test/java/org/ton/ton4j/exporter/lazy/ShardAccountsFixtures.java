@@ -0,0 +1,159 @@
+package org.ton.ton4j.exporter.lazy;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.CellSlice;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.exporter.reader.CellCache;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.tlb.*;
+import org.ton.ton4j.utils.Utils;
+
+/** Shard account dictionaries built in code and stored in the CellDB format. */
+final class ShardAccountsFixtures {
+
+  private ShardAccountsFixtures() {}
+
+  /**
+   * Serializes the accounts dictionary. Values already hold extra:DepthBalanceInfo followed by
+   * value:ShardAccount, forks get the total balance below them as extra.
+   */
+  static Cell serialize(TonHashMapAugE dict) {
+    Map<String, BigInteger> balances = new HashMap<>();
+    for (ValueExtra valueExtra : dict.elements.values()) {
+      CellSlice leaf = CellSlice.beginParse((Cell) valueExtra.getValue());
+      leaf.skipBits(5);
+      Cell account = leaf.loadRef();
+      balances.put(Utils.bytesToHex(account.getHash()), leaf.loadCoins());
+    }
+    return dict.serialize(
+        k -> CellBuilder.beginCell().storeUint((BigInteger) k, 256).endCell().getBits(),
+        v -> v,
+        null,
+        (left, right) ->
+            CellBuilder.beginCell()
+                .storeSlice(
+                    CellSlice.beginParse(
+                        DepthBalanceInfo.builder()
+                            .depth(0)
+                            .currencies(
+                                CurrencyCollection.builder()
+                                    .coins(
+                                        total((Cell) left, balances)
+                                            .add(total((Cell) right, balances)))
+                                    .build())
+                            .build()
+                            .toCell())));
+  }
+
+  /** @return total balance below a dictionary edge, leaves are the edges with one reference */
+  private static BigInteger total(Cell edge, Map<String, BigInteger> balances) {
+    if (edge.getRefs().size() == 1) {
+      return balances.get(Utils.bytesToHex(edge.getRefs().get(0).getHash()));
+    }
+    return total(edge.getRefs().get(0), balances).add(total(edge.getRefs().get(1), balances));
+  }
+
+  static ShardAccountsLazy prepare(CellDbReader reader, Cell shardAccounts)
+      throws Exception {
+    Cell cell = reader.getCell(shardAccounts.getHash(), CellCache.NO_DEPTH);
+    return ShardAccountsLazy.prepare(CellSliceLazy.beginParse(reader, cell));
+  }
+
+  static Address address(int i) {
+    return Address.of("0:" + Utils.bytesToHex(Utils.sha256AsArray(Utils.intToByteArray(i))));
+  }
+
+  static Cell leaf(Address address, BigInteger balance, Cell code) {
+    Account account =
+        Account.builder()
+            .isNone(false)
+            .address(MsgAddressIntStd.of(address))
+            .storageInfo(
+                StorageInfo.builder()
+                    .storageUsed(
+                        StorageUsed.builder()
+                            .cellsUsed(BigInteger.ONE)
+                            .bitsUsed(BigInteger.TEN)
+                            .build())
+                    .storageExtraInfo(StorageExtraNone.builder().build())
+                    .lastPaid(1700000000L)
+                    .duePayment(BigInteger.ZERO)
+                    .build())
+            .accountStorage(
+                AccountStorage.builder()
+                    .lastTransactionLt(BigInteger.ONE)
+                    .balance(CurrencyCollection.builder().coins(balance).build())
+                    .accountState(
+                        code == null
+                            ? AccountStateUninit.builder().build()
+                            : AccountStateActive.builder()
+                                .stateInit(StateInit.builder().code(code).build())
+                                .build())
+                    .accountStatus(code == null ? "UNINIT" : "ACTIVE")
+                    .build())
+            .build();
+    ShardAccount shardAccount =
+        ShardAccount.builder()
+            .account(account)
+            .lastTransHash(BigInteger.ZERO)
+            .lastTransLt(BigInteger.ONE)
+            .build();
+    DepthBalanceInfo extra =
+        DepthBalanceInfo.builder()
+            .depth(0)
+            .currencies(CurrencyCollection.builder().coins(balance).build())
+            .build();
+    return CellBuilder.beginCell()
+        .storeSlice(CellSlice.beginParse(extra.toCell()))
+        .storeSlice(CellSlice.beginParse(shardAccount.toCell()))
+        .endCell();
+  }
+
+  /** Writes a cell tree in the CellDB format read by {@link CellDbReader#parseCell} */
+  static void storeCells(Path path, Cell root) throws Exception {
+    try (Options options = new Options().setCreateIfMissing(true);
+        RocksDB db = RocksDB.open(options, path.toString())) {
+      Deque<Cell> pending = new ArrayDeque<>();
+      pending.add(root);
+      while (!pending.isEmpty()) {
+        Cell cell = pending.poll();
+        List<Cell> refs = cell.getRefs();
+        int bits = cell.getBits().getUsedBits();
+        byte[] data = new byte[(bits + 7) / 8];
+        byte[] bytes = cell.getBits().toByteArray();
+        System.arraycopy(bytes, 0, data, 0, Math.min(bytes.length, data.length));
+        if (bits % 8 != 0) {
+          data[bits / 8] |= (byte) (0x80 >>> (bits % 8)); // completion tag
+        }
+        ByteBuffer value =
+            ByteBuffer.allocate(4 + 2 + data.length + refs.size() * 35)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        value.putInt(0);
+        value.put(cell.getRefsDescriptor(0)[0]);
+        value.put(cell.getBitsDescriptor()[0]);
+        value.put(data);
+        for (Cell ref : refs) {
+          value.put((byte) 0); // level mask
+          value.put(ref.getHash());
+          value.putShort((short) 0); // depth
+          pending.add(ref);
+        }
+        db.put(cell.getHash(), value.array());
+      }
+    }
+  }
+}
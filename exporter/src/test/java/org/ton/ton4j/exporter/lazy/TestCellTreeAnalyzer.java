@@ -0,0 +1,172 @@
+package org.ton.ton4j.exporter.lazy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.address;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.leaf;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.serialize;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.storeCells;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.types.CellTreeAnalyzerConfig;
+import org.ton.ton4j.exporter.types.CellTreeStatistics;
+import org.ton.ton4j.exporter.types.ContractStatistics;
+import org.ton.ton4j.utils.Utils;
+
+@Slf4j
+public class TestCellTreeAnalyzer {
+
+  private static final int ACCOUNTS = 300;
+
+  @Test
+  public void testShardStateStatistics() throws Exception {
+    Cell code = CellBuilder.beginCell().storeUint(0xC0DE, 16).endCell();
+    TonHashMapAugE dict = new TonHashMapAugE(256);
+    Set<Address> addresses = new HashSet<>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      Address address = address(i);
+      addresses.add(address);
+      dict.elements.put(
+          address.toBigInteger(),
+          new ValueExtra(
+              leaf(address, BigInteger.valueOf(1_000L + i), i % 2 == 0 ? code : null), null));
+    }
+    Cell accounts = serialize(dict);
+    Cell common = CellBuilder.beginCell().storeUint(3, 8).endCell();
+    Cell state =
+        CellBuilder.beginCell()
+            .storeUint(0x9023afe2L, 32)
+            .storeUint(42, 32)
+            .storeRef(CellBuilder.beginCell().storeUint(1, 8).storeRef(common).endCell())
+            .storeRef(accounts)
+            .storeRef(CellBuilder.beginCell().storeUint(2, 8).storeRef(common).endCell())
+            .endCell();
+
+    Path root = Files.createTempDirectory("celldb");
+    storeCells(root.resolve("celldb"), state);
+
+    // expected values from walking the tree in memory
+    Map<String, Integer> referenceCounts = new HashMap<>();
+    Map<String, Integer> sizes = new HashMap<>();
+    count(state, referenceCounts, sizes);
+    long references = referenceCounts.values().stream().mapToLong(Integer::longValue).sum();
+    long size = sizes.values().stream().mapToLong(Integer::longValue).sum();
+    int mostReferenced = Collections.max(referenceCounts.values());
+    Set<String> accountCells = new HashSet<>();
+    for (ValueExtra valueExtra : dict.elements.values()) {
+      collect(((Cell) valueExtra.getValue()).getRefs().get(0), accountCells);
+    }
+
+    try (CellDbReader reader = new CellDbReader(root.toString())) {
+      List<ContractStatistics> consumed = Collections.synchronizedList(new ArrayList<>());
+      CellTreeStatistics parallel =
+          new CellTreeAnalyzer(
+                  reader,
+                  CellTreeAnalyzerConfig.builder()
+                      .parallelThreads(4)
+                      .batchSize(8)
+                      .expectedCells(16)
+                      .topContracts(10)
+                      .topSharedCells(5)
+                      .build())
+              .analyzeShardState(state.getHash(), consumed::add);
+      log.info("{}", parallel);
+
+      assertThat(parallel.getTotalCells()).isEqualTo(referenceCounts.size());
+      assertThat(parallel.getTotalSize()).isEqualTo(size);
+      assertThat(parallel.getReferences()).isEqualTo(references);
+      assertThat(parallel.getDuplicateReferences()).isEqualTo(references - referenceCounts.size());
+      assertThat(Arrays.stream(parallel.getDepthHistogram()).sum())
+          .isEqualTo(parallel.getTotalCells());
+      assertThat(parallel.getDepthHistogram()).hasSize(parallel.getMaxDepth() + 1);
+
+      assertThat(parallel.getContracts()).isEqualTo(ACCOUNTS);
+      assertThat(consumed).hasSize(ACCOUNTS);
+      assertThat(consumed.stream().map(ContractStatistics::getAddress).collect(Collectors.toSet()))
+          .isEqualTo(addresses);
+      // every cell below the accounts is attributed to exactly one of them
+      assertThat(consumed.stream().mapToLong(ContractStatistics::getCells).sum())
+          .isEqualTo(accountCells.size());
+      // the code cell is counted for one account, all others reference it once more
+      assertThat(consumed.stream().mapToLong(ContractStatistics::getDuplicateReferences).sum())
+          .isEqualTo(ACCOUNTS / 2 - 1);
+
+      List<ContractStatistics> top = parallel.getTopContracts();
+      assertThat(top).hasSize(10);
+      for (int i = 1; i < top.size(); i++) {
+        assertThat(top.get(i - 1).getBytes()).isGreaterThanOrEqualTo(top.get(i).getBytes());
+      }
+      long largest = consumed.stream().mapToLong(ContractStatistics::getBytes).max().getAsLong();
+      assertThat(top.get(0).getBytes()).isEqualTo(largest);
+
+      List<CellTreeStatistics.SharedCell> shared = parallel.getTopSharedCells();
+      assertThat(shared).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+      assertThat(shared.get(0).getReferences()).isEqualTo(mostReferenced);
+      assertThat(shared)
+          .contains(
+              CellTreeStatistics.SharedCell.builder()
+                  .hash(Utils.bytesToHex(code.getHash()))
+                  .references(ACCOUNTS / 2)
+                  .build());
+
+      // one thread with one cell per read gives the same totals
+      CellTreeStatistics single =
+          new CellTreeAnalyzer(
+                  reader, CellTreeAnalyzerConfig.builder().parallelThreads(1).batchSize(1).build())
+              .analyzeShardState(state.getHash(), null);
+      assertThat(single.getTotalCells()).isEqualTo(parallel.getTotalCells());
+      assertThat(single.getTotalSize()).isEqualTo(parallel.getTotalSize());
+      assertThat(single.getReferences()).isEqualTo(parallel.getReferences());
+      assertThat(single.getTypeCounts()).isEqualTo(parallel.getTypeCounts());
+      assertThat(single.getContracts()).isEqualTo(ACCOUNTS);
+
+      // a subtree on its own
+      CellTreeStatistics codeOnly =
+          new CellTreeAnalyzer(reader, CellTreeAnalyzerConfig.builder().build())
+              .analyze(code.getHash());
+      assertThat(codeOnly.getTotalCells()).isEqualTo(1);
+      assertThat(codeOnly.getMaxDepth()).isEqualTo(0);
+      assertThat(codeOnly.getContracts()).isEqualTo(0);
+    }
+  }
+
+  /** Counts the references to every cell and the size the cell has in the CellDB. */
+  private static void count(
+      Cell cell, Map<String, Integer> references, Map<String, Integer> sizes) {
+    String hash = Utils.bytesToHex(cell.getHash());
+    if (references.merge(hash, 1, Integer::sum) > 1) {
+      return;
+    }
+    sizes.put(
+        hash, 4 + 2 + (cell.getBits().getUsedBits() + 7) / 8 + 35 * cell.getRefs().size());
+    for (Cell ref : cell.getRefs()) {
+      count(ref, references, sizes);
+    }
+  }
+
+  private static void collect(Cell cell, Set<String> hashes) {
+    if (hashes.add(Utils.bytesToHex(cell.getHash()))) {
+      for (Cell ref : cell.getRefs()) {
+        collect(ref, hashes);
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package org.ton.ton4j.exporter.lazy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.address;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.leaf;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.prepare;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.serialize;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.storeCells;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.exporter.reader.CellCache;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.types.AccountChange;
+
+@Slf4j
+public class TestShardAccountsDiff {
+
+  private static final int ACCOUNTS = 300;
+
+  @Test
+  public void testDiffReportsAddedRemovedAndChanged() throws Exception {
+    Map<Address, BigInteger> before = new HashMap<>();
+    for (int i = 0; i < ACCOUNTS; i++) {
+      before.put(address(i), BigInteger.valueOf(1000 + i));
+    }
+    Map<Address, BigInteger> after = new HashMap<>(before);
+    for (int i = 0; i < ACCOUNTS; i += 10) {
+      after.put(address(i), BigInteger.valueOf(5000 + i)); // changed
+    }
+    for (int i = 5; i < ACCOUNTS; i += 30) {
+      after.remove(address(i));
+    }
+    for (int i = ACCOUNTS; i < ACCOUNTS + 7; i++) {
+      after.put(address(i), BigInteger.valueOf(9000 + i));
+    }
+
+    Cell beforeCell = state(before);
+    Cell afterCell = state(after);
+    Path root = Files.createTempDirectory("celldb");
+    storeCells(root.resolve("celldb"), beforeCell);
+    storeCells(root.resolve("celldb"), afterCell);
+
+    CellCache cache = new CellCache();
+    try (CellDbReader reader = new CellDbReader(root.toString(), null, cache)) {
+      Map<Address, AccountChange> changes = new HashMap<>();
+      long count =
+          ShardAccountsDiff.diff(
+              prepare(reader, beforeCell),
+              prepare(reader, afterCell),
+              0,
+              change -> assertThat(changes.put(change.getAddress(), change)).isNull());
+      assertThat(count).isEqualTo(changes.size()).isEqualTo(30 + 10 + 7);
+
+      for (Map.Entry<Address, AccountChange> entry : changes.entrySet()) {
+        AccountChange change = entry.getValue();
+        assertThat(change.getOldBalance()).isEqualTo(before.get(entry.getKey()));
+        assertThat(change.getNewBalance()).isEqualTo(after.get(entry.getKey()));
+        AccountChange.Type expected =
+            change.getOldBalance() == null
+                ? AccountChange.Type.ADDED
+                : change.getNewBalance() == null
+                    ? AccountChange.Type.REMOVED
+                    : AccountChange.Type.CHANGED;
+        assertThat(change.getType()).isEqualTo(expected);
+      }
+      log.info("{}", cache);
+
+      // identical states share the root, nothing is read below it
+      long misses = cache.getMisses();
+      assertThat(
+              ShardAccountsDiff.diff(
+                  prepare(reader, afterCell), prepare(reader, afterCell), 0, change -> {}))
+          .isZero();
+      assertThat(cache.getMisses() - misses).isLessThanOrEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testDiffAgainstEmptyState() throws Exception {
+    Map<Address, BigInteger> accounts = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      accounts.put(address(i), BigInteger.valueOf(i + 1));
+    }
+    Cell empty = state(new HashMap<>());
+    Cell full = state(accounts);
+    Path root = Files.createTempDirectory("celldb");
+    storeCells(root.resolve("celldb"), empty);
+    storeCells(root.resolve("celldb"), full);
+
+    try (CellDbReader reader = new CellDbReader(root.toString())) {
+      Map<Address, BigInteger> added = new HashMap<>();
+      ShardAccountsDiff.diff(
+          prepare(reader, empty),
+          prepare(reader, full),
+          0,
+          change -> {
+            assertThat(change.getType()).isEqualTo(AccountChange.Type.ADDED);
+            added.put(change.getAddress(), change.getNewBalance());
+          });
+      assertThat(added).isEqualTo(accounts);
+
+      long removed =
+          ShardAccountsDiff.diff(prepare(reader, full), prepare(reader, empty), 0, change -> {});
+      assertThat(removed).isEqualTo(accounts.size());
+    }
+  }
+
+  private static Cell state(Map<Address, BigInteger> balances) {
+    TonHashMapAugE dict = new TonHashMapAugE(256);
+    for (Map.Entry<Address, BigInteger> entry : balances.entrySet()) {
+      dict.elements.put(
+          entry.getKey().toBigInteger(),
+          new ValueExtra(leaf(entry.getKey(), entry.getValue(), null), null));
+    }
+    return serialize(dict);
+  }
+}
@@ -0,0 +1,194 @@
+package org.ton.ton4j.exporter.lazy;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.address;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.leaf;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.prepare;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.serialize;
+import static org.ton.ton4j.exporter.lazy.ShardAccountsFixtures.storeCells;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.address.Address;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.cell.TonHashMapAugE;
+import org.ton.ton4j.cell.ValueExtra;
+import org.ton.ton4j.exporter.reader.CellCache;
+import org.ton.ton4j.exporter.reader.CellDbReader;
+import org.ton.ton4j.exporter.types.AccountScanConfig;
+import org.ton.ton4j.utils.Utils;
+
+@Slf4j
+public class TestShardAccountsLazy {
+
+  private static final int ACCOUNTS = 500;
+  private static final long RICH = 1_000_000_000_000L;
+
+  @Test
+  public void testLookupAllMatchesLookup() throws Exception {
+    Map<Address, BigInteger> expected = new HashMap<>();
+    TonHashMapAugE dict = new TonHashMapAugE(256);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      Address address = address(i);
+      BigInteger balance = BigInteger.valueOf(1_000_000L + i);
+      expected.put(address, balance);
+      dict.elements.put(
+          address.toBigInteger(), new ValueExtra(leaf(address, balance, null), null));
+    }
+    Cell shardAccounts = serialize(dict);
+
+    Path root = Files.createTempDirectory("celldb");
+    storeCells(root.resolve("celldb"), shardAccounts);
+
+    List<Address> query = new ArrayList<>(expected.keySet());
+    query.add(address(ACCOUNTS)); // not in the dictionary
+    query.add(address(ACCOUNTS + 1));
+
+    CellCache cache = new CellCache(8 * 1024 * 1024, 8);
+    try (CellDbReader reader = new CellDbReader(root.toString(), null, cache)) {
+      ShardAccountsLazy accounts = prepare(reader, shardAccounts);
+
+      Map<Address, ShardAccountLazy> found = accounts.lookupAll(query);
+      assertThat(found).hasSize(ACCOUNTS);
+      for (Map.Entry<Address, BigInteger> entry : expected.entrySet()) {
+        assertThat(found.get(entry.getKey()).getBalance()).isEqualTo(entry.getValue());
+      }
+
+      // the same answers as walking the tree once per address
+      for (int i = 0; i < ACCOUNTS; i += 50) {
+        ShardAccountLazy single = prepare(reader, shardAccounts).lookup(address(i));
+        assertThat(single.getBalance()).isEqualTo(expected.get(address(i)));
+      }
+
+      // a second batch is served from the cell cache
+      long misses = cache.getMisses();
+      assertThat(accounts.lookupAll(query)).hasSize(ACCOUNTS);
+      assertThat(cache.getMisses()).isEqualTo(misses);
+      log.info("{}", cache);
+    }
+  }
+
+  @Test
+  public void testScanWithFilters() throws Exception {
+    Cell codeA = CellBuilder.beginCell().storeUint(0xA, 8).endCell();
+    Cell codeB = CellBuilder.beginCell().storeUint(0xB, 8).endCell();
+    List<BigInteger> all = new ArrayList<>();
+    List<BigInteger> withCodeA = new ArrayList<>();
+    TonHashMapAugE dict = new TonHashMapAugE(256);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      Address address = address(i);
+      // a few rich accounts among many small ones
+      BigInteger balance = BigInteger.valueOf(i % 50 == 0 ? RICH * (i + 1) : i + 1);
+      Cell code = i % 3 == 0 ? codeA : i % 3 == 1 ? codeB : null;
+      all.add(balance);
+      if (code == codeA) {
+        withCodeA.add(balance);
+      }
+      dict.elements.put(
+          address.toBigInteger(), new ValueExtra(leaf(address, balance, code), null));
+    }
+    Cell shardAccounts = serialize(dict);
+    Path root = Files.createTempDirectory("celldb");
+    storeCells(root.resolve("celldb"), shardAccounts);
+
+    BigInteger minBalance = BigInteger.valueOf(RICH);
+    Set<String> codeHashes = Collections.singleton(Utils.bytesToHex(codeA.getHash()));
+
+    AccountScanConfig full = AccountScanConfig.builder().parallelThreads(4).splitBits(4).build();
+    long fullMisses = scan(root, shardAccounts, full, all);
+
+    AccountScanConfig rich =
+        AccountScanConfig.builder().parallelThreads(4).splitBits(4).minBalance(minBalance).build();
+    long richMisses =
+        scan(root, shardAccounts, rich, filter(all, b -> b.compareTo(minBalance) >= 0));
+    // only the paths to the rich accounts were read
+    assertThat(richMisses).isLessThan(fullMisses / 4);
+
+    AccountScanConfig byCode =
+        AccountScanConfig.builder().parallelThreads(2).splitBits(0).codeHashes(codeHashes).build();
+    scan(root, shardAccounts, byCode, withCodeA);
+
+    AccountScanConfig both =
+        AccountScanConfig.builder().minBalance(minBalance).codeHashes(codeHashes).build();
+    scan(root, shardAccounts, both, filter(withCodeA, b -> b.compareTo(minBalance) >= 0));
+  }
+
+  @Test
+  public void testLookupWithPathMemo() throws Exception {
+    Address target = address(7);
+    TonHashMapAugE dict = new TonHashMapAugE(256);
+    for (int i = 0; i < ACCOUNTS; i++) {
+      dict.elements.put(
+          address(i).toBigInteger(),
+          new ValueExtra(leaf(address(i), BigInteger.valueOf(i + 1), null), null));
+    }
+    Cell first = serialize(dict);
+    // another account changes, the target's subtree stays the same
+    dict.elements.put(
+        address(8).toBigInteger(),
+        new ValueExtra(leaf(address(8), BigInteger.valueOf(1000), null), null));
+    Cell second = serialize(dict);
+    // the target changes
+    dict.elements.put(
+        target.toBigInteger(), new ValueExtra(leaf(target, BigInteger.valueOf(2000), null), null));
+    Cell third = serialize(dict);
+
+    Path root = Files.createTempDirectory("celldb");
+    for (Cell state : Arrays.asList(first, second, third)) {
+      storeCells(root.resolve("celldb"), state);
+    }
+
+    try (CellDbReader reader = new CellDbReader(root.toString())) {
+      AccountPathMemo memo = new AccountPathMemo(target);
+      assertThat(prepare(reader, first).lookup(memo).getBalance()).isEqualTo(8);
+      assertThat(memo.getReused()).isZero();
+
+      assertThat(prepare(reader, second).lookup(memo).getBalance()).isEqualTo(8);
+      assertThat(memo.getReused()).isEqualTo(1);
+      // the same state again ends at the root
+      assertThat(prepare(reader, second).lookup(memo).getBalance()).isEqualTo(8);
+      assertThat(memo.getReused()).isEqualTo(2);
+
+      assertThat(prepare(reader, third).lookup(memo).getBalance()).isEqualTo(2000);
+      assertThat(memo.getReused()).isEqualTo(2);
+      assertThat(memo.getLookups()).isEqualTo(4);
+
+      // going back to an older state still gives its balance
+      assertThat(prepare(reader, first).lookup(memo).getBalance()).isEqualTo(8);
+      assertThat(prepare(reader, first).lookup(new AccountPathMemo(address(ACCOUNTS)))).isNull();
+    }
+  }
+
+  /** Scans the accounts, checks their balances and returns the number of cells looked up */
+  private static long scan(
+      Path root, Cell shardAccounts, AccountScanConfig config, List<BigInteger> expected)
+      throws Exception {
+    CellCache cache = new CellCache();
+    try (CellDbReader reader = new CellDbReader(root.toString(), null, cache)) {
+      List<BigInteger> balances = Collections.synchronizedList(new ArrayList<>());
+      ShardAccountsLazy accounts = prepare(reader, shardAccounts);
+      long count = accounts.scan(config, account -> balances.add(account.getBalance()));
+      assertThat(count).isEqualTo(expected.size());
+      assertThat(balances).containsExactlyInAnyOrderElementsOf(expected);
+      log.info("{} {}", config, cache);
+      return cache.getMisses();
+    }
+  }
+
+  private static List<BigInteger> filter(List<BigInteger> balances, Predicate<BigInteger> p) {
+    return balances.stream().filter(p).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,114 @@
+package org.ton.ton4j.exporter.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.exporter.types.MetricsConfig;
+import org.ton.ton4j.exporter.types.StageStatistics;
+
+@Slf4j
+public class TestPipelineMetrics {
+
+  @Test
+  public void testHistogramBuckets() {
+    assertThat(LatencyHistogram.bucket(0)).isEqualTo(0);
+    assertThat(LatencyHistogram.bucket(1024)).isEqualTo(0);
+    assertThat(LatencyHistogram.bucket(1025)).isEqualTo(1);
+    assertThat(LatencyHistogram.bucket(2048)).isEqualTo(1);
+    assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 98; i++) {
+      histogram.record(1_000); // <= 1 µs
+    }
+    histogram.record(3_000_000);
+    histogram.record(3_000_000);
+    long[] buckets = histogram.snapshot();
+    assertThat(LatencyHistogram.quantileNanos(buckets, 0.5)).isEqualTo(1024);
+    assertThat(LatencyHistogram.quantileNanos(buckets, 0.99)).isEqualTo(1 << 22); // 4.2 ms
+    assertThat(LatencyHistogram.quantileNanos(new long[LatencyHistogram.BUCKETS], 0.99)).isZero();
+  }
+
+  @Test
+  public void testPrometheusFileEndpointAndJmx() throws Exception {
+    List<StageStatistics> stages = new ArrayList<>();
+    stages.add(stage("read", 100, 4096));
+    stages.add(stage("write", 90, 8192));
+
+    String text = PipelineMetrics.toPrometheus(stages);
+    log.info("\n{}", text);
+    assertThat(text)
+        .contains("# TYPE ton_exporter_stage_latency_seconds histogram")
+        .contains("ton_exporter_stage_items_total{stage=\"read\"} 100")
+        .contains("ton_exporter_stage_bytes_total{stage=\"write\"} 8192")
+        .contains("ton_exporter_stage_latency_seconds_bucket{stage=\"read\",le=\"+Inf\"} 100")
+        .contains("ton_exporter_stage_latency_seconds_count{stage=\"write\"} 90")
+        .contains("ton_exporter_gc_collections_total{gc=")
+        .endsWith("\n");
+
+    Path file = Files.createTempFile("metrics", ".prom");
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    MetricsConfig config =
+        MetricsConfig.builder()
+            .jmx(true)
+            .prometheusFile(file.toString())
+            .prometheusPort(port)
+            .intervalMs(100)
+            .build();
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName read = new ObjectName("org.ton.ton4j.exporter:type=ExportStage,name=read");
+    try (PipelineMetrics metrics = PipelineMetrics.start(config, () -> stages)) {
+      assertThat(metrics.getPort()).isEqualTo(port);
+      assertThat(mBeanServer.getAttribute(read, "Processed")).isEqualTo(100L);
+      assertThat((Long) mBeanServer.getAttribute(read, "LatencyP99Nanos")).isPositive();
+
+      HttpURLConnection connection =
+          (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/metrics").openConnection();
+      assertThat(connection.getResponseCode()).isEqualTo(200);
+      assertThat(connection.getContentType()).startsWith("text/plain");
+      try (InputStream in = connection.getInputStream()) {
+        assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8))
+            .contains("ton_exporter_stage_items_total{stage=\"write\"} 90");
+      }
+
+      stages.set(0, stage("read", 150, 4096));
+    }
+    // the file is rewritten with the final values on close
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+        .contains("ton_exporter_stage_items_total{stage=\"read\"} 150");
+    assertThat(mBeanServer.isRegistered(read)).isFalse();
+  }
+
+  private static StageStatistics stage(String name, long processed, long bytes) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < processed; i++) {
+      histogram.record(10_000L * i);
+    }
+    return StageStatistics.builder()
+        .stage(name)
+        .threads(2)
+        .processed(processed)
+        .busyNanos(processed * 10_000L)
+        .elapsedNanos(1_000_000_000L)
+        .bytes(bytes)
+        .allocatedBytes(bytes * 3)
+        .latencyBuckets(histogram.snapshot())
+        .build();
+  }
+}
@@ -0,0 +1,100 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.BlockLocation;
+
+@Slf4j
+public class TestBlockLocationIndex {
+
+  private static final long SHARD_ALL = 0x8000000000000000L;
+  private static final long SHARD_LEFT = 0x4000000000000000L;
+  private static final long SHARD_RIGHT = 0xc000000000000000L;
+
+  @Test
+  public void testFindsBlocksOfAllPackages() throws IOException {
+    Path root = Files.createTempDirectory("db");
+    Path arch = Files.createDirectories(root.resolve("archive/packages/arch0000"));
+    root.toFile().deleteOnExit();
+
+    // masterchain blocks 0..99 and shard blocks of two shards, mc block 50 is stored twice
+    File first = writePackage(arch.resolve("archive.00000.pack"), -1, SHARD_ALL, 0, 60);
+    File second = writePackage(arch.resolve("archive.00001.pack"), -1, SHARD_ALL, 50, 100);
+    File left =
+        writePackage(arch.resolve("archive.00002.0:4000000000000000.pack"), 0, SHARD_LEFT, 0, 70);
+    File right =
+        writePackage(arch.resolve("archive.00002.0:c000000000000000.pack"), 0, SHARD_RIGHT, 0, 30);
+
+    String indexPath = root.resolve("blocks.idx").toString();
+    List<ArchiveInfo> packages =
+        Arrays.asList(
+            new ArchiveInfo(0, second.getPath(), second.length()),
+            new ArchiveInfo(0, first.getPath(), first.length()),
+            new ArchiveInfo(0, right.getPath(), right.length()),
+            new ArchiveInfo(0, left.getPath(), left.length()));
+    long count = BlockLocationIndex.build(packages, root.toString(), indexPath);
+    assertThat(count).isEqualTo(100 + 70 + 30);
+
+    try (BlockLocationIndex index = BlockLocationIndex.open(indexPath, root.toString())) {
+      assertThat(index.getEntryCount()).isEqualTo(count);
+      for (int seqno = 0; seqno < 100; seqno++) {
+        assertThat(index.readBlock(-1, SHARD_ALL, seqno)).isEqualTo(data(-1, SHARD_ALL, seqno));
+      }
+      for (int seqno = 0; seqno < 70; seqno++) {
+        assertThat(index.readBlock(0, SHARD_LEFT, seqno)).isEqualTo(data(0, SHARD_LEFT, seqno));
+      }
+      for (int seqno = 0; seqno < 30; seqno++) {
+        assertThat(index.readBlock(0, SHARD_RIGHT, seqno)).isEqualTo(data(0, SHARD_RIGHT, seqno));
+      }
+
+      // duplicate resolved to the package that sorts first
+      BlockLocation location = index.find(-1, SHARD_ALL, 50);
+      assertThat(index.getPackagePath((int) location.getPackageId())).isEqualTo(first.getPath());
+
+      assertThat(index.find(-1, SHARD_ALL, 100)).isNull();
+      assertThat(index.find(0, SHARD_RIGHT, 30)).isNull();
+      assertThat(index.find(0, SHARD_ALL, 1)).isNull();
+      assertThat(index.readBlock(1, SHARD_ALL, 1)).isNull();
+    }
+  }
+
+  private static File writePackage(Path path, int wc, long shard, int fromSeqno, int toSeqno)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(256 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0xae8fdd01);
+    for (int seqno = fromSeqno; seqno < toSeqno; seqno++) {
+      String shardHex = Long.toHexString(shard);
+      byte[] proofName =
+          ("proof_(" + wc + "," + shardHex + "," + seqno + "):AA:BB")
+              .getBytes(StandardCharsets.UTF_8);
+      buffer.putInt(0x1e8b | (proofName.length << 16)).putInt(1).put(proofName).put((byte) 0);
+
+      byte[] filename =
+          ("block_(" + wc + "," + shardHex + "," + seqno + "):AA:BB")
+              .getBytes(StandardCharsets.UTF_8);
+      byte[] data = data(wc, shard, seqno);
+      buffer.putInt(0x1e8b | (filename.length << 16)).putInt(data.length);
+      buffer.put(filename).put(data);
+    }
+    Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+    return path.toFile();
+  }
+
+  private static byte[] data(int wc, long shard, int seqno) {
+    byte[] data = new byte[1 + seqno % 40];
+    Arrays.fill(data, (byte) (seqno + wc + (shard >>> 56)));
+    return data;
+  }
+}
@@ -0,0 +1,138 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.utils.Utils;
+
+@Slf4j
+public class TestCellCache {
+
+  @Test
+  public void testWeightBoundAndMetrics() {
+    CellCache cache = new CellCache(1024 * 1024, 0);
+    for (int i = 0; i < 20_000; i++) {
+      cache.put(hash(i), cell(i), 100, CellCache.NO_DEPTH);
+    }
+    log.info("{}", cache);
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+    assertThat(cache.getEvictions()).isGreaterThan(0);
+    assertThat(cache.getSize() + cache.getEvictions()).isEqualTo(20_000);
+
+    // the most recently added cells are still cached, the first ones are evicted
+    assertThat(cache.get(hash(19_999))).isEqualTo(cell(19_999));
+    assertThat(cache.get(hash(0))).isNull();
+    assertThat(cache.getHits()).isEqualTo(1);
+    assertThat(cache.getMisses()).isEqualTo(1);
+    assertThat(cache.getHitRate()).isEqualTo(0.5);
+  }
+
+  @Test
+  public void testTopLevelsStayResident() {
+    CellCache cache = new CellCache(1024 * 1024, 4);
+    for (int depth = 0; depth < 4; depth++) {
+      cache.put(hash(-1 - depth), cell(depth), 100, depth);
+    }
+    // a scan of many deeper cells evicts the LRU part only
+    for (int i = 0; i < 50_000; i++) {
+      cache.put(hash(i), cell(i), 100, 20);
+    }
+    assertThat(cache.getPinnedSize()).isEqualTo(4);
+    for (int depth = 0; depth < 4; depth++) {
+      assertThat(cache.get(hash(-1 - depth))).isEqualTo(cell(depth));
+    }
+    assertThat(cache.get(hash(0))).isNull();
+  }
+
+  @Test
+  public void testPinnedWeightIsBounded() {
+    CellCache cache = new CellCache(64 * 1024, 256);
+    for (int i = 0; i < 1000; i++) {
+      cache.put(hash(i), cell(i), 100, 1);
+    }
+    // a quarter of the budget is pinned, the remaining cells went to the LRU segments
+    assertThat(cache.getPinnedSize()).isBetween(1L, 16 * 1024 / 260L);
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+  }
+
+  @Test
+  public void testTopLevelsOfOldStateAgeOut() {
+    CellCache cache = new CellCache(64 * 1024, 4);
+    // top levels of the previous state fill the pinned budget
+    for (int i = 0; i < 100; i++) {
+      cache.put(hash(i), cell(i), 100, 1);
+    }
+    // lookups move on to the new state, its top levels are read again and again
+    for (int round = 0; round < 5; round++) {
+      for (int i = 1000; i < 1200; i++) {
+        if (cache.get(hash(i)) == null) {
+          cache.put(hash(i), cell(i), 100, 1);
+        }
+      }
+    }
+    // a scan of deeper cells evicts everything that is not pinned
+    for (int i = 0; i < 50_000; i++) {
+      cache.put(hash(100_000 + i), cell(i), 100, CellCache.NO_DEPTH);
+    }
+    int oldFound = 0;
+    int newFound = 0;
+    for (int i = 0; i < 100; i++) {
+      oldFound += cache.get(hash(i)) == null ? 0 : 1;
+    }
+    for (int i = 1000; i < 1200; i++) {
+      newFound += cache.get(hash(i)) == null ? 0 : 1;
+    }
+    assertThat(oldFound).isZero();
+    assertThat(newFound).isGreaterThan(0);
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    CellCache cache = new CellCache(256 * 1024, 8);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      results.add(
+          executor.submit(
+              () -> {
+                int found = 0;
+                for (int i = 0; i < 20_000; i++) {
+                  int n = i % 2000;
+                  Cell cell = cache.get(hash(n));
+                  if (cell == null) {
+                    cache.put(hash(n), cell(n), 100, n % 16);
+                  } else {
+                    assertThat(cell).isEqualTo(cell(n));
+                    found++;
+                  }
+                }
+                return found;
+              }));
+    }
+    int found = 0;
+    for (Future<Integer> result : results) {
+      found += result.get();
+    }
+    executor.shutdown();
+    assertThat((long) found).isEqualTo(cache.getHits());
+    assertThat(cache.getHits() + cache.getMisses()).isEqualTo(80_000);
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(cache.getMaxWeight());
+  }
+
+  private static byte[] hash(int i) {
+    return Utils.sha256AsArray(Integer.toString(i).getBytes());
+  }
+
+  private static Cell cell(int i) {
+    return CellBuilder.beginCell().storeUint(i & 0xFFFF, 32).endCell();
+  }
+}
@@ -0,0 +1,77 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.rocksdb.FlushOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+
+@Slf4j
+public class TestDbReaderSession {
+
+  private static final byte[] KEY = "key".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] LATER_KEY = "later".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testConcurrentLookupsAndRefresh() throws Exception {
+    Path root = Files.createTempDirectory("db");
+    Files.createDirectories(root.resolve("files"));
+    createEmptyDb(root.resolve("state"));
+    createEmptyDb(root.resolve("files/globalindex"));
+
+    try (Options options = new Options().setCreateIfMissing(true);
+        RocksDB cellDb = RocksDB.open(options, root.resolve("celldb").toString());
+        DbReaderSession session = new DbReaderSession(root.toString(), 8 * 1024 * 1024, 0)) {
+      cellDb.put(KEY, KEY);
+      cellDb.flush(new FlushOptions().setWaitForFlush(true));
+
+      CellDbReader first = session.read(DbReaderSession::getCellDbReader);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      List<Future<byte[]>> values = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        values.add(
+            executor.submit(() -> session.read(s -> s.getCellDbReader().getCellDb().get(KEY))));
+      }
+      for (Future<byte[]> value : values) {
+        assertThat(value.get()).isEqualTo(KEY);
+      }
+      executor.shutdown();
+      // the same handles served all lookups
+      assertThat(session.read(DbReaderSession::getCellDbReader)).isSameAs(first);
+      assertThat(session.read(DbReaderSession::getStateDbReader)).isNotNull();
+      assertThat(session.read(DbReaderSession::getGlobalIndexDbReader)).isNotNull();
+
+      // a read-only handle does not see later writes until the session is refreshed
+      cellDb.put(LATER_KEY, LATER_KEY);
+      cellDb.flush(new FlushOptions().setWaitForFlush(true));
+      DbReaderSession.Lookup<byte[]> later = s -> s.getCellDbReader().getCellDb().get(LATER_KEY);
+      assertThat(session.read(later)).isNull();
+      session.refresh();
+      assertThat(session.read(later)).isEqualTo(LATER_KEY);
+      assertThat(session.read(DbReaderSession::getCellDbReader)).isNotSameAs(first);
+
+      session.close();
+      assertThatThrownBy(() -> session.read(DbReaderSession::getCellDbReader))
+          .isInstanceOf(IOException.class);
+    }
+  }
+
+  private static void createEmptyDb(Path path) throws Exception {
+    try (Options options = new Options().setCreateIfMissing(true);
+        RocksDB ignored = RocksDB.open(options, path.toString())) {
+      log.debug("created {}", path);
+    }
+  }
+}
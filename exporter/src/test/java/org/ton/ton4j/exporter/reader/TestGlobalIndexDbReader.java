@@ -1,12 +1,20 @@
 package org.ton.ton4j.exporter.reader;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
 import org.ton.ton4j.exporter.types.ArchiveFileLocation;
 import org.ton.ton4j.tl.types.db.block.BlockIdExt;
 import org.ton.ton4j.tl.types.db.block.BlockInfo;
@@ -14,6 +22,7 @@ import org.ton.ton4j.tl.types.db.blockdb.key.BlockDbValueKey;
 import org.ton.ton4j.tl.types.db.filedb.key.BlockFileKey;
 import org.ton.ton4j.tl.types.db.files.GlobalIndexKey;
 import org.ton.ton4j.tl.types.db.files.GlobalIndexValue;
+import org.ton.ton4j.tl.types.db.files.pkg.FirstBlock;
 import org.ton.ton4j.tl.types.db.lt.desc.DbLtDescKey;
 import org.ton.ton4j.tl.types.db.lt.desc.DbLtDescValue;
 import org.ton.ton4j.tl.types.db.lt.el.DbLtElKey;
@@ -776,4 +785,65 @@ public class TestGlobalIndexDbReader {
       log.info("TON implementation.");
     }
   }
+
+  @Test
+  public void testMainIndexPointLookupAndPackageIndex() throws Exception {
+    Path root = Files.createTempDirectory("db");
+    Files.createDirectories(root.resolve("files"));
+    try (Options options = new Options().setCreateIfMissing(true);
+        RocksDB db = RocksDB.open(options, root.resolve("files/globalindex").toString())) {
+      ByteBuffer indexValue = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+      indexValue.putInt(0xa2b1dafc).putInt(2).putInt(0).putInt(100).putInt(0).putInt(0);
+      db.put(le(0x7dc40502), indexValue.array());
+      db.put(packageKey(0), packageValue(0, 1));
+      db.put(packageKey(100), packageValue(100, 5000));
+      // file hash entries, sorted around the package entries
+      db.put(new byte[32], new byte[12]);
+      byte[] hash = new byte[32];
+      Arrays.fill(hash, (byte) 0xff);
+      db.put(hash, new byte[12]);
+    }
+
+    try (GlobalIndexDbReader reader = new GlobalIndexDbReader(root.toString())) {
+      assertThat(reader.getMainIndexIndexValue().getPackages()).containsExactly(0, 100);
+      assertThat(reader.getArchiveIndexBySeqno(-1, 4999)).isEqualTo(0);
+      assertThat(reader.getArchiveIndexBySeqno(-1, 5000)).isEqualTo(100);
+    }
+  }
+
+  private static byte[] le(int value) {
+    return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+  }
+
+  private static byte[] packageKey(int packageId) {
+    return ByteBuffer.allocate(16)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(0xa504033e)
+        .putInt(packageId)
+        .putInt(Utils.TL_FALSE)
+        .putInt(Utils.TL_FALSE)
+        .array();
+  }
+
+  private static byte[] packageValue(int packageId, int firstSeqno) {
+    byte[] firstBlock =
+        FirstBlock.builder()
+            .workchain(-1)
+            .shard(0x8000000000000000L)
+            .seqno(firstSeqno)
+            .unixtime(0)
+            .lt(0)
+            .build()
+            .serialize();
+    return ByteBuffer.allocate(4 + 16 + 4 + firstBlock.length + 1)
+        .order(ByteOrder.LITTLE_ENDIAN)
+        .putInt(0xe44cd52b)
+        .putInt(packageId)
+        .putInt(Utils.TL_FALSE)
+        .putInt(Utils.TL_FALSE)
+        .putInt(1)
+        .put(firstBlock)
+        .put((byte) 0)
+        .array();
+  }
 }
@@ -0,0 +1,110 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+@Slf4j
+public class TestMappedPackageReader {
+
+  static File writePackage(int entries) throws IOException {
+    File file = File.createTempFile("test", ".pack");
+    file.deleteOnExit();
+    ByteBuffer buffer = ByteBuffer.allocate(entries * 128 + 4).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0xae8fdd01);
+    for (int i = 0; i < entries; i++) {
+      byte[] filename = ("block_(0,8000000000000000," + i + ")").getBytes(StandardCharsets.UTF_8);
+      byte[] data = new byte[i % 50];
+      for (int j = 0; j < data.length; j++) {
+        data[j] = (byte) (i + j);
+      }
+      buffer.putInt(0x1e8b | (filename.length << 16));
+      buffer.putInt(data.length);
+      buffer.put(filename);
+      buffer.put(data);
+    }
+    Files.write(file.toPath(), Arrays.copyOf(buffer.array(), buffer.position()));
+    return file;
+  }
+
+  @Test
+  public void testMappedEntriesMatchPackageReader() throws IOException {
+    File file = writePackage(100);
+    List<PackageReader.PackageEntry> expected = new ArrayList<>();
+    try (PackageReader reader = new PackageReader(file.getAbsolutePath())) {
+      reader.forEachTyped(expected::add);
+    }
+
+    try (MappedPackageReader reader = new MappedPackageReader(file.getAbsolutePath())) {
+      List<MappedPackageReader.MappedEntry> actual = new ArrayList<>();
+      reader.forEachTyped(actual::add);
+      assertThat(actual).hasSize(expected.size());
+      for (int i = 0; i < actual.size(); i++) {
+        MappedPackageReader.MappedEntry entry = actual.get(i);
+        assertThat(entry.getFilename()).isEqualTo(expected.get(i).getFilename());
+        assertThat(entry.getDataBytes()).isEqualTo(expected.get(i).getData());
+        assertThat(entry.getData().remaining()).isEqualTo(entry.getDataSize());
+        assertThat(entry.getData().isReadOnly()).isTrue();
+        assertThat(entry.filenameStartsWith("block_")).isTrue();
+
+        // random access by index offset returns the same entry
+        MappedPackageReader.MappedEntry byOffset = reader.getEntryAt(entry.getOffset());
+        assertThat(byOffset.getFilename()).isEqualTo(entry.getFilename());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentIteration() throws Exception {
+    File file = writePackage(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (MappedPackageReader reader = new MappedPackageReader(file.getAbsolutePath())) {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  long sum = 0;
+                  Iterator<MappedPackageReader.MappedEntry> entries = reader.iterator();
+                  while (entries.hasNext()) {
+                    ByteBuffer data = entries.next().getData();
+                    while (data.hasRemaining()) {
+                      sum += data.get();
+                    }
+                  }
+                  return sum;
+                }));
+      }
+      long first = futures.get(0).get();
+      for (Future<Long> future : futures) {
+        assertThat(future.get()).isEqualTo(first);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTruncatedPackageStopsAtLastCompleteEntry() throws IOException {
+    File file = writePackage(10);
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 5));
+    try (MappedPackageReader reader = new MappedPackageReader(file.getAbsolutePath())) {
+      assertThat(reader.entries().count()).isEqualTo(9);
+    }
+  }
+}
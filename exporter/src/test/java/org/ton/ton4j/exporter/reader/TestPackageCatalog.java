@@ -0,0 +1,78 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+@Slf4j
+public class TestPackageCatalog {
+
+  @Test
+  public void testCatalogReusesUnchangedDirectories() throws Exception {
+    Path root = Files.createTempDirectory("db");
+    Path packages = root.resolve("archive/packages");
+    Path arch0 = Files.createDirectories(packages.resolve("arch0000"));
+    Path arch1 = Files.createDirectories(packages.resolve("arch0001"));
+    pack(arch0.resolve("archive.00000.pack"), 100);
+    pack(arch0.resolve("key.archive.00000.pack"), 10);
+    Files.write(arch0.resolve("archive.00000.index"), new byte[5]); // not a package
+    pack(arch1.resolve("archive.00100.pack"), 200);
+    String catalog = root.resolve("packages.catalog").toString();
+
+    PackageCatalog first = PackageCatalog.load(root.toString(), catalog, 2);
+    assertThat(first.getPackages())
+        .containsOnlyKeys(
+            "arch0000/archive.00000", "arch0000/key.archive.00000", "arch0001/archive.00100");
+    assertThat(first.getPackages().get("arch0001/archive.00100").getId()).isEqualTo(1);
+    assertThat(first.getPackages().get("arch0000/archive.00000").getPackageSize()).isEqualTo(100);
+    assertThat(first.getScannedDirectories()).isEqualTo(2);
+    assertThat(Files.exists(root.resolve("packages.catalog"))).isTrue();
+
+    // appending to a package leaves its directory unchanged, the package itself is checked
+    Files.write(arch1.resolve("archive.00100.pack"), new byte[50], StandardOpenOption.APPEND);
+    PackageCatalog second = PackageCatalog.load(root.toString(), catalog, 2);
+    assertThat(second.getCachedDirectories()).isEqualTo(2);
+    assertThat(second.getScannedDirectories()).isZero();
+    assertThat(second.getChangedPackages()).isEqualTo(1);
+    assertThat(second.getPackages().get("arch0001/archive.00100").getPackageSize()).isEqualTo(250);
+
+    // also in an older directory
+    FileTime arch0Modified = Files.getLastModifiedTime(arch0);
+    Files.write(arch0.resolve("archive.00000.pack"), new byte[20], StandardOpenOption.APPEND);
+    Files.setLastModifiedTime(arch0, arch0Modified);
+    PackageCatalog appended = PackageCatalog.load(root.toString(), catalog, 2);
+    assertThat(appended.getChangedPackages()).isEqualTo(1);
+    assertThat(appended.getPackages().get("arch0000/archive.00000").getPackageSize())
+        .isEqualTo(120);
+    assertThat(PackageCatalog.load(root.toString(), catalog, 2).getChangedPackages()).isZero();
+
+    // a directory is trusted as long as its modification time is unchanged
+    FileTime modified = Files.getLastModifiedTime(arch0);
+    pack(arch0.resolve("archive.00001.pack"), 30);
+    Files.setLastModifiedTime(arch0, modified);
+    assertThat(PackageCatalog.load(root.toString(), catalog, 2).getPackages()).hasSize(3);
+
+    Files.setLastModifiedTime(arch0, FileTime.fromMillis(modified.toMillis() + 1000));
+    PackageCatalog changed = PackageCatalog.load(root.toString(), catalog, 2);
+    assertThat(changed.getScannedDirectories()).isEqualTo(1);
+    assertThat(changed.getPackages()).hasSize(4).containsKey("arch0000/archive.00001");
+
+    // a damaged catalog is ignored
+    Files.write(root.resolve("packages.catalog"), new byte[] {1, 2, 3});
+    PackageCatalog rescanned = PackageCatalog.load(root.toString(), catalog, 2);
+    assertThat(rescanned.getScannedDirectories()).isEqualTo(2);
+    assertThat(rescanned.getPackages()).isEqualTo(changed.getPackages());
+
+    // without a catalog every directory is scanned
+    assertThat(PackageCatalog.load(root.toString(), null, 2).getScannedDirectories()).isEqualTo(2);
+  }
+
+  private static void pack(Path path, int size) throws Exception {
+    Files.write(path, new byte[size]);
+  }
+}
@@ -1,6 +1,9 @@
 package org.ton.ton4j.exporter.reader;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
@@ -8,6 +11,7 @@ import org.junit.Test;
 import org.ton.ton4j.tlb.Block;
 import org.ton.ton4j.tlb.BlockId;
 import org.ton.ton4j.tlb.BlockIdExt;
+import org.ton.ton4j.utils.Utils;
 
 @Slf4j
 public class TestTempPackageIndexReader {
@@ -110,4 +114,39 @@ public class TestTempPackageIndexReader {
     indexReader.close();
     log.info("{} {}", block.getRight().getBlockInfo().getSeqno(), block);
   }
+
+  @Test
+  public void testTempPackageLastBlockIds() throws IOException {
+
+    try (TempPackageIndexReader indexReader =
+        new TempPackageIndexReader(TON_DB_ROOT_PATH, PACKAGE_TIMESTAMP)) {
+      long startTime = System.currentTimeMillis();
+      List<BlockIdExt> blockIds = indexReader.getLastBlockIds(100);
+      log.info("{} block ids in {} ms", blockIds.size(), System.currentTimeMillis() - startTime);
+
+      // the ids from the filenames are the ones of the decoded blocks
+      Pair<BlockIdExt, Block> last = indexReader.getLast(0, 0x8000000000000000L);
+      Block block = last.getRight();
+      assertThat(last.getLeft().getSeqno()).isEqualTo(block.getBlockInfo().getSeqno());
+      assertThat(last.getLeft().getWorkchain()).isEqualTo(0);
+    }
+  }
+
+  @Test
+  public void testParseBlockIdExtFromFilename() {
+    String rootHash = "8D4F2F7B6D1E0A0C3B5A4F2E1D0C9B8A7F6E5D4C3B2A19080706050403020100";
+    String fileHash = "00112233445566778899AABBCCDDEEFF00112233445566778899AABBCCDDEEFF";
+    BlockIdExt blockIdExt =
+        TempPackageIndexReader.parseBlockIdExt(
+            "block_(-1,8000000000000000,1234):" + rootHash + ":" + fileHash);
+    assertThat(blockIdExt.getWorkchain()).isEqualTo(-1);
+    assertThat(blockIdExt.shard).isEqualTo(0x8000000000000000L);
+    assertThat(blockIdExt.getSeqno()).isEqualTo(1234);
+    assertThat(Utils.bytesToHex(blockIdExt.rootHash)).isEqualToIgnoringCase(rootHash);
+    assertThat(Utils.bytesToHex(blockIdExt.fileHash)).isEqualToIgnoringCase(fileHash);
+
+    assertThat(TempPackageIndexReader.parseBlockIdExt("block_(-1,8000000000000000,1):AA:BB"))
+        .isNull();
+    assertThat(TempPackageIndexReader.parseBlockIdExt("block_without_id")).isNull();
+  }
 }
@@ -0,0 +1,94 @@
+package org.ton.ton4j.exporter.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.ton.ton4j.utils.Utils;
+
+public class TestVisitedCellSet {
+
+  @Test
+  public void testGrowsAndCountsDuplicates() throws Exception {
+    Path directory = Files.createTempDirectory("visited").resolve("set");
+    int hashes = 1_000_000; // more than the initial capacity of the segments
+    try (VisitedCellSet set = new VisitedCellSet(directory, 1)) {
+      long initialSize = set.getFileSize();
+      for (int i = 0; i < hashes; i++) {
+        assertThat(set.add(hash(i))).isTrue();
+      }
+      for (int i = 0; i < hashes; i += 10) {
+        assertThat(set.add(hash(i))).isFalse();
+      }
+      assertThat(set.size()).isEqualTo(hashes);
+      assertThat(set.getFileSize()).isGreaterThan(initialSize);
+
+      Map<Integer, Long> histogram = new HashMap<>();
+      set.forEach((hash, count) -> histogram.merge(count, 1L, Long::sum));
+      assertThat(histogram).containsOnlyKeys(1, 2);
+      assertThat(histogram.get(2)).isEqualTo(hashes / 10);
+      assertThat(histogram.get(1)).isEqualTo(hashes - hashes / 10);
+
+      String first = Utils.bytesToHex(hash(0));
+      AtomicLong firstCount = new AtomicLong();
+      set.forEach(
+          (hash, count) -> {
+            if (Utils.bytesToHex(hash).equals(first)) {
+              firstCount.set(count);
+            }
+          });
+      assertThat(firstCount.get()).isEqualTo(2);
+      assertThat(Files.list(directory).count()).isEqualTo(1024);
+    }
+    assertThat(Files.exists(directory)).isFalse();
+  }
+
+  @Test
+  public void testConcurrentAdds() throws Exception {
+    Path directory = Files.createTempDirectory("visited").resolve("set");
+    int threads = 8;
+    int hashes = 50_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try (VisitedCellSet set = new VisitedCellSet(directory, 1000)) {
+      AtomicLong added = new AtomicLong();
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        // every thread adds all hashes, each one is new exactly once
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < hashes; i++) {
+                    if (set.add(hash(i))) {
+                      added.incrementAndGet();
+                    }
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      assertThat(added.get()).isEqualTo(hashes);
+      assertThat(set.size()).isEqualTo(hashes);
+      AtomicLong total = new AtomicLong();
+      set.forEach((hash, count) -> total.addAndGet(count));
+      assertThat(total.get()).isEqualTo((long) threads * hashes);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static byte[] hash(int i) {
+    return Utils.sha256AsArray(ByteBuffer.allocate(4).putInt(i).array());
+  }
+}
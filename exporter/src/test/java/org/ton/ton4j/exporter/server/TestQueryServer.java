@@ -0,0 +1,160 @@
+package org.ton.ton4j.exporter.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.ton.ton4j.cell.Cell;
+import org.ton.ton4j.cell.CellBuilder;
+import org.ton.ton4j.exporter.reader.BlockLocationIndex;
+import org.ton.ton4j.exporter.types.ArchiveInfo;
+import org.ton.ton4j.exporter.types.EndpointStatistics;
+import org.ton.ton4j.exporter.types.QueryServerConfig;
+
+@Slf4j
+public class TestQueryServer {
+
+  private static final long SHARD_ALL = 0x8000000000000000L;
+
+  @Test
+  public void testResponseCacheWeightBound() {
+    ResponseCache cache = new ResponseCache(64 * 1024);
+    for (int i = 0; i < 1000; i++) {
+      cache.put("key" + i, new byte[256]);
+    }
+    assertThat(cache.getWeight()).isLessThanOrEqualTo(64 * 1024);
+    assertThat(cache.getSize()).isEqualTo(256);
+    assertThat(cache.get("key999")).hasSize(256);
+    assertThat(cache.get("key0")).isNull();
+    assertThat(cache.getHits()).isEqualTo(1);
+    assertThat(cache.getMisses()).isEqualTo(1);
+
+    cache.put("huge", new byte[64 * 1024]); // not cached, would evict everything
+    assertThat(cache.get("huge")).isNull();
+    assertThat(cache.getSize()).isEqualTo(256);
+  }
+
+  @Test
+  public void testServesRecordsAndReplaysRequests() throws Exception {
+    Path root = Files.createTempDirectory("db");
+    createEmptyDb(root.resolve("state"));
+    createEmptyDb(root.resolve("celldb"));
+    createEmptyDb(root.resolve("files/globalindex"));
+    Path arch = Files.createDirectories(root.resolve("archive/packages/arch0000"));
+    File pack = writePackage(arch.resolve("archive.00000.pack"), 20);
+    String indexPath = root.resolve("blocks.idx").toString();
+    BlockLocationIndex.build(
+        Collections.singletonList(new ArchiveInfo(0, pack.getPath(), pack.length())),
+        root.toString(),
+        indexPath);
+    Path record = root.resolve("requests.txt");
+
+    QueryServerConfig recording =
+        QueryServerConfig.builder()
+            .threads(2)
+            .blockLocationIndexPath(indexPath)
+            .recordFile(record.toString())
+            .build();
+    try (QueryServer server = QueryServer.start(root.toString(), recording)) {
+      String base = "http://127.0.0.1:" + server.getPort();
+      for (int seqno = 0; seqno < 10; seqno++) {
+        String body = get(base + "/block?workchain=-1&seqno=" + seqno + "&format=boc", 200);
+        String boc = JsonParser.parseString(body).getAsJsonObject().get("boc").getAsString();
+        Cell cell = CellBuilder.beginCell().fromBoc(boc).endCell();
+        assertThat(cell.getHash()).isEqualTo(block(seqno).getHash());
+      }
+      // served from the response cache
+      get(base + "/block?workchain=-1&seqno=3&format=boc", 200);
+
+      get(base + "/block?workchain=0&seqno=3", 400); // shard is required outside masterchain
+      get(base + "/account?address=not-an-address", 400);
+      get(base + "/account", 400);
+
+      JsonObject stats = JsonParser.parseString(get(base + "/stats", 200)).getAsJsonObject();
+      log.info("{}", stats);
+      assertThat(stats.getAsJsonObject("responseCache").get("hits").getAsLong()).isEqualTo(1);
+      EndpointStatistics block = statistics(server.getStatistics(), QueryServer.BLOCK);
+      assertThat(block.getRequests()).isEqualTo(12);
+      assertThat(block.getErrors()).isEqualTo(1);
+    }
+
+    // the recorded mix, without the bad requests, replayed against a new server
+    List<String> requests = QueryLoadTest.readRequests(record.toString());
+    assertThat(requests).hasSize(14).doesNotContain("/stats");
+    requests.removeIf(request -> !request.contains("format=boc"));
+    assertThat(requests).hasSize(11);
+
+    QueryServerConfig replaying =
+        QueryServerConfig.builder().threads(4).blockLocationIndexPath(indexPath).build();
+    try (QueryServer server = QueryServer.start(root.toString(), replaying)) {
+      List<EndpointStatistics> report =
+          QueryLoadTest.run("http://127.0.0.1:" + server.getPort(), requests, 4, 500, true);
+      report.forEach(endpoint -> log.info(endpoint.toCompactString()));
+      EndpointStatistics all = report.get(0);
+      assertThat(all.getEndpoint()).isEqualTo(QueryLoadTest.ALL);
+      assertThat(all.getRequests()).isEqualTo(500);
+      assertThat(all.getErrors()).isZero();
+      assertThat(statistics(report, QueryServer.BLOCK).getRequests()).isEqualTo(500);
+      // warm-up and measured requests
+      assertThat(statistics(server.getStatistics(), QueryServer.BLOCK).getRequests())
+          .isEqualTo(510);
+    }
+  }
+
+  private static EndpointStatistics statistics(List<EndpointStatistics> all, String endpoint) {
+    return all.stream().filter(s -> s.getEndpoint().equals(endpoint)).findFirst().orElseThrow();
+  }
+
+  private static String get(String url, int expectedStatus) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    assertThat(connection.getResponseCode()).isEqualTo(expectedStatus);
+    try (InputStream in =
+        expectedStatus == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static File writePackage(Path path, int blocks) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(0xae8fdd01);
+    for (int seqno = 0; seqno < blocks; seqno++) {
+      byte[] filename =
+          ("block_(-1," + Long.toHexString(SHARD_ALL) + "," + seqno + "):AA:BB")
+              .getBytes(StandardCharsets.UTF_8);
+      byte[] data = block(seqno).toBoc();
+      buffer.putInt(0x1e8b | (filename.length << 16)).putInt(data.length);
+      buffer.put(filename).put(data);
+    }
+    Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+    return path.toFile();
+  }
+
+  private static Cell block(int seqno) {
+    return CellBuilder.beginCell().storeUint(seqno, 32).storeUint(0xb10c, 16).endCell();
+  }
+
+  private static void createEmptyDb(Path path) throws Exception {
+    Files.createDirectories(path.getParent());
+    try (Options options = new Options().setCreateIfMissing(true);
+        RocksDB ignored = RocksDB.open(options, path.toString())) {
+      log.debug("created {}", path);
+    }
+  }
+}
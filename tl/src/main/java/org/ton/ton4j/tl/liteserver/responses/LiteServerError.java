@@ -28,7 +28,11 @@ public class LiteServerError implements Serializable, LiteServerAnswer {
   public static LiteServerError deserialize(ByteBuffer byteBuffer) {
     byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
     int code = byteBuffer.getInt();
-    String message = new String(byteBuffer.array(), byteBuffer.position(), byteBuffer.remaining());
+    String message =
+        new String(
+            byteBuffer.array(),
+            byteBuffer.arrayOffset() + byteBuffer.position(),
+            byteBuffer.remaining());
     if (StringUtils.isNotEmpty(message)) {
       message = message.substring(1, message.length() - 1).trim();
     }
@@ -73,6 +73,11 @@ public class BlockInfo implements Serializable {
     return Long.toHexString(magic);
   }
 
+  /** @return tag of block_info, 0x9bc7a987 */
+  public long getRawMagic() {
+    return magic;
+  }
+
   public Cell toCell() {
     CellBuilder result =
         CellBuilder.beginCell()
@@ -36,6 +36,11 @@ public class ExternalMessageInInfo implements CommonMsgInfo, Serializable {
     return Long.toHexString(magic);
   }
 
+  /** @return tag of ext_in_msg_info, 0b10 */
+  public long getRawMagic() {
+    return magic;
+  }
+
   public Cell toCell() {
     CellBuilder result =
         CellBuilder.beginCell()
@@ -36,6 +36,11 @@ public class ExternalMessageOutInfo implements CommonMsgInfo, Serializable {
     return Long.toHexString(magic);
   }
 
+  /** @return tag of ext_out_msg_info, 0b11 */
+  public long getRawMagic() {
+    return magic;
+  }
+
   public Cell toCell() {
     CellBuilder result =
         CellBuilder.beginCell()
@@ -26,6 +26,19 @@ public class HashUpdate implements Serializable {
     return Long.toHexString(magic);
   }
 
+  /** @return tag of update_hashes, 0x72 */
+  public long getRawMagic() {
+    return magic;
+  }
+
+  public BigInteger getRawOldHash() {
+    return oldHash;
+  }
+
+  public BigInteger getRawNewHash() {
+    return newHash;
+  }
+
   private String getOldHash() {
     return oldHash.toString(16);
   }
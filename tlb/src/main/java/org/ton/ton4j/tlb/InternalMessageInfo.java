@@ -59,6 +59,11 @@ public class InternalMessageInfo implements CommonMsgInfo, Serializable {
     return Long.toHexString(magic);
   }
 
+  /** @return tag of int_msg_info, 0b0 */
+  public int getRawMagic() {
+    return magic;
+  }
+
   public Cell toCell() {
     CellBuilder result =
         CellBuilder.beginCell()
@@ -32,6 +32,11 @@ public class ShardIdent {
     return Long.toBinaryString(magic);
   }
 
+  /** @return tag of shard_ident, 0b00 */
+  public long getRawMagic() {
+    return magic;
+  }
+
   public Cell toCell() {
     return CellBuilder.beginCell()
         .storeUint(0, 2)
@@ -58,6 +58,21 @@ public class Transaction implements Serializable {
     return Long.toBinaryString(magic);
   }
 
+  /** @return tag of transaction, 0b0111 */
+  public int getRawMagic() {
+    return magic;
+  }
+
+  /** @return account address as stored, {@link #getAccountAddr()} returns it as hex */
+  public BigInteger getRawAccountAddr() {
+    return accountAddr;
+  }
+
+  /** @return previous transaction hash as stored, {@link #getPrevTxHash()} returns it as hex */
+  public BigInteger getRawPrevTxHash() {
+    return prevTxHash;
+  }
+
   public String getAccountAddrShort() {
     if (nonNull(accountAddr)) {
       String str64 = StringUtils.leftPad(accountAddr.toString(16), 64, "0");